@@ -13,6 +13,7 @@ import com.mediaservice.shared.http.error.MediaGoneException;
 import com.mediaservice.media.application.mapper.MediaMapper;
 import com.mediaservice.media.application.MediaApplicationService;
 import com.mediaservice.analytics.application.AnalyticsService;
+import com.mediaservice.common.model.Media;
 import com.mediaservice.common.model.MediaStatus;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.media.Content;
@@ -32,6 +33,7 @@ import org.springframework.web.multipart.MultipartFile;
 
 import java.io.IOException;
 import java.net.URI;
+import java.util.List;
 
 /**
  * REST controller for media operations.
@@ -80,11 +82,14 @@ public class MediaController {
   public ResponseEntity<MediaResponse> uploadMedia(
       @RequestParam("file") MultipartFile file,
       @RequestParam(required = false) Integer width,
-      @RequestParam(required = false) String outputFormat) throws IOException {
-    log.info("Upload request received: fileName={}, size={}, outputFormat={}",
-        file.getOriginalFilename(), file.getSize(), outputFormat);
+      @RequestParam(required = false) String outputFormat,
+      @RequestParam(required = false) List<Integer> variantWidths,
+      @RequestParam(required = false) List<String> variantFormats) throws IOException {
+    log.info("Upload request received: fileName={}, size={}, outputFormat={}, variants={} x {}",
+        file.getOriginalFilename(), file.getSize(), outputFormat, variantWidths, variantFormats);
     validateUploadFile(file);
-    return ResponseEntity.accepted().body(mediaService.uploadMedia(file, width, outputFormat));
+    return ResponseEntity.accepted()
+        .body(mediaService.uploadMedia(file, width, outputFormat, variantWidths, variantFormats));
   }
 
   @Operation(summary = "Initialize presigned upload")
@@ -165,16 +170,21 @@ public class MediaController {
         .orElse(ResponseEntity.notFound().build());
   }
 
-  @Operation(summary = "Download processed media", description = "Redirects to presigned S3 URL")
+  @Operation(summary = "Download processed media", description = "Redirects to presigned S3 URL. With width and/or format, serves that rendition from the variant catalog and queues it when missing")
   @ApiResponses({
       @ApiResponse(responseCode = "302", description = "Redirect to download URL"),
-      @ApiResponse(responseCode = "202", description = "Media still processing", content = @Content(schema = @Schema(implementation = MediaResponse.class))),
+      @ApiResponse(responseCode = "202", description = "Media still processing or variant queued", content = @Content(schema = @Schema(implementation = MediaResponse.class))),
+      @ApiResponse(responseCode = "400", description = "Invalid width or format", content = @Content(schema = @Schema(implementation = ErrorResponse.class))),
       @ApiResponse(responseCode = "404", description = "Media not found"),
+      @ApiResponse(responseCode = "409", description = "Upload not completed", content = @Content(schema = @Schema(implementation = ErrorResponse.class))),
       @ApiResponse(responseCode = "410", description = "Media has been deleted")
   })
   @GetMapping("/{mediaId}/download")
-  public ResponseEntity<MediaResponse> downloadMedia(@PathVariable String mediaId, HttpServletRequest request) {
-    log.info("Download request: mediaId={}", mediaId);
+  public ResponseEntity<MediaResponse> downloadMedia(@PathVariable String mediaId,
+      @RequestParam(required = false) Integer width,
+      @RequestParam(required = false) String format,
+      HttpServletRequest request) {
+    log.info("Download request: mediaId={}, width={}, format={}", mediaId, width, format);
     var mediaOpt = mediaService.getMedia(mediaId);
     if (mediaOpt.isEmpty()) {
       return ResponseEntity.notFound().build();
@@ -183,6 +193,9 @@ public class MediaController {
     if (media.getStatus() == MediaStatus.DELETED) {
       throw new MediaGoneException("Media has been deleted", media.getDeletedAt());
     }
+    if (width != null || format != null) {
+      return downloadVariant(media, width, format, request);
+    }
     if (mediaService.isMediaProcessing(mediaId)) {
       var headers = new HttpHeaders();
       headers.add("Retry-After", "60");
@@ -201,7 +214,30 @@ public class MediaController {
         .orElse(ResponseEntity.notFound().build());
   }
 
-  @Operation(summary = "Resize media")
+  /**
+   * Serve a rendition from the variant catalog, or accept the request while it
+   * renders. Variants only need the original, so they do not wait for processing.
+   */
+  private ResponseEntity<MediaResponse> downloadVariant(Media media, Integer width, String format,
+      HttpServletRequest request) {
+    if (media.getStatus() == MediaStatus.PENDING_UPLOAD) {
+      throw new MediaConflictException("Cannot download: upload not completed");
+    }
+    var download = mediaService.getVariantDownload(media, width, format);
+    if (!download.ready()) {
+      var headers = new HttpHeaders();
+      headers.add("Retry-After", "10");
+      headers.add("Location", "%s?%s".formatted(request.getRequestURL(), request.getQueryString()));
+      return ResponseEntity.accepted()
+          .headers(headers)
+          .body(mediaMapper.toMessageResponse("Variant rendering in progress."));
+    }
+    analyticsService.recordView(media.getMediaId());
+    analyticsService.recordDownload(media.getMediaId(), download.format(), download.width());
+    return ResponseEntity.status(HttpStatus.FOUND).location(URI.create(download.url())).build();
+  }
+
+  @Operation(summary = "Resize media", description = "Optionally renders a variant set (variantWidths x variantFormats) from the same decode")
   @ApiResponses({
       @ApiResponse(responseCode = "202", description = "Resize request accepted", content = @Content(schema = @Schema(implementation = MediaResponse.class))),
       @ApiResponse(responseCode = "404", description = "Media not found"),
@@ -214,7 +250,8 @@ public class MediaController {
     if (!mediaService.mediaExists(mediaId)) {
       return ResponseEntity.notFound().build();
     }
-    return mediaService.resizeMedia(mediaId, resizeRequest.getWidth(), resizeRequest.getOutputFormat())
+    return mediaService.resizeMedia(mediaId, resizeRequest.getWidth(), resizeRequest.getOutputFormat(),
+        resizeRequest.getVariantWidths(), resizeRequest.getVariantFormats())
         .map(media -> ResponseEntity.accepted().body(mediaMapper.toIdResponse(media)))
         .orElseThrow(() -> new MediaConflictException("Cannot resize: media is not in COMPLETE status"));
   }
@@ -10,6 +10,8 @@ import lombok.Builder;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 
+import java.util.List;
+
 @Data
 @Builder
 @NoArgsConstructor
@@ -24,10 +26,15 @@ public class InitUploadRequest {
   @NotBlank(message = "contentType is required")
   private String contentType;
 
-  @Min(value = 100, message = "width must be at least 100")
-  @Max(value = 1024, message = "width must be at most 1024")
+  @Min(value = 100, message = "Width must be at least 100 pixels")
+  @Max(value = 1024, message = "Width must be at most 1024 pixels")
   private Integer width;
 
   @Pattern(regexp = "^(jpeg|png|webp)?$", message = "outputFormat must be one of: jpeg, png, webp")
   private String outputFormat;
+
+  /** Variant set: each width is rendered in each of {@link #variantFormats} from a single decode */
+  private List<@Min(value = 100, message = "Variant widths must be at least 100 pixels") @Max(value = 1024, message = "Variant widths must be at most 1024 pixels") Integer> variantWidths;
+
+  private List<@Pattern(regexp = "^(jpeg|png|webp)$", message = "variantFormats must be one of: jpeg, png, webp") String> variantFormats;
 }
@@ -7,6 +7,8 @@ import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 
+import java.util.List;
+
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
@@ -17,4 +19,9 @@ public class ResizeRequest {
 
   @Pattern(regexp = "^(jpeg|png|webp)?$", message = "outputFormat must be one of: jpeg, png, webp")
   private String outputFormat;
+
+  /** Variant set: each width is rendered in each of {@link #variantFormats} from a single decode */
+  private List<@Min(value = 100, message = "Variant widths must be at least 100 pixels") @Max(value = 1024, message = "Variant widths must be at most 1024 pixels") Integer> variantWidths;
+
+  private List<@Pattern(regexp = "^(jpeg|png|webp)$", message = "variantFormats must be one of: jpeg, png, webp") String> variantFormats;
 }
@@ -10,6 +10,7 @@ import com.mediaservice.common.model.OutputFormat;
 import com.mediaservice.media.domain.service.ImageValidationService;
 import com.mediaservice.media.infrastructure.messaging.MediaEventPublisher;
 import com.mediaservice.media.infrastructure.persistence.MediaDynamoDbRepository;
+import com.mediaservice.media.infrastructure.persistence.MediaVariantDynamoDbRepository;
 import com.mediaservice.media.infrastructure.storage.S3StorageService;
 import com.mediaservice.shared.cache.CacheInvalidationService;
 import com.mediaservice.shared.cache.MultiLevelCacheOrchestrator;
@@ -26,6 +27,7 @@ import org.springframework.web.multipart.MultipartFile;
 
 import java.io.IOException;
 import java.time.Duration;
+import java.util.Arrays;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Optional;
@@ -42,6 +44,7 @@ import java.util.UUID;
 @Service
 public class MediaApplicationService {
   private final MediaDynamoDbRepository mediaRepository;
+  private final MediaVariantDynamoDbRepository variantRepository;
   private final S3StorageService s3Service;
   private final MediaEventPublisher eventPublisher;
   private final MediaProperties mediaProperties;
@@ -51,12 +54,16 @@ public class MediaApplicationService {
   private final Tracer tracer;
   private final LongCounter uploadSuccessCounter;
   private final LongCounter uploadFailureCounter;
+  private final LongCounter variantHitCounter;
+  private final LongCounter variantQueuedCounter;
 
-  public MediaApplicationService(MediaDynamoDbRepository mediaRepository, S3StorageService s3Service,
+  public MediaApplicationService(MediaDynamoDbRepository mediaRepository,
+      MediaVariantDynamoDbRepository variantRepository, S3StorageService s3Service,
       MediaEventPublisher eventPublisher, MediaProperties mediaProperties,
       ImageValidationService imageValidationService, CacheInvalidationService cacheInvalidationService,
       MultiLevelCacheOrchestrator cacheOrchestrator, Tracer tracer, Meter meter) {
     this.mediaRepository = mediaRepository;
+    this.variantRepository = variantRepository;
     this.s3Service = s3Service;
     this.eventPublisher = eventPublisher;
     this.mediaProperties = mediaProperties;
@@ -70,9 +77,16 @@ public class MediaApplicationService {
     this.uploadFailureCounter = meter.counterBuilder("media.upload.failure")
         .setDescription("Count of failed media uploads")
         .build();
+    this.variantHitCounter = meter.counterBuilder("media.variant.hit")
+        .setDescription("Count of variant downloads served from the catalog")
+        .build();
+    this.variantQueuedCounter = meter.counterBuilder("media.variant.queued")
+        .setDescription("Count of variant renders queued by downloads")
+        .build();
   }
 
-  public MediaResponse uploadMedia(MultipartFile file, Integer width, String outputFormat) throws IOException {
+  public MediaResponse uploadMedia(MultipartFile file, Integer width, String outputFormat,
+      List<Integer> variantWidths, List<String> variantFormats) throws IOException {
     String contentType = file.getContentType();
     if (contentType == null || !contentType.startsWith("image")) {
       throw new IllegalArgumentException("Invalid file type. Only images are supported.");
@@ -90,6 +104,7 @@ public class MediaApplicationService {
 
       int targetWidth = mediaProperties.resolveWidth(width);
       OutputFormat targetFormat = OutputFormat.fromString(outputFormat);
+      var variants = resolveVariantSet(variantWidths, variantFormats, targetFormat);
 
       String originalName = file.getOriginalFilename();
       String fileName = (originalName == null || originalName.isEmpty()) ? "image.jpg" : originalName;
@@ -107,6 +122,8 @@ public class MediaApplicationService {
             .status(MediaStatus.PENDING)
             .width(targetWidth)
             .outputFormat(targetFormat)
+            .variantWidths(variants.widths())
+            .variantFormats(variants.formats())
             .build());
       } catch (Exception e) {
         // Compensate: delete S3 object
@@ -115,7 +132,8 @@ public class MediaApplicationService {
       }
       // Step 3: Publish event to SNS for async processing by Lambda
       try {
-        eventPublisher.publishProcessMediaEvent(mediaId, targetWidth, targetFormat.getFormat());
+        eventPublisher.publishProcessMediaEvent(mediaId, targetWidth, targetFormat.getFormat(), variants.widths(),
+            variants.formatNames());
       } catch (Exception e) {
         // Compensate: delete DynamoDB record and S3 object
         compensateDynamoDb(mediaId);
@@ -137,6 +155,60 @@ public class MediaApplicationService {
     }
   }
 
+  /**
+   * A validated variant set; both lists are null when no variant widths were requested.
+   */
+  private record VariantSet(List<Integer> widths, List<OutputFormat> formats) {
+    private static final VariantSet NONE = new VariantSet(null, null);
+
+    List<String> formatNames() {
+      return MediaApplicationService.formatNames(formats);
+    }
+  }
+
+  /**
+   * Validate and normalize a requested variant set. Widths are deduplicated and
+   * sorted; formats default to the primary output format.
+   *
+   * @throws IllegalArgumentException if a width is out of range, too many widths
+   *                                  are requested, or a format is unknown
+   */
+  private VariantSet resolveVariantSet(List<Integer> widths, List<String> formats, OutputFormat primaryFormat) {
+    if (widths == null || widths.isEmpty()) {
+      if (formats != null && !formats.isEmpty()) {
+        throw new IllegalArgumentException("variantFormats requires variantWidths");
+      }
+      return VariantSet.NONE;
+    }
+    for (Integer width : widths) {
+      if (!mediaProperties.isWidthValid(width)) {
+        throw new IllegalArgumentException("Variant widths must be between %d and %d pixels"
+            .formatted(mediaProperties.getWidth().getMin(), mediaProperties.getWidth().getMax()));
+      }
+    }
+    var distinctWidths = widths.stream().distinct().sorted().toList();
+    int maxWidths = mediaProperties.getVariants().getMaxWidths();
+    if (distinctWidths.size() > maxWidths) {
+      throw new IllegalArgumentException("At most " + maxWidths + " variant widths are allowed");
+    }
+    var resolvedFormats = (formats == null || formats.isEmpty())
+        ? List.of(primaryFormat)
+        : formats.stream().map(MediaApplicationService::parseVariantFormat).distinct().sorted().toList();
+    return new VariantSet(distinctWidths, resolvedFormats);
+  }
+
+  private static OutputFormat parseVariantFormat(String value) {
+    // OutputFormat.fromString falls back to JPEG; a typo in a variant set should be rejected instead
+    return Arrays.stream(OutputFormat.values())
+        .filter(format -> format.getFormat().equalsIgnoreCase(value))
+        .findFirst()
+        .orElseThrow(() -> new IllegalArgumentException("Unsupported variant format: " + value));
+  }
+
+  private static List<String> formatNames(List<OutputFormat> formats) {
+    return formats == null ? null : formats.stream().map(OutputFormat::getFormat).toList();
+  }
+
   private void compensateS3Upload(String mediaId, String fileName) {
     try {
       s3Service.deleteUpload(mediaId, fileName);
@@ -184,24 +256,104 @@ public class MediaApplicationService {
         });
   }
 
+  /**
+   * Outcome of a variant download: the resolved width and format, and the
+   * presigned URL if the rendition exists ({@code null} while it renders).
+   */
+  public record VariantDownload(int width, OutputFormat format, String url) {
+    public boolean ready() {
+      return url != null;
+    }
+  }
+
+  /**
+   * Get a download URL for a specific width and format from the variant catalog.
+   *
+   * <p>
+   * The processed output is served when it matches, otherwise a COMPLETE
+   * catalog entry. A missing variant is queued for rendering once, however
+   * many requests arrive, without changing the media status or invalidating
+   * caches, so the processed output stays downloadable meanwhile.
+   *
+   * @param width  Requested width, defaults to the media width
+   * @param format Requested format, defaults to the media output format
+   * @throws IllegalArgumentException if the width or format is not allowed
+   */
+  public VariantDownload getVariantDownload(Media media, Integer width, String format) {
+    var mediaId = media.getMediaId();
+    int targetWidth = width != null ? width : mediaProperties.resolveWidth(media.getWidth());
+    if (!mediaProperties.isWidthValid(targetWidth)) {
+      throw new IllegalArgumentException("Width must be between %d and %d pixels"
+          .formatted(mediaProperties.getWidth().getMin(), mediaProperties.getWidth().getMax()));
+    }
+    var primaryFormat = media.getOutputFormat() != null ? media.getOutputFormat() : OutputFormat.JPEG;
+    var targetFormat = format != null ? parseVariantFormat(format) : primaryFormat;
+
+    if (media.getStatus() == MediaStatus.COMPLETE && media.getWidth() != null && targetWidth == media.getWidth()
+        && targetFormat == primaryFormat) {
+      var url = getDownloadUrl(mediaId);
+      if (url.isPresent()) {
+        return new VariantDownload(targetWidth, targetFormat, url.get());
+      }
+    }
+
+    var variant = variantRepository.getVariant(mediaId, targetWidth, targetFormat);
+    if (variant.isPresent() && variant.get().getStatus() == MediaStatus.COMPLETE) {
+      variantHitCounter.add(1);
+      return new VariantDownload(targetWidth, targetFormat,
+          s3Service.getVariantPresignedUrl(mediaId, targetWidth, targetFormat));
+    }
+
+    var ttl = Duration.ofMinutes(mediaProperties.getVariants().getPendingTtlMinutes());
+    if (variantRepository.reservePendingVariant(mediaId, targetWidth, targetFormat, ttl)) {
+      try {
+        eventPublisher.publishGenerateVariantsEvent(mediaId, List.of(targetWidth), List.of(targetFormat.getFormat()));
+      } catch (Exception e) {
+        // Compensate: drop the reservation so the next request can queue again
+        compensateVariantReservation(mediaId, targetWidth, targetFormat);
+        throw e;
+      }
+      variantQueuedCounter.add(1);
+      log.info("Queued variant render for mediaId={}, width={}, format={}", mediaId, targetWidth,
+          targetFormat.getFormat());
+    }
+    return new VariantDownload(targetWidth, targetFormat, null);
+  }
+
+  private void compensateVariantReservation(String mediaId, int width, OutputFormat format) {
+    try {
+      variantRepository.deleteVariant(mediaId, width, format);
+    } catch (Exception e) {
+      log.error("Failed to compensate variant reservation for mediaId={}: {}", mediaId, e.getMessage());
+    }
+  }
+
   public boolean isMediaProcessing(String mediaId) {
     return mediaRepository.getMedia(mediaId)
         .map(media -> media.getStatus() != MediaStatus.COMPLETE)
         .orElse(false);
   }
 
-  public Optional<Media> resizeMedia(String mediaId, Integer width, String outputFormat) {
+  /**
+   * Request a resize, optionally with a variant set rendered in the same pass.
+   * The variant set is validated before the status changes, so an invalid
+   * request leaves the media COMPLETE.
+   */
+  public Optional<Media> resizeMedia(String mediaId, Integer width, String outputFormat,
+      List<Integer> variantWidths, List<String> variantFormats) {
     return mediaRepository.getMedia(mediaId)
         .flatMap(media -> {
+          OutputFormat targetFormat = outputFormat != null
+              ? OutputFormat.fromString(outputFormat)
+              : (media.getOutputFormat() != null ? media.getOutputFormat() : OutputFormat.JPEG);
+          var variants = resolveVariantSet(variantWidths, variantFormats, targetFormat);
           var updated = mediaRepository.updateStatusConditionally(mediaId, MediaStatus.PENDING, MediaStatus.COMPLETE);
           if (!updated) {
             log.warn("Cannot resize mediaId: {}, not in COMPLETE status", mediaId);
             return Optional.empty();
           }
-          OutputFormat targetFormat = outputFormat != null
-              ? OutputFormat.fromString(outputFormat)
-              : (media.getOutputFormat() != null ? media.getOutputFormat() : OutputFormat.JPEG);
-          eventPublisher.publishResizeMediaEvent(mediaId, width, targetFormat.getFormat());
+          eventPublisher.publishResizeMediaEvent(mediaId, width, targetFormat.getFormat(), variants.widths(),
+              variants.formatNames());
           cacheInvalidationService.invalidateMedia(mediaId);
           log.info("Resize request submitted for mediaId: {} with outputFormat: {}", mediaId, targetFormat.getFormat());
           return Optional.of(media);
@@ -248,7 +400,8 @@ public class MediaApplicationService {
           String outputFormat = media.getOutputFormat() != null
               ? media.getOutputFormat().getFormat()
               : OutputFormat.JPEG.getFormat();
-          eventPublisher.publishProcessMediaEvent(mediaId, media.getWidth(), outputFormat);
+          eventPublisher.publishProcessMediaEvent(mediaId, media.getWidth(), outputFormat, media.getVariantWidths(),
+              formatNames(media.getVariantFormats()));
           cacheInvalidationService.invalidateMedia(mediaId);
           log.info("Retry initiated for mediaId={}, previousStatus={}", mediaId, media.getStatus());
           return Optional.of(media);
@@ -274,6 +427,7 @@ public class MediaApplicationService {
 
       int targetWidth = mediaProperties.resolveWidth(request.getWidth());
       OutputFormat targetFormat = OutputFormat.fromString(request.getOutputFormat());
+      var variants = resolveVariantSet(request.getVariantWidths(), request.getVariantFormats(), targetFormat);
       int expirationSeconds = mediaProperties.getUpload().getPresignedUrlExpirationSeconds();
 
       span.setAttribute("output.format", targetFormat.getFormat());
@@ -293,6 +447,8 @@ public class MediaApplicationService {
           .status(MediaStatus.PENDING_UPLOAD)
           .width(targetWidth)
           .outputFormat(targetFormat)
+          .variantWidths(variants.widths())
+          .variantFormats(variants.formats())
           .build(), ttl);
 
       var headers = new LinkedHashMap<String, String>();
@@ -384,7 +540,8 @@ public class MediaApplicationService {
             String outputFormat = media.getOutputFormat() != null
                 ? media.getOutputFormat().getFormat()
                 : OutputFormat.JPEG.getFormat();
-            eventPublisher.publishProcessMediaEvent(mediaId, media.getWidth(), outputFormat);
+            eventPublisher.publishProcessMediaEvent(mediaId, media.getWidth(), outputFormat, media.getVariantWidths(),
+                formatNames(media.getVariantFormats()));
             uploadSuccessCounter.add(1);
             span.setStatus(StatusCode.OK);
             log.info("Presigned upload completed: mediaId={}", mediaId);
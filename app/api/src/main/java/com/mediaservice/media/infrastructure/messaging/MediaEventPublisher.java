@@ -11,6 +11,8 @@ import org.springframework.stereotype.Service;
 import software.amazon.awssdk.services.sns.SnsClient;
 import software.amazon.awssdk.services.sns.model.PublishRequest;
 
+import java.util.List;
+
 @Slf4j
 @Service
 @RequiredArgsConstructor
@@ -22,9 +24,11 @@ public class MediaEventPublisher {
   @Value("${aws.sns.topic-arn}")
   private String topicArn;
 
-  public void publishProcessMediaEvent(String mediaId, Integer width, String outputFormat) {
-    publishEvent(MediaEvent.of(EventType.PROCESS_MEDIA, mediaId, width, outputFormat));
-    log.info("Published process media event for mediaId: {} with width: {}, outputFormat: {}", mediaId, width, outputFormat);
+  public void publishProcessMediaEvent(String mediaId, Integer width, String outputFormat,
+      List<Integer> variantWidths, List<String> variantFormats) {
+    publishEvent(MediaEvent.of(EventType.PROCESS_MEDIA, mediaId, width, outputFormat, variantWidths, variantFormats));
+    log.info("Published process media event for mediaId: {} with width: {}, outputFormat: {}, variants: {} x {}",
+        mediaId, width, outputFormat, variantWidths, variantFormats);
   }
 
   public void publishDeleteMediaEvent(String mediaId) {
@@ -32,9 +36,17 @@ public class MediaEventPublisher {
     log.info("Published delete media event for mediaId: {}", mediaId);
   }
 
-  public void publishResizeMediaEvent(String mediaId, Integer width, String outputFormat) {
-    publishEvent(MediaEvent.of(EventType.RESIZE_MEDIA, mediaId, width, outputFormat));
-    log.info("Published resize media event for mediaId: {} with width: {}, outputFormat: {}", mediaId, width, outputFormat);
+  public void publishResizeMediaEvent(String mediaId, Integer width, String outputFormat,
+      List<Integer> variantWidths, List<String> variantFormats) {
+    publishEvent(MediaEvent.of(EventType.RESIZE_MEDIA, mediaId, width, outputFormat, variantWidths, variantFormats));
+    log.info("Published resize media event for mediaId: {} with width: {}, outputFormat: {}, variants: {} x {}",
+        mediaId, width, outputFormat, variantWidths, variantFormats);
+  }
+
+  public void publishGenerateVariantsEvent(String mediaId, List<Integer> variantWidths, List<String> variantFormats) {
+    publishEvent(MediaEvent.of(EventType.GENERATE_VARIANTS, mediaId, null, null, variantWidths, variantFormats));
+    log.info("Published generate variants event for mediaId: {} with variants: {} x {}", mediaId, variantWidths,
+        variantFormats);
   }
 
   private void publishEvent(MediaEvent event) {
@@ -67,6 +67,14 @@ public class MediaDynamoDbRepository extends AbstractDynamoDbRepository<Media> {
     if (outputFormat != null) {
       builder.outputFormat(OutputFormat.fromString(outputFormat));
     }
+    var variantWidths = item.get(StorageConstants.DYNAMO_ATTR_VARIANT_WIDTHS);
+    if (variantWidths != null && variantWidths.hasNs()) {
+      builder.variantWidths(variantWidths.ns().stream().map(Integer::valueOf).sorted().toList());
+    }
+    var variantFormats = item.get(StorageConstants.DYNAMO_ATTR_VARIANT_FORMATS);
+    if (variantFormats != null && variantFormats.hasSs()) {
+      builder.variantFormats(variantFormats.ss().stream().map(OutputFormat::fromString).sorted().toList());
+    }
     return builder.build();
   }
 
@@ -88,6 +96,17 @@ public class MediaDynamoDbRepository extends AbstractDynamoDbRepository<Media> {
     if (media.getDeletedAt() != null) {
       item.put("deletedAt", s(media.getDeletedAt().toString()));
     }
+    // Requested variant set, published again on presigned completion and retry
+    if (media.getVariantWidths() != null && !media.getVariantWidths().isEmpty()) {
+      item.put(StorageConstants.DYNAMO_ATTR_VARIANT_WIDTHS, AttributeValue.builder()
+          .ns(media.getVariantWidths().stream().map(String::valueOf).toList())
+          .build());
+    }
+    if (media.getVariantFormats() != null && !media.getVariantFormats().isEmpty()) {
+      item.put(StorageConstants.DYNAMO_ATTR_VARIANT_FORMATS, AttributeValue.builder()
+          .ss(media.getVariantFormats().stream().map(OutputFormat::getFormat).toList())
+          .build());
+    }
     return item;
   }
 
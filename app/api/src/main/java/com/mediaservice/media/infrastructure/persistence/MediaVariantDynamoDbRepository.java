@@ -0,0 +1,127 @@
+package com.mediaservice.media.infrastructure.persistence;
+
+import com.mediaservice.common.constants.StorageConstants;
+import com.mediaservice.common.model.MediaStatus;
+import com.mediaservice.common.model.MediaVariant;
+import com.mediaservice.common.model.OutputFormat;
+import com.mediaservice.shared.persistence.AbstractDynamoDbRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Repository;
+import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * DynamoDB repository for the variant catalog.
+ *
+ * <p>
+ * Key schema (same partition as the media record):
+ * <ul>
+ * <li>PK: MEDIA#{mediaId}</li>
+ * <li>SK: VARIANT#{width}#{format}</li>
+ * </ul>
+ *
+ * <p>
+ * The API only creates PENDING entries; the Lambda marks them COMPLETE after
+ * the rendition is written to S3.
+ */
+@Slf4j
+@Repository
+public class MediaVariantDynamoDbRepository extends AbstractDynamoDbRepository<MediaVariant> {
+
+  public MediaVariantDynamoDbRepository(
+      DynamoDbClient dynamoDbClient,
+      @Value("${aws.dynamodb.table-name}") String tableName) {
+    super(dynamoDbClient, tableName);
+  }
+
+  // ==================== Entity Mapping ====================
+
+  @Override
+  public MediaVariant mapFromItem(Map<String, AttributeValue> item) {
+    var mediaId = getString(item, "PK").replace(StorageConstants.DYNAMO_PK_PREFIX, "");
+    var builder = MediaVariant.builder()
+        .mediaId(mediaId)
+        .width(getInt(item, "width"))
+        .status(MediaStatus.valueOf(getString(item, "status")))
+        .s3Key(getString(item, "s3Key"))
+        .size(getLong(item, "size"))
+        .updatedAt(getInstant(item, "updatedAt"));
+    var outputFormat = getString(item, "outputFormat");
+    if (outputFormat != null) {
+      builder.outputFormat(OutputFormat.fromString(outputFormat));
+    }
+    return builder.build();
+  }
+
+  @Override
+  public Map<String, AttributeValue> mapToItem(MediaVariant variant) {
+    var item = new HashMap<String, AttributeValue>();
+    item.put("PK", s(StorageConstants.DYNAMO_PK_PREFIX + variant.getMediaId()));
+    item.put("SK", s(StorageConstants.buildVariantSortKey(variant.getWidth(), variant.getOutputFormat().getFormat())));
+    item.put("width", n(String.valueOf(variant.getWidth())));
+    item.put("outputFormat", s(variant.getOutputFormat().getFormat()));
+    item.put("status", s(variant.getStatus() != null ? variant.getStatus().name() : MediaStatus.PENDING.name()));
+    item.put("updatedAt", s(Instant.now().toString()));
+    if (variant.getS3Key() != null) {
+      item.put("s3Key", s(variant.getS3Key()));
+    }
+    if (variant.getSize() != null) {
+      item.put("size", n(String.valueOf(variant.getSize())));
+    }
+    return item;
+  }
+
+  // ==================== Variant-Specific Operations ====================
+
+  /**
+   * Get a catalog entry by width and format.
+   */
+  public Optional<MediaVariant> getVariant(String mediaId, int width, OutputFormat format) {
+    return findByKey(StorageConstants.DYNAMO_PK_PREFIX + mediaId,
+        StorageConstants.buildVariantSortKey(width, format.getFormat()));
+  }
+
+  /**
+   * Create a PENDING entry unless one is already queued or complete, so
+   * concurrent requests for the same missing variant queue a single render.
+   * A PENDING entry past {@code ttl} counts as missing even before DynamoDB TTL
+   * removes it, which lets a lost render be queued again.
+   *
+   * @return true if this call created the entry and should queue the render
+   */
+  public boolean reservePendingVariant(String mediaId, int width, OutputFormat format, Duration ttl) {
+    var now = Instant.now();
+    boolean reserved = updateConditionally(
+        StorageConstants.DYNAMO_PK_PREFIX + mediaId,
+        StorageConstants.buildVariantSortKey(width, format.getFormat()),
+        "SET #status = :pending, width = :width, outputFormat = :format, updatedAt = :updatedAt, "
+            + "expiresAt = :expiresAt",
+        "attribute_not_exists(PK) OR (#status = :pending AND expiresAt < :now)",
+        Map.of("#status", "status"),
+        Map.of(
+            ":pending", s(MediaStatus.PENDING.name()),
+            ":width", n(String.valueOf(width)),
+            ":format", s(format.getFormat()),
+            ":updatedAt", s(now.toString()),
+            ":expiresAt", n(String.valueOf(now.plus(ttl).getEpochSecond())),
+            ":now", n(String.valueOf(now.getEpochSecond()))));
+    if (reserved) {
+      log.info("Reserved pending variant width={}, format={} for mediaId: {}", width, format.getFormat(), mediaId);
+    }
+    return reserved;
+  }
+
+  /**
+   * Delete a catalog entry.
+   */
+  public void deleteVariant(String mediaId, int width, OutputFormat format) {
+    delete(StorageConstants.DYNAMO_PK_PREFIX + mediaId, StorageConstants.buildVariantSortKey(width, format.getFormat()));
+  }
+}
@@ -25,6 +25,7 @@ import java.time.Duration;
  * {mediaId}/
  *   original.{ext}   - Original uploaded file
  *   processed.{ext}  - Processed/resized output
+ *   resize_{width}.{ext} - Variant catalog renditions
  * </pre>
  *
  * @see StorageConstants
@@ -92,6 +93,22 @@ public class S3StorageService extends AbstractS3StorageRepository {
     return url;
   }
 
+  /**
+   * Get a presigned download URL for a variant catalog rendition.
+   *
+   * @param mediaId      The media ID
+   * @param width        The variant width
+   * @param outputFormat The variant format (determines file extension)
+   * @return The presigned download URL
+   */
+  public String getVariantPresignedUrl(String mediaId, int width, OutputFormat outputFormat) {
+    String key = StorageConstants.buildVariantKey(mediaId, width, outputFormat.getExtension());
+    Duration expiration = Duration.ofSeconds(mediaProperties.getDownload().getPresignedUrlExpirationSeconds());
+    String url = generatePresignedDownloadUrl(key, expiration);
+    log.info("Generated presigned URL for: {}", key);
+    return url;
+  }
+
   /**
    * Generate a presigned URL for uploading a media file directly to S3.
    *
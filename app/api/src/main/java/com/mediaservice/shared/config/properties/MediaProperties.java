@@ -41,6 +41,14 @@ public class MediaProperties {
 
   private Download download = new Download();
 
+  @Data
+  public static class Variants {
+    private int maxWidths = 6; // widths per variant set
+    private int pendingTtlMinutes = 15; // a queued render not completed by then can be queued again
+  }
+
+  private Variants variants = new Variants();
+
   public boolean isWidthValid(Integer width) {
     return width != null && width >= this.width.min && width <= this.width.max;
   }
@@ -11,6 +11,7 @@ import com.mediaservice.shared.http.filter.SecurityHeadersFilter;
 import com.mediaservice.media.application.mapper.MediaMapper;
 import com.mediaservice.common.model.Media;
 import com.mediaservice.common.model.MediaStatus;
+import com.mediaservice.common.model.OutputFormat;
 import com.mediaservice.analytics.application.AnalyticsService;
 import com.mediaservice.media.infrastructure.persistence.MediaDynamoDbRepository;
 import com.mediaservice.media.application.MediaApplicationService;
@@ -90,7 +91,7 @@ class MediaControllerTest {
       var response = MediaResponse.builder().mediaId("media-123").build();
 
       when(mediaProperties.getMaxFileSize()).thenReturn(100L * 1024 * 1024);
-      when(mediaService.uploadMedia(any(), any(), any())).thenReturn(response);
+      when(mediaService.uploadMedia(any(), any(), any(), any(), any())).thenReturn(response);
 
       mockMvc.perform(multipart("/v1/media/upload").file(file))
           .andExpect(status().isAccepted())
@@ -221,6 +222,39 @@ class MediaControllerTest {
           .andExpect(status().isGone())
           .andExpect(jsonPath("$.message").value("Media has been deleted"));
     }
+
+    @Test
+    @DisplayName("should redirect to a catalog variant")
+    void shouldRedirectToVariant() throws Exception {
+      var media = createMedia();
+      when(mediaService.getMedia("media-123")).thenReturn(Optional.of(media));
+      when(mediaService.getVariantDownload(media, 300, "webp")).thenReturn(
+          new MediaApplicationService.VariantDownload(300, OutputFormat.WEBP, "https://s3.example.com/variant"));
+
+      mockMvc.perform(get("/v1/media/{mediaId}/download", "media-123").param("width", "300").param("format", "webp"))
+          .andExpect(status().isFound())
+          .andExpect(header().string("Location", "https://s3.example.com/variant"));
+      verify(analyticsService).recordDownload("media-123", OutputFormat.WEBP, 300);
+    }
+
+    @Test
+    @DisplayName("should return 202 while a variant renders")
+    void shouldReturn202WhileVariantRenders() throws Exception {
+      var media = createMedia();
+      var messageResponse = MediaResponse.builder()
+          .message("Variant rendering in progress.").build();
+      when(mediaService.getMedia("media-123")).thenReturn(Optional.of(media));
+      when(mediaService.getVariantDownload(media, 300, "webp")).thenReturn(
+          new MediaApplicationService.VariantDownload(300, OutputFormat.WEBP, null));
+      when(mediaMapper.toMessageResponse(any())).thenReturn(messageResponse);
+
+      mockMvc.perform(get("/v1/media/{mediaId}/download", "media-123").param("width", "300").param("format", "webp"))
+          .andExpect(status().isAccepted())
+          .andExpect(header().exists("Retry-After"))
+          .andExpect(header().string("Location", endsWith("/v1/media/media-123/download?width=300&format=webp")))
+          .andExpect(jsonPath("$.message").value("Variant rendering in progress."));
+      verify(mediaService, never()).isMediaProcessing(any());
+    }
   }
 
   @Nested
@@ -234,7 +268,7 @@ class MediaControllerTest {
       var response = MediaResponse.builder().mediaId("media-123").build();
 
       when(mediaService.mediaExists("media-123")).thenReturn(true);
-      when(mediaService.resizeMedia(eq("media-123"), eq(800), any())).thenReturn(Optional.of(media));
+      when(mediaService.resizeMedia(eq("media-123"), eq(800), any(), any(), any())).thenReturn(Optional.of(media));
       when(mediaMapper.toIdResponse(media)).thenReturn(response);
 
       mockMvc.perform(put("/v1/media/{mediaId}/resize", "media-123")
@@ -248,7 +282,7 @@ class MediaControllerTest {
     @DisplayName("should return 409 when resize not allowed")
     void shouldReturn409WhenNotAllowed() throws Exception {
       when(mediaService.mediaExists("media-123")).thenReturn(true);
-      when(mediaService.resizeMedia(eq("media-123"), eq(800), any())).thenReturn(Optional.empty());
+      when(mediaService.resizeMedia(eq("media-123"), eq(800), any(), any(), any())).thenReturn(Optional.empty());
 
       mockMvc.perform(put("/v1/media/{mediaId}/resize", "media-123")
           .contentType(MediaType.APPLICATION_JSON)
@@ -3,11 +3,13 @@ package com.mediaservice.media.application;
 import com.mediaservice.media.domain.service.ImageValidationService;
 import com.mediaservice.media.infrastructure.messaging.MediaEventPublisher;
 import com.mediaservice.media.infrastructure.persistence.MediaDynamoDbRepository;
+import com.mediaservice.media.infrastructure.persistence.MediaVariantDynamoDbRepository;
 import com.mediaservice.media.infrastructure.storage.S3StorageService;
 import com.mediaservice.shared.config.properties.MediaProperties;
 import com.mediaservice.shared.cache.CacheInvalidationService;
 import com.mediaservice.media.api.dto.InitUploadRequest;
 import com.mediaservice.common.model.Media;
+import com.mediaservice.common.model.MediaVariant;
 import com.mediaservice.common.model.MediaStatus;
 import com.mediaservice.common.model.OutputFormat;
 import com.mediaservice.shared.cache.MultiLevelCacheOrchestrator;
@@ -34,9 +36,11 @@ import java.util.Optional;
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.assertThatThrownBy;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
 import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.ArgumentMatchers.argThat;
 import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
 import static org.mockito.Mockito.*;
 
 @ExtendWith(MockitoExtension.class)
@@ -45,6 +49,8 @@ class MediaApplicationServiceTest {
   @Mock
   private MediaDynamoDbRepository dynamoDbService;
   @Mock
+  private MediaVariantDynamoDbRepository variantRepository;
+  @Mock
   private S3StorageService s3Service;
   @Mock
   private MediaEventPublisher snsService;
@@ -94,7 +100,7 @@ class MediaApplicationServiceTest {
         .thenReturn(mock(io.opentelemetry.api.metrics.LongCounterBuilder.class));
     lenient().when(meter.counterBuilder(anyString()).setDescription(anyString()).build()).thenReturn(counter);
 
-    mediaService = new MediaApplicationService(dynamoDbService, s3Service, snsService, mediaProperties,
+    mediaService = new MediaApplicationService(dynamoDbService, variantRepository, s3Service, snsService, mediaProperties,
         imageValidationService,
         cacheInvalidationService, cacheOrchestrator, tracer, meter);
   }
@@ -106,18 +112,18 @@ class MediaApplicationServiceTest {
     @DisplayName("should upload valid image and return media ID")
     void shouldUploadValidImage() throws IOException {
       var file = new MockMultipartFile("file", "test.jpg", "image/jpeg", "test-content".getBytes());
-      var response = mediaService.uploadMedia(file, 500, "jpeg");
+      var response = mediaService.uploadMedia(file, 500, "jpeg", null, null);
       assertThat(response.getMediaId()).isNotBlank();
       verify(s3Service).uploadMedia(anyString(), eq("test.jpg"), eq(file));
       verify(dynamoDbService).createMedia(any(Media.class));
-      verify(snsService).publishProcessMediaEvent(anyString(), eq(500), eq("jpeg"));
+      verify(snsService).publishProcessMediaEvent(anyString(), eq(500), eq("jpeg"), isNull(), isNull());
     }
 
     @Test
     @DisplayName("should reject non-image content type")
     void shouldRejectNonImageContentType() {
       var file = new MockMultipartFile("file", "test.pdf", "application/pdf", "test".getBytes());
-      assertThatThrownBy(() -> mediaService.uploadMedia(file, null, null))
+      assertThatThrownBy(() -> mediaService.uploadMedia(file, null, null, null, null))
           .isInstanceOf(IllegalArgumentException.class)
           .hasMessage("Invalid file type. Only images are supported.");
     }
@@ -126,7 +132,7 @@ class MediaApplicationServiceTest {
     @DisplayName("should reject null content type")
     void shouldRejectNullContentType() {
       var file = new MockMultipartFile("file", "test.jpg", null, "test".getBytes());
-      assertThatThrownBy(() -> mediaService.uploadMedia(file, null, null))
+      assertThatThrownBy(() -> mediaService.uploadMedia(file, null, null, null, null))
           .isInstanceOf(IllegalArgumentException.class)
           .hasMessage("Invalid file type. Only images are supported.");
     }
@@ -135,7 +141,7 @@ class MediaApplicationServiceTest {
     @DisplayName("should use default filename when original is empty")
     void shouldUseDefaultFilenameWhenEmpty() throws IOException {
       var file = new MockMultipartFile("file", "", "image/jpeg", "test".getBytes());
-      mediaService.uploadMedia(file, null, null);
+      mediaService.uploadMedia(file, null, null, null, null);
       verify(s3Service).uploadMedia(anyString(), eq("image.jpg"), eq(file));
     }
 
@@ -143,8 +149,45 @@ class MediaApplicationServiceTest {
     @DisplayName("should use default width when not specified")
     void shouldUseDefaultWidth() throws IOException {
       var file = new MockMultipartFile("file", "test.jpg", "image/jpeg", "test".getBytes());
-      mediaService.uploadMedia(file, null, null);
-      verify(snsService).publishProcessMediaEvent(anyString(), eq(500), eq("jpeg"));
+      mediaService.uploadMedia(file, null, null, null, null);
+      verify(snsService).publishProcessMediaEvent(anyString(), eq(500), eq("jpeg"), isNull(), isNull());
+    }
+
+    @Test
+    @DisplayName("should store and publish a normalized variant set")
+    void shouldPublishVariantSet() throws IOException {
+      var file = new MockMultipartFile("file", "test.jpg", "image/jpeg", "test".getBytes());
+      mediaService.uploadMedia(file, 500, "jpeg", List.of(1024, 320, 640, 320), List.of("webp", "JPEG"));
+      verify(dynamoDbService).createMedia(argThat((Media media) ->
+          media.getVariantWidths().equals(List.of(320, 640, 1024)) &&
+          media.getVariantFormats().equals(List.of(OutputFormat.JPEG, OutputFormat.WEBP))));
+      verify(snsService).publishProcessMediaEvent(anyString(), eq(500), eq("jpeg"), eq(List.of(320, 640, 1024)),
+          eq(List.of("jpeg", "webp")));
+    }
+
+    @Test
+    @DisplayName("should default variant formats to the output format")
+    void shouldDefaultVariantFormats() throws IOException {
+      var file = new MockMultipartFile("file", "test.jpg", "image/jpeg", "test".getBytes());
+      mediaService.uploadMedia(file, 500, "webp", List.of(640), null);
+      verify(snsService).publishProcessMediaEvent(anyString(), eq(500), eq("webp"), eq(List.of(640)),
+          eq(List.of("webp")));
+    }
+
+    @Test
+    @DisplayName("should reject invalid variant sets before uploading")
+    void shouldRejectInvalidVariantSets() {
+      var file = new MockMultipartFile("file", "test.jpg", "image/jpeg", "test".getBytes());
+      assertThatThrownBy(() -> mediaService.uploadMedia(file, 500, "jpeg", List.of(50), null))
+          .isInstanceOf(IllegalArgumentException.class);
+      assertThatThrownBy(() -> mediaService.uploadMedia(file, 500, "jpeg", List.of(320), List.of("gif")))
+          .isInstanceOf(IllegalArgumentException.class);
+      assertThatThrownBy(() -> mediaService.uploadMedia(file, 500, "jpeg", null, List.of("webp")))
+          .isInstanceOf(IllegalArgumentException.class);
+      assertThatThrownBy(() -> mediaService.uploadMedia(file, 500, "jpeg",
+          List.of(100, 200, 300, 400, 500, 600, 700), null))
+          .isInstanceOf(IllegalArgumentException.class);
+      verify(s3Service, never()).uploadMedia(anyString(), anyString(), any());
     }
   }
 
@@ -206,9 +249,9 @@ class MediaApplicationServiceTest {
       when(dynamoDbService.getMedia("media-123")).thenReturn(Optional.of(media));
       when(dynamoDbService.updateStatusConditionally("media-123", MediaStatus.PENDING, MediaStatus.COMPLETE))
           .thenReturn(true);
-      var result = mediaService.resizeMedia("media-123", 800, "jpeg");
+      var result = mediaService.resizeMedia("media-123", 800, "jpeg", null, null);
       assertThat(result).isPresent();
-      verify(snsService).publishResizeMediaEvent("media-123", 800, "jpeg");
+      verify(snsService).publishResizeMediaEvent("media-123", 800, "jpeg", null, null);
     }
 
     @Test
@@ -218,9 +261,30 @@ class MediaApplicationServiceTest {
       when(dynamoDbService.getMedia("media-123")).thenReturn(Optional.of(media));
       when(dynamoDbService.updateStatusConditionally("media-123", MediaStatus.PENDING, MediaStatus.COMPLETE))
           .thenReturn(false);
-      var result = mediaService.resizeMedia("media-123", 800, null);
+      var result = mediaService.resizeMedia("media-123", 800, null, null, null);
       assertThat(result).isEmpty();
-      verify(snsService, never()).publishResizeMediaEvent(anyString(), any(), any());
+      verify(snsService, never()).publishResizeMediaEvent(anyString(), any(), any(), any(), any());
+    }
+
+    @Test
+    @DisplayName("should publish the variant set with the resize")
+    void shouldPublishVariantSet() {
+      var media = createMedia(MediaStatus.COMPLETE);
+      when(dynamoDbService.getMedia("media-123")).thenReturn(Optional.of(media));
+      when(dynamoDbService.updateStatusConditionally("media-123", MediaStatus.PENDING, MediaStatus.COMPLETE))
+          .thenReturn(true);
+      mediaService.resizeMedia("media-123", 800, null, List.of(640, 320), List.of("webp"));
+      verify(snsService).publishResizeMediaEvent("media-123", 800, "jpeg", List.of(320, 640), List.of("webp"));
+    }
+
+    @Test
+    @DisplayName("should leave status unchanged for an invalid variant set")
+    void shouldNotChangeStatusForInvalidVariantSet() {
+      var media = createMedia(MediaStatus.COMPLETE);
+      when(dynamoDbService.getMedia("media-123")).thenReturn(Optional.of(media));
+      assertThatThrownBy(() -> mediaService.resizeMedia("media-123", 800, null, List.of(4096), null))
+          .isInstanceOf(IllegalArgumentException.class);
+      verify(dynamoDbService, never()).updateStatusConditionally(anyString(), any(), any());
     }
   }
 
@@ -353,7 +417,7 @@ class MediaApplicationServiceTest {
       var result = mediaService.completePresignedUpload("media-123");
 
       assertThat(result).isPresent();
-      verify(snsService).publishProcessMediaEvent("media-123", 500, "jpeg");
+      verify(snsService).publishProcessMediaEvent("media-123", 500, "jpeg", null, null);
     }
 
     @Test
@@ -365,7 +429,7 @@ class MediaApplicationServiceTest {
 
       assertThat(result).isEmpty();
       verify(s3Service, never()).objectExists(anyString(), anyString());
-      verify(snsService, never()).publishProcessMediaEvent(anyString(), any(), any());
+      verify(snsService, never()).publishProcessMediaEvent(anyString(), any(), any(), any(), any());
     }
 
     @Test
@@ -391,7 +455,7 @@ class MediaApplicationServiceTest {
 
       assertThat(result).isEmpty();
       verify(dynamoDbService, never()).updateStatusConditionally(anyString(), any(), any());
-      verify(snsService, never()).publishProcessMediaEvent(anyString(), any(), any());
+      verify(snsService, never()).publishProcessMediaEvent(anyString(), any(), any(), any(), any());
     }
 
     @Test
@@ -407,7 +471,85 @@ class MediaApplicationServiceTest {
       var result = mediaService.completePresignedUpload("media-123");
 
       assertThat(result).isEmpty();
-      verify(snsService, never()).publishProcessMediaEvent(anyString(), any(), any());
+      verify(snsService, never()).publishProcessMediaEvent(anyString(), any(), any(), any(), any());
+    }
+  }
+
+  @Nested
+  @DisplayName("getVariantDownload")
+  class GetVariantDownload {
+    @Test
+    @DisplayName("should serve a completed catalog variant without queueing")
+    void shouldServeCatalogVariant() {
+      var media = createMedia(MediaStatus.COMPLETE);
+      var variant = MediaVariant.builder().mediaId("media-123").width(300).outputFormat(OutputFormat.WEBP)
+          .status(MediaStatus.COMPLETE).build();
+      when(variantRepository.getVariant("media-123", 300, OutputFormat.WEBP)).thenReturn(Optional.of(variant));
+      when(s3Service.getVariantPresignedUrl("media-123", 300, OutputFormat.WEBP)).thenReturn("https://variant");
+
+      var download = mediaService.getVariantDownload(media, 300, "webp");
+
+      assertThat(download.ready()).isTrue();
+      assertThat(download.url()).isEqualTo("https://variant");
+      verify(variantRepository, never()).reservePendingVariant(anyString(), anyInt(), any(), any());
+      verify(snsService, never()).publishGenerateVariantsEvent(anyString(), any(), any());
+    }
+
+    @Test
+    @DisplayName("should queue a missing variant once without changing media status")
+    void shouldQueueMissingVariant() {
+      var media = createMedia(MediaStatus.COMPLETE);
+      when(variantRepository.getVariant("media-123", 300, OutputFormat.PNG)).thenReturn(Optional.empty());
+      when(variantRepository.reservePendingVariant(eq("media-123"), eq(300), eq(OutputFormat.PNG), any()))
+          .thenReturn(true);
+
+      var download = mediaService.getVariantDownload(media, 300, "png");
+
+      assertThat(download.ready()).isFalse();
+      verify(snsService).publishGenerateVariantsEvent("media-123", List.of(300), List.of("png"));
+      verify(dynamoDbService, never()).updateStatusConditionally(anyString(), any(), any());
+      verify(cacheInvalidationService, never()).invalidateMedia(anyString());
+    }
+
+    @Test
+    @DisplayName("should not queue again while a render is pending")
+    void shouldNotQueuePendingVariant() {
+      var media = createMedia(MediaStatus.COMPLETE);
+      var pending = MediaVariant.builder().mediaId("media-123").width(300).outputFormat(OutputFormat.PNG)
+          .status(MediaStatus.PENDING).build();
+      when(variantRepository.getVariant("media-123", 300, OutputFormat.PNG)).thenReturn(Optional.of(pending));
+      when(variantRepository.reservePendingVariant(eq("media-123"), eq(300), eq(OutputFormat.PNG), any()))
+          .thenReturn(false);
+
+      var download = mediaService.getVariantDownload(media, 300, "png");
+
+      assertThat(download.ready()).isFalse();
+      verify(snsService, never()).publishGenerateVariantsEvent(anyString(), any(), any());
+    }
+
+    @Test
+    @DisplayName("should release the reservation when publishing fails")
+    void shouldCompensateOnPublishFailure() {
+      var media = createMedia(MediaStatus.COMPLETE);
+      when(variantRepository.getVariant("media-123", 300, OutputFormat.PNG)).thenReturn(Optional.empty());
+      when(variantRepository.reservePendingVariant(eq("media-123"), eq(300), eq(OutputFormat.PNG), any()))
+          .thenReturn(true);
+      doThrow(new RuntimeException("SNS down")).when(snsService)
+          .publishGenerateVariantsEvent(anyString(), any(), any());
+
+      assertThatThrownBy(() -> mediaService.getVariantDownload(media, 300, "png"))
+          .isInstanceOf(RuntimeException.class);
+      verify(variantRepository).deleteVariant("media-123", 300, OutputFormat.PNG);
+    }
+
+    @Test
+    @DisplayName("should reject width outside allowed range")
+    void shouldRejectInvalidWidth() {
+      var media = createMedia(MediaStatus.COMPLETE);
+
+      assertThatThrownBy(() -> mediaService.getVariantDownload(media, 5000, "png"))
+          .isInstanceOf(IllegalArgumentException.class);
+      verifyNoInteractions(variantRepository);
     }
   }
 
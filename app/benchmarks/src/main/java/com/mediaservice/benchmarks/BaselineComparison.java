@@ -0,0 +1,126 @@
+package com.mediaservice.benchmarks;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.StringJoiner;
+import java.util.TreeMap;
+
+/**
+ * Compares a JMH JSON result against a committed baseline of the same
+ * benchmark and exits non-zero if any configuration got slower, or allocates
+ * more per operation, by more than the tolerance. Both figures are "lower is
+ * better", as {@link ImageProcessingBenchmark} reports average time.
+ *
+ * <pre>
+ * java -cp target/media-service-benchmarks.jar com.mediaservice.benchmarks.BaselineComparison \
+ *     [result.json] [baseline.json] [tolerance]
+ * </pre>
+ *
+ * Defaults to {@code target/jmh/image-processing.json},
+ * {@code baseline/image-processing.json} and 0.10. Configurations missing from
+ * either file are listed but never fail the comparison.
+ */
+public final class BaselineComparison {
+  private static final Path DEFAULT_BASELINE = Path.of("baseline", "image-processing.json");
+  private static final double DEFAULT_TOLERANCE = 0.10;
+  private static final String ALLOCATION = "gc.alloc.rate.norm";
+
+  private BaselineComparison() {
+  }
+
+  record Measurement(double score, double allocatedBytes) {
+  }
+
+  public static void main(String[] args) throws IOException {
+    var resultFile = args.length > 0 ? Path.of(args[0]) : ImageProcessingBenchmark.DEFAULT_RESULT;
+    var baselineFile = args.length > 1 ? Path.of(args[1]) : DEFAULT_BASELINE;
+    double tolerance = args.length > 2 ? Double.parseDouble(args[2]) : DEFAULT_TOLERANCE;
+
+    if (!Files.exists(baselineFile)) {
+      System.err.printf("No baseline at %s; copy %s there to record one%n", baselineFile, resultFile);
+      System.exit(2);
+    }
+    var current = read(resultFile);
+    var baseline = read(baselineFile);
+
+    int regressions = 0;
+    System.out.println("benchmark,baselineScore,score,scoreChange,baselineBytesPerOp,bytesPerOp,allocChange,status");
+    for (var entry : current.entrySet()) {
+      var before = baseline.get(entry.getKey());
+      var after = entry.getValue();
+      if (before == null) {
+        System.out.printf("%s,,%.3f,,,%.0f,,new%n", entry.getKey(), after.score(), after.allocatedBytes());
+        continue;
+      }
+      double scoreChange = change(before.score(), after.score());
+      double allocChange = change(before.allocatedBytes(), after.allocatedBytes());
+      boolean regressed = scoreChange > tolerance || allocChange > tolerance;
+      if (regressed) {
+        regressions++;
+      }
+      System.out.printf("%s,%.3f,%.3f,%+.1f%%,%.0f,%.0f,%+.1f%%,%s%n", entry.getKey(), before.score(),
+          after.score(), scoreChange * 100, before.allocatedBytes(), after.allocatedBytes(), allocChange * 100,
+          regressed ? "REGRESSION" : "ok");
+    }
+    for (var key : baseline.keySet()) {
+      if (!current.containsKey(key)) {
+        System.out.printf("%s,,,,,,,missing%n", key);
+      }
+    }
+
+    if (regressions > 0) {
+      System.err.printf("%d configuration(s) regressed by more than %.0f%%%n", regressions, tolerance * 100);
+      System.exit(1);
+    }
+  }
+
+  private static double change(double before, double after) {
+    if (Double.isNaN(before) || Double.isNaN(after) || before == 0) {
+      return 0;
+    }
+    return (after - before) / before;
+  }
+
+  /**
+   * Measurements keyed by benchmark method plus its parameters, e.g.
+   * {@code processImage[inputFormat=jpeg;outputFormat=WEBP;...]}, so keys stay CSV-safe.
+   */
+  static Map<String, Measurement> read(Path file) throws IOException {
+    var results = new LinkedHashMap<String, Measurement>();
+    for (var run : new ObjectMapper().readTree(file.toFile())) {
+      var primary = run.get("primaryMetric");
+      results.put(key(run), new Measurement(primary.get("score").asDouble(),
+          allocation(run.get("secondaryMetrics"))));
+    }
+    return results;
+  }
+
+  private static String key(JsonNode run) {
+    var benchmark = run.get("benchmark").asText();
+    var name = benchmark.substring(benchmark.lastIndexOf('.') + 1);
+    var params = new TreeMap<String, String>();
+    var paramsNode = run.get("params");
+    if (paramsNode != null) {
+      paramsNode.fields().forEachRemaining(param -> params.put(param.getKey(), param.getValue().asText()));
+    }
+    var joined = new StringJoiner(";", "[", "]");
+    params.forEach((param, value) -> joined.add(param + "=" + value));
+    return name + joined;
+  }
+
+  private static double allocation(JsonNode secondaryMetrics) {
+    if (secondaryMetrics == null) {
+      return Double.NaN;
+    }
+    // Older JMH versions prefix profiler metrics with a middle dot
+    var metric = secondaryMetrics.has(ALLOCATION) ? secondaryMetrics.get(ALLOCATION)
+        : secondaryMetrics.get("·" + ALLOCATION);
+    return metric != null ? metric.get("score").asDouble() : Double.NaN;
+  }
+}
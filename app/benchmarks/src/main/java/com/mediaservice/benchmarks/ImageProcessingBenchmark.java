@@ -0,0 +1,119 @@
+package com.mediaservice.benchmarks;
+
+import com.mediaservice.common.model.OutputFormat;
+import com.mediaservice.lambda.service.DiscardingUploadOutputStream;
+import com.mediaservice.lambda.service.ImageProcessingService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * End-to-end latency of {@link ImageProcessingService#processImage} and
+ * {@link ImageProcessingService#resizeImage}: decode, resize, watermark and
+ * encode of an encoded original, as the Lambda runs them. The encoded output
+ * is only counted, so upload costs stay out of the figures.
+ *
+ * <p>
+ * Run through {@link #main} to get {@code -prof gc} allocation figures and a
+ * JSON result that {@link BaselineComparison} checks against the committed
+ * baseline. Plain {@code java -jar} runs work too, but then the profiler and
+ * result file must be passed by hand.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = { "--add-modules=jdk.incubator.vector", "-Xmx8g" })
+public class ImageProcessingBenchmark {
+  static final Path DEFAULT_RESULT = Path.of("target", "jmh", "image-processing.json");
+
+  @Param({ "1", "4", "12", "24", "50" })
+  public double sourceMegapixels;
+
+  @Param({ "jpeg", "png", "webp", "gif", "bmp" })
+  public String inputFormat;
+
+  @Param({ "JPEG", "PNG", "WEBP" })
+  public OutputFormat outputFormat;
+
+  @Param({ "500", "1024" })
+  public int targetWidth;
+
+  private ImageProcessingService service;
+  private byte[] original;
+
+  @Setup
+  public void setUp() {
+    // Constructed first: its static init registers the WebP plugin used to encode the original
+    service = new ImageProcessingService();
+    var size = SyntheticImages.dimensions(sourceMegapixels);
+    original = encode(SyntheticImages.photoLike(size[0], size[1], false), inputFormat);
+  }
+
+  @Benchmark
+  public long processImage() throws IOException {
+    return service.processImage(new ByteArrayInputStream(original), targetWidth, outputFormat,
+        output -> new DiscardingUploadOutputStream());
+  }
+
+  @Benchmark
+  public long resizeImage() throws IOException {
+    return service.resizeImage(new ByteArrayInputStream(original), targetWidth, outputFormat,
+        output -> new DiscardingUploadOutputStream());
+  }
+
+  private static byte[] encode(BufferedImage image, String format) {
+    try {
+      var out = new ByteArrayOutputStream();
+      if (!ImageIO.write(image, format, out)) {
+        throw new IllegalStateException("No ImageIO writer for " + format);
+      }
+      return out.toByteArray();
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  /**
+   * Run this benchmark with the GC profiler and write JSON results to
+   * {@code target/jmh/image-processing.json}. Any JMH command line options
+   * (e.g. {@code -p sourceMegapixels=12 -p inputFormat=jpeg}) are applied on top.
+   */
+  public static void main(String[] args) throws RunnerException, CommandLineOptionException, IOException {
+    Files.createDirectories(DEFAULT_RESULT.getParent());
+    var options = new OptionsBuilder()
+        .parent(new CommandLineOptions(args))
+        .include(ImageProcessingBenchmark.class.getSimpleName())
+        .addProfiler(GCProfiler.class)
+        .resultFormat(ResultFormatType.JSON)
+        .result(DEFAULT_RESULT.toString())
+        .build();
+    new Runner(options).run();
+  }
+}
@@ -0,0 +1,60 @@
+package com.mediaservice.benchmarks;
+
+import com.mediaservice.lambda.image.BandExecutor;
+import com.mediaservice.lambda.image.Resampler;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.awt.image.BufferedImage;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Single-image resize latency against band parallelism ({@code IMAGE_PARALLELISM}).
+ * Run on a machine with at least as many cores as the largest parallelism.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = { "--add-modules=jdk.incubator.vector", "-Xmx4g" })
+public class ParallelResizeBenchmark {
+
+  @Param({ "bicubic", "lanczos3" })
+  public String resampler;
+
+  @Param({ "1", "2", "4", "6" })
+  public int parallelism;
+
+  @Param({ "12", "50" })
+  public double sourceMegapixels;
+
+  @Param({ "1024" })
+  public int targetWidth;
+
+  private Resampler impl;
+  private BufferedImage source;
+  private int targetHeight;
+
+  @Setup
+  public void setUp() {
+    var size = SyntheticImages.dimensions(sourceMegapixels);
+    source = SyntheticImages.photoLike(size[0], size[1], false);
+    impl = Resampler.forName(resampler, true, new BandExecutor(parallelism));
+    targetHeight = Math.max(1, (int) Math.round((double) size[1] * targetWidth / size[0]));
+  }
+
+  @Benchmark
+  public BufferedImage resize() {
+    return impl.resize(source, targetWidth, targetHeight);
+  }
+}
@@ -0,0 +1,59 @@
+package com.mediaservice.benchmarks;
+
+import com.mediaservice.lambda.image.ImageDecoder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javax.imageio.ImageIO;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decode latency of a 6000x4000 original for a 500 px target, at full
+ * resolution ({@code reduced=false}) and with ImageIO source subsampling
+ * ({@code IMAGE_REDUCED_DECODE_ENABLED}). Run with {@code -prof gc} to compare
+ * the bytes allocated per decode as well.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class ReducedDecodeBenchmark {
+
+  @Param({ "jpeg", "png" })
+  public String format;
+
+  @Param({ "false", "true" })
+  public boolean reduced;
+
+  private byte[] source;
+  private ImageDecoder decoder;
+
+  @Setup
+  public void setUp() throws IOException {
+    var baos = new ByteArrayOutputStream();
+    ImageIO.write(SyntheticImages.photoLike(6000, 4000, false), format, baos);
+    source = baos.toByteArray();
+    decoder = new ImageDecoder(reduced, 2);
+  }
+
+  @Benchmark
+  public ImageDecoder.DecodedImage decode() throws IOException {
+    try (var input = ImageIO.createImageInputStream(new ByteArrayInputStream(source))) {
+      return decoder.decode(input, 500);
+    }
+  }
+}
@@ -0,0 +1,66 @@
+package com.mediaservice.benchmarks;
+
+import com.mediaservice.lambda.image.Resampler;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.awt.image.BufferedImage;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Resize throughput of each {@link Resampler} on a decoded photo-like image.
+ *
+ * <p>
+ * {@code vector=false} forces the scalar convolution kernels so the Vector API
+ * speedup can be read directly; it has no effect on {@code thumbnailator}.
+ * Output quality for the same matrix is reported by {@link ResamplerQualityReport}.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = { "--add-modules=jdk.incubator.vector", "-Xmx4g" })
+public class ResamplerBenchmark {
+
+  @Param({ "thumbnailator", "bilinear", "bicubic", "lanczos3" })
+  public String resampler;
+
+  @Param({ "true", "false" })
+  public boolean vector;
+
+  @Param({ "2", "12" })
+  public double sourceMegapixels;
+
+  @Param({ "500", "1024" })
+  public int targetWidth;
+
+  @Param({ "false", "true" })
+  public boolean alpha;
+
+  private Resampler impl;
+  private BufferedImage source;
+  private int targetHeight;
+
+  @Setup
+  public void setUp() {
+    var size = SyntheticImages.dimensions(sourceMegapixels);
+    source = SyntheticImages.photoLike(size[0], size[1], alpha);
+    impl = Resampler.forName(resampler, vector);
+    targetHeight = Math.max(1, (int) Math.round((double) size[1] * targetWidth / size[0]));
+  }
+
+  @Benchmark
+  public BufferedImage resize() {
+    return impl.resize(source, targetWidth, targetHeight);
+  }
+}
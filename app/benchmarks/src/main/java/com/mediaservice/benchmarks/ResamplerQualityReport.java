@@ -0,0 +1,75 @@
+package com.mediaservice.benchmarks;
+
+import com.mediaservice.lambda.image.Resampler;
+
+import java.awt.Image;
+import java.awt.image.BufferedImage;
+import java.util.List;
+
+/**
+ * Prints the PSNR of every resampler against an area-averaged reference, as
+ * CSV, for the same image sizes and widths as {@link ResamplerBenchmark}.
+ *
+ * <p>
+ * Area averaging is the exact box-filtered downscale, so it is a neutral
+ * reference for aliasing: higher PSNR means less aliasing and ringing. Scalar
+ * and vector kernels should report the same value.
+ *
+ * <pre>
+ * java --add-modules=jdk.incubator.vector -cp target/media-service-benchmarks.jar \
+ *     com.mediaservice.benchmarks.ResamplerQualityReport
+ * </pre>
+ */
+public final class ResamplerQualityReport {
+  private static final List<String> RESAMPLERS = List.of("thumbnailator", "bilinear", "bicubic", "lanczos3");
+  private static final double[] MEGAPIXELS = { 2, 12 };
+  private static final int[] WIDTHS = { 500, 1024 };
+
+  private ResamplerQualityReport() {
+  }
+
+  public static void main(String[] args) {
+    System.out.println("sourceMegapixels,targetWidth,resampler,vector,psnrDb");
+    for (double megapixels : MEGAPIXELS) {
+      var size = SyntheticImages.dimensions(megapixels);
+      var source = SyntheticImages.photoLike(size[0], size[1], false);
+      for (int width : WIDTHS) {
+        int height = Math.max(1, (int) Math.round((double) size[1] * width / size[0]));
+        var reference = areaAverage(source, width, height);
+        for (var name : RESAMPLERS) {
+          for (boolean vector : new boolean[] { true, false }) {
+            var result = Resampler.forName(name, vector).resize(source, width, height);
+            System.out.printf("%.0f,%d,%s,%s,%.2f%n", megapixels, width, name, vector, psnr(result, reference));
+          }
+        }
+      }
+    }
+  }
+
+  private static BufferedImage areaAverage(BufferedImage source, int width, int height) {
+    var reference = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+    var g = reference.createGraphics();
+    try {
+      g.drawImage(source.getScaledInstance(width, height, Image.SCALE_AREA_AVERAGING), 0, 0, null);
+    } finally {
+      g.dispose();
+    }
+    return reference;
+  }
+
+  static double psnr(BufferedImage a, BufferedImage b) {
+    double squaredError = 0;
+    for (int y = 0; y < a.getHeight(); y++) {
+      for (int x = 0; x < a.getWidth(); x++) {
+        int pa = a.getRGB(x, y);
+        int pb = b.getRGB(x, y);
+        for (int shift = 0; shift <= 16; shift += 8) {
+          int d = ((pa >> shift) & 0xFF) - ((pb >> shift) & 0xFF);
+          squaredError += d * d;
+        }
+      }
+    }
+    double mse = squaredError / (a.getWidth() * a.getHeight() * 3.0);
+    return mse == 0 ? Double.POSITIVE_INFINITY : 10 * Math.log10(255 * 255 / mse);
+  }
+}
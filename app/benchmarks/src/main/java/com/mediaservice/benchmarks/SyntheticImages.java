@@ -0,0 +1,77 @@
+package com.mediaservice.benchmarks;
+
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.GradientPaint;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.util.Random;
+
+/**
+ * Deterministic test images with the content that separates resamplers:
+ * smooth gradients, fine periodic detail (aliasing), hard edges and text
+ * (ringing) and sensor-like noise.
+ */
+public final class SyntheticImages {
+
+  private SyntheticImages() {
+  }
+
+  /**
+   * Photo-like image of the given size.
+   *
+   * @param withAlpha Whether to return {@code TYPE_INT_ARGB} with a translucent border region
+   */
+  public static BufferedImage photoLike(int width, int height, boolean withAlpha) {
+    var image = new BufferedImage(width, height, withAlpha ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB);
+    var g = image.createGraphics();
+    try {
+      g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+      g.setPaint(new GradientPaint(0, 0, new Color(30, 90, 160), width, height, new Color(230, 180, 60)));
+      g.fillRect(0, 0, width, height);
+
+      // Fine vertical and diagonal lines near the Nyquist limit of typical outputs
+      g.setColor(new Color(255, 255, 255, 160));
+      for (int x = 0; x < width / 3; x += 5) {
+        g.drawLine(x, 0, x, height / 2);
+      }
+      g.setStroke(new BasicStroke(2f));
+      for (int i = 0; i < width + height; i += 11) {
+        g.drawLine(width / 2 + i, height / 2, width / 2 + i - height / 2, height);
+      }
+
+      g.setColor(Color.BLACK);
+      g.setFont(new Font(Font.SANS_SERIF, Font.BOLD, Math.max(12, height / 10)));
+      g.drawString("media-service", width / 3, height / 3);
+      g.fillRect(width / 8, height * 5 / 8, width / 6, height / 6);
+    } finally {
+      g.dispose();
+    }
+
+    var random = new Random(42);
+    int[] row = new int[width];
+    for (int y = 0; y < height; y++) {
+      image.getRGB(0, y, width, 1, row, 0, width);
+      for (int x = 0; x < width; x++) {
+        int noise = random.nextInt(9) - 4;
+        int p = row[x];
+        int alpha = withAlpha && (x < width / 10 || y < height / 10) ? 96 : 255;
+        row[x] = (alpha << 24) | (clamp(((p >> 16) & 0xFF) + noise) << 16)
+            | (clamp(((p >> 8) & 0xFF) + noise) << 8) | clamp((p & 0xFF) + noise);
+      }
+      image.setRGB(0, y, width, 1, row, 0, width);
+    }
+    return image;
+  }
+
+  /** Width and height for a 4:3 image of about {@code megapixels} million pixels. */
+  public static int[] dimensions(double megapixels) {
+    int width = (int) Math.round(Math.sqrt(megapixels * 1_000_000 * 4 / 3));
+    return new int[] { width, width * 3 / 4 };
+  }
+
+  private static int clamp(int value) {
+    return Math.max(0, Math.min(255, value));
+  }
+}
@@ -0,0 +1,68 @@
+package com.mediaservice.benchmarks;
+
+import com.mediaservice.lambda.image.WatermarkRenderer;
+import net.coobird.thumbnailator.Thumbnails;
+import net.coobird.thumbnailator.geometry.Positions;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Watermarking cost per image: {@code cached} composites a cached scaled
+ * watermark straight into the raster ({@link WatermarkRenderer}, with the
+ * cache warm as in a warm container); {@code legacy} rescales the watermark
+ * and applies Thumbnailator's watermark filter on every image.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class WatermarkBenchmark {
+
+  @Param({ "100", "300", "500", "800", "1024" })
+  public int width;
+
+  private BufferedImage watermark;
+  private BufferedImage target;
+  private WatermarkRenderer renderer;
+  private int markWidth;
+
+  @Setup
+  public void setUp() throws IOException {
+    try (var stream = WatermarkRenderer.class.getResourceAsStream("/media-service-watermark.png")) {
+      watermark = ImageIO.read(stream);
+    }
+    target = SyntheticImages.photoLike(width, width * 3 / 4, false);
+    markWidth = Math.max(width / 7, 30);
+    renderer = new WatermarkRenderer(watermark, 16);
+    renderer.apply(target, markWidth, Positions.BOTTOM_RIGHT);
+  }
+
+  @Benchmark
+  public BufferedImage legacy() throws IOException {
+    var mark = Thumbnails.of(watermark).width(markWidth).asBufferedImage();
+    return Thumbnails.of(target).scale(1.0).watermark(Positions.BOTTOM_RIGHT, mark, 1.0f).asBufferedImage();
+  }
+
+  @Benchmark
+  public BufferedImage cached() {
+    // Blends in place; repeating it on the same target costs the same
+    renderer.apply(target, markWidth, Positions.BOTTOM_RIGHT);
+    return target;
+  }
+}
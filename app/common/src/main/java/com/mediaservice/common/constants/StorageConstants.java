@@ -13,7 +13,10 @@ package com.mediaservice.common.constants;
  *   thumb_sm.{ext}     - Small thumbnail (future)
  *   thumb_md.{ext}     - Medium thumbnail (future)
  *   thumb_lg.{ext}     - Large thumbnail (future)
- *   resize_{size}.{ext} - Resized variants (future)
+ *   resize_{width}.{ext} - Variant catalog renditions, one per width and format
+ *
+ * results/{contentHash}/
+ *   {width}-{watermarkVersion}-{quality}.{ext} - Content-addressed processing results
  * </pre>
  *
  * @see <a href="docs/adr/0001-s3-storage-structure.md">ADR-0001: S3 Storage Structure</a>
@@ -27,14 +30,27 @@ public final class StorageConstants {
   // S3 variant names (flat structure: {mediaId}/{variant}.{ext})
   public static final String S3_VARIANT_ORIGINAL = "original";
   public static final String S3_VARIANT_PROCESSED = "processed";
+  public static final String S3_VARIANT_RESIZE_PREFIX = "resize_";
+
+  // Content-addressed processing results, shared by media with identical originals
+  public static final String S3_RESULTS_PREFIX = "results/";
 
   // DynamoDB key patterns
   public static final String DYNAMO_PK_PREFIX = "MEDIA#";
   public static final String DYNAMO_SK_METADATA = "METADATA";
   public static final String DYNAMO_GSI_SK_CREATED_AT = "SK-createdAt-index";
+  public static final String DYNAMO_RESULT_PK_PREFIX = "RESULT#";
+  public static final String DYNAMO_SK_VARIANT_PREFIX = "VARIANT#";
 
   // DynamoDB attribute names
   public static final String DYNAMO_ATTR_ORIGINAL_FILENAME = "originalFilename";
+  public static final String DYNAMO_ATTR_CONTENT_HASH = "contentHash";
+  public static final String DYNAMO_ATTR_ERROR_REASON = "errorReason";
+  public static final String DYNAMO_ATTR_LEASE_OWNER = "leaseOwner";
+  public static final String DYNAMO_ATTR_LEASE_EXPIRES_AT = "leaseExpiresAt";
+  public static final String DYNAMO_ATTR_LEASE_TOKEN = "leaseToken";
+  public static final String DYNAMO_ATTR_VARIANT_WIDTHS = "variantWidths";
+  public static final String DYNAMO_ATTR_VARIANT_FORMATS = "variantFormats";
 
   /**
    * Build an S3 key for a media variant.
@@ -48,6 +64,30 @@ public final class StorageConstants {
     return mediaId + "/" + variant + extension;
   }
 
+  /**
+   * Build an S3 key for one output of a variant set.
+   *
+   * @param mediaId The media ID (UUID)
+   * @param width The variant width in pixels
+   * @param extension The file extension including dot (e.g., ".webp")
+   * @return The S3 key (e.g., "abc-123/resize_640.webp")
+   */
+  public static String buildVariantKey(String mediaId, int width, String extension) {
+    return buildS3Key(mediaId, S3_VARIANT_RESIZE_PREFIX + width, extension);
+  }
+
+  /**
+   * Build the DynamoDB sort key of a variant catalog entry, stored under the
+   * media partition next to {@code METADATA}.
+   *
+   * @param width The variant width in pixels
+   * @param format The output format name (e.g., "webp")
+   * @return The sort key (e.g., "VARIANT#640#webp")
+   */
+  public static String buildVariantSortKey(int width, String format) {
+    return DYNAMO_SK_VARIANT_PREFIX + width + "#" + format;
+  }
+
   /**
    * Extract file extension from a filename.
    *
@@ -7,6 +7,8 @@ import lombok.Builder;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 
+import java.util.List;
+
 @Data
 @Builder
 @NoArgsConstructor
@@ -25,6 +27,9 @@ public class MediaEvent {
     private String mediaId;
     private Integer width;
     private String outputFormat;
+    /** Variant set widths; every width is rendered in every variant format from one decode */
+    private List<Integer> variantWidths;
+    private List<String> variantFormats;
   }
 
   public static MediaEvent of(EventType eventType, String mediaId) {
@@ -35,12 +40,19 @@ public class MediaEvent {
   }
 
   public static MediaEvent of(EventType eventType, String mediaId, Integer width, String outputFormat) {
+    return of(eventType, mediaId, width, outputFormat, null, null);
+  }
+
+  public static MediaEvent of(EventType eventType, String mediaId, Integer width, String outputFormat,
+      List<Integer> variantWidths, List<String> variantFormats) {
     return MediaEvent.builder()
         .type(eventType.getValue())
         .payload(MediaEventPayload.builder()
             .mediaId(mediaId)
             .width(width)
             .outputFormat(outputFormat)
+            .variantWidths(variantWidths)
+            .variantFormats(variantFormats)
             .build())
         .build();
   }
@@ -7,6 +7,7 @@ public enum EventType {
   PROCESS_MEDIA("media.v1.process"),
   DELETE_MEDIA("media.v1.delete"),
   RESIZE_MEDIA("media.v1.resize"),
+  GENERATE_VARIANTS("media.v1.variants"),
 
   // Analytics rollup events (triggered by EventBridge schedules)
   DAILY_ROLLUP("analytics.v1.rollup.daily"),
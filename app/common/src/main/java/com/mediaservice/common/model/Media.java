@@ -1,6 +1,7 @@
 package com.mediaservice.common.model;
 
 import java.time.Instant;
+import java.util.List;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
@@ -31,4 +32,12 @@ public class Media {
   private Instant updatedAt;
   /** Timestamp when media was soft deleted, null if active */
   private Instant deletedAt;
+  /** SHA-256 of the original file, set by the Lambda on first processing */
+  private String contentHash;
+  /** Why processing failed for good (e.g. CORRUPT_IMAGE), set with status ERROR */
+  private String errorReason;
+  /** Extra widths rendered next to the processed output, null if none requested */
+  private List<Integer> variantWidths;
+  /** Formats each variant width is encoded in, null if none requested */
+  private List<OutputFormat> variantFormats;
 }
@@ -0,0 +1,34 @@
+package com.mediaservice.common.model;
+
+import java.time.Instant;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Variant catalog entry: one rendition of a media item at a given width and format.
+ *
+ * <p>Stored under the media partition ({@code PK=MEDIA#{mediaId}},
+ * {@code SK=VARIANT#{width}#{format}}). A {@code PENDING} entry marks a render
+ * that has been queued; it carries a short TTL so a lost render can be
+ * queued again. Entries have no {@code createdAt}, which keeps them out of the
+ * {@code SK-createdAt-index} used for listing media.
+ *
+ * @see com.mediaservice.common.constants.StorageConstants#buildVariantKey
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class MediaVariant {
+  private String mediaId;
+  private Integer width;
+  private OutputFormat outputFormat;
+  /** PENDING while queued, COMPLETE once the object exists in S3 */
+  private MediaStatus status;
+  private String s3Key;
+  /** Encoded size in bytes, null while pending */
+  private Long size;
+  private Instant updatedAt;
+}
@@ -4,10 +4,16 @@ import com.amazonaws.services.lambda.runtime.Context;
 import com.amazonaws.services.lambda.runtime.RequestHandler;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.mediaservice.common.model.EventType;
+import com.mediaservice.lambda.config.AwsClientFactory;
 import com.mediaservice.lambda.config.LambdaConfig;
 import com.mediaservice.lambda.config.OpenTelemetryInitializer;
+import com.mediaservice.lambda.config.TelemetryFlusher;
+import com.mediaservice.lambda.init.ColdStart;
+import com.mediaservice.lambda.init.Lazy;
 import com.mediaservice.lambda.service.AnalyticsDynamoDbService;
+import com.mediaservice.lambda.snapstart.SnapStartHooks;
 import io.opentelemetry.api.common.AttributeKey;
+import io.opentelemetry.api.metrics.DoubleHistogram;
 import io.opentelemetry.api.metrics.LongCounter;
 import io.opentelemetry.api.metrics.Meter;
 import io.opentelemetry.api.trace.Span;
@@ -54,12 +60,15 @@ import java.util.*;
 public class AnalyticsRollupHandler implements RequestHandler<Map<String, Object>, String> {
   static {
     OpenTelemetryInitializer.initialize();
+    // Extensions can only register during init
+    TelemetryFlusher.getInstance();
   }
 
   private static final Logger logger = LoggerFactory.getLogger(AnalyticsRollupHandler.class);
 
   private final AnalyticsDynamoDbService dynamoDbService;
-  private final S3Client s3Client;
+  // Only archives write to S3, so the monthly rollup never builds the client
+  private final Lazy<S3Client> s3Client;
   private final ObjectMapper objectMapper;
   private final String bucketName;
   private final Tracer tracer;
@@ -67,6 +76,10 @@ public class AnalyticsRollupHandler implements RequestHandler<Map<String, Object
   private final LongCounter dailyArchiveCounter;
   private final LongCounter monthlyArchiveCounter;
   private final LongCounter failureCounter;
+  private final DoubleHistogram initPhaseDurations;
+
+  // Held so the checkpoint context, which references it weakly, keeps it
+  private SnapStartHooks snapStartHooks;
 
   private static final DateTimeFormatter DATE_FORMATTER = DateTimeFormatter.ISO_LOCAL_DATE;
   private static final DateTimeFormatter MONTH_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM");
@@ -75,14 +88,19 @@ public class AnalyticsRollupHandler implements RequestHandler<Map<String, Object
    * Default constructor for AWS Lambda runtime.
    */
   public AnalyticsRollupHandler() {
-    this(new AnalyticsDynamoDbService(),
-        com.mediaservice.lambda.config.AwsClientFactory.getS3Client(), new ObjectMapper());
+    this(new AnalyticsDynamoDbService(), Lazy.of(AwsClientFactory::getS3Client), new ObjectMapper());
+    this.snapStartHooks = SnapStartHooks.restoreOnly().register();
   }
 
   /**
    * Constructor for testing with dependency injection.
    */
   AnalyticsRollupHandler(AnalyticsDynamoDbService dynamoDbService, S3Client s3Client, ObjectMapper objectMapper) {
+    this(dynamoDbService, Lazy.value(s3Client), objectMapper);
+  }
+
+  private AnalyticsRollupHandler(AnalyticsDynamoDbService dynamoDbService, Lazy<S3Client> s3Client,
+      ObjectMapper objectMapper) {
     this.dynamoDbService = dynamoDbService;
     this.s3Client = s3Client;
     this.objectMapper = objectMapper;
@@ -96,6 +114,10 @@ public class AnalyticsRollupHandler implements RequestHandler<Map<String, Object
     this.dailyArchiveCounter = counter(meter, "lambda.analytics.daily_archive", "daily archive");
     this.monthlyArchiveCounter = counter(meter, "lambda.analytics.monthly_archive", "monthly archive");
     this.failureCounter = counter(meter, "lambda.analytics.failure", "failure");
+    this.initPhaseDurations = meter.histogramBuilder("lambda.init.phase.duration")
+        .setDescription("Duration of initialization phases")
+        .setUnit("ms")
+        .build();
   }
 
   private static LongCounter counter(Meter meter, String name, String desc) {
@@ -105,6 +127,8 @@ public class AnalyticsRollupHandler implements RequestHandler<Map<String, Object
   @Override
   public String handleRequest(Map<String, Object> event, Context context) {
     logger.info("AnalyticsRollup Lambda invoked with event: {}", event);
+    var telemetry = TelemetryFlusher.getInstance().begin(context);
+    ColdStart.export(tracer, initPhaseDurations, "analytics-rollup");
 
     var span = tracer.spanBuilder("analytics-rollup")
         .setSpanKind(SpanKind.INTERNAL)
@@ -148,7 +172,7 @@ public class AnalyticsRollupHandler implements RequestHandler<Map<String, Object
       throw e;
     } finally {
       span.end();
-      OpenTelemetryInitializer.flush();
+      telemetry.close();
     }
   }
 
@@ -284,7 +308,7 @@ public class AnalyticsRollupHandler implements RequestHandler<Map<String, Object
           .contentType("application/json")
           .build();
 
-      s3Client.putObject(putRequest, RequestBody.fromString(jsonContent));
+      s3Client.get().putObject(putRequest, RequestBody.fromString(jsonContent));
 
       logger.info("Archived daily analytics to S3: s3://{}/{}", bucketName, s3Key);
     } catch (Exception e) {
@@ -319,7 +343,7 @@ public class AnalyticsRollupHandler implements RequestHandler<Map<String, Object
           .contentType("application/json")
           .build();
 
-      s3Client.putObject(putRequest, RequestBody.fromString(jsonContent));
+      s3Client.get().putObject(putRequest, RequestBody.fromString(jsonContent));
 
       logger.info("Archived monthly analytics to S3: s3://{}/{}", bucketName, s3Key);
     } catch (Exception e) {
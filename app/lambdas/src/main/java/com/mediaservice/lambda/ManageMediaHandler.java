@@ -2,19 +2,44 @@ package com.mediaservice.lambda;
 
 import com.amazonaws.services.lambda.runtime.Context;
 import com.amazonaws.services.lambda.runtime.RequestHandler;
+import com.amazonaws.services.lambda.runtime.events.SQSBatchResponse;
 import com.amazonaws.services.lambda.runtime.events.SQSEvent;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.mediaservice.lambda.batch.BatchExecutor;
+import com.mediaservice.lambda.batch.FailureClassifier;
+import com.mediaservice.lambda.batch.MediaBatchPlanner;
+import com.mediaservice.lambda.batch.MediaBatchPlanner.MediaWork;
+import com.mediaservice.lambda.config.LambdaConfig;
 import com.mediaservice.lambda.config.OpenTelemetryInitializer;
+import com.mediaservice.lambda.config.TelemetryFlusher;
+import com.mediaservice.lambda.init.ColdStart;
+import com.mediaservice.lambda.init.Lazy;
 import com.mediaservice.common.event.MediaEvent;
 import com.mediaservice.common.model.EventType;
 import com.mediaservice.common.model.Media;
 import com.mediaservice.common.model.MediaStatus;
 import com.mediaservice.common.model.OutputFormat;
+import com.mediaservice.lambda.service.ContentHashInputStream;
 import com.mediaservice.lambda.service.DynamoDbService;
 import com.mediaservice.lambda.service.ImageProcessingService;
+import com.mediaservice.lambda.service.ImageProcessingService.StreamedVariant;
+import com.mediaservice.lambda.service.ImageProcessingService.Variant;
+import com.mediaservice.lambda.service.LeaseHeldException;
+import com.mediaservice.lambda.service.OriginalCache;
+import com.mediaservice.lambda.service.ProcessingLease;
+import com.mediaservice.lambda.service.ResultCacheService;
 import com.mediaservice.lambda.service.S3Service;
+import com.mediaservice.lambda.service.SpooledOriginal;
+import com.mediaservice.lambda.snapstart.ImagePrimer;
+import com.mediaservice.lambda.snapstart.SnapStartHooks;
+import com.mediaservice.lambda.stage.Deadline;
+import com.mediaservice.lambda.stage.DeadlineExceededException;
+import com.mediaservice.lambda.stage.Stage;
+import com.mediaservice.lambda.stage.StageCosts;
+import com.mediaservice.lambda.stage.StageTimings;
 import io.opentelemetry.api.common.AttributeKey;
 import io.opentelemetry.api.common.Attributes;
+import io.opentelemetry.api.metrics.DoubleHistogram;
 import io.opentelemetry.api.metrics.LongCounter;
 import io.opentelemetry.api.metrics.Meter;
 import io.opentelemetry.api.trace.Span;
@@ -23,41 +48,101 @@ import io.opentelemetry.api.trace.StatusCode;
 import io.opentelemetry.api.trace.Tracer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import software.amazon.awssdk.services.dynamodb.model.ConditionalCheckFailedException;
+import software.amazon.awssdk.core.ResponseInputStream;
+import software.amazon.awssdk.services.s3.model.GetObjectResponse;
 
-public class ManageMediaHandler implements RequestHandler<SQSEvent, String> {
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.function.LongSupplier;
+
+public class ManageMediaHandler implements RequestHandler<SQSEvent, SQSBatchResponse> {
   static {
     OpenTelemetryInitializer.initialize();
+    // Extensions can only register during init
+    TelemetryFlusher.getInstance();
   }
 
   private static final Logger logger = LoggerFactory.getLogger(ManageMediaHandler.class);
+  private static final String PRIMING_MEDIA_ID = "snapstart-priming";
+  private static final AttributeKey<String> ERROR_REASON = AttributeKey.stringKey("error.reason");
+  private static final Set<EventType> MEDIA_EVENTS = EnumSet.of(EventType.PROCESS_MEDIA, EventType.RESIZE_MEDIA,
+      EventType.GENERATE_VARIANTS, EventType.DELETE_MEDIA);
 
   private final DynamoDbService dynamoDbService;
   private final S3Service s3Service;
-  private final ImageProcessingService imageProcessingService;
+  // Built on first use: a batch of deletes never loads ImageIO or the watermark
+  private final Lazy<ImageProcessingService> imageProcessingService;
+  private final Lazy<ResultCacheService> resultCacheService;
+  private final OriginalCache originalCache;
   private final ObjectMapper objectMapper;
+  private final BatchExecutor batchExecutor;
+  private final StageCosts stageCosts;
+  private final int deadlineReserveMillis;
+  private final Duration leaseDuration;
+  private final int maxReceiveCount;
   private final Tracer tracer;
   private final LongCounter deleteSuccessCounter, deleteFailureCounter;
   private final LongCounter resizeSuccessCounter, resizeFailureCounter;
   private final LongCounter processSuccessCounter, processFailureCounter;
+  private final LongCounter variantsSuccessCounter, variantsFailureCounter;
+  private final LongCounter resultCacheHitCounter, resultCacheMissCounter;
+  private final LongCounter imageRejectedCounter;
+  private final LongCounter obsoleteCounter;
+  private final LongCounter deadlineDeferredCounter;
+  private final LongCounter leaseHeldCounter;
+  private final DoubleHistogram initPhaseDurations;
+  private final DoubleHistogram stageDurations;
+  // Held so the checkpoint context, which references it weakly, keeps it
+  private SnapStartHooks snapStartHooks;
 
   /**
    * Default constructor for AWS Lambda runtime.
    * Creates all dependencies with default implementations.
    */
   public ManageMediaHandler() {
-    this(new DynamoDbService(), new S3Service(), new ImageProcessingService(), new ObjectMapper());
+    this(new DynamoDbService(), new S3Service(), Lazy.of(ImageProcessingService::new),
+        Lazy.of(ResultCacheService::new), new OriginalCache(), new ObjectMapper(),
+        new BatchExecutor(LambdaConfig.getInstance().getProcessingMaxConcurrency(),
+            LambdaConfig.getInstance().getProcessingMemoryPerRecordBytes()));
+    var config = LambdaConfig.getInstance();
+    this.snapStartHooks = config.isSnapStartPrimingEnabled()
+        ? new SnapStartHooks(() -> prime(config.getSnapStartPrimingIterations())).register()
+        : SnapStartHooks.restoreOnly().register();
   }
 
   /**
    * Constructor for testing - allows injection of mock/stub dependencies.
    */
   ManageMediaHandler(DynamoDbService dynamoDbService, S3Service s3Service,
-      ImageProcessingService imageProcessingService, ObjectMapper objectMapper) {
+      ImageProcessingService imageProcessingService, ResultCacheService resultCacheService,
+      ObjectMapper objectMapper, BatchExecutor batchExecutor) {
+    this(dynamoDbService, s3Service, Lazy.value(imageProcessingService), Lazy.value(resultCacheService),
+        OriginalCache.disabled(), objectMapper, batchExecutor);
+  }
+
+  private ManageMediaHandler(DynamoDbService dynamoDbService, S3Service s3Service,
+      Lazy<ImageProcessingService> imageProcessingService, Lazy<ResultCacheService> resultCacheService,
+      OriginalCache originalCache, ObjectMapper objectMapper, BatchExecutor batchExecutor) {
     this.dynamoDbService = dynamoDbService;
     this.s3Service = s3Service;
     this.imageProcessingService = imageProcessingService;
+    this.resultCacheService = resultCacheService;
+    this.originalCache = originalCache;
     this.objectMapper = objectMapper;
+    this.batchExecutor = batchExecutor;
+    var config = LambdaConfig.getInstance();
+    this.stageCosts = new StageCosts(config.getProcessingEstimateMillisPerMb());
+    this.deadlineReserveMillis = config.getProcessingDeadlineReserveMillis();
+    this.leaseDuration = Duration.ofSeconds(config.getProcessingLeaseSeconds());
+    this.maxReceiveCount = config.getSqsMaxReceiveCount();
 
     var otel = OpenTelemetryInitializer.initialize();
     this.tracer = otel.getTracer("media-service-manage-media-lambda");
@@ -69,72 +154,340 @@ public class ManageMediaHandler implements RequestHandler<SQSEvent, String> {
     this.resizeFailureCounter = counter(meter, "lambda.resize_media.failure", "failed resize");
     this.processSuccessCounter = counter(meter, "lambda.process_media.success", "successful process");
     this.processFailureCounter = counter(meter, "lambda.process_media.failure", "failed process");
+    this.variantsSuccessCounter = counter(meter, "lambda.generate_variants.success", "successful variant generation");
+    this.variantsFailureCounter = counter(meter, "lambda.generate_variants.failure", "failed variant generation");
+    this.resultCacheHitCounter = counter(meter, "lambda.result_cache.hit", "result cache hit");
+    this.resultCacheMissCounter = counter(meter, "lambda.result_cache.miss", "result cache miss");
+    this.imageRejectedCounter = counter(meter, "lambda.image.rejected", "image rejected for good");
+    this.obsoleteCounter = counter(meter, "lambda.batch.obsolete", "event made obsolete later in its batch");
+    this.deadlineDeferredCounter = counter(meter, "lambda.deadline.deferred", "event deferred for lack of time");
+    this.leaseHeldCounter = counter(meter, "lambda.lease.held", "event deferred while another consumer held the media");
+    // Kept by the cache and read at export, as evictions happen inside it
+    observedCounter(meter, "lambda.original_cache.hit", "original cache hit", originalCache::getHits);
+    observedCounter(meter, "lambda.original_cache.miss", "original cache miss", originalCache::getMisses);
+    observedCounter(meter, "lambda.original_cache.eviction", "original cache eviction", originalCache::getEvictions);
+    this.initPhaseDurations = meter.histogramBuilder("lambda.init.phase.duration")
+        .setDescription("Duration of initialization phases")
+        .setUnit("ms")
+        .build();
+    this.stageDurations = meter.histogramBuilder("media.stage.duration")
+        .setDescription("Duration of image pipeline stages (download, decode, resize, watermark, encode, upload)")
+        .setUnit("ms")
+        .build();
   }
 
   private static LongCounter counter(Meter meter, String name, String desc) {
     return meter.counterBuilder(name).setDescription("Count of " + desc + " operations").build();
   }
 
+  private static void observedCounter(Meter meter, String name, String desc, LongSupplier total) {
+    meter.counterBuilder(name).setDescription("Count of " + desc + " operations")
+        .buildWithCallback(measurement -> measurement.record(total.getAsLong()));
+  }
+
+  /**
+   * Process the batch concurrently and report only the failed records, so SQS
+   * redelivers those instead of the whole batch. Requires
+   * {@code ReportBatchItemFailures} on the event source mapping.
+   *
+   * <p>
+   * Records are grouped by media item first (see {@link MediaBatchPlanner}):
+   * media items run concurrently, the events of one media run in order and
+   * share a single download of its original.
+   *
+   * <p>
+   * Work is checked against the time left in the invocation (see
+   * {@link Deadline}): a render that is not expected to finish is not
+   * started, or abandoned between stages, and its records are reported as
+   * failed so SQS redelivers them to an invocation with a full budget.
+   *
+   * <p>
+   * A render holds a processing lease on its media (see
+   * {@link ProcessingLease}), so a message redelivered while another consumer
+   * is still rendering the same media waits for it instead of rendering it a
+   * second time.
+   */
   @Override
-  public String handleRequest(SQSEvent sqsEvent, Context context) {
-    logger.info("ManageMedia Lambda invoked");
+  public SQSBatchResponse handleRequest(SQSEvent sqsEvent, Context context) {
+    var records = sqsEvent.getRecords();
+    logger.info("ManageMedia Lambda invoked with {} records (concurrency={})", records.size(),
+        batchExecutor.getConcurrency());
+    try (var telemetry = TelemetryFlusher.getInstance().begin(context)) {
+      ColdStart.export(tracer, initPhaseDurations, "manage-media");
+      var failedIds = new ArrayList<String>();
+      var messages = new ArrayList<MediaMessage>(records.size());
+      for (var record : records) {
+        try {
+          var message = parse(record);
+          if (message != null) {
+            messages.add(message);
+          }
+        } catch (Exception e) {
+          logger.error("Failed to parse message {}: {}", record.getMessageId(), e.getMessage());
+          failedIds.add(record.getMessageId());
+        }
+      }
+      var plan = MediaBatchPlanner.plan(messages, MediaMessage::mediaId, MediaMessage::type,
+          message -> !message.variants().isEmpty());
+      var deadline = deadlineOf(context);
+      var leaseOwner = context != null ? context.getAwsRequestId() : UUID.randomUUID().toString();
+      failedIds.addAll(batchExecutor.executeGroups(plan, ManageMediaHandler::messageIdsOf,
+          work -> processMedia(work, deadline, leaseOwner)));
+      if (!failedIds.isEmpty()) {
+        logger.warn("{} of {} records failed: {}", failedIds.size(), records.size(), failedIds);
+      }
+      var failures = failedIds.stream().map(SQSBatchResponse.BatchItemFailure::new).toList();
+      return new SQSBatchResponse(failures);
+    }
+  }
+
+  /**
+   * The invocation's remaining time less the reserve for returning the batch
+   * response and flushing telemetry; no deadline outside Lambda.
+   */
+  private Deadline deadlineOf(Context context) {
+    if (context == null) {
+      return Deadline.none();
+    }
+    return Deadline.after(context.getRemainingTimeInMillis() - deadlineReserveMillis, stageCosts);
+  }
+
+  /**
+   * Exercise the paths a first request takes: event parsing, image rendering
+   * and a DynamoDB and S3 round trip. Lookups use a key that never exists, so
+   * no media is read or written.
+   */
+  private void prime(int iterations) {
     try {
-      sqsEvent.getRecords().forEach(this::processMessage);
-      return "OK";
-    } finally {
-      OpenTelemetryInitializer.flush();
+      var message = objectMapper.writeValueAsString(MediaEvent.of(EventType.PROCESS_MEDIA, PRIMING_MEDIA_ID, 500,
+          OutputFormat.WEBP.getFormat(), List.of(320), List.of(OutputFormat.JPEG.getFormat())));
+      var body = objectMapper.createObjectNode().put("Message", message).toString();
+      var event = objectMapper.readValue(objectMapper.readTree(body).get("Message").asText(), MediaEvent.class);
+      variantsOf(event.getPayload());
+
+      long start = System.currentTimeMillis();
+      int rendered = new ImagePrimer(imageProcessingService.get(), iterations).prime();
+      logger.info("Primed image pipeline with {} outputs in {} ms", rendered, System.currentTimeMillis() - start);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+
+    dynamoDbService.getMedia(PRIMING_MEDIA_ID);
+    try (var ignored = s3Service.openMediaFile(PRIMING_MEDIA_ID, "priming.jpg")) {
+      // Not expected to exist
+    } catch (Exception e) {
+      logger.debug("S3 priming request completed with {}", e.getClass().getSimpleName());
     }
   }
 
-  private void processMessage(SQSEvent.SQSMessage message) {
-    var span = tracer.spanBuilder("manage-media").setSpanKind(SpanKind.INTERNAL).startSpan();
-    try (var scope = span.makeCurrent()) {
-      var bodyNode = objectMapper.readTree(message.getBody());
-      var event = objectMapper.readValue(bodyNode.get("Message").asText(), MediaEvent.class);
+  /**
+   * A media event of the batch.
+   *
+   * @param eventType    Event type as published, for logs and spans
+   * @param receiveCount Deliveries of the message so far, this one included
+   */
+  private record MediaMessage(String messageId, EventType type, String eventType, String mediaId, Integer width,
+      OutputFormat outputFormat, List<Variant> variants, int receiveCount) {
+  }
 
-      var payload = event.getPayload();
-      if (payload == null || payload.getMediaId() == null || payload.getMediaId().isEmpty()) {
-        logger.warn("Skipping message with null/empty payload or mediaId");
-        return;
+  /**
+   * Parse a record, or return null if it carries nothing to do.
+   */
+  private MediaMessage parse(SQSEvent.SQSMessage message) throws IOException {
+    var bodyNode = objectMapper.readTree(message.getBody());
+    var event = objectMapper.readValue(bodyNode.get("Message").asText(), MediaEvent.class);
+
+    var payload = event.getPayload();
+    if (payload == null || payload.getMediaId() == null || payload.getMediaId().isEmpty()) {
+      logger.warn("Skipping message with null/empty payload or mediaId");
+      return null;
+    }
+    var eventType = EventType.fromString(event.getType());
+    if (eventType == null) {
+      logger.info("Skipping message with unsupported type: {}", event.getType());
+      return null;
+    }
+    if (!MEDIA_EVENTS.contains(eventType)) {
+      logger.info("Skipping message with unhandled event type: {}", event.getType());
+      return null;
+    }
+    var variants = variantsOf(payload);
+    if (eventType == EventType.RESIZE_MEDIA && payload.getWidth() == null && variants.isEmpty()) {
+      logger.info("Skipping resize message with missing width");
+      return null;
+    }
+    return new MediaMessage(message.getMessageId(), eventType, event.getType(), payload.getMediaId(),
+        payload.getWidth(), OutputFormat.fromString(payload.getOutputFormat()), variants, receiveCountOf(message));
+  }
+
+  /**
+   * The message's {@code ApproximateReceiveCount}, or 1 if SQS did not send it.
+   */
+  private static int receiveCountOf(SQSEvent.SQSMessage message) {
+    var attributes = message.getAttributes();
+    var count = attributes != null ? attributes.get("ApproximateReceiveCount") : null;
+    try {
+      return count != null ? Integer.parseInt(count) : 1;
+    } catch (NumberFormatException e) {
+      return 1;
+    }
+  }
+
+  /**
+   * Whether SQS moves the message to the dead-letter queue if this delivery
+   * fails too.
+   */
+  private boolean isFinalAttempt(MediaMessage message) {
+    return maxReceiveCount > 0 && message.receiveCount() >= maxReceiveCount;
+  }
+
+  private static List<String> messageIdsOf(MediaWork<MediaMessage> work) {
+    var ids = new ArrayList<String>();
+    if (work.processing() != null) {
+      ids.add(work.processing().messageId());
+    }
+    work.variants().forEach(message -> ids.add(message.messageId()));
+    work.deletes().forEach(message -> ids.add(message.messageId()));
+    return ids;
+  }
+
+  /**
+   * Run the events of one media item and return the ids of the failed messages.
+   *
+   * <p>
+   * Obsolete events are acknowledged without work. Variant requests are merged
+   * into a process event's render, which is watermarked the same way, so one
+   * decode serves all of them; next to a resize they render separately but
+   * from the same downloaded original. Deletes run last, once. Events merged
+   * into one render share its outcome; every other event keeps its own.
+   * Once the deadline has passed, nothing more is started and every event
+   * that is not obsolete is returned as failed.
+   */
+  private List<String> processMedia(MediaWork<MediaMessage> work, Deadline deadline, String leaseOwner) {
+    var failed = new ArrayList<String>();
+    if (!work.obsolete().isEmpty()) {
+      logger.info("Skipping {} events for media {} made obsolete later in the batch: {}", work.obsolete().size(),
+          work.mediaId(), work.obsolete().stream().map(MediaMessage::eventType).toList());
+      obsoleteCounter.add(work.obsolete().size());
+    }
+    if (deadline.isExpired()) {
+      // Waited for a free slot past the deadline
+      var deferred = messageIdsOf(work);
+      logger.warn("Deferring {} events for media {}: invocation is out of time", deferred.size(), work.mediaId());
+      deadlineDeferredCounter.add(deferred.size());
+      return deferred;
+    }
+
+    var processing = work.processing();
+    var variants = work.variants();
+    boolean merge = processing != null && processing.type() == EventType.PROCESS_MEDIA && !variants.isEmpty();
+    try (var original = new MediaOriginal(!merge && work.renders() > 1)) {
+      boolean variantsDone = false;
+      if (processing != null) {
+        var merged = merge ? variants : List.<MediaMessage>of();
+        var catalog = new ArrayList<>(processing.variants());
+        merged.forEach(message -> catalog.addAll(message.variants()));
+        var handled = new boolean[1];
+        var members = new ArrayList<MediaMessage>(merged.size() + 1);
+        members.add(processing);
+        members.addAll(merged);
+        if (!run(members, deadline, span -> handled[0] = handleMediaProcessing(processing.mediaId(), processing.width(),
+            processing.outputFormat(), List.copyOf(new LinkedHashSet<>(catalog)),
+            processing.type() == EventType.RESIZE_MEDIA, isFinalAttempt(processing), leaseOwner, original, span))) {
+          members.forEach(message -> failed.add(message.messageId()));
+          variantsDone = merge;
+        } else {
+          // Merged variants still need rendering if the process event found nothing to process
+          variantsDone = merge && handled[0];
+        }
+      }
+      if (!variantsDone && !variants.isEmpty()) {
+        var requested = new LinkedHashSet<Variant>();
+        variants.forEach(message -> requested.addAll(message.variants()));
+        if (!run(variants, deadline,
+            span -> handleGenerateVariants(work.mediaId(), List.copyOf(requested), original, span))) {
+          variants.forEach(message -> failed.add(message.messageId()));
+        }
       }
+    }
 
-      var mediaId = payload.getMediaId();
-      var width = payload.getWidth();
-      var outputFormat = OutputFormat.fromString(payload.getOutputFormat());
+    var deletes = work.deletes();
+    if (!deletes.isEmpty() && !run(deletes, deadline, span -> handleDelete(work.mediaId(), span))) {
+      deletes.forEach(message -> failed.add(message.messageId()));
+    }
+    return failed;
+  }
 
+  @FunctionalInterface
+  private interface SpanWork {
+    void run(Span span) throws Exception;
+  }
+
+  /**
+   * Run work for one or more messages of the same media and event type under
+   * a single span, returning false if it failed. Stages are checked against
+   * {@code deadline}.
+   */
+  private boolean run(List<MediaMessage> messages, Deadline deadline, SpanWork work) {
+    var lead = messages.get(0);
+    var span = tracer.spanBuilder("manage-media").setSpanKind(SpanKind.INTERNAL).startSpan();
+    try (var scope = span.makeCurrent()) {
+      var mediaId = lead.mediaId();
+      var outputFormat = lead.outputFormat();
       span.setAttribute("media.id", mediaId);
-      span.setAttribute("event.type", event.getType());
+      span.setAttribute("event.type", lead.eventType());
       span.setAttribute("output.format", outputFormat.getFormat());
-      if (width != null)
-        span.setAttribute("width", width);
-      logger.info("Processing event: type={}, mediaId={}, outputFormat={}", event.getType(), mediaId,
-          outputFormat.getFormat());
-      var eventType = EventType.fromString(event.getType());
-      if (eventType == null) {
-        logger.info("Skipping message with unsupported type: {}", event.getType());
-        return;
-      }
-      switch (eventType) {
-        case DELETE_MEDIA -> handleDelete(mediaId, span);
-        case RESIZE_MEDIA -> {
-          if (width == null) {
-            logger.info("Skipping resize message with missing width");
-          } else {
-            handleMediaProcessing(mediaId, width, outputFormat, true, span);
-          }
-        }
-        case PROCESS_MEDIA -> handleMediaProcessing(mediaId, width, outputFormat, false, span);
-        default -> logger.info("Skipping message with unhandled event type: {}", event.getType());
+      if (lead.width() != null)
+        span.setAttribute("width", lead.width());
+      if (!lead.variants().isEmpty())
+        span.setAttribute("variants", lead.variants().size());
+      if (messages.size() > 1)
+        span.setAttribute("batch.messages", messages.size());
+      logger.info("Processing event: type={}, mediaId={}, outputFormat={}, messages={}", lead.eventType(), mediaId,
+          outputFormat.getFormat(), messages.size());
+      try (var timings = StageTimings.open(stageDurations, mediaId, deadline)) {
+        work.run(span);
       }
+      return true;
+    } catch (DeadlineExceededException e) {
+      span.setStatus(StatusCode.ERROR, e.getMessage());
+      logger.warn("Deferring {} messages for media {} to a redelivery: {}", messages.size(), lead.mediaId(),
+          e.getMessage());
+      deadlineDeferredCounter.add(messages.size());
+      return false;
+    } catch (LeaseHeldException e) {
+      logger.info("Deferring {} messages to a redelivery: {}", messages.size(), e.getMessage());
+      leaseHeldCounter.add(messages.size());
+      return false;
     } catch (Exception e) {
       span.setStatus(StatusCode.ERROR, e.getMessage());
       span.recordException(e);
-      throw new RuntimeException("Failed to process message", e);
+      logger.error("Failed to process {} messages for media {}: {}", messages.size(), lead.mediaId(),
+          e.getMessage());
+      return false;
     } finally {
       span.end();
     }
   }
 
+  /**
+   * Every width x format combination of the payload's variant set, empty if none was requested.
+   */
+  private static List<Variant> variantsOf(MediaEvent.MediaEventPayload payload) {
+    var widths = payload.getVariantWidths();
+    var formats = payload.getVariantFormats();
+    if (widths == null || widths.isEmpty() || formats == null || formats.isEmpty()) {
+      return List.of();
+    }
+    var variants = new ArrayList<Variant>(widths.size() * formats.size());
+    for (var width : widths) {
+      for (var format : formats) {
+        variants.add(new Variant(width, OutputFormat.fromString(format)));
+      }
+    }
+    return variants;
+  }
+
   /**
    * Handle soft delete: S3 files are deleted, DynamoDB record is preserved.
    * The API has already soft-deleted the record (status=DELETED, deletedAt set).
@@ -156,6 +509,11 @@ public class ManageMediaHandler implements RequestHandler<SQSEvent, String> {
       // Always try to delete processed file (S3 delete is idempotent - no error if
       // file doesn't exist)
       s3Service.deleteProcessedFile(mediaId, outputFormat);
+      var variants = dynamoDbService.listVariants(mediaId);
+      s3Service.deleteVariants(mediaId, variants);
+      for (var variant : variants) {
+        dynamoDbService.deleteVariant(mediaId, variant.getWidth(), variant.getOutputFormat());
+      }
 
       logger.info("S3 cleanup completed for media: {} (DynamoDB record preserved for analytics)", mediaId);
       span.setStatus(StatusCode.OK);
@@ -168,82 +526,435 @@ public class ManageMediaHandler implements RequestHandler<SQSEvent, String> {
     }
   }
 
-  private void handleMediaProcessing(String mediaId, Integer requestedWidth, OutputFormat outputFormat,
-      boolean isResize, Span span) {
+  /**
+   * Render catalog variants requested by a download. The media status is not
+   * touched: the primary output stays downloadable while variants render, and
+   * each rendition becomes visible once its catalog entry is COMPLETE.
+   */
+  private void handleGenerateVariants(String mediaId, List<Variant> variants, MediaOriginal original,
+      Span span) {
+    if (variants.isEmpty()) {
+      logger.info("Skipping variants message without widths or formats");
+      return;
+    }
+    try {
+      var mediaOpt = dynamoDbService.getMedia(mediaId);
+      var status = mediaOpt.map(Media::getStatus).orElse(null);
+      if (status == null || status == MediaStatus.DELETED || status == MediaStatus.PENDING_UPLOAD) {
+        // No original to render from; pending entries expire and can be queued again
+        logger.warn("Skipping variants for media {} in status {}", mediaId, status);
+        return;
+      }
+      var media = mediaOpt.get();
+      var timings = StageTimings.current();
+      timings.setSourceBytes(media.getSize());
+      timings.checkDeadline(variants.size());
+
+      long start = System.currentTimeMillis();
+      List<StreamedVariant> rendered;
+      try (var input = original.open(media)) {
+        rendered = imageProcessingService.get().processVariants(input, variants,
+            output -> s3Service.openVariantUpload(mediaId, output.width(), output.format()));
+      }
+      completeVariants(mediaId, rendered);
+      logger.info("Generated {} variants for media {} in {} ms", rendered.size(), mediaId,
+          System.currentTimeMillis() - start);
+      span.setStatus(StatusCode.OK);
+      variantsSuccessCounter.add(1);
+    } catch (DeadlineExceededException e) {
+      throw e;
+    } catch (Exception e) {
+      span.setStatus(StatusCode.ERROR, e.getMessage());
+      variantsFailureCounter.add(1);
+      var reason = FailureClassifier.permanentReason(e);
+      if (reason != null) {
+        // Terminal for this source; retrying would only fail again. The primary output is unaffected
+        logger.error("Rejected variants for media {} ({}): {}", mediaId, reason, e.getMessage());
+        recordRejection(span, reason);
+        return;
+      }
+      logger.error("Failed to generate variants for media {}: {}", mediaId, e.getMessage(), e);
+      throw new RuntimeException("Failed to generate variants", e);
+    }
+  }
+
+  /**
+   * Render the processed output (and any variant set) of a PENDING media and
+   * complete it. The render runs under a processing lease on the media, taken
+   * from PENDING, or from PROCESSING once the previous holder's lease has
+   * lapsed (a retry). If another consumer holds a live lease, the record is
+   * deferred with {@link LeaseHeldException}. Only the lease holder completes
+   * the media: a holder that lost its lease to another consumer leaves the
+   * outcome to it.
+   *
+   * <p>
+   * A failure that depends only on the original (see
+   * {@link FailureClassifier}) marks the media ERROR with its reason and
+   * acknowledges the record; any other failure releases the lease and leaves
+   * the media PROCESSING for the redelivery to retry. On the final attempt
+   * there is no redelivery to come (the message would go to the dead-letter
+   * queue), so a transient failure marks the media ERROR with
+   * {@code RETRIES_EXHAUSTED} instead of leaving it PROCESSING for good.
+   *
+   * @param finalAttempt Whether this is the last delivery the redrive policy allows
+   * @return False if the media was not in a state to process, true otherwise
+   */
+  private boolean handleMediaProcessing(String mediaId, Integer requestedWidth, OutputFormat outputFormat,
+      List<Variant> variants, boolean isResize, boolean finalAttempt, String leaseOwner, MediaOriginal original,
+      Span span) {
     var successCounter = isResize ? resizeSuccessCounter : processSuccessCounter;
     var failureCounter = isResize ? resizeFailureCounter : processFailureCounter;
 
     logger.info("Processing media: {} with outputFormat: {}", mediaId, outputFormat.getFormat());
-    try {
-      // Try to set status to PROCESSING (from PENDING)
-      // If already PROCESSING (retry scenario), continue with the existing media data
-      Media media;
+    // A refusal carries the item as it was, so the holder and status need no second read
+    var attempt = dynamoDbService.acquireLease(mediaId, leaseOwner, leaseDuration).orElse(null);
+    if (attempt == null) {
+      logger.warn("Media {} not found", mediaId);
+      return false;
+    }
+    var media = attempt.media();
+    if (!attempt.acquired()) {
+      if (media.getStatus() == MediaStatus.PROCESSING && attempt.lease() != null) {
+        throw new LeaseHeldException(mediaId, attempt.lease());
+      }
+      logger.warn("Media {} not in PENDING status: {}", mediaId, media.getStatus());
+      return false;
+    }
+    span.setAttribute("lease.token", attempt.lease().token());
+
+    var targetWidth = requestedWidth != null ? requestedWidth : media.getWidth();
+    var targetFormat = outputFormat != null ? outputFormat
+        : (media.getOutputFormat() != null ? media.getOutputFormat() : OutputFormat.JPEG);
+    try (var lease = ProcessingLease.hold(dynamoDbService, mediaId, attempt.lease(), leaseDuration)) {
       try {
-        var mediaOpt = dynamoDbService.setMediaStatusConditionally(mediaId, MediaStatus.PROCESSING,
-            MediaStatus.PENDING);
-        if (mediaOpt.isEmpty()) {
-          logger.warn("Media {} not found or not in PENDING status", mediaId);
-          return;
-        }
-        media = mediaOpt.get();
-      } catch (ConditionalCheckFailedException e) {
-        // Check if this is a retry (status already PROCESSING)
-        var existingMedia = dynamoDbService.getMedia(mediaId);
-        if (existingMedia.isPresent() && existingMedia.get().getStatus() == MediaStatus.PROCESSING) {
-          logger.info("Media {} already PROCESSING, continuing as retry", mediaId);
-          media = existingMedia.get();
+        var timings = StageTimings.current();
+        timings.setSourceBytes(media.getSize());
+        timings.checkDeadline(variants.size() + 1);
+
+        if (variants.isEmpty()) {
+          produceOutput(media, targetWidth, targetFormat, isResize, original, span);
         } else {
-          logger.warn("Media {} in unexpected status: {}", mediaId,
-              existingMedia.map(m -> m.getStatus().name()).orElse("NOT_FOUND"));
-          return;
+          produceVariantSet(media, targetWidth, targetFormat, variants, isResize, original, span);
         }
+      } catch (DeadlineExceededException e) {
+        // Not a failure of the media: the lease is released and the redelivery resumes it as a retry
+        throw e;
+      } catch (Exception e) {
+        span.setStatus(StatusCode.ERROR, e.getMessage());
+        failureCounter.add(1);
+        var reason = FailureClassifier.permanentReason(e);
+        if (reason != null) {
+          // Retrying cannot succeed: mark the media ERROR and acknowledge the record so SQS does not redeliver it
+          logger.error("Rejected media {} ({}): {}", mediaId, reason, e.getMessage());
+          markError(mediaId, lease, reason);
+          recordRejection(span, reason);
+          return true;
+        }
+        if (finalAttempt) {
+          logger.error("Giving up on media {} after its final delivery: {}", mediaId, e.getMessage(), e);
+          markError(mediaId, lease, FailureClassifier.Reason.RETRIES_EXHAUSTED);
+          recordRejection(span, FailureClassifier.Reason.RETRIES_EXHAUSTED);
+          return true;
+        }
+        // The lease is released, so the redelivery resumes it as a retry
+        logger.error("Failed to process media {}: {}", mediaId, e.getMessage(), e);
+        throw new RuntimeException("Failed to process media", e);
       }
-      byte[] imageData = s3Service.getMediaFile(mediaId, media.getName());
 
-      var targetWidth = requestedWidth != null ? requestedWidth : media.getWidth();
-      var targetFormat = outputFormat != null ? outputFormat
-          : (media.getOutputFormat() != null ? media.getOutputFormat() : OutputFormat.JPEG);
+      if (lease.isLost() || !lease.complete(targetWidth)) {
+        // Taken over after a missed renewal, or reset or deleted meanwhile: the outcome is no longer ours
+        logger.warn("Lost the processing lease on media {}; leaving it to its new holder", mediaId);
+        span.setStatus(StatusCode.ERROR, "lease_lost");
+        failureCounter.add(1);
+        return true;
+      }
+    }
+    logger.info("Media operation complete for: {}", mediaId);
+    span.setStatus(StatusCode.OK);
+    successCounter.add(1);
+    return true;
+  }
 
-      long start = System.currentTimeMillis();
-      byte[] processed = isResize
-          ? imageProcessingService.resizeImage(imageData, targetWidth, targetFormat)
-          : imageProcessingService.processImage(imageData, targetWidth, targetFormat);
-      long duration = System.currentTimeMillis() - start;
+  private void markError(String mediaId, ProcessingLease lease, FailureClassifier.Reason reason) {
+    try {
+      if (!lease.fail(reason.name())) {
+        logger.warn("Lost the processing lease on media {}; leaving it to its new holder", mediaId);
+      }
+    } catch (Exception updateErr) {
+      logger.error("Failed to update status to ERROR: {}", updateErr.getMessage());
+    }
+  }
 
-      span.addEvent("image.processing.done",
-          Attributes.of(AttributeKey.longKey("media.processing.duration"), duration));
-      logger.info("Processed media in {} ms with format: {}", duration, targetFormat.getFormat());
+  private void recordRejection(Span span, FailureClassifier.Reason reason) {
+    span.setAttribute(ERROR_REASON, reason.name());
+    imageRejectedCounter.add(1, Attributes.of(ERROR_REASON, reason.name()));
+  }
 
-      s3Service.uploadProcessedMedia(mediaId, media.getName(), processed, targetFormat);
-      dynamoDbService.setMediaStatusConditionally(mediaId, MediaStatus.COMPLETE, MediaStatus.PROCESSING, targetWidth);
+  /**
+   * Write the processed output for {@code media} to its processed key.
+   *
+   * <p>
+   * With the result cache enabled, the original's content hash (stored on the
+   * media record) plus the rendering parameters are looked up first; a hit
+   * becomes a server-side S3 copy. On a miss the image is rendered as usual and
+   * the output is stored for next time. Media without a hash yet are hashed
+   * while the original streams into the decoder, so there is nothing to look
+   * up but the original is not spooled to disk just to hash it. Cache failures
+   * never fail the record; they fall back to rendering.
+   */
+  private void produceOutput(Media media, Integer targetWidth, OutputFormat targetFormat, boolean isResize,
+      MediaOriginal original, Span span) throws IOException {
+    var mediaId = media.getMediaId();
+    if (!resultCacheService.get().isEnabled()) {
+      // Stream the original from S3 straight into the decoder (no intermediate byte[])
+      try (var input = original.open(media)) {
+        render(input, media, targetWidth, targetFormat, isResize, span);
+      }
+      return;
+    }
 
-      logger.info("Media operation complete for: {}", mediaId);
-      span.setStatus(StatusCode.OK);
-      successCounter.add(1);
-    } catch (ConditionalCheckFailedException e) {
-      // This catch handles PROCESSING→COMPLETE transition failures
-      // (the PENDING→PROCESSING transition is handled in the inner try-catch)
-      var actual = dynamoDbService.getMedia(mediaId).map(m -> m.getStatus().name()).orElse("NOT_FOUND");
-      if ("COMPLETE".equals(actual)) {
-        logger.info("Media {} already COMPLETE, skipping duplicate processing", mediaId);
-        span.setStatus(StatusCode.OK);
-        successCounter.add(1);
-        return; // Idempotent - already completed by another instance
-      }
-      logger.error("Failed to complete media {}: unexpected status={}", mediaId, actual);
-      span.setStatus(StatusCode.ERROR, "unexpected_status=" + actual);
-      failureCounter.add(1);
-      throw e;
-    } catch (Exception e) {
-      logger.error("Failed to process media {}: {}", mediaId, e.getMessage(), e);
-      span.setStatus(StatusCode.ERROR, e.getMessage());
-      try {
-        dynamoDbService.setMediaStatus(mediaId, MediaStatus.ERROR);
-      } catch (Exception updateErr) {
-        logger.error("Failed to update status to ERROR: {}", updateErr.getMessage());
+    var contentHash = media.getContentHash();
+    if (contentHash == null) {
+      try (var input = new ContentHashInputStream(original.open(media))) {
+        render(input, media, targetWidth, targetFormat, isResize, span);
+        contentHash = input.finish();
+      }
+      recordContentHash(mediaId, contentHash);
+      resultCacheMissCounter.add(1);
+      storeResult(imageProcessingService.get().resultKey(contentHash, targetWidth, targetFormat, isResize), mediaId,
+          targetFormat);
+      return;
+    }
+
+    var resultKey = imageProcessingService.get().resultKey(contentHash, targetWidth, targetFormat, isResize);
+    if (copyCachedResult(resultKey, mediaId, targetFormat, span)) {
+      resultCacheHitCounter.add(1);
+      return;
+    }
+    resultCacheMissCounter.add(1);
+
+    try (var input = original.open(media)) {
+      render(input, media, targetWidth, targetFormat, isResize, span);
+    }
+    storeResult(resultKey, mediaId, targetFormat);
+  }
+
+  /**
+   * Open the original for decoding. Originals at or above the ranged download
+   * threshold (by their recorded size) are first fetched to local disk over
+   * parallel ranged GETs; the file is deleted when the stream is closed.
+   * Smaller ones are streamed from a single GET.
+   */
+  private InputStream openOriginal(Media media) throws IOException {
+    if (!s3Service.isRangedDownload(media.getSize())) {
+      return s3Service.openMediaFile(media.getMediaId(), media.getName());
+    }
+    StageTimings.current().checkDeadline(Stage.DOWNLOAD);
+    var downloadTimer = StageTimings.current().start(Stage.DOWNLOAD);
+    var downloaded = s3Service.downloadMediaFile(media.getMediaId(), media.getName());
+    downloadTimer.stop(null);
+    return downloaded.openOnce();
+  }
+
+  /**
+   * The original of one media item for the events of a batch. With a single
+   * render it is opened as by {@link #openOriginal}; when several renders
+   * need it, the first one downloads it to local disk and the others decode
+   * from the file. Closing deletes the file.
+   *
+   * <p>
+   * With the {@link OriginalCache} enabled, a copy cached by an earlier
+   * invocation is revalidated with a conditional GET and, if current, read
+   * from {@code /tmp} instead of S3. Otherwise the download is cached as it
+   * is read, and closing releases the cached file instead of deleting it.
+   */
+  private final class MediaOriginal implements AutoCloseable {
+    private final boolean shared;
+    private SpooledOriginal spooled;
+
+    MediaOriginal(boolean shared) {
+      this.shared = shared;
+    }
+
+    /** Open the original for decoding; the caller closes the stream. */
+    InputStream open(Media media) throws IOException {
+      if (spooled == null && !shared) {
+        if (!originalCache.isEnabled()) {
+          return openOriginal(media);
+        }
+        var response = revalidate(media);
+        if (spooled == null) {
+          if (!s3Service.isRangedDownload(media.getSize())) {
+            // Decode while the body is copied into the cache
+            var original = response != null ? response : s3Service.openMediaFile(media.getMediaId(), media.getName());
+            return originalCache.fill(media.getMediaId(), original.response().eTag(), original);
+          }
+          if (response != null) {
+            // Large and changed: fetched again below over ranged GETs
+            response.abort();
+          }
+        }
+      }
+      return spool(media).open();
+    }
+
+    /** The original on local disk, downloaded on first use. */
+    SpooledOriginal spool(Media media) throws IOException {
+      if (spooled == null) {
+        var mediaId = media.getMediaId();
+        StageTimings.current().checkDeadline(Stage.DOWNLOAD);
+        var downloadTimer = StageTimings.current().start(Stage.DOWNLOAD);
+        var response = originalCache.isEnabled() ? revalidate(media) : null;
+        if (spooled == null && s3Service.isRangedDownload(media.getSize())) {
+          if (response != null) {
+            response.abort();
+          }
+          var downloaded = s3Service.downloadMediaFile(mediaId, media.getName());
+          spooled = originalCache.isEnabled() ? originalCache.put(mediaId, downloaded) : downloaded;
+        } else if (spooled == null) {
+          try (var original = response != null ? response : s3Service.openMediaFile(mediaId, media.getName())) {
+            spooled = originalCache.isEnabled()
+                ? originalCache.put(mediaId, original.response().eTag(), original)
+                : resultCacheService.get().spool(original);
+          }
+        }
+        downloadTimer.stop(null);
+      }
+      return spooled;
+    }
+
+    /**
+     * Check a cached copy against S3. If it is current it becomes
+     * {@link #spooled} and null is returned; if the original changed, the
+     * response with the new content is returned. Null as well if nothing is
+     * cached.
+     */
+    private ResponseInputStream<GetObjectResponse> revalidate(Media media) {
+      var mediaId = media.getMediaId();
+      var eTag = originalCache.eTagOf(mediaId);
+      if (eTag == null) {
+        return null;
       }
-      failureCounter.add(1);
-      throw new RuntimeException("Failed to process media", e);
+      var response = s3Service.openMediaFileIfChanged(mediaId, media.getName(), eTag);
+      if (response == null) {
+        // Null if evicted since eTagOf; the caller then downloads it again
+        spooled = originalCache.acquire(mediaId, eTag);
+        if (spooled != null) {
+          logger.info("Using cached original of media {} ({} bytes)", mediaId, spooled.getSize());
+        }
+      }
+      return response;
+    }
+
+    @Override
+    public void close() {
+      if (spooled != null) {
+        spooled.close();
+      }
+    }
+  }
+
+  /**
+   * Render the processed output and every variant from a single decode of the
+   * original, streaming each output to S3 as it is encoded. Variant sets
+   * bypass the result cache: its entries are per output, and a partial hit
+   * would still need the decode.
+   */
+  private void produceVariantSet(Media media, Integer targetWidth, OutputFormat targetFormat, List<Variant> variants,
+      boolean isResize, MediaOriginal original, Span span) throws IOException {
+    var mediaId = media.getMediaId();
+    var outputs = new ArrayList<Variant>(variants.size() + 1);
+    outputs.add(new Variant(targetWidth, targetFormat));
+    outputs.addAll(variants);
+    var primary = imageProcessingService.get().resolve(outputs.get(0));
+    ImageProcessingService.OutputSink sink = output -> output.equals(primary)
+        ? s3Service.openProcessedUpload(mediaId, targetFormat)
+        : s3Service.openVariantUpload(mediaId, output.width(), output.format());
+
+    long start = System.currentTimeMillis();
+    List<StreamedVariant> rendered;
+    try (var input = original.open(media)) {
+      rendered = isResize
+          ? imageProcessingService.get().resizeVariants(input, outputs, sink)
+          : imageProcessingService.get().processVariants(input, outputs, sink);
+    }
+    long duration = System.currentTimeMillis() - start;
+    span.addEvent("image.processing.done", Attributes.of(
+        AttributeKey.longKey("media.processing.duration"), duration,
+        AttributeKey.longKey("media.variants"), (long) variants.size()));
+    logger.info("Processed media with {} variants in {} ms", variants.size(), duration);
+
+    var catalog = rendered.subList(1, rendered.size());
+    for (var output : catalog) {
+      if (output.output().equals(primary)) {
+        // Streamed once to the processed key; the catalog rendition is a copy of it
+        s3Service.copyObject(s3Service.processedKey(mediaId, targetFormat),
+            s3Service.variantKey(mediaId, output.output().width(), output.output().format()));
+      }
+    }
+    completeVariants(mediaId, catalog);
+  }
+
+  /**
+   * Mark the catalog entries of uploaded renditions COMPLETE. Uploads are
+   * committed before this runs, so a COMPLETE entry always points at an
+   * existing key.
+   */
+  private void completeVariants(String mediaId, List<StreamedVariant> rendered) {
+    for (var output : rendered) {
+      var entry = output.variant();
+      var stored = output.output();
+      dynamoDbService.completeVariant(mediaId, entry.width(), entry.format(),
+          s3Service.variantKey(mediaId, stored.width(), stored.format()), output.size());
+    }
+  }
+
+  private void render(InputStream original, Media media, Integer targetWidth, OutputFormat targetFormat,
+      boolean isResize, Span span) throws IOException {
+    var mediaId = media.getMediaId();
+    ImageProcessingService.OutputSink sink = output -> s3Service.openProcessedUpload(mediaId, targetFormat);
+    long start = System.currentTimeMillis();
+    long size = isResize
+        ? imageProcessingService.get().resizeImage(original, targetWidth, targetFormat, sink)
+        : imageProcessingService.get().processImage(original, targetWidth, targetFormat, sink);
+    long duration = System.currentTimeMillis() - start;
+
+    span.addEvent("image.processing.done",
+        Attributes.of(AttributeKey.longKey("media.processing.duration"), duration));
+    logger.info("Processed and uploaded media in {} ms with format: {}, {} bytes", duration,
+        targetFormat.getFormat(), size);
+  }
+
+  private boolean copyCachedResult(ResultCacheService.ResultKey resultKey, String mediaId,
+      OutputFormat targetFormat, Span span) {
+    try {
+      var cachedKey = resultCacheService.get().lookup(resultKey);
+      if (cachedKey.isEmpty()) {
+        return false;
+      }
+      s3Service.copyObject(cachedKey.get(), s3Service.processedKey(mediaId, targetFormat));
+      span.addEvent("result_cache.hit", Attributes.of(AttributeKey.stringKey("result.key"), cachedKey.get()));
+      logger.info("Reused cached result {} for media {}", cachedKey.get(), mediaId);
+      return true;
+    } catch (Exception e) {
+      logger.warn("Result cache lookup failed for media {}, rendering instead: {}", mediaId, e.getMessage());
+      return false;
+    }
+  }
+
+  private void storeResult(ResultCacheService.ResultKey resultKey, String mediaId, OutputFormat targetFormat) {
+    try {
+      resultCacheService.get().store(resultKey, s3Service.processedKey(mediaId, targetFormat));
+    } catch (Exception e) {
+      logger.warn("Failed to store result for media {}: {}", mediaId, e.getMessage());
+    }
+  }
+
+  private void recordContentHash(String mediaId, String contentHash) {
+    try {
+      dynamoDbService.setContentHash(mediaId, contentHash);
+    } catch (Exception e) {
+      logger.warn("Failed to record content hash for media {}: {}", mediaId, e.getMessage());
     }
   }
 }
@@ -0,0 +1,127 @@
+package com.mediaservice.lambda.batch;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Runs the records of a batch concurrently on a bounded pool and reports
+ * which ones failed.
+ *
+ * <p>
+ * Concurrency is the smaller of the configured limit (or the vCPU count) and
+ * the number of records that fit in the heap given a per-record memory
+ * budget, so a large Lambda size gets parallelism without risking an OOM on
+ * several big images at once. The pool is created once and reused across
+ * warm invocations.
+ */
+public class BatchExecutor {
+  private static final Logger logger = LoggerFactory.getLogger(BatchExecutor.class);
+
+  private final int concurrency;
+  private final ExecutorService executor;
+
+  public BatchExecutor(int configuredMaxConcurrency, long memoryPerRecordBytes) {
+    this(resolveConcurrency(configuredMaxConcurrency, memoryPerRecordBytes,
+        Runtime.getRuntime().availableProcessors(), Runtime.getRuntime().maxMemory()));
+  }
+
+  BatchExecutor(int concurrency) {
+    this.concurrency = Math.max(1, concurrency);
+    this.executor = this.concurrency > 1 ? Executors.newFixedThreadPool(this.concurrency, daemonThreads()) : null;
+    logger.info("BatchExecutor initialized with concurrency {}", this.concurrency);
+  }
+
+  public int getConcurrency() {
+    return concurrency;
+  }
+
+  /**
+   * Process every record and return the identifiers of those whose handler threw.
+   *
+   * @param records   Records of the batch
+   * @param idOf      Extracts the identifier reported for a failed record
+   * @param processor Handler for a single record; an exception marks the record failed
+   * @return Identifiers of failed records, in batch order
+   */
+  public <T> List<String> execute(List<T> records, Function<T, String> idOf, Consumer<T> processor) {
+    return executeGroups(records, record -> List.of(idOf.apply(record)), record -> {
+      processor.accept(record);
+      return List.of();
+    });
+  }
+
+  /**
+   * Process groups of records concurrently, the records of one group by a
+   * single call, and return the identifiers of the failed records.
+   *
+   * @param groups    Groups of records
+   * @param idsOf     Identifiers of every record of a group
+   * @param processor Handler for a group, returning the identifiers of its failed records; an
+   *                  exception marks every record of the group failed
+   * @return Identifiers of failed records, in group order
+   */
+  public <G> List<String> executeGroups(List<G> groups, Function<G, List<String>> idsOf,
+      Function<G, List<String>> processor) {
+    var failed = new ArrayList<String>();
+    if (executor == null || groups.size() <= 1) {
+      for (var group : groups) {
+        try {
+          failed.addAll(processor.apply(group));
+        } catch (Exception e) {
+          failed.addAll(idsOf.apply(group));
+        }
+      }
+      return failed;
+    }
+
+    var futures = new ArrayList<Future<List<String>>>(groups.size());
+    for (var group : groups) {
+      futures.add(executor.submit(() -> processor.apply(group)));
+    }
+    for (int i = 0; i < futures.size(); i++) {
+      try {
+        failed.addAll(futures.get(i).get());
+      } catch (ExecutionException e) {
+        failed.addAll(idsOf.apply(groups.get(i)));
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        // Report everything not yet confirmed so SQS redelivers it
+        for (int j = i; j < futures.size(); j++) {
+          failed.addAll(idsOf.apply(groups.get(j)));
+        }
+        break;
+      }
+    }
+    return failed;
+  }
+
+  static int resolveConcurrency(int configuredMax, long memoryPerRecordBytes, int availableProcessors,
+      long maxMemoryBytes) {
+    int limit = configuredMax > 0 ? configuredMax : availableProcessors;
+    if (memoryPerRecordBytes > 0) {
+      long byMemory = Math.max(1, maxMemoryBytes / memoryPerRecordBytes);
+      limit = (int) Math.min(limit, byMemory);
+    }
+    return Math.max(1, limit);
+  }
+
+  private static ThreadFactory daemonThreads() {
+    var counter = new AtomicInteger();
+    return runnable -> {
+      var thread = new Thread(runnable, "batch-worker-" + counter.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    };
+  }
+}
@@ -0,0 +1,54 @@
+package com.mediaservice.lambda.batch;
+
+import com.mediaservice.lambda.image.ImageTooLargeException;
+import com.mediaservice.lambda.image.UndecodableImageException;
+import software.amazon.awssdk.services.s3.model.NoSuchKeyException;
+
+/**
+ * Decides whether a failed record is worth redelivering.
+ *
+ * <p>
+ * A failure is permanent when it depends only on the original: the same
+ * bytes will fail the same way on every attempt, and each attempt downloads
+ * them again. Everything else (throttling, timeouts, 5xx responses, broken
+ * connections, and anything not recognised here) is transient and left to
+ * SQS redelivery, with the redrive policy as the bound.
+ */
+public final class FailureClassifier {
+  /** Why a record failed for good; stored on the media as its error reason. */
+  public enum Reason {
+    /** Dimensions over the pixel limit, or no decode fits the memory budget */
+    IMAGE_TOO_LARGE,
+    /** No reader recognises the format */
+    UNSUPPORTED_FORMAT,
+    /** The reader failed on the content: corrupt or truncated */
+    CORRUPT_IMAGE,
+    /** The original is not in S3 */
+    ORIGINAL_NOT_FOUND,
+    /** Transient failures on every delivery the redrive policy allows; set by the handler, never classified */
+    RETRIES_EXHAUSTED
+  }
+
+  private FailureClassifier() {
+  }
+
+  /**
+   * The permanent reason for {@code failure} or any of its causes, or null if
+   * it is transient.
+   */
+  public static Reason permanentReason(Throwable failure) {
+    for (var cause = failure; cause != null; cause = cause.getCause()) {
+      if (cause instanceof ImageTooLargeException) {
+        return Reason.IMAGE_TOO_LARGE;
+      }
+      if (cause instanceof UndecodableImageException undecodable) {
+        return undecodable.isUnsupportedFormat() ? Reason.UNSUPPORTED_FORMAT : Reason.CORRUPT_IMAGE;
+      }
+      if (cause instanceof NoSuchKeyException) {
+        // Only GETs of the original can miss; outputs are written, and cached results are looked up first
+        return Reason.ORIGINAL_NOT_FOUND;
+      }
+    }
+    return null;
+  }
+}
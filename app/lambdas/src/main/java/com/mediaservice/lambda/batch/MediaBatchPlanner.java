@@ -0,0 +1,114 @@
+package com.mediaservice.lambda.batch;
+
+import com.mediaservice.common.model.EventType;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/**
+ * Groups the events of a batch by media item and works out which of them
+ * still need doing, so every event for one media can share a single download
+ * and decode.
+ *
+ * <p>
+ * Events are taken in batch order. Within one media:
+ * <ul>
+ * <li>a transform (process, resize or variants) followed by a delete is
+ * obsolete: the media is already soft-deleted and its files are about to be
+ * removed;</li>
+ * <li>of the remaining process and resize events only the last one is run.
+ * Both render to the same processed key from a media reset to PENDING, so an
+ * earlier one is superseded by the later request (and, run first, would
+ * complete the media and make the later one skip). A superseded event that
+ * also asked for a variant set is kept as a variant request, so its catalog
+ * is still rendered;</li>
+ * <li>variant requests are kept and can be merged into one render;</li>
+ * <li>deletes are idempotent and run once for all of them.</li>
+ * </ul>
+ */
+public final class MediaBatchPlanner {
+
+  private MediaBatchPlanner() {
+  }
+
+  /**
+   * The events of one media item in a batch.
+   *
+   * @param mediaId    Media the events are for
+   * @param processing Process or resize event to run, or null
+   * @param variants   Variant events to run, in batch order, including superseded
+   *                   process or resize events that carry a variant set
+   * @param deletes    Delete events, answered by a single cleanup
+   * @param obsolete   Events made obsolete by a later event; acknowledged without work
+   */
+  public record MediaWork<T>(String mediaId, T processing, List<T> variants, List<T> deletes, List<T> obsolete) {
+
+    /** Number of separate renders if processing and variants are not merged. */
+    public int renders() {
+      return (processing != null ? 1 : 0) + (variants.isEmpty() ? 0 : 1);
+    }
+  }
+
+  /**
+   * Plan a batch.
+   *
+   * @param records   Records with a media id and a supported event type, in batch order
+   * @param mediaIdOf Extracts the media id of a record
+   * @param typeOf    Extracts the event type of a record
+   * @param hasVariants Whether a process or resize record also requests a variant set
+   * @return One entry per media item, in order of its first record
+   */
+  public static <T> List<MediaWork<T>> plan(List<T> records, Function<T, String> mediaIdOf,
+      Function<T, EventType> typeOf, Predicate<T> hasVariants) {
+    var byMedia = new LinkedHashMap<String, List<T>>();
+    for (var record : records) {
+      byMedia.computeIfAbsent(mediaIdOf.apply(record), id -> new ArrayList<>()).add(record);
+    }
+
+    var plan = new ArrayList<MediaWork<T>>(byMedia.size());
+    for (var entry : byMedia.entrySet()) {
+      var events = entry.getValue();
+      int lastDelete = -1;
+      int lastProcessing = -1;
+      for (int i = 0; i < events.size(); i++) {
+        var type = typeOf.apply(events.get(i));
+        if (type == EventType.DELETE_MEDIA) {
+          lastDelete = i;
+        } else if (type == EventType.PROCESS_MEDIA || type == EventType.RESIZE_MEDIA) {
+          lastProcessing = i;
+        }
+      }
+
+      T processing = null;
+      var variants = new ArrayList<T>();
+      var deletes = new ArrayList<T>();
+      var obsolete = new ArrayList<T>();
+      for (int i = 0; i < events.size(); i++) {
+        var record = events.get(i);
+        var type = typeOf.apply(record);
+        if (type == EventType.DELETE_MEDIA) {
+          deletes.add(record);
+        } else if (i < lastDelete) {
+          obsolete.add(record);
+        } else if (type == EventType.GENERATE_VARIANTS) {
+          variants.add(record);
+        } else if (type == EventType.PROCESS_MEDIA || type == EventType.RESIZE_MEDIA) {
+          if (i == lastProcessing) {
+            processing = record;
+          } else if (hasVariants.test(record)) {
+            variants.add(record);
+          } else {
+            obsolete.add(record);
+          }
+        } else {
+          throw new IllegalArgumentException("Not a media event: " + type);
+        }
+      }
+      plan.add(new MediaWork<>(entry.getKey(), processing, variants, deletes, obsolete));
+    }
+    return plan;
+  }
+}
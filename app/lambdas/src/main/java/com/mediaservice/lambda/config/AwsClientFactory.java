@@ -1,5 +1,9 @@
 package com.mediaservice.lambda.config;
 
+import com.mediaservice.lambda.init.ColdStart;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import software.amazon.awssdk.auth.credentials.AwsCredentialsProvider;
 import software.amazon.awssdk.auth.credentials.DefaultCredentialsProvider;
 import software.amazon.awssdk.regions.Region;
 import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
@@ -8,36 +12,71 @@ import software.amazon.awssdk.services.s3.S3Client;
 import java.net.URI;
 
 public class AwsClientFactory {
+  private static final Logger logger = LoggerFactory.getLogger(AwsClientFactory.class);
 
   private static final LambdaConfig CONFIG = LambdaConfig.getInstance();
 
   private static DynamoDbClient dynamoDbClient;
   private static S3Client s3Client;
 
+  // Clients are captured by services at construction, so restore swaps what
+  // they delegate to instead of the clients themselves
+  private static volatile DefaultCredentialsProvider credentials = DefaultCredentialsProvider.builder().build();
+  private static final AwsCredentialsProvider CREDENTIALS = () -> credentials.resolveCredentials();
+  private static RefreshableHttpClient dynamoDbHttp;
+  private static RefreshableHttpClient s3Http;
+
   public static synchronized DynamoDbClient getDynamoDbClient() {
     if (dynamoDbClient == null) {
-      var builder = DynamoDbClient.builder()
-          .region(Region.of(CONFIG.getAwsRegion()))
-          .credentialsProvider(DefaultCredentialsProvider.create());
-      if (CONFIG.getDynamoDbEndpoint() != null) {
-        builder.endpointOverride(URI.create(CONFIG.getDynamoDbEndpoint()));
-      }
-      dynamoDbClient = builder.build();
+      dynamoDbClient = ColdStart.time("dynamodb_client", () -> {
+        dynamoDbHttp = new RefreshableHttpClient();
+        var builder = DynamoDbClient.builder()
+            .region(Region.of(CONFIG.getAwsRegion()))
+            .credentialsProvider(CREDENTIALS)
+            .httpClient(dynamoDbHttp);
+        if (CONFIG.getDynamoDbEndpoint() != null) {
+          builder.endpointOverride(URI.create(CONFIG.getDynamoDbEndpoint()));
+        }
+        return builder.build();
+      });
     }
     return dynamoDbClient;
   }
 
   public static synchronized S3Client getS3Client() {
     if (s3Client == null) {
-      var builder = S3Client.builder()
-          .region(Region.of(CONFIG.getAwsRegion()))
-          .credentialsProvider(DefaultCredentialsProvider.create())
-          .forcePathStyle(true);
-      if (CONFIG.getS3Endpoint() != null) {
-        builder.endpointOverride(URI.create(CONFIG.getS3Endpoint()));
-      }
-      s3Client = builder.build();
+      s3Client = ColdStart.time("s3_client", () -> {
+        s3Http = new RefreshableHttpClient();
+        var builder = S3Client.builder()
+            .region(Region.of(CONFIG.getAwsRegion()))
+            .credentialsProvider(CREDENTIALS)
+            .httpClient(s3Http)
+            .forcePathStyle(true);
+        if (CONFIG.getS3Endpoint() != null) {
+          builder.endpointOverride(URI.create(CONFIG.getS3Endpoint()));
+        }
+        return builder.build();
+      });
     }
     return s3Client;
   }
+
+  /**
+   * Drop credentials and pooled connections captured in a snapshot. A restored
+   * environment has its own credentials, and sockets opened before the
+   * checkpoint are dead, so the first request would otherwise pay a failed
+   * attempt plus a retry.
+   */
+  public static synchronized void refreshAfterRestore() {
+    var previous = credentials;
+    credentials = DefaultCredentialsProvider.builder().build();
+    previous.close();
+    if (dynamoDbHttp != null) {
+      dynamoDbHttp.refresh();
+    }
+    if (s3Http != null) {
+      s3Http.refresh();
+    }
+    logger.info("Refreshed AWS credentials and connection pools after restore");
+  }
 }
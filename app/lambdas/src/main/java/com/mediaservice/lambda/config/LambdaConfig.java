@@ -1,11 +1,14 @@
 package com.mediaservice.lambda.config;
 
+import com.mediaservice.lambda.init.ColdStart;
 import lombok.Getter;
 
+import java.nio.file.Path;
+
 @Getter
 public final class LambdaConfig {
 
-  private static final LambdaConfig INSTANCE = new LambdaConfig();
+  private static final LambdaConfig INSTANCE = ColdStart.time("config", LambdaConfig::new);
 
   // AWS Configuration
   private final String awsRegion;
@@ -18,12 +21,57 @@ public final class LambdaConfig {
   private final String redisHost;
   private final int redisPort;
 
+  // Batch Processing Configuration
+  private final int processingMaxConcurrency;
+  private final long processingMemoryPerRecordBytes;
+  private final int processingDeadlineReserveMillis;
+  private final int processingEstimateMillisPerMb;
+  private final int processingLeaseSeconds;
+  private final int sqsMaxReceiveCount;
+
+  // S3 Transfer Configuration
+  private final int s3UploadPartSizeBytes;
+  private final long s3RangedDownloadThresholdBytes;
+  private final long s3DownloadRangeSizeBytes;
+  private final int s3DownloadParallelism;
+
+  // Warm-container Original Cache Configuration
+  private final boolean originalCacheEnabled;
+  private final long originalCacheMaxBytes;
+  private final String originalCacheDirectory;
+
+  // Content-addressed Result Cache Configuration
+  private final boolean resultCacheEnabled;
+  private final int resultCacheTtlDays;
+
   // Image Processing Configuration
   private final int defaultWidth;
   private final int minWatermarkWidth;
   private final float watermarkWidthRatio;
+  private final int watermarkCacheSize;
   private final float jpegQuality;
   private final float webpQuality;
+  private final boolean reducedDecodeEnabled;
+  private final int decodeOversampleFactor;
+  private final boolean decodeSpillToDisk;
+  private final String decodeSpillDirectory;
+  private final long tiledThresholdPixels;
+  private final long tiledStripBudgetBytes;
+  private final boolean memoryPlannerEnabled;
+  private final long maxSourcePixels;
+  private final String resampler;
+  private final boolean resamplerVectorEnabled;
+  private final int imageParallelism;
+
+  // SnapStart Configuration
+  private final boolean snapStartPrimingEnabled;
+  private final int snapStartPrimingIterations;
+
+  // Telemetry Export Configuration
+  private final String telemetryExportMode;
+  private final int telemetryFlushIntervalSeconds;
+  private final int telemetryFlushTimeoutMillis;
+  private final int telemetryLowRemainingMillis;
 
   private LambdaConfig() {
     this.awsRegion = getEnv("AWS_REGION", "us-west-2");
@@ -35,11 +83,56 @@ public final class LambdaConfig {
     this.redisHost = getEnv("REDIS_HOST", "localhost");
     this.redisPort = getEnvInt("REDIS_PORT", 6379);
 
+    this.processingMaxConcurrency = getEnvInt("PROCESSING_MAX_CONCURRENCY", 0);
+    this.processingMemoryPerRecordBytes = getEnvInt("PROCESSING_MEMORY_PER_RECORD_MB", 1024) * 1024L * 1024L;
+    this.processingDeadlineReserveMillis = Math.max(0, getEnvInt("PROCESSING_DEADLINE_RESERVE_MS", 2000));
+    this.processingEstimateMillisPerMb = Math.max(0, getEnvInt("PROCESSING_ESTIMATE_MS_PER_MB", 250));
+    // Renewed every third of its length; a shorter lease could lapse over one slow renewal
+    this.processingLeaseSeconds = Math.max(15, getEnvInt("PROCESSING_LEASE_SECONDS", 60));
+    // maxReceiveCount of the queue's redrive policy; 0 if messages are never moved to a dead-letter queue
+    this.sqsMaxReceiveCount = Math.max(0, getEnvInt("SQS_MAX_RECEIVE_COUNT", 5));
+
+    // S3 rejects parts below 5 MB (other than the last)
+    this.s3UploadPartSizeBytes = Math.max(5, getEnvInt("S3_UPLOAD_PART_SIZE_MB", 8)) * 1024 * 1024;
+    this.s3RangedDownloadThresholdBytes = getEnvInt("S3_RANGED_DOWNLOAD_THRESHOLD_MB", 64) * 1024L * 1024L;
+    this.s3DownloadRangeSizeBytes = Math.max(1, getEnvInt("S3_DOWNLOAD_RANGE_SIZE_MB", 16)) * 1024L * 1024L;
+    this.s3DownloadParallelism = Math.max(1, getEnvInt("S3_DOWNLOAD_PARALLELISM", 8));
+
+    this.originalCacheEnabled = getEnvBoolean("ORIGINAL_CACHE_ENABLED", true);
+    this.originalCacheMaxBytes = Math.max(0, getEnvInt("ORIGINAL_CACHE_MAX_MB", 512)) * 1024L * 1024L;
+    this.originalCacheDirectory = getEnv("ORIGINAL_CACHE_DIR",
+        Path.of(System.getProperty("java.io.tmpdir"), "original-cache").toString());
+
+    this.resultCacheEnabled = getEnvBoolean("RESULT_CACHE_ENABLED", true);
+    this.resultCacheTtlDays = getEnvInt("RESULT_CACHE_TTL_DAYS", 30);
+
     this.defaultWidth = getEnvInt("IMAGE_DEFAULT_WIDTH", 500);
     this.minWatermarkWidth = getEnvInt("IMAGE_MIN_WATERMARK_WIDTH", 30);
     this.watermarkWidthRatio = getEnvFloat("IMAGE_WATERMARK_WIDTH_RATIO", 1.0f / 7.0f);
+    this.watermarkCacheSize = getEnvInt("IMAGE_WATERMARK_CACHE_SIZE", 16);
     this.jpegQuality = getEnvFloat("IMAGE_JPEG_QUALITY", 0.9f);
     this.webpQuality = getEnvFloat("IMAGE_WEBP_QUALITY", 0.85f);
+    this.reducedDecodeEnabled = getEnvBoolean("IMAGE_REDUCED_DECODE_ENABLED", true);
+    this.decodeOversampleFactor = Math.max(1, getEnvInt("IMAGE_DECODE_OVERSAMPLE_FACTOR", 2));
+    this.decodeSpillToDisk = getEnvBoolean("IMAGE_DECODE_SPILL_TO_DISK", true);
+    this.decodeSpillDirectory = getEnv("IMAGE_DECODE_SPILL_DIR", System.getProperty("java.io.tmpdir"));
+    this.tiledThresholdPixels = getEnvInt("IMAGE_TILED_THRESHOLD_MEGAPIXELS", 50) * 1_000_000L;
+    this.tiledStripBudgetBytes = getEnvInt("IMAGE_TILED_STRIP_BUDGET_MB", 32) * 1024L * 1024L;
+    this.memoryPlannerEnabled = getEnvBoolean("IMAGE_MEMORY_PLANNER_ENABLED", true);
+    this.maxSourcePixels = getEnvInt("IMAGE_MAX_SOURCE_MEGAPIXELS", 1000) * 1_000_000L;
+    // Convolution resamplers are opt-in: they split the resize into IMAGE_PARALLELISM bands but render differently
+    this.resampler = getEnv("IMAGE_RESAMPLER", "thumbnailator");
+    this.resamplerVectorEnabled = getEnvBoolean("IMAGE_RESAMPLER_VECTOR_ENABLED", true);
+    int parallelism = getEnvInt("IMAGE_PARALLELISM", 0);
+    this.imageParallelism = parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors();
+
+    this.snapStartPrimingEnabled = getEnvBoolean("SNAPSTART_PRIMING_ENABLED", true);
+    this.snapStartPrimingIterations = Math.max(1, getEnvInt("SNAPSTART_PRIMING_ITERATIONS", 3));
+
+    this.telemetryExportMode = getEnv("TELEMETRY_EXPORT_MODE", "async");
+    this.telemetryFlushIntervalSeconds = Math.max(0, getEnvInt("TELEMETRY_FLUSH_INTERVAL_SECONDS", 30));
+    this.telemetryFlushTimeoutMillis = Math.max(1, getEnvInt("TELEMETRY_FLUSH_TIMEOUT_MS", 2000));
+    this.telemetryLowRemainingMillis = Math.max(0, getEnvInt("TELEMETRY_LOW_REMAINING_MS", 1500));
   }
 
   public static LambdaConfig getInstance() {
@@ -63,6 +156,14 @@ public final class LambdaConfig {
     }
   }
 
+  private static boolean getEnvBoolean(String key, boolean defaultValue) {
+    String value = System.getenv(key);
+    if (value == null || value.isEmpty()) {
+      return defaultValue;
+    }
+    return Boolean.parseBoolean(value);
+  }
+
   private static float getEnvFloat(String key, float defaultValue) {
     String value = System.getenv(key);
     if (value == null || value.isEmpty()) {
@@ -1,9 +1,14 @@
 package com.mediaservice.lambda.config;
 
+import com.mediaservice.lambda.init.ColdStart;
 import io.opentelemetry.api.OpenTelemetry;
 import io.opentelemetry.instrumentation.log4j.appender.v2_17.OpenTelemetryAppender;
 import io.opentelemetry.sdk.OpenTelemetrySdk;
 import io.opentelemetry.sdk.autoconfigure.AutoConfiguredOpenTelemetrySdk;
+import io.opentelemetry.sdk.common.CompletableResultCode;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 public class OpenTelemetryInitializer {
   private static volatile OpenTelemetrySdk openTelemetrySdk;
@@ -15,16 +20,41 @@ public class OpenTelemetryInitializer {
     if (openTelemetrySdk != null) {
       return openTelemetrySdk;
     }
-    openTelemetrySdk = AutoConfiguredOpenTelemetrySdk.initialize().getOpenTelemetrySdk();
-    OpenTelemetryAppender.install(openTelemetrySdk);
+    openTelemetrySdk = ColdStart.time("otel", () -> {
+      var sdk = AutoConfiguredOpenTelemetrySdk.builder()
+          .addTracerProviderCustomizer((tracerProvider, config) -> tracerProvider
+              .setIdGenerator(RestoreSafeIdGenerator.INSTANCE))
+          .setResultAsGlobal()
+          .build()
+          .getOpenTelemetrySdk();
+      OpenTelemetryAppender.install(sdk);
+      return sdk;
+    });
     return openTelemetrySdk;
   }
 
-  public static void flush() {
-    if (openTelemetrySdk != null) {
-      openTelemetrySdk.getSdkTracerProvider().forceFlush();
-      openTelemetrySdk.getSdkMeterProvider().forceFlush();
-      openTelemetrySdk.getSdkLoggerProvider().forceFlush();
+  /**
+   * Start exporting everything buffered. Exports run on the SDK's own threads;
+   * join the returned result to wait for them.
+   */
+  public static CompletableResultCode flush() {
+    var sdk = openTelemetrySdk;
+    if (sdk == null) {
+      return CompletableResultCode.ofSuccess();
+    }
+    return CompletableResultCode.ofAll(List.of(
+        sdk.getSdkTracerProvider().forceFlush(),
+        sdk.getSdkMeterProvider().forceFlush(),
+        sdk.getSdkLoggerProvider().forceFlush()));
+  }
+
+  /**
+   * Export what is left and stop the SDK, waiting at most the given time.
+   */
+  public static void shutdown(long timeoutMillis) {
+    var sdk = openTelemetrySdk;
+    if (sdk != null) {
+      sdk.shutdown().join(timeoutMillis, TimeUnit.MILLISECONDS);
     }
   }
 }
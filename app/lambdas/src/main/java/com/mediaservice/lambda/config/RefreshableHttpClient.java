@@ -0,0 +1,39 @@
+package com.mediaservice.lambda.config;
+
+import software.amazon.awssdk.http.ExecutableHttpRequest;
+import software.amazon.awssdk.http.HttpExecuteRequest;
+import software.amazon.awssdk.http.SdkHttpClient;
+import software.amazon.awssdk.http.apache.ApacheHttpClient;
+
+/**
+ * HTTP client whose connection pool can be replaced without rebuilding the SDK
+ * clients that use it. Refresh only when nothing is in flight, e.g. right after a
+ * snapshot restore, since closing the old pool aborts its requests.
+ */
+final class RefreshableHttpClient implements SdkHttpClient {
+  private volatile SdkHttpClient delegate = ApacheHttpClient.builder().build();
+
+  @Override
+  public ExecutableHttpRequest prepareRequest(HttpExecuteRequest request) {
+    return delegate.prepareRequest(request);
+  }
+
+  /**
+   * Start a new, empty pool and close the old one.
+   */
+  synchronized void refresh() {
+    var previous = delegate;
+    delegate = ApacheHttpClient.builder().build();
+    previous.close();
+  }
+
+  @Override
+  public String clientName() {
+    return delegate.clientName();
+  }
+
+  @Override
+  public void close() {
+    delegate.close();
+  }
+}
@@ -0,0 +1,69 @@
+package com.mediaservice.lambda.config;
+
+import io.opentelemetry.api.trace.SpanId;
+import io.opentelemetry.api.trace.TraceId;
+import io.opentelemetry.sdk.trace.IdGenerator;
+
+import java.security.SecureRandom;
+import java.util.SplittableRandom;
+
+/**
+ * Trace and span ID generator that stays unique across snapshot restores.
+ *
+ * <p>
+ * The SDK default draws from {@code ThreadLocalRandom}, whose seeds are part of
+ * the snapshot, so every environment restored from it would emit the same ID
+ * sequence. Here each thread seeds from {@link SecureRandom} and reseeds once
+ * {@link #reseed()} moves the generation on.
+ */
+public final class RestoreSafeIdGenerator implements IdGenerator {
+  public static final RestoreSafeIdGenerator INSTANCE = new RestoreSafeIdGenerator();
+
+  private static final SecureRandom SEEDS = new SecureRandom();
+
+  private volatile int generation;
+  private final ThreadLocal<Seeded> random = new ThreadLocal<>();
+
+  private record Seeded(int generation, SplittableRandom random) {
+  }
+
+  private RestoreSafeIdGenerator() {
+  }
+
+  /**
+   * Invalidate every thread's random state; call after restoring a snapshot.
+   */
+  public void reseed() {
+    generation++;
+  }
+
+  @Override
+  public String generateSpanId() {
+    var random = current();
+    long id;
+    do {
+      id = random.nextLong();
+    } while (id == 0);
+    return SpanId.fromLong(id);
+  }
+
+  @Override
+  public String generateTraceId() {
+    var random = current();
+    long high = random.nextLong();
+    long low;
+    do {
+      low = random.nextLong();
+    } while (low == 0);
+    return TraceId.fromLongs(high, low);
+  }
+
+  private SplittableRandom current() {
+    var seeded = random.get();
+    if (seeded == null || seeded.generation() != generation) {
+      seeded = new Seeded(generation, new SplittableRandom(SEEDS.nextLong()));
+      random.set(seeded);
+    }
+    return seeded.random();
+  }
+}
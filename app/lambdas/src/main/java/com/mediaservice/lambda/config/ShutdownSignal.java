@@ -0,0 +1,101 @@
+package com.mediaservice.lambda.config;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Registers the function as an internal Lambda extension.
+ *
+ * <p>
+ * Lambda only sends the runtime SIGTERM before shutting an environment down,
+ * and so only runs JVM shutdown hooks, when at least one extension is
+ * registered. Internal extensions can only subscribe to INVOKE, so the event
+ * loop discards every event; it exists to keep the registration alive.
+ *
+ * <p>
+ * Skipped outside Lambda and for SnapStart snapshots, whose extension
+ * connections would not survive a restore; there the flush interval bounds
+ * what a shutdown can lose.
+ */
+final class ShutdownSignal {
+  private static final Logger logger = LoggerFactory.getLogger(ShutdownSignal.class);
+  private static final String EXTENSION_NAME = "media-service-telemetry";
+  private static final String EXTENSION_API = "/2020-01-01/extension";
+
+  private ShutdownSignal() {
+  }
+
+  static void registerIfSupported() {
+    var runtimeApi = System.getenv("AWS_LAMBDA_RUNTIME_API");
+    if (runtimeApi == null || "snap-start".equals(System.getenv("AWS_LAMBDA_INITIALIZATION_TYPE"))) {
+      return;
+    }
+    try {
+      var extensionId = register(runtimeApi);
+      var thread = new Thread(() -> eventLoop(runtimeApi, extensionId), "telemetry-extension");
+      thread.setDaemon(true);
+      thread.start();
+    } catch (IOException e) {
+      logger.warn("Extension registration failed, telemetry will not be flushed on shutdown: {}", e.getMessage());
+    }
+  }
+
+  private static String register(String runtimeApi) throws IOException {
+    var connection = open(runtimeApi, "/register");
+    connection.setRequestMethod("POST");
+    connection.setRequestProperty("Lambda-Extension-Name", EXTENSION_NAME);
+    connection.setDoOutput(true);
+    try (OutputStream body = connection.getOutputStream()) {
+      body.write("{\"events\":[\"INVOKE\"]}".getBytes(StandardCharsets.UTF_8));
+    }
+    if (connection.getResponseCode() != 200) {
+      throw new IOException("register returned " + connection.getResponseCode());
+    }
+    var extensionId = connection.getHeaderField("Lambda-Extension-Identifier");
+    drain(connection);
+    return extensionId;
+  }
+
+  /**
+   * Lambda waits for every extension to ask for the next event before an
+   * invocation completes, so this must never stop polling.
+   */
+  private static void eventLoop(String runtimeApi, String extensionId) {
+    while (true) {
+      try {
+        var connection = open(runtimeApi, "/event/next");
+        connection.setRequestProperty("Lambda-Extension-Identifier", extensionId);
+        drain(connection);
+      } catch (IOException e) {
+        logger.debug("Extension event poll failed: {}", e.getMessage());
+        try {
+          Thread.sleep(100);
+        } catch (InterruptedException interrupted) {
+          Thread.currentThread().interrupt();
+          return;
+        }
+      }
+    }
+  }
+
+  private static HttpURLConnection open(String runtimeApi, String path) throws IOException {
+    var connection = (HttpURLConnection) URI.create("http://" + runtimeApi + EXTENSION_API + path).toURL()
+        .openConnection();
+    // The next event arrives whenever the function is next invoked
+    connection.setReadTimeout(0);
+    return connection;
+  }
+
+  private static void drain(HttpURLConnection connection) throws IOException {
+    try (InputStream body = connection.getInputStream()) {
+      body.readAllBytes();
+    }
+  }
+}
@@ -0,0 +1,177 @@
+package com.mediaservice.lambda.config;
+
+import com.amazonaws.services.lambda.runtime.Context;
+import io.opentelemetry.sdk.common.CompletableResultCode;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+/**
+ * Decides when buffered telemetry is exported, so the OTLP round trip stays off
+ * the invocation's critical path.
+ *
+ * <p>
+ * In {@code sync} mode every invocation waits for its telemetry to be exported
+ * before returning. In {@code async} mode (the default) spans, metrics and logs
+ * stay in the SDK's bounded buffers across invocations, and once the flush
+ * interval has passed an export is started in the background at the start of
+ * an invocation, so it overlaps the work rather than following it: Lambda
+ * freezes the environment as soon as the handler returns, and an export
+ * started then would stall until the next invocation. A flush is only forced:
+ * <ul>
+ * <li>when an invocation nears its timeout, because a timed-out environment is
+ * reset along with its buffers</li>
+ * <li>on shutdown, through a JVM shutdown hook that Lambda triggers with
+ * SIGTERM once an extension is registered (see {@link ShutdownSignal})</li>
+ * </ul>
+ */
+public final class TelemetryFlusher {
+  private static final Logger logger = LoggerFactory.getLogger(TelemetryFlusher.class);
+  // Lambda allows about 500 ms between SIGTERM and SIGKILL
+  private static final long SHUTDOWN_TIMEOUT_MILLIS = 400;
+
+  private static final TelemetryFlusher INSTANCE = fromConfig();
+
+  public enum Mode {
+    SYNC, ASYNC;
+
+    static Mode of(String value) {
+      return "sync".equalsIgnoreCase(value) ? SYNC : ASYNC;
+    }
+  }
+
+  /**
+   * Scope of one invocation; closing it applies the export mode.
+   */
+  public interface Invocation extends AutoCloseable {
+    @Override
+    void close();
+  }
+
+  private final Mode mode;
+  private final Supplier<CompletableResultCode> flush;
+  private final long intervalNanos;
+  private final long timeoutMillis;
+  private final long lowRemainingMillis;
+  private final LongSupplier nanoClock;
+  private final ScheduledThreadPoolExecutor executor;
+  private final AtomicBoolean flushing = new AtomicBoolean();
+  private volatile long lastFlushNanos;
+
+  TelemetryFlusher(Mode mode, Supplier<CompletableResultCode> flush, long intervalMillis, long timeoutMillis,
+      long lowRemainingMillis, LongSupplier nanoClock) {
+    this.mode = mode;
+    this.flush = flush;
+    this.intervalNanos = TimeUnit.MILLISECONDS.toNanos(intervalMillis);
+    this.timeoutMillis = timeoutMillis;
+    this.lowRemainingMillis = lowRemainingMillis;
+    this.nanoClock = nanoClock;
+    this.executor = new ScheduledThreadPoolExecutor(1, runnable -> {
+      var thread = new Thread(runnable, "telemetry-flush");
+      thread.setDaemon(true);
+      return thread;
+    });
+    // Deadline flushes are cancelled by almost every invocation
+    this.executor.setRemoveOnCancelPolicy(true);
+    this.lastFlushNanos = nanoClock.getAsLong();
+  }
+
+  private static TelemetryFlusher fromConfig() {
+    var config = LambdaConfig.getInstance();
+    var mode = Mode.of(config.getTelemetryExportMode());
+    var flusher = new TelemetryFlusher(mode, OpenTelemetryInitializer::flush,
+        config.getTelemetryFlushIntervalSeconds() * 1000L, config.getTelemetryFlushTimeoutMillis(),
+        config.getTelemetryLowRemainingMillis(), System::nanoTime);
+    if (mode == Mode.ASYNC) {
+      Runtime.getRuntime().addShutdownHook(new Thread(
+          () -> OpenTelemetryInitializer.shutdown(SHUTDOWN_TIMEOUT_MILLIS), "telemetry-shutdown"));
+      ShutdownSignal.registerIfSupported();
+    }
+    logger.info("Telemetry export mode: {}", mode);
+    return flusher;
+  }
+
+  public static TelemetryFlusher getInstance() {
+    return INSTANCE;
+  }
+
+  public Mode getMode() {
+    return mode;
+  }
+
+  /**
+   * Call at the start of an invocation and close the result when it ends.
+   *
+   * @param context Lambda context, or null outside Lambda (no deadline flush)
+   */
+  public Invocation begin(Context context) {
+    if (mode == Mode.SYNC) {
+      return () -> awaitFlush(context);
+    }
+    if (nanoClock.getAsLong() - lastFlushNanos >= intervalNanos) {
+      flushInBackground();
+    }
+    var deadline = scheduleDeadlineFlush(context);
+    return () -> {
+      if (deadline != null) {
+        deadline.cancel(false);
+      }
+    };
+  }
+
+  /**
+   * Start an export on the flush thread unless one is still running.
+   */
+  void flushInBackground() {
+    if (!flushing.compareAndSet(false, true)) {
+      return;
+    }
+    lastFlushNanos = nanoClock.getAsLong();
+    executor.execute(() -> {
+      try {
+        flush.get().whenComplete(() -> flushing.set(false));
+      } catch (RuntimeException e) {
+        flushing.set(false);
+        logger.warn("Telemetry flush failed: {}", e.getMessage());
+      }
+    });
+  }
+
+  private ScheduledFuture<?> scheduleDeadlineFlush(Context context) {
+    if (context == null) {
+      return null;
+    }
+    long delay = context.getRemainingTimeInMillis() - lowRemainingMillis;
+    if (delay <= 0) {
+      flushInBackground();
+      return null;
+    }
+    return executor.schedule(() -> {
+      logger.warn("Invocation {} is within {} ms of its timeout, flushing telemetry", context.getAwsRequestId(),
+          lowRemainingMillis);
+      flushInBackground();
+    }, delay, TimeUnit.MILLISECONDS);
+  }
+
+  private void awaitFlush(Context context) {
+    long budget = timeoutMillis;
+    if (context != null) {
+      budget = Math.max(0, Math.min(budget, context.getRemainingTimeInMillis() - lowRemainingMillis));
+    }
+    var result = flush.get().join(budget, TimeUnit.MILLISECONDS);
+    if (!result.isDone()) {
+      logger.warn("Telemetry export did not finish within {} ms", budget);
+    }
+    lastFlushNanos = nanoClock.getAsLong();
+  }
+
+  boolean isFlushing() {
+    return flushing.get();
+  }
+}
@@ -0,0 +1,109 @@
+package com.mediaservice.lambda.image;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Splits per-row image work into horizontal bands and runs them on a shared
+ * {@link ForkJoinPool}.
+ *
+ * <p>
+ * One pool sized to the available processors is shared by every image being
+ * processed, so band parallelism and batch-level concurrency
+ * ({@code BatchExecutor}) together never run more CPU-bound threads than
+ * there are cores. Images too small to amortize the fork overhead run inline
+ * on the calling thread.
+ */
+public class BandExecutor {
+  /** Runs every band inline on the calling thread. */
+  public static final BandExecutor SEQUENTIAL = new BandExecutor(1, Integer.MAX_VALUE);
+
+  private static final int DEFAULT_MIN_PIXELS_PER_BAND = 64 * 1024;
+
+  private final int parallelism;
+  private final int minPixelsPerBand;
+  private final ForkJoinPool pool;
+
+  public BandExecutor(int parallelism) {
+    this(parallelism, DEFAULT_MIN_PIXELS_PER_BAND);
+  }
+
+  BandExecutor(int parallelism, int minPixelsPerBand) {
+    this.parallelism = Math.max(1, parallelism);
+    this.minPixelsPerBand = Math.max(1, minPixelsPerBand);
+    this.pool = this.parallelism > 1 ? new ForkJoinPool(this.parallelism, daemonWorkers(), null, false) : null;
+  }
+
+  public int getParallelism() {
+    return parallelism;
+  }
+
+  /**
+   * Run {@code task} over rows {@code [0, rows)}, in parallel bands when the
+   * work is large enough. Each row is passed to exactly one band; bands may
+   * run concurrently, so tasks must only write rows in their own range.
+   *
+   * @param rows     Number of rows to process
+   * @param rowWidth Pixels per row, used to size bands
+   */
+  public void forEachBand(int rows, int rowWidth, Band task) {
+    if (rows <= 0) {
+      return;
+    }
+    int minRows = Math.max(1, (int) Math.ceil((double) minPixelsPerBand / Math.max(1, rowWidth)));
+    // Over-split a little so uneven bands (edges, transparent regions) balance out
+    int bands = (int) Math.min((long) parallelism * 4, rows / minRows);
+    if (pool == null || bands <= 1) {
+      task.run(0, rows);
+      return;
+    }
+    int bandRows = (rows + bands - 1) / bands;
+    pool.invoke(new BandAction(task, 0, rows, bandRows));
+  }
+
+  /**
+   * Work over a contiguous range of rows.
+   */
+  @FunctionalInterface
+  public interface Band {
+    void run(int startRow, int endRow);
+  }
+
+  private static final class BandAction extends RecursiveAction {
+    private final Band task;
+    private final int start;
+    private final int end;
+    private final int bandRows;
+
+    BandAction(Band task, int start, int end, int bandRows) {
+      this.task = task;
+      this.start = start;
+      this.end = end;
+      this.bandRows = bandRows;
+    }
+
+    @Override
+    protected void compute() {
+      if (end - start <= bandRows) {
+        task.run(start, end);
+        return;
+      }
+      int bands = (end - start + bandRows - 1) / bandRows;
+      int mid = start + (bands / 2) * bandRows;
+      invokeAll(new BandAction(task, start, mid, bandRows), new BandAction(task, mid, end, bandRows));
+    }
+  }
+
+  private static ForkJoinPool.ForkJoinWorkerThreadFactory daemonWorkers() {
+    var counter = new AtomicInteger();
+    return pool -> {
+      var thread = new ForkJoinWorkerThread(pool) {
+      };
+      thread.setName("image-band-" + counter.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    };
+  }
+}
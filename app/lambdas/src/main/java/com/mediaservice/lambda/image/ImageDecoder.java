@@ -0,0 +1,220 @@
+package com.mediaservice.lambda.image;
+
+import net.coobird.thumbnailator.util.exif.ExifFilterUtils;
+import net.coobird.thumbnailator.util.exif.ExifUtils;
+import net.coobird.thumbnailator.util.exif.Orientation;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.imageio.IIOException;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.image.BufferedImage;
+import java.io.EOFException;
+import java.io.IOException;
+
+/**
+ * Decodes source images at the lowest resolution that still gives a
+ * high-quality downscale to the requested width.
+ *
+ * <p>
+ * Instead of materializing the full-resolution raster, the decoder asks the
+ * {@link ImageReader} for source subsampling so that only every n-th pixel
+ * of every n-th row is stored. The subsampling step is chosen so the decoded
+ * image stays at least {@code oversampleFactor} times wider than the target,
+ * leaving the final resample to the configured {@link Resampler}. Peak heap
+ * and decode time therefore scale with the output size, not the input size.
+ *
+ * <p>
+ * Sources above {@code tiledThresholdPixels} are handed to a
+ * {@link TiledDownscaler}, which reads them a few rows at a time and returns
+ * the image already at the target size, so even gigapixel originals decode
+ * in bounded heap. Sources it cannot read that way (see
+ * {@link TiledDownscaler#supports}) are never handed to it.
+ *
+ * <p>
+ * With a {@link MemoryPlanner}, the choice between these paths is made from
+ * the header's dimensions and colour model against a heap budget: sources
+ * whose regular decode would not fit are decoded in strips even below the
+ * threshold, and sources that fit no strategy are rejected with an
+ * {@link ImageTooLargeException} before any pixel is read.
+ *
+ * <p>
+ * EXIF orientation is applied after decoding, matching what
+ * {@code Thumbnails.of(InputStream)} does for stream sources.
+ *
+ * <p>
+ * Only the reader's own failures on the source ({@link IIOException},
+ * {@link EOFException}) are reported as an {@link UndecodableImageException};
+ * unchecked exceptions are bugs of the pipeline, not of the image, and pass
+ * through unchanged.
+ */
+public class ImageDecoder {
+  private static final Logger logger = LoggerFactory.getLogger(ImageDecoder.class);
+  private static final int FIRST_IMAGE = 0;
+
+  private final boolean reducedDecodeEnabled;
+  private final int oversampleFactor;
+  private final long tiledThresholdPixels;
+  private final TiledDownscaler tiledDownscaler;
+  private final MemoryPlanner memoryPlanner;
+
+  public ImageDecoder(boolean reducedDecodeEnabled, int oversampleFactor) {
+    this(reducedDecodeEnabled, oversampleFactor, Long.MAX_VALUE, 0);
+  }
+
+  public ImageDecoder(boolean reducedDecodeEnabled, int oversampleFactor, long tiledThresholdPixels,
+      long stripBudgetBytes) {
+    this(reducedDecodeEnabled, oversampleFactor, tiledThresholdPixels, stripBudgetBytes, null);
+  }
+
+  /**
+   * @param tiledThresholdPixels Source pixel count above which strip-based decoding is used
+   * @param stripBudgetBytes     Decoded bytes per strip in tiled mode
+   * @param memoryPlanner        Planner checking each decode against the heap budget, or null to decide on
+   *                             the tiled threshold alone
+   */
+  public ImageDecoder(boolean reducedDecodeEnabled, int oversampleFactor, long tiledThresholdPixels,
+      long stripBudgetBytes, MemoryPlanner memoryPlanner) {
+    this.reducedDecodeEnabled = reducedDecodeEnabled;
+    this.oversampleFactor = Math.max(1, oversampleFactor);
+    this.tiledThresholdPixels = tiledThresholdPixels;
+    this.tiledDownscaler = new TiledDownscaler(stripBudgetBytes);
+    this.memoryPlanner = memoryPlanner;
+  }
+
+  /**
+   * Decode the first image of the stream, subsampled for the given target width.
+   *
+   * @param input       Image stream positioned at the start of the file
+   * @param targetWidth Width of the final output in pixels
+   * @return The decoded, orientation-corrected image and its source dimensions
+   * @throws ImageTooLargeException if the planner finds no strategy that fits the memory budget
+   * @throws UndecodableImageException if no reader supports the stream, or the reader fails on its content
+   * @throws IOException             if decoding fails
+   */
+  public DecodedImage decode(ImageInputStream input, int targetWidth) throws IOException {
+    var readers = ImageIO.getImageReaders(input);
+    if (!readers.hasNext()) {
+      throw new UndecodableImageException("No ImageIO reader available for input", true, null);
+    }
+    var reader = readers.next();
+    try {
+      reader.setInput(input, true, false);
+      int sourceWidth = readSource(() -> reader.getWidth(FIRST_IMAGE));
+      int sourceHeight = readSource(() -> reader.getHeight(FIRST_IMAGE));
+      var orientation = readOrientation(reader);
+      int displayWidth = isTransposed(orientation) ? sourceHeight : sourceWidth;
+      int subsampling = subsamplingFor(displayWidth, targetWidth);
+      boolean tileable = TiledDownscaler.supports(reader, FIRST_IMAGE);
+      boolean tiled = tileable && useTiled(sourceWidth, sourceHeight, displayWidth, targetWidth);
+      if (memoryPlanner != null) {
+        var source = new MemoryPlanner.SourceInfo(sourceWidth, sourceHeight, displayWidth,
+            MemoryPlanner.bytesPerPixel(reader, FIRST_IMAGE), tileable);
+        var plan = memoryPlanner.plan(source, targetWidth, subsampling, tiled);
+        logger.debug("Planned {} decode of {}x{} source at subsampling {}, estimated {} MB", plan.strategy(),
+            sourceWidth, sourceHeight, plan.subsampling(), plan.estimatedBytes() / (1024 * 1024));
+        tiled = plan.strategy() == MemoryPlanner.Strategy.TILED;
+        // Decode at the step the plan's estimate was made for
+        subsampling = plan.subsampling();
+      }
+      int step = subsampling;
+
+      if (tiled) {
+        // Output dimensions in stored orientation; rotation is applied to the small result
+        double scale = (double) targetWidth / displayWidth;
+        int outputWidth = Math.max(1, (int) Math.round(sourceWidth * scale));
+        int outputHeight = Math.max(1, (int) Math.round(sourceHeight * scale));
+        var image = orient(readSource(() -> tiledDownscaler.downscale(reader, FIRST_IMAGE, step, outputWidth,
+            outputHeight)), orientation);
+        logger.debug("Decoded {}x{} source in strips with subsampling {} -> {}x{}", sourceWidth, sourceHeight,
+            step, image.getWidth(), image.getHeight());
+        return new DecodedImage(image, sourceWidth, sourceHeight, step, true);
+      }
+
+      var param = reader.getDefaultReadParam();
+      if (step > 1) {
+        param.setSourceSubsampling(step, step, 0, 0);
+      }
+      var image = orient(readSource(() -> reader.read(FIRST_IMAGE, param)), orientation);
+      logger.debug("Decoded {}x{} source with subsampling {} -> {}x{}", sourceWidth, sourceHeight, step,
+          image.getWidth(), image.getHeight());
+      return new DecodedImage(image, sourceWidth, sourceHeight, step, false);
+    } finally {
+      reader.dispose();
+    }
+  }
+
+  @FunctionalInterface
+  private interface SourceRead<T> {
+    T read() throws IOException;
+  }
+
+  /**
+   * Run a read of the reader on the source, reporting the reader's failure on
+   * corrupt or truncated content as an {@link UndecodableImageException}.
+   */
+  private static <T> T readSource(SourceRead<T> read) throws IOException {
+    try {
+      return read.read();
+    } catch (IIOException | EOFException e) {
+      throw new UndecodableImageException("Cannot decode source: " + e.getMessage(), false, e);
+    }
+  }
+
+  /**
+   * Largest integral subsampling step that keeps the decoded width at or above
+   * {@code targetWidth * oversampleFactor}.
+   */
+  int subsamplingFor(int sourceWidth, int targetWidth) {
+    if (!reducedDecodeEnabled || targetWidth <= 0) {
+      return 1;
+    }
+    return Math.max(1, sourceWidth / (targetWidth * oversampleFactor));
+  }
+
+  /**
+   * Whether a source is large enough to need strip-based decoding. Only
+   * downscales qualify; the tiled path never enlarges.
+   */
+  boolean useTiled(int sourceWidth, int sourceHeight, int displayWidth, int targetWidth) {
+    return (long) sourceWidth * sourceHeight > tiledThresholdPixels && targetWidth > 0
+        && targetWidth < displayWidth;
+  }
+
+  private static BufferedImage orient(BufferedImage image, Orientation orientation) {
+    if (orientation != null && orientation != Orientation.TOP_LEFT) {
+      return ExifFilterUtils.getFilterForOrientation(orientation).apply(image);
+    }
+    return image;
+  }
+
+  private static Orientation readOrientation(ImageReader reader) {
+    try {
+      return ExifUtils.getExifOrientation(reader, FIRST_IMAGE);
+    } catch (IOException | RuntimeException e) {
+      // Malformed metadata should not fail the decode; fall back to stored orientation
+      logger.debug("Unable to read EXIF orientation: {}", e.getMessage());
+      return null;
+    }
+  }
+
+  private static boolean isTransposed(Orientation orientation) {
+    return orientation == Orientation.LEFT_TOP || orientation == Orientation.RIGHT_TOP
+        || orientation == Orientation.RIGHT_BOTTOM || orientation == Orientation.LEFT_BOTTOM;
+  }
+
+  /**
+   * Result of a decode.
+   *
+   * @param image        Decoded image, already rotated per EXIF orientation
+   * @param sourceWidth  Stored width of the source image in pixels
+   * @param sourceHeight Stored height of the source image in pixels
+   * @param subsampling  Subsampling step used (1 = full resolution)
+   * @param tiled        Whether the image was decoded in strips and is already at the target width
+   */
+  public record DecodedImage(BufferedImage image, int sourceWidth, int sourceHeight, int subsampling,
+      boolean tiled) {
+  }
+}
@@ -0,0 +1,123 @@
+package com.mediaservice.lambda.image;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.MemoryCacheImageOutputStream;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Set;
+
+/**
+ * Encodes a finished raster with the ImageIO writer for the output format.
+ *
+ * <p>
+ * Mirrors what Thumbnailator's output sink did: formats without alpha support
+ * (JPEG, BMP) get an RGB copy of images with an alpha channel, and the quality
+ * setting selects the writer's first compression type when none is set.
+ *
+ * <p>
+ * Output goes through an in-memory cache rather than ImageIO's default temp
+ * file. Writers that only move forward (JPEG, BMP) never release that cache
+ * themselves, so it is flushed to {@code output} every {@link #FLUSH_THRESHOLD}
+ * bytes while they write; an upload stream behind {@code output} can then send
+ * parts before the encode finishes. Writers that seek back (PNG) flush what
+ * they are done with on their own.
+ */
+public class ImageEncoder {
+  /** Unflushed bytes a forward-only writer may leave in the cache. */
+  static final int FLUSH_THRESHOLD = 64 * 1024;
+
+  private static final Set<String> FORWARD_ONLY_WRITERS = Set.of(
+      "com.sun.imageio.plugins.jpeg.JPEGImageWriter",
+      "com.sun.imageio.plugins.bmp.BMPImageWriter");
+
+  /**
+   * Write {@code image} to {@code output} as {@code formatName}. The stream is not closed.
+   *
+   * @param quality Compression quality in [0, 1], or null for the writer default
+   */
+  public void encode(BufferedImage image, String formatName, Float quality, OutputStream output)
+      throws IOException {
+    var writers = ImageIO.getImageWritersByFormatName(formatName);
+    if (!writers.hasNext()) {
+      throw new IOException("No ImageIO writer available for format: " + formatName);
+    }
+    var writer = writers.next();
+    var rendered = requiresOpaque(formatName) && image.getColorModel().hasAlpha() ? toRgb(image) : image;
+    try (var imageOutput = new StreamingImageOutputStream(output, isForwardOnly(writer))) {
+      writer.setOutput(imageOutput);
+      var param = writer.getDefaultWriteParam();
+      if (quality != null && param.canWriteCompressed()) {
+        param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+        var types = param.getCompressionTypes();
+        if (param.getCompressionType() == null && types != null && types.length > 0) {
+          param.setCompressionType(types[0]);
+        }
+        param.setCompressionQuality(quality);
+      }
+      writer.write(null, new IIOImage(rendered, null, null), param);
+      imageOutput.flush();
+    } finally {
+      writer.dispose();
+    }
+  }
+
+  private static boolean isForwardOnly(ImageWriter writer) {
+    return FORWARD_ONLY_WRITERS.contains(writer.getClass().getName());
+  }
+
+  private static boolean requiresOpaque(String formatName) {
+    return "jpeg".equalsIgnoreCase(formatName) || "jpg".equalsIgnoreCase(formatName)
+        || "bmp".equalsIgnoreCase(formatName);
+  }
+
+  private static BufferedImage toRgb(BufferedImage image) {
+    var rgb = new BufferedImage(image.getWidth(), image.getHeight(), BufferedImage.TYPE_INT_RGB);
+    var g = rgb.createGraphics();
+    try {
+      g.drawImage(image, 0, 0, null);
+    } finally {
+      g.dispose();
+    }
+    return rgb;
+  }
+
+  /**
+   * Memory-cached output that hands everything written so far to the sink
+   * once {@link #FLUSH_THRESHOLD} bytes are pending. Only safe for writers
+   * that never seek back; a seek below the flushed position fails rather than
+   * corrupting the output.
+   */
+  private static final class StreamingImageOutputStream extends MemoryCacheImageOutputStream {
+    private final boolean forwardOnly;
+
+    StreamingImageOutputStream(OutputStream output, boolean forwardOnly) {
+      super(output);
+      this.forwardOnly = forwardOnly;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+      super.write(b);
+      drain();
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+      super.write(b, off, len);
+      drain();
+    }
+
+    private void drain() throws IOException {
+      if (forwardOnly) {
+        long position = getStreamPosition();
+        if (position - getFlushedPosition() >= FLUSH_THRESHOLD) {
+          flushBefore(position);
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,42 @@
+package com.mediaservice.lambda.image;
+
+import javax.imageio.stream.FileCacheImageInputStream;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.MemoryCacheImageInputStream;
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Wraps a raw byte stream (typically an S3 response body) in an
+ * {@link ImageInputStream} without first copying it into a {@code byte[]}.
+ *
+ * <p>
+ * The stream is backed by a file cache under the configured directory
+ * (Lambda's {@code /tmp}). An image stream has to keep every byte the reader
+ * has not flushed, and the JDK readers (JPEG, PNG and GIF included) never
+ * flush, so an in-memory cache would hold the whole compressed original on
+ * heap. The memory cache is only used when spilling is disabled.
+ */
+public class ImageInputStreamFactory {
+  private final boolean spillToDisk;
+  private final File spillDirectory;
+
+  public ImageInputStreamFactory(boolean spillToDisk, String spillDirectory) {
+    this.spillToDisk = spillToDisk;
+    this.spillDirectory = spillDirectory != null ? new File(spillDirectory) : null;
+  }
+
+  /**
+   * Open an image stream over the given input. Closing the returned stream
+   * does not close {@code input}.
+   */
+  public ImageInputStream open(InputStream input) throws IOException {
+    var buffered = input.markSupported() ? input : new BufferedInputStream(input);
+    if (spillToDisk) {
+      return new FileCacheImageInputStream(buffered, spillDirectory);
+    }
+    return new MemoryCacheImageInputStream(buffered);
+  }
+}
@@ -0,0 +1,15 @@
+package com.mediaservice.lambda.image;
+
+import java.io.IOException;
+
+/**
+ * Thrown before decoding when a source cannot be rendered within the memory
+ * budget by any strategy. The outcome depends only on the source and the
+ * requested width, so retrying the same request cannot succeed.
+ */
+public class ImageTooLargeException extends IOException {
+
+  public ImageTooLargeException(String message) {
+    super(message);
+  }
+}
@@ -0,0 +1,184 @@
+package com.mediaservice.lambda.image;
+
+import javax.imageio.ImageReader;
+import javax.imageio.ImageTypeSpecifier;
+import java.io.IOException;
+
+/**
+ * Chooses how to decode a source from its header alone, so that an image too
+ * large for the heap is downscaled in strips or rejected up front instead of
+ * failing with an {@link OutOfMemoryError} halfway through a decode.
+ *
+ * <p>
+ * The estimate covers the peak of a render: the decoded raster in the
+ * reader's native pixel layout, an {@code INT} copy of it (made by EXIF
+ * rotation or by the resampler's type conversion), the resampler's
+ * intermediate planes, and the first output level together with the next
+ * smaller level and the encoder's working copy. It is deliberately an upper
+ * bound; the regular decode is kept whenever it fits, strips are used when
+ * it does not, and a source is rejected only when neither fits or it exceeds
+ * the configured pixel limit. Strips are never chosen for a source whose
+ * reader decodes the whole frame anyway: it is rejected instead of running
+ * out of memory.
+ */
+public class MemoryPlanner {
+  private static final int INT_BYTES_PER_PIXEL = Integer.BYTES;
+  // Four float channels per pixel in the convolution resamplers' planes
+  private static final int PLANE_BYTES_PER_PIXEL = 4 * Float.BYTES;
+  // First output level, the next smaller level and the encoder's copy
+  private static final int OUTPUT_COPIES = 3;
+
+  private final long budgetBytes;
+  private final long maxSourcePixels;
+  private final long stripBudgetBytes;
+
+  /**
+   * @param budgetBytes      Heap one render may use
+   * @param maxSourcePixels  Sources with more pixels are rejected regardless of strategy
+   * @param stripBudgetBytes Decoded bytes per strip in tiled mode
+   */
+  public MemoryPlanner(long budgetBytes, long maxSourcePixels, long stripBudgetBytes) {
+    this.budgetBytes = budgetBytes;
+    this.maxSourcePixels = maxSourcePixels;
+    this.stripBudgetBytes = Math.max(1, stripBudgetBytes);
+  }
+
+  /**
+   * A planner whose budget is the memory reserved per record, capped at the
+   * maximum heap for functions configured with less memory than that.
+   */
+  public static MemoryPlanner forHeap(long memoryPerRecordBytes, long maxSourcePixels, long stripBudgetBytes) {
+    return new MemoryPlanner(Math.min(memoryPerRecordBytes, Runtime.getRuntime().maxMemory()), maxSourcePixels,
+        stripBudgetBytes);
+  }
+
+  public enum Strategy {
+    /** Regular decode at full resolution. */
+    FULL,
+    /** Regular decode with source subsampling. */
+    SUBSAMPLED,
+    /** Strip-based downscale through {@link TiledDownscaler}. */
+    TILED
+  }
+
+  /**
+   * @param strategy       How to decode
+   * @param subsampling    Subsampling step to decode with
+   * @param estimatedBytes Estimated peak heap of the render with this strategy
+   */
+  public record Plan(Strategy strategy, int subsampling, long estimatedBytes) {
+  }
+
+  /**
+   * What the header tells about the source.
+   *
+   * @param width         Stored width in pixels
+   * @param height        Stored height in pixels
+   * @param displayWidth  Width after EXIF orientation is applied
+   * @param bytesPerPixel Bytes per pixel of the reader's decoded raster
+   * @param tileable      Whether {@link TiledDownscaler} can read the source in bounded heap (see
+   *                      {@link TiledDownscaler#supports})
+   */
+  public record SourceInfo(int width, int height, int displayWidth, int bytesPerPixel, boolean tileable) {
+
+    public SourceInfo(int width, int height, int displayWidth, int bytesPerPixel) {
+      this(width, height, displayWidth, bytesPerPixel, true);
+    }
+
+    long pixels() {
+      return (long) width * height;
+    }
+
+    int displayHeight() {
+      return displayWidth == width ? height : width;
+    }
+  }
+
+  /**
+   * Plan the decode of {@code source} for {@code targetWidth}.
+   *
+   * @param subsampling Step the regular decode would use
+   * @param preferTiled Whether the source is above the tiled threshold, in which case strips are used whenever
+   *                    the operation is a downscale
+   * @throws ImageTooLargeException if the source exceeds the pixel limit or no strategy fits the budget; strips
+   *                                are not a strategy for a source that is not {@code tileable}
+   */
+  public Plan plan(SourceInfo source, int targetWidth, int subsampling, boolean preferTiled)
+      throws ImageTooLargeException {
+    if (source.pixels() > maxSourcePixels) {
+      throw new ImageTooLargeException(String.format("Source %dx%d exceeds the limit of %d megapixels",
+          source.width(), source.height(), maxSourcePixels / 1_000_000));
+    }
+    boolean downscale = targetWidth > 0 && targetWidth < source.displayWidth();
+    long tiledBytes = downscale && source.tileable() ? tiledBytes(source, targetWidth) : Long.MAX_VALUE;
+    if (preferTiled && downscale && tiledBytes <= budgetBytes) {
+      return new Plan(Strategy.TILED, subsampling, tiledBytes);
+    }
+
+    long decodeBytes = decodeBytes(source, targetWidth, subsampling);
+    if (decodeBytes <= budgetBytes) {
+      return new Plan(subsampling > 1 ? Strategy.SUBSAMPLED : Strategy.FULL, subsampling, decodeBytes);
+    }
+    if (tiledBytes <= budgetBytes) {
+      return new Plan(Strategy.TILED, subsampling, tiledBytes);
+    }
+    throw new ImageTooLargeException(String.format(
+        "Rendering %dx%d source at width %d needs about %d MB, more than the %d MB budget",
+        source.width(), source.height(), targetWidth, Math.min(decodeBytes, tiledBytes) / (1024 * 1024),
+        budgetBytes / (1024 * 1024)));
+  }
+
+  /**
+   * Peak heap of a regular decode at {@code subsampling} followed by the render.
+   */
+  long decodeBytes(SourceInfo source, int targetWidth, int subsampling) {
+    long decodedWidth = ceilDiv(source.width(), subsampling);
+    long decodedHeight = ceilDiv(source.height(), subsampling);
+    long decodedPixels = decodedWidth * decodedHeight;
+    long decoded = decodedPixels * source.bytesPerPixel();
+    long copy = decodedPixels * INT_BYTES_PER_PIXEL;
+    // Horizontal pass: every decoded row at the output width
+    long planes = Math.max(decodedWidth, decodedHeight) * Math.max(1, targetWidth) * PLANE_BYTES_PER_PIXEL;
+    return decoded + copy + planes + outputBytes(source, targetWidth);
+  }
+
+  /**
+   * Peak heap of a strip-based downscale followed by the render.
+   */
+  long tiledBytes(SourceInfo source, int targetWidth) {
+    // Strips are budgeted as INT pixels; wider native layouts take proportionally more
+    long strip = stripBudgetBytes * Math.max(source.bytesPerPixel(), INT_BYTES_PER_PIXEL) / INT_BYTES_PER_PIXEL;
+    return strip + outputBytes(source, targetWidth);
+  }
+
+  private static long outputBytes(SourceInfo source, int targetWidth) {
+    long width = Math.max(1, targetWidth);
+    long height = Math.max(1, Math.round((double) source.displayHeight() * width / source.displayWidth()));
+    return OUTPUT_COPIES * width * height * INT_BYTES_PER_PIXEL;
+  }
+
+  /**
+   * Bytes per pixel of the raster {@code reader} decodes into, from the raw
+   * image type or the first supported destination type; four if neither is
+   * known.
+   */
+  public static int bytesPerPixel(ImageReader reader, int imageIndex) {
+    try {
+      ImageTypeSpecifier type = reader.getRawImageType(imageIndex);
+      if (type == null) {
+        var types = reader.getImageTypes(imageIndex);
+        type = types.hasNext() ? types.next() : null;
+      }
+      if (type != null) {
+        return Math.max(1, (type.getColorModel().getPixelSize() + Byte.SIZE - 1) / Byte.SIZE);
+      }
+    } catch (IOException | RuntimeException e) {
+      // Unsupported colour spaces (e.g. CMYK JPEG) have no type; assume a packed INT raster
+    }
+    return INT_BYTES_PER_PIXEL;
+  }
+
+  private static long ceilDiv(int value, int divisor) {
+    return ((long) value + divisor - 1) / divisor;
+  }
+}
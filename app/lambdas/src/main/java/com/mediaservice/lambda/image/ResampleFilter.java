@@ -0,0 +1,57 @@
+package com.mediaservice.lambda.image;
+
+/**
+ * Reconstruction filters for {@link ConvolutionResampler}.
+ */
+public enum ResampleFilter {
+  /** Triangle filter; cheapest, slightly soft. */
+  BILINEAR(1.0) {
+    @Override
+    double weight(double x) {
+      x = Math.abs(x);
+      return x < 1.0 ? 1.0 - x : 0.0;
+    }
+  },
+  /** Catmull-Rom cubic (Keys, a = -0.5); sharper with mild ringing. */
+  BICUBIC(2.0) {
+    @Override
+    double weight(double x) {
+      x = Math.abs(x);
+      if (x < 1.0) {
+        return (1.5 * x - 2.5) * x * x + 1.0;
+      }
+      if (x < 2.0) {
+        return ((-0.5 * x + 2.5) * x - 4.0) * x + 2.0;
+      }
+      return 0.0;
+    }
+  },
+  /** Windowed sinc with three lobes; sharpest, most expensive. */
+  LANCZOS3(3.0) {
+    @Override
+    double weight(double x) {
+      x = Math.abs(x);
+      if (x < 1e-8) {
+        return 1.0;
+      }
+      if (x >= 3.0) {
+        return 0.0;
+      }
+      double px = Math.PI * x;
+      return 3.0 * Math.sin(px) * Math.sin(px / 3.0) / (px * px);
+    }
+  };
+
+  private final double radius;
+
+  ResampleFilter(double radius) {
+    this.radius = radius;
+  }
+
+  /** Support of the filter at scale 1, in source pixels on each side. */
+  double radius() {
+    return radius;
+  }
+
+  abstract double weight(double x);
+}
@@ -0,0 +1,46 @@
+package com.mediaservice.lambda.image;
+
+import org.slf4j.LoggerFactory;
+
+/**
+ * Inner loops of the separable convolution, over one float channel plane.
+ */
+interface ResampleKernels {
+
+  /**
+   * Filter one source row horizontally:
+   * {@code dst[dstOffset + i] = sum_k w[i][k] * src[start[i] + k]}.
+   */
+  void horizontal(float[] src, float[] dst, int dstOffset, ResampleWeights weights);
+
+  /**
+   * Produce output row {@code row} from the horizontally filtered plane
+   * {@code src} (rows of {@code width} samples):
+   * {@code dst[x] = sum_k w[row][k] * src[(start[row] + k) * width + x]}.
+   */
+  void vertical(float[] src, int width, ResampleWeights weights, int row, float[] dst);
+
+  /** Short name for logs and benchmarks. */
+  String name();
+
+  static ResampleKernels scalar() {
+    return new ScalarResampleKernels();
+  }
+
+  /**
+   * Vector API kernels when {@code jdk.incubator.vector} is resolved in the
+   * boot layer (the JVM was started with {@code --add-modules
+   * jdk.incubator.vector}), otherwise the scalar kernels.
+   */
+  static ResampleKernels best() {
+    if (ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent()) {
+      try {
+        return new VectorResampleKernels();
+      } catch (LinkageError e) {
+        LoggerFactory.getLogger(ResampleKernels.class)
+            .warn("Vector API unavailable, using scalar resample kernels: {}", e.toString());
+      }
+    }
+    return scalar();
+  }
+}
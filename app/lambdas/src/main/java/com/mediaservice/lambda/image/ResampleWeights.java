@@ -0,0 +1,66 @@
+package com.mediaservice.lambda.image;
+
+import java.util.Arrays;
+
+/**
+ * Precomputed filter taps for one axis of a resample.
+ *
+ * <p>
+ * Every output sample reads a contiguous window of {@link #taps} source
+ * samples starting at {@code start[i]}; its normalized weights are at
+ * {@code values[i * taps .. i * taps + taps)}. Windows are shifted inward at
+ * the edges and out-of-range taps are folded onto the edge sample, so kernels
+ * never need bounds checks.
+ */
+final class ResampleWeights {
+  final int taps;
+  final int[] start;
+  final float[] values;
+
+  private ResampleWeights(int taps, int[] start, float[] values) {
+    this.taps = taps;
+    this.start = start;
+    this.values = values;
+  }
+
+  static ResampleWeights compute(int sourceLength, int targetLength, ResampleFilter filter) {
+    double scale = (double) sourceLength / targetLength;
+    // Widen the filter when downscaling so it also acts as the low-pass filter
+    double filterScale = Math.max(scale, 1.0);
+    double support = filter.radius() * filterScale;
+    int taps = Math.min(sourceLength, (int) Math.ceil(2 * support) + 1);
+
+    int[] start = new int[targetLength];
+    float[] values = new float[targetLength * taps];
+    double[] weights = new double[taps];
+    for (int i = 0; i < targetLength; i++) {
+      double center = (i + 0.5) * scale - 0.5;
+      int left = (int) Math.ceil(center - support);
+      int right = (int) Math.floor(center + support);
+      int windowStart = Math.min(Math.max(0, left), sourceLength - taps);
+      Arrays.fill(weights, 0.0);
+
+      double sum = 0;
+      for (int j = left; j <= right; j++) {
+        double w = filter.weight((j - center) / filterScale);
+        if (w == 0.0) {
+          continue;
+        }
+        int clamped = Math.min(Math.max(j, 0), sourceLength - 1);
+        weights[clamped - windowStart] += w;
+        sum += w;
+      }
+      if (sum == 0.0) {
+        // Degenerate window; fall back to the nearest sample
+        int nearest = Math.min(Math.max((int) Math.round(center), 0), sourceLength - 1);
+        weights[nearest - windowStart] = 1.0;
+        sum = 1.0;
+      }
+      start[i] = windowStart;
+      for (int k = 0; k < taps; k++) {
+        values[i * taps + k] = (float) (weights[k] / sum);
+      }
+    }
+    return new ResampleWeights(taps, start, values);
+  }
+}
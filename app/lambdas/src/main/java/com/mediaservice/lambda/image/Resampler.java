@@ -0,0 +1,53 @@
+package com.mediaservice.lambda.image;
+
+import java.awt.image.BufferedImage;
+import java.util.Locale;
+
+/**
+ * Scales a decoded image to its output dimensions.
+ *
+ * <p>
+ * {@code thumbnailator} keeps the original Graphics2D-based scaling; the
+ * convolution resamplers ({@code bilinear}, {@code bicubic},
+ * {@code lanczos3}) run separable kernels on float planes, vectorized when
+ * {@code jdk.incubator.vector} is available, and split each pass into row
+ * bands on a {@link BandExecutor}. {@code thumbnailator} is the default;
+ * the convolution resamplers are opt-in, as switching changes every render
+ * and so every result cached under the resampler's name.
+ */
+public interface Resampler {
+  String THUMBNAILATOR = "thumbnailator";
+
+  /**
+   * Scale {@code source} to exactly {@code width} x {@code height}.
+   *
+   * @return A {@code TYPE_INT_ARGB} image if the source has alpha, else {@code TYPE_INT_RGB}
+   */
+  BufferedImage resize(BufferedImage source, int width, int height);
+
+  /** Short name used in configuration and result fingerprints. */
+  String name();
+
+  /**
+   * Resolve a resampler from its configured name.
+   *
+   * @param name          {@code thumbnailator} or a {@link ResampleFilter} name (case-insensitive)
+   * @param vectorEnabled Whether convolution kernels may use the Vector API
+   * @throws IllegalArgumentException for an unknown name
+   */
+  static Resampler forName(String name, boolean vectorEnabled) {
+    return forName(name, vectorEnabled, BandExecutor.SEQUENTIAL);
+  }
+
+  /**
+   * Resolve a resampler that splits its work into bands on {@code bands}.
+   * Thumbnailator's scaling cannot be split and always runs on the calling thread.
+   */
+  static Resampler forName(String name, boolean vectorEnabled, BandExecutor bands) {
+    if (name == null || name.isBlank() || THUMBNAILATOR.equalsIgnoreCase(name)) {
+      return new ThumbnailatorResampler();
+    }
+    var filter = ResampleFilter.valueOf(name.trim().toUpperCase(Locale.ROOT));
+    return new ConvolutionResampler(filter, vectorEnabled, bands);
+  }
+}
@@ -0,0 +1,44 @@
+package com.mediaservice.lambda.image;
+
+import java.util.Arrays;
+
+/**
+ * Plain loops; used when the Vector API module is not available.
+ */
+final class ScalarResampleKernels implements ResampleKernels {
+
+  @Override
+  public void horizontal(float[] src, float[] dst, int dstOffset, ResampleWeights weights) {
+    int taps = weights.taps;
+    float[] w = weights.values;
+    for (int i = 0; i < weights.start.length; i++) {
+      int s = weights.start[i];
+      int wi = i * taps;
+      float sum = 0f;
+      for (int k = 0; k < taps; k++) {
+        sum += w[wi + k] * src[s + k];
+      }
+      dst[dstOffset + i] = sum;
+    }
+  }
+
+  @Override
+  public void vertical(float[] src, int width, ResampleWeights weights, int row, float[] dst) {
+    int taps = weights.taps;
+    int wi = row * taps;
+    int base = weights.start[row] * width;
+    Arrays.fill(dst, 0, width, 0f);
+    for (int k = 0; k < taps; k++) {
+      float wk = weights.values[wi + k];
+      int offset = base + k * width;
+      for (int x = 0; x < width; x++) {
+        dst[x] += wk * src[offset + x];
+      }
+    }
+  }
+
+  @Override
+  public String name() {
+    return "scalar";
+  }
+}
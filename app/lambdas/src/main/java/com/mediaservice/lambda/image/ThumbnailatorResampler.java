@@ -0,0 +1,31 @@
+package com.mediaservice.lambda.image;
+
+import net.coobird.thumbnailator.Thumbnails;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+/**
+ * Thumbnailator's progressive bilinear scaling through Graphics2D.
+ */
+public class ThumbnailatorResampler implements Resampler {
+
+  @Override
+  public BufferedImage resize(BufferedImage source, int width, int height) {
+    try {
+      return Thumbnails.of(source)
+          .size(width, height)
+          .keepAspectRatio(false)
+          .imageType(source.getColorModel().hasAlpha() ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB)
+          .asBufferedImage();
+    } catch (IOException e) {
+      throw new UncheckedIOException("Failed to resize image", e);
+    }
+  }
+
+  @Override
+  public String name() {
+    return THUMBNAILATOR;
+  }
+}
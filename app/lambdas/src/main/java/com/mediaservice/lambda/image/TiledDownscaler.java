@@ -0,0 +1,408 @@
+package com.mediaservice.lambda.image;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.imageio.ImageReader;
+import javax.imageio.metadata.IIOMetadataNode;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.awt.image.ComponentSampleModel;
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferInt;
+import java.awt.image.MultiPixelPackedSampleModel;
+import java.awt.image.Raster;
+import java.awt.image.SampleModel;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Set;
+import java.util.function.IntConsumer;
+
+/**
+ * Downscales very large images a few rows at a time so peak heap is bounded
+ * by the strip budget and the output size, not by the source dimensions.
+ *
+ * <p>
+ * How the source is read depends on its reader (see {@link #accessOf}):
+ * <ul>
+ * <li>Readers that decode rows in order and store them through the
+ * {@link java.awt.image.Raster} API (the JDK's JPEG, PNG and GIF readers)
+ * decode the image once, into a destination that keeps only the two most
+ * recent rows. Each row is area-averaged into the output raster as soon as
+ * the reader moves on to the next one.</li>
+ * <li>Readers that seek to a source region without decoding what precedes
+ * it (the JDK's BMP and TIFF readers) read full-width strips, each at most
+ * {@code stripBudgetBytes} of decoded pixels tall.</li>
+ * <li>Other readers (e.g. WebP) decode the whole frame whatever is asked of
+ * them, and an interlaced PNG or GIF stores its rows out of order, so that
+ * every strip would decode it again from the top. {@link #supports} is false
+ * for these and {@link MemoryPlanner} does not choose strips for them.</li>
+ * </ul>
+ */
+public class TiledDownscaler {
+  private static final Logger logger = LoggerFactory.getLogger(TiledDownscaler.class);
+  private static final int BYTES_PER_PIXEL = Integer.BYTES;
+  private static final Set<String> ROW_READERS = Set.of(
+      "com.sun.imageio.plugins.jpeg.JPEGImageReader",
+      "com.sun.imageio.plugins.png.PNGImageReader",
+      "com.sun.imageio.plugins.gif.GIFImageReader");
+  private static final Set<String> REGION_READERS = Set.of(
+      "com.sun.imageio.plugins.bmp.BMPImageReader",
+      "com.sun.imageio.plugins.tiff.TIFFImageReader");
+  private static final String PNG_METADATA = "javax_imageio_png_1.0";
+  private static final String GIF_METADATA = "javax_imageio_gif_image_1.0";
+
+  /** How a reader can be driven without decoding the full raster. */
+  enum Access {
+    /** One pass, rows handed over as they are decoded */
+    ROWS,
+    /** Full-width source regions, read strip by strip */
+    REGIONS
+  }
+
+  private final long stripBudgetBytes;
+
+  public TiledDownscaler(long stripBudgetBytes) {
+    this.stripBudgetBytes = Math.max(1, stripBudgetBytes);
+  }
+
+  /**
+   * How image {@code imageIndex} of {@code reader} can be downscaled in
+   * bounded heap, or null if it cannot: its reader decodes the whole frame
+   * whatever region is asked for, or it is interlaced, so that every strip
+   * would decode it again from the top.
+   */
+  static Access accessOf(ImageReader reader, int imageIndex) throws IOException {
+    var name = reader.getClass().getName();
+    if (REGION_READERS.contains(name)) {
+      return Access.REGIONS;
+    }
+    return ROW_READERS.contains(name) && !interlaced(reader, imageIndex) ? Access.ROWS : null;
+  }
+
+  /**
+   * Whether image {@code imageIndex} of {@code reader} can be downscaled in bounded heap.
+   */
+  public static boolean supports(ImageReader reader, int imageIndex) throws IOException {
+    return accessOf(reader, imageIndex) != null;
+  }
+
+  private static boolean interlaced(ImageReader reader, int imageIndex) throws IOException {
+    var metadata = reader.getImageMetadata(imageIndex);
+    var format = metadata == null ? null : metadata.getNativeMetadataFormatName();
+    if (format == null) {
+      return false;
+    }
+    var root = (IIOMetadataNode) metadata.getAsTree(format);
+    return switch (format) {
+      case PNG_METADATA -> !"none".equals(attribute(root, "IHDR", "interlaceMethod"));
+      case GIF_METADATA -> "TRUE".equals(attribute(root, "ImageDescriptor", "interlaceFlag"));
+      default -> false;
+    };
+  }
+
+  private static String attribute(IIOMetadataNode root, String element, String attribute) {
+    var nodes = root.getElementsByTagName(element);
+    return nodes.getLength() == 0 ? null : ((IIOMetadataNode) nodes.item(0)).getAttribute(attribute);
+  }
+
+  /**
+   * Downscale image {@code imageIndex} of {@code reader} to {@code outputWidth} x {@code outputHeight}.
+   *
+   * @param step Source subsampling step applied while reading
+   * @return The downscaled image, {@code TYPE_INT_ARGB} if the source has alpha, else {@code TYPE_INT_RGB}
+   */
+  public BufferedImage downscale(ImageReader reader, int imageIndex, int step, int outputWidth, int outputHeight)
+      throws IOException {
+    int sourceWidth = reader.getWidth(imageIndex);
+    int sourceHeight = reader.getHeight(imageIndex);
+    int subWidth = ceilDiv(sourceWidth, step);
+    int subHeight = ceilDiv(sourceHeight, step);
+    boolean hasAlpha = hasAlpha(reader, imageIndex);
+
+    var output = new BufferedImage(outputWidth, outputHeight,
+        hasAlpha ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB);
+    var downscale = new Downscale(output, hasAlpha, subWidth, subHeight);
+    if (accessOf(reader, imageIndex) == Access.ROWS) {
+      if (readRows(reader, imageIndex, step, downscale)) {
+        logger.debug("Downscaled {}x{} source in one pass -> {}x{}", sourceWidth, sourceHeight, outputWidth,
+            outputHeight);
+        return output;
+      }
+      logger.warn("{}x{} source could not be read in one pass; reading it in strips", sourceWidth, sourceHeight);
+      downscale = new Downscale(output, hasAlpha, subWidth, subHeight);
+    }
+
+    int rowsPerStrip = stripRows(subWidth);
+    var param = reader.getDefaultReadParam();
+    param.setSourceSubsampling(step, step, 0, 0);
+    int[] row = new int[subWidth];
+    int strips = 0;
+    for (int subY = 0; subY < subHeight; subY += rowsPerStrip) {
+      int sourceY = subY * step;
+      int regionHeight = Math.min(sourceHeight - sourceY, rowsPerStrip * step);
+      param.setSourceRegion(new Rectangle(0, sourceY, sourceWidth, regionHeight));
+      var strip = reader.read(imageIndex, param);
+      int width = Math.min(strip.getWidth(), subWidth);
+      for (int r = 0; r < strip.getHeight() && subY + r < subHeight; r++) {
+        strip.getRGB(0, r, width, 1, row, 0, subWidth);
+        downscale.add(subY + r, row, width);
+      }
+      strips++;
+    }
+    downscale.finish();
+    logger.debug("Downscaled {}x{} source in {} strips of {} rows -> {}x{}", sourceWidth, sourceHeight, strips,
+        rowsPerStrip, outputWidth, outputHeight);
+    return output;
+  }
+
+  /**
+   * Decode the image once into a {@link RowWindow}, feeding each row to
+   * {@code downscale} as soon as it is complete.
+   *
+   * @return False if the reader stored rows out of order, in which case the
+   *         output is incomplete and the image must be read another way
+   */
+  private static boolean readRows(ImageReader reader, int imageIndex, int step, Downscale downscale)
+      throws IOException {
+    var types = reader.getImageTypes(imageIndex);
+    if (!types.hasNext()) {
+      return false;
+    }
+    var type = types.next();
+    var sampleModel = type.getSampleModel(downscale.subWidth, downscale.subHeight);
+    int stride = scanlineStride(sampleModel);
+    if (stride <= 0 || (long) stride * downscale.subHeight > Integer.MAX_VALUE) {
+      return false;
+    }
+    int[] row = new int[downscale.subWidth];
+    var image = new BufferedImage[1];
+    var window = new RowWindow(sampleModel.getDataType(), sampleModel.getNumDataElements(), stride,
+        downscale.subHeight, y -> {
+          image[0].getRGB(0, y, downscale.subWidth, 1, row, 0, downscale.subWidth);
+          downscale.add(y, row, downscale.subWidth);
+        }, reader::abort);
+    var colorModel = type.getColorModel();
+    image[0] = new BufferedImage(colorModel, Raster.createWritableRaster(sampleModel, window, null),
+        colorModel.isAlphaPremultiplied(), null);
+
+    var param = reader.getDefaultReadParam();
+    param.setSourceSubsampling(step, step, 0, 0);
+    param.setDestination(image[0]);
+    reader.read(imageIndex, param);
+    if (!window.finish()) {
+      return false;
+    }
+    downscale.finish();
+    return true;
+  }
+
+  /**
+   * Elements per row of {@code sampleModel}, or -1 for a layout whose rows
+   * are not contiguous runs of elements.
+   */
+  private static int scanlineStride(SampleModel sampleModel) {
+    if (sampleModel instanceof ComponentSampleModel component) {
+      return component.getScanlineStride();
+    }
+    if (sampleModel instanceof SinglePixelPackedSampleModel packed) {
+      return packed.getScanlineStride();
+    }
+    if (sampleModel instanceof MultiPixelPackedSampleModel packed) {
+      return packed.getScanlineStride();
+    }
+    return -1;
+  }
+
+  /**
+   * Subsampled rows per strip that fit the budget for the given decoded width.
+   */
+  int stripRows(int decodedWidth) {
+    return (int) Math.max(1, Math.min(Integer.MAX_VALUE, stripBudgetBytes / ((long) decodedWidth * BYTES_PER_PIXEL)));
+  }
+
+  private static boolean hasAlpha(ImageReader reader, int imageIndex) throws IOException {
+    var types = reader.getImageTypes(imageIndex);
+    return types.hasNext() && types.next().getColorModel().hasAlpha();
+  }
+
+  private static int ceilDiv(int value, int divisor) {
+    return (value + divisor - 1) / divisor;
+  }
+
+  /**
+   * Maps subsampled source rows and columns onto the output raster and
+   * accumulates them.
+   */
+  private static final class Downscale {
+    private final RowAccumulator accumulator;
+    private final int[] columns;
+    private final int outputHeight;
+    final int subWidth;
+    final int subHeight;
+
+    Downscale(BufferedImage output, boolean hasAlpha, int subWidth, int subHeight) {
+      this.accumulator = new RowAccumulator(output, hasAlpha);
+      this.outputHeight = output.getHeight();
+      this.subWidth = subWidth;
+      this.subHeight = subHeight;
+      this.columns = new int[subWidth];
+      for (int x = 0; x < subWidth; x++) {
+        columns[x] = (int) ((long) x * output.getWidth() / subWidth);
+      }
+    }
+
+    void add(int subY, int[] row, int width) {
+      accumulator.add((int) ((long) subY * outputHeight / subHeight), row, width, columns);
+    }
+
+    void finish() {
+      accumulator.flush();
+    }
+  }
+
+  /**
+   * Data buffer of a destination image that keeps only two rows. The reader
+   * addresses the full image; row {@code y} is stored in slot {@code y % 2}.
+   * The first write to a row means the row written before it is complete,
+   * and it is handed to {@code rowDone} before its slot is reused. Rows must
+   * arrive top-down; any other order (an interlaced image) stops the window,
+   * which then ignores the rest of the writes and calls {@code outOfOrder} so
+   * the reader can abort.
+   */
+  private static final class RowWindow extends DataBuffer {
+    private static final int ROWS = 2;
+
+    private final int[][] slots;
+    private final int rowElements;
+    private final int height;
+    private final IntConsumer rowDone;
+    private final Runnable outOfOrder;
+    private int currentRow = -1;
+    private boolean ordered = true;
+
+    RowWindow(int dataType, int banks, int rowElements, int height, IntConsumer rowDone, Runnable outOfOrder) {
+      super(dataType, rowElements * height, banks);
+      this.rowElements = rowElements;
+      this.height = height;
+      this.rowDone = rowDone;
+      this.outOfOrder = outOfOrder;
+      this.slots = new int[banks][rowElements * ROWS];
+    }
+
+    @Override
+    public int getElem(int bank, int i) {
+      return slots[bank][i % (rowElements * ROWS)];
+    }
+
+    @Override
+    public void setElem(int bank, int i, int value) {
+      int row = i / rowElements;
+      if (row != currentRow) {
+        advance(row);
+      }
+      if (ordered) {
+        slots[bank][i % (rowElements * ROWS)] = value;
+      }
+    }
+
+    private void advance(int row) {
+      if (!ordered) {
+        return;
+      }
+      if (row != currentRow + 1) {
+        ordered = false;
+        outOfOrder.run();
+        return;
+      }
+      if (currentRow >= 0) {
+        rowDone.accept(currentRow);
+      }
+      currentRow = row;
+      for (var slot : slots) {
+        Arrays.fill(slot, (row % ROWS) * rowElements, (row % ROWS + 1) * rowElements, 0);
+      }
+    }
+
+    /**
+     * Hand over the last row.
+     *
+     * @return Whether every row arrived, in order
+     */
+    boolean finish() {
+      if (!ordered || currentRow != height - 1) {
+        return false;
+      }
+      rowDone.accept(currentRow);
+      return true;
+    }
+  }
+
+  /**
+   * Box-filter accumulator for the output row currently being filled. Source
+   * rows arrive top to bottom, so only one output row is open at a time.
+   * Color is accumulated alpha-weighted to avoid dark fringes around
+   * transparent areas.
+   */
+  private static final class RowAccumulator {
+    private final int[] pixels;
+    private final int width;
+    private final boolean hasAlpha;
+    private final long[] alpha;
+    private final long[] red;
+    private final long[] green;
+    private final long[] blue;
+    private final int[] count;
+    private int currentRow = -1;
+
+    RowAccumulator(BufferedImage output, boolean hasAlpha) {
+      this.pixels = ((DataBufferInt) output.getRaster().getDataBuffer()).getData();
+      this.width = output.getWidth();
+      this.hasAlpha = hasAlpha;
+      this.alpha = new long[width];
+      this.red = new long[width];
+      this.green = new long[width];
+      this.blue = new long[width];
+      this.count = new int[width];
+    }
+
+    void add(int outputRow, int[] row, int length, int[] columns) {
+      if (outputRow != currentRow) {
+        flush();
+        currentRow = outputRow;
+      }
+      for (int x = 0; x < length; x++) {
+        int argb = row[x];
+        int dx = columns[x];
+        int a = hasAlpha ? argb >>> 24 : 255;
+        alpha[dx] += a;
+        red[dx] += (long) ((argb >> 16) & 0xFF) * a;
+        green[dx] += (long) ((argb >> 8) & 0xFF) * a;
+        blue[dx] += (long) (argb & 0xFF) * a;
+        count[dx]++;
+      }
+    }
+
+    void flush() {
+      if (currentRow < 0) {
+        return;
+      }
+      int base = currentRow * width;
+      for (int x = 0; x < width; x++) {
+        int n = count[x];
+        if (n > 0) {
+          long a = alpha[x];
+          int r = a == 0 ? 0 : (int) ((red[x] + a / 2) / a);
+          int g = a == 0 ? 0 : (int) ((green[x] + a / 2) / a);
+          int b = a == 0 ? 0 : (int) ((blue[x] + a / 2) / a);
+          int outAlpha = hasAlpha ? (int) ((a + n / 2) / n) : 0;
+          pixels[base + x] = (outAlpha << 24) | (r << 16) | (g << 8) | b;
+        }
+        alpha[x] = red[x] = green[x] = blue[x] = 0;
+        count[x] = 0;
+      }
+      currentRow = -1;
+    }
+  }
+}
@@ -0,0 +1,27 @@
+package com.mediaservice.lambda.image;
+
+import java.io.IOException;
+
+/**
+ * Thrown when the source itself cannot be decoded: no reader recognises it,
+ * or the reader fails on its content. Failures of the stream the source is
+ * read from are not wrapped in this, so a broken connection is never taken
+ * for a broken image. Like {@link ImageTooLargeException}, retrying the same
+ * source cannot succeed.
+ */
+public class UndecodableImageException extends IOException {
+  private final boolean unsupportedFormat;
+
+  public UndecodableImageException(String message, boolean unsupportedFormat, Throwable cause) {
+    super(message, cause);
+    this.unsupportedFormat = unsupportedFormat;
+  }
+
+  /**
+   * Whether no reader recognised the format, rather than the content being
+   * corrupt or truncated.
+   */
+  public boolean isUnsupportedFormat() {
+    return unsupportedFormat;
+  }
+}
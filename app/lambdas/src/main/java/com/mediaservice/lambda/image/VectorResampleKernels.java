@@ -0,0 +1,74 @@
+package com.mediaservice.lambda.image;
+
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * SIMD kernels on {@code jdk.incubator.vector}.
+ *
+ * <p>
+ * The horizontal pass is a dot product of each tap window with its weights;
+ * the vertical pass broadcasts one weight per tap and accumulates whole
+ * output rows with fused multiply-adds, which is where most of the work is.
+ * Only loaded through {@link ResampleKernels#best()} after checking that the
+ * incubator module is present.
+ */
+final class VectorResampleKernels implements ResampleKernels {
+  private static final VectorSpecies<Float> SPECIES = FloatVector.SPECIES_PREFERRED;
+
+  @Override
+  public void horizontal(float[] src, float[] dst, int dstOffset, ResampleWeights weights) {
+    int taps = weights.taps;
+    float[] w = weights.values;
+    int lanes = SPECIES.length();
+    int vectorTaps = taps - taps % lanes;
+    for (int i = 0; i < weights.start.length; i++) {
+      int s = weights.start[i];
+      int wi = i * taps;
+      int k = 0;
+      float sum = 0f;
+      if (vectorTaps > 0) {
+        var acc = FloatVector.zero(SPECIES);
+        for (; k < vectorTaps; k += lanes) {
+          acc = FloatVector.fromArray(SPECIES, src, s + k).fma(FloatVector.fromArray(SPECIES, w, wi + k), acc);
+        }
+        sum = acc.reduceLanes(VectorOperators.ADD);
+      }
+      for (; k < taps; k++) {
+        sum += w[wi + k] * src[s + k];
+      }
+      dst[dstOffset + i] = sum;
+    }
+  }
+
+  @Override
+  public void vertical(float[] src, int width, ResampleWeights weights, int row, float[] dst) {
+    int taps = weights.taps;
+    int wi = row * taps;
+    int base = weights.start[row] * width;
+    float[] w = weights.values;
+    int lanes = SPECIES.length();
+    int x = 0;
+    for (int upper = SPECIES.loopBound(width); x < upper; x += lanes) {
+      var acc = FloatVector.zero(SPECIES);
+      for (int k = 0; k < taps; k++) {
+        acc = FloatVector.fromArray(SPECIES, src, base + k * width + x)
+            .fma(FloatVector.broadcast(SPECIES, w[wi + k]), acc);
+      }
+      acc.intoArray(dst, x);
+    }
+    for (; x < width; x++) {
+      float sum = 0f;
+      for (int k = 0; k < taps; k++) {
+        sum += w[wi + k] * src[base + k * width + x];
+      }
+      dst[x] = sum;
+    }
+  }
+
+  @Override
+  public String name() {
+    return "vector-" + SPECIES.vectorBitSize();
+  }
+}
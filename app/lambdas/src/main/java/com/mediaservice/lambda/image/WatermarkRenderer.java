@@ -0,0 +1,175 @@
+package com.mediaservice.lambda.image;
+
+import net.coobird.thumbnailator.Thumbnails;
+import net.coobird.thumbnailator.geometry.Position;
+
+import java.awt.AlphaComposite;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.awt.image.WritableRaster;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Scales and composites the service watermark onto processed images.
+ *
+ * <p>
+ * Target widths come from a small set (the {@code media.width} presets), so
+ * each scaled watermark is rendered once, converted to premultiplied ARGB and
+ * kept in a bounded LRU cache keyed by watermark width. Compositing blends the
+ * cached raster straight into the destination's {@code int[]} pixel buffer
+ * for {@code TYPE_INT_RGB}/{@code TYPE_INT_ARGB} images, split into row bands
+ * on the {@link BandExecutor}, and falls back to {@link java.awt.Graphics2D}
+ * source-over for any other image type.
+ */
+public class WatermarkRenderer {
+  private final BufferedImage watermark;
+  private final Map<Integer, BufferedImage> cache;
+  private final BandExecutor bands;
+
+  public WatermarkRenderer(BufferedImage watermark, int maxCachedWidths) {
+    this(watermark, maxCachedWidths, BandExecutor.SEQUENTIAL);
+  }
+
+  public WatermarkRenderer(BufferedImage watermark, int maxCachedWidths, BandExecutor bands) {
+    this.watermark = watermark;
+    this.bands = bands;
+    int capacity = Math.max(1, maxCachedWidths);
+    this.cache = new LinkedHashMap<>(16, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<Integer, BufferedImage> eldest) {
+        return size() > capacity;
+      }
+    };
+  }
+
+  /**
+   * Composite the watermark, scaled to {@code watermarkWidth}, onto {@code target} in place.
+   */
+  public void apply(BufferedImage target, int watermarkWidth, Position position) {
+    var mark = scaled(watermarkWidth);
+    var origin = position.calculate(target.getWidth(), target.getHeight(), mark.getWidth(), mark.getHeight(),
+        0, 0, 0, 0);
+    int type = target.getType();
+    if ((type == BufferedImage.TYPE_INT_RGB || type == BufferedImage.TYPE_INT_ARGB)
+        && target.getRaster().getSampleModel() instanceof SinglePixelPackedSampleModel) {
+      blend(mark, target.getRaster(), origin.x, origin.y, type == BufferedImage.TYPE_INT_ARGB);
+    } else {
+      var g = target.createGraphics();
+      try {
+        g.setComposite(AlphaComposite.SrcOver);
+        g.drawImage(mark, origin.x, origin.y, null);
+      } finally {
+        g.dispose();
+      }
+    }
+  }
+
+  /**
+   * Return the premultiplied watermark scaled to the given width, rendering it on first use.
+   */
+  BufferedImage scaled(int watermarkWidth) {
+    synchronized (cache) {
+      var cached = cache.get(watermarkWidth);
+      if (cached != null) {
+        return cached;
+      }
+    }
+    var rendered = render(watermarkWidth);
+    synchronized (cache) {
+      // Another thread may have rendered the same width meanwhile; either copy is equivalent
+      cache.putIfAbsent(watermarkWidth, rendered);
+      return cache.get(watermarkWidth);
+    }
+  }
+
+  int cachedWidths() {
+    synchronized (cache) {
+      return cache.size();
+    }
+  }
+
+  private BufferedImage render(int watermarkWidth) {
+    try {
+      return Thumbnails.of(watermark)
+          .width(watermarkWidth)
+          .imageType(BufferedImage.TYPE_INT_ARGB_PRE)
+          .asBufferedImage();
+    } catch (IOException e) {
+      throw new UncheckedIOException("Failed to scale watermark to width " + watermarkWidth, e);
+    }
+  }
+
+  /**
+   * Source-over blend of a premultiplied watermark into an int-packed raster.
+   */
+  private void blend(BufferedImage mark, WritableRaster raster, int originX, int originY,
+      boolean destHasAlpha) {
+    int x0 = Math.max(0, originX);
+    int y0 = Math.max(0, originY);
+    int x1 = Math.min(raster.getWidth(), originX + mark.getWidth());
+    int y1 = Math.min(raster.getHeight(), originY + mark.getHeight());
+    if (x0 >= x1 || y0 >= y1) {
+      return;
+    }
+
+    int[] src = ((DataBufferInt) mark.getRaster().getDataBuffer()).getData();
+    int srcStride = ((SinglePixelPackedSampleModel) mark.getRaster().getSampleModel()).getScanlineStride();
+    var dstBuffer = (DataBufferInt) raster.getDataBuffer();
+    int[] dst = dstBuffer.getData();
+    int dstStride = ((SinglePixelPackedSampleModel) raster.getSampleModel()).getScanlineStride();
+    int dstBase = dstBuffer.getOffset() - raster.getSampleModelTranslateY() * dstStride
+        - raster.getSampleModelTranslateX();
+
+    bands.forEachBand(y1 - y0, x1 - x0, (start, end) -> {
+      for (int y = y0 + start; y < y0 + end; y++) {
+        int srcRow = (y - originY) * srcStride - originX;
+        int dstRow = dstBase + y * dstStride;
+        for (int x = x0; x < x1; x++) {
+          int s = src[srcRow + x];
+          int sa = s >>> 24;
+          if (sa == 0) {
+            continue;
+          }
+          int di = dstRow + x;
+          if (sa == 255) {
+            dst[di] = destHasAlpha ? s : (s & 0x00FFFFFF);
+            continue;
+          }
+          dst[di] = destHasAlpha ? overStraight(s, sa, dst[di]) : overOpaque(s, sa, dst[di]);
+        }
+      }
+    });
+  }
+
+  /** Premultiplied source over an opaque destination. */
+  private static int overOpaque(int s, int sa, int d) {
+    int inv = 255 - sa;
+    int r = ((s >> 16) & 0xFF) + div255(((d >> 16) & 0xFF) * inv);
+    int g = ((s >> 8) & 0xFF) + div255(((d >> 8) & 0xFF) * inv);
+    int b = (s & 0xFF) + div255((d & 0xFF) * inv);
+    return (r << 16) | (g << 8) | b;
+  }
+
+  /** Premultiplied source over a non-premultiplied ARGB destination. */
+  private static int overStraight(int s, int sa, int d) {
+    int da = d >>> 24;
+    int inv = 255 - sa;
+    int dw = div255(da * inv);
+    int oa = sa + dw;
+    if (oa == 0) {
+      return 0;
+    }
+    int r = (((s >> 16) & 0xFF) * 255 + ((d >> 16) & 0xFF) * dw + oa / 2) / oa;
+    int g = (((s >> 8) & 0xFF) * 255 + ((d >> 8) & 0xFF) * dw + oa / 2) / oa;
+    int b = ((s & 0xFF) * 255 + (d & 0xFF) * dw + oa / 2) / oa;
+    return (oa << 24) | (Math.min(r, 255) << 16) | (Math.min(g, 255) << 8) | Math.min(b, 255);
+  }
+
+  private static int div255(int v) {
+    return (v + 128 + ((v + 128) >> 8)) >> 8;
+  }
+}
@@ -0,0 +1,111 @@
+package com.mediaservice.lambda.init;
+
+import io.opentelemetry.api.common.AttributeKey;
+import io.opentelemetry.api.common.Attributes;
+import io.opentelemetry.api.metrics.DoubleHistogram;
+import io.opentelemetry.api.trace.SpanKind;
+import io.opentelemetry.api.trace.Tracer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+
+/**
+ * Records how long each initialization phase takes (config load, OTel, AWS
+ * clients, ImageIO plugin scan, watermark load) and exports the durations once
+ * telemetry is available.
+ *
+ * <p>
+ * Phases can run before OpenTelemetry exists, so they are buffered and
+ * drained by {@link #export} on the next invocation. Lazily initialized
+ * components record their phase when first used, so a phase shows up on the
+ * invocation that paid for it rather than only on the first one.
+ */
+public final class ColdStart {
+  private static final Logger logger = LoggerFactory.getLogger(ColdStart.class);
+
+  private static final AttributeKey<String> PHASE = AttributeKey.stringKey("init.phase");
+  private static final AttributeKey<String> HANDLER = AttributeKey.stringKey("faas.handler");
+  private static final AttributeKey<Boolean> COLD_START = AttributeKey.booleanKey("faas.coldstart");
+
+  private static final Queue<Phase> pending = new ConcurrentLinkedQueue<>();
+  private static final List<Phase> recorded = new CopyOnWriteArrayList<>();
+  private static final AtomicBoolean invoked = new AtomicBoolean();
+
+  /**
+   * @param startEpochNanos Wall-clock start, for span event timestamps
+   */
+  public record Phase(String name, long startEpochNanos, long durationNanos) {
+    public double durationMillis() {
+      return durationNanos / 1_000_000.0;
+    }
+  }
+
+  private ColdStart() {
+  }
+
+  public static <T> T time(String phase, Supplier<T> init) {
+    long startEpochNanos = TimeUnit.MILLISECONDS.toNanos(System.currentTimeMillis());
+    long start = System.nanoTime();
+    try {
+      return init.get();
+    } finally {
+      var recordedPhase = new Phase(phase, startEpochNanos, System.nanoTime() - start);
+      pending.add(recordedPhase);
+      recorded.add(recordedPhase);
+      logger.info("Init phase {} took {} ms", phase, String.format("%.1f", recordedPhase.durationMillis()));
+    }
+  }
+
+  public static void run(String phase, Runnable init) {
+    time(phase, () -> {
+      init.run();
+      return null;
+    });
+  }
+
+  /**
+   * Every phase recorded in this JVM, in completion order.
+   */
+  public static List<Phase> phases() {
+    return List.copyOf(recorded);
+  }
+
+  /**
+   * Export phases recorded since the last call as histogram samples and as
+   * events on an {@code init} span covering them. Cheap when nothing is
+   * pending, so handlers call it on every invocation.
+   */
+  public static void export(Tracer tracer, DoubleHistogram durations, String handler) {
+    boolean coldStart = invoked.compareAndSet(false, true);
+    if (pending.isEmpty()) {
+      return;
+    }
+    var phases = new ArrayList<Phase>();
+    for (Phase phase; (phase = pending.poll()) != null;) {
+      phases.add(phase);
+    }
+
+    long start = phases.stream().mapToLong(Phase::startEpochNanos).min().orElseThrow();
+    long end = phases.stream().mapToLong(p -> p.startEpochNanos() + p.durationNanos()).max().orElseThrow();
+    var span = tracer.spanBuilder("init")
+        .setSpanKind(SpanKind.INTERNAL)
+        .setStartTimestamp(start, TimeUnit.NANOSECONDS)
+        .setAttribute(HANDLER, handler)
+        .setAttribute(COLD_START, coldStart)
+        .startSpan();
+    for (var phase : phases) {
+      durations.record(phase.durationMillis(), Attributes.of(PHASE, phase.name(), HANDLER, handler));
+      span.addEvent(phase.name(), Attributes.of(AttributeKey.doubleKey("init.duration_ms"), phase.durationMillis()),
+          phase.startEpochNanos() + phase.durationNanos(), TimeUnit.NANOSECONDS);
+    }
+    span.end(end, TimeUnit.NANOSECONDS);
+  }
+}
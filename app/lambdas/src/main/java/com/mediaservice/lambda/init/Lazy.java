@@ -0,0 +1,48 @@
+package com.mediaservice.lambda.init;
+
+import java.util.function.Supplier;
+
+/**
+ * Thread-safe memoizing supplier, so components an event type does not use
+ * are never built in an environment that only sees that event type.
+ */
+public final class Lazy<T> implements Supplier<T> {
+  private Supplier<T> factory;
+  private volatile T value;
+
+  private Lazy(Supplier<T> factory, T value) {
+    this.factory = factory;
+    this.value = value;
+  }
+
+  public static <T> Lazy<T> of(Supplier<T> factory) {
+    return new Lazy<>(factory, null);
+  }
+
+  /**
+   * An already initialized instance, e.g. a stub injected by a test.
+   */
+  public static <T> Lazy<T> value(T value) {
+    return new Lazy<>(null, value);
+  }
+
+  @Override
+  public T get() {
+    var result = value;
+    if (result == null) {
+      synchronized (this) {
+        result = value;
+        if (result == null) {
+          result = factory.get();
+          value = result;
+          factory = null;
+        }
+      }
+    }
+    return result;
+  }
+
+  public boolean isInitialized() {
+    return value != null;
+  }
+}
@@ -0,0 +1,47 @@
+package com.mediaservice.lambda.service;
+
+import java.io.ByteArrayOutputStream;
+import java.util.function.Consumer;
+
+/**
+ * {@link UploadOutputStream} that collects the output in memory and hands
+ * the bytes to a consumer on close.
+ */
+final class BufferedUploadOutputStream extends UploadOutputStream {
+  private final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+  private final Consumer<byte[]> onClose;
+  private boolean closed;
+
+  BufferedUploadOutputStream(Consumer<byte[]> onClose) {
+    this.onClose = onClose;
+  }
+
+  @Override
+  public void write(int b) {
+    buffer.write(b);
+  }
+
+  @Override
+  public void write(byte[] b, int off, int len) {
+    buffer.write(b, off, len);
+  }
+
+  @Override
+  public void abort() {
+    closed = true;
+    buffer.reset();
+  }
+
+  @Override
+  public long getBytesWritten() {
+    return buffer.size();
+  }
+
+  @Override
+  public void close() {
+    if (!closed) {
+      closed = true;
+      onClose.accept(buffer.toByteArray());
+    }
+  }
+}
@@ -0,0 +1,46 @@
+package com.mediaservice.lambda.service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+
+/**
+ * Computes the SHA-256 content hash of an original while it is read, so the
+ * hash comes with the render instead of a separate pass over a spooled copy.
+ *
+ * <p>
+ * Mark and reset are not supported, since re-read bytes would be hashed
+ * twice; readers that need them buffer on top of this stream.
+ */
+public final class ContentHashInputStream extends DigestInputStream {
+
+  public ContentHashInputStream(InputStream input) {
+    super(input, sha256Digest());
+  }
+
+  @Override
+  public boolean markSupported() {
+    return false;
+  }
+
+  /**
+   * Read whatever the consumer left unread and return the hash of the whole
+   * stream. The stream is not closed.
+   */
+  public String finish() throws IOException {
+    transferTo(OutputStream.nullOutputStream());
+    return HexFormat.of().formatHex(getMessageDigest().digest());
+  }
+
+  private static MessageDigest sha256Digest() {
+    try {
+      return MessageDigest.getInstance("SHA-256");
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException("SHA-256 not available", e);
+    }
+  }
+}
@@ -0,0 +1,33 @@
+package com.mediaservice.lambda.service;
+
+/**
+ * {@link UploadOutputStream} that only counts what is written, for renders
+ * whose output is not kept (warm-up runs, benchmarks).
+ */
+public final class DiscardingUploadOutputStream extends UploadOutputStream {
+  private long bytesWritten;
+
+  @Override
+  public void write(int b) {
+    bytesWritten++;
+  }
+
+  @Override
+  public void write(byte[] b, int off, int len) {
+    bytesWritten += len;
+  }
+
+  @Override
+  public void abort() {
+    bytesWritten = 0;
+  }
+
+  @Override
+  public long getBytesWritten() {
+    return bytesWritten;
+  }
+
+  @Override
+  public void close() {
+  }
+}
@@ -5,26 +5,67 @@ import com.mediaservice.lambda.config.LambdaConfig;
 import com.mediaservice.common.constants.StorageConstants;
 import com.mediaservice.common.model.Media;
 import com.mediaservice.common.model.MediaStatus;
+import com.mediaservice.common.model.MediaVariant;
 import com.mediaservice.common.model.OutputFormat;
 import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
 import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.ConditionalCheckFailedException;
 import software.amazon.awssdk.services.dynamodb.model.DeleteItemRequest;
 import software.amazon.awssdk.services.dynamodb.model.GetItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.QueryRequest;
 import software.amazon.awssdk.services.dynamodb.model.ReturnValue;
+import software.amazon.awssdk.services.dynamodb.model.ReturnValuesOnConditionCheckFailure;
 import software.amazon.awssdk.services.dynamodb.model.UpdateItemRequest;
 
+import java.time.Duration;
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Optional;
 
 public class DynamoDbService {
+  private static final Map<String, String> LEASE_NAMES = Map.of(
+      "#status", "status",
+      "#errorReason", StorageConstants.DYNAMO_ATTR_ERROR_REASON,
+      "#leaseOwner", StorageConstants.DYNAMO_ATTR_LEASE_OWNER,
+      "#leaseExpiresAt", StorageConstants.DYNAMO_ATTR_LEASE_EXPIRES_AT,
+      "#leaseToken", StorageConstants.DYNAMO_ATTR_LEASE_TOKEN);
+
+  /**
+   * The right to move a media item out of PROCESSING.
+   *
+   * @param owner           Who holds it, for logs only
+   * @param token           Fencing token, incremented by every acquisition; writes carrying an older one are refused
+   * @param expiresAtMillis Epoch millis after which another consumer may take it over
+   */
+  public record Lease(String owner, long token, long expiresAtMillis) {
+  }
+
+  /**
+   * Outcome of {@link #acquireLease}.
+   *
+   * @param media    The media item, as updated when acquired and as found otherwise
+   * @param lease    The lease taken when acquired; otherwise the one in place, null if none
+   * @param acquired Whether the caller now holds the lease
+   */
+  public record LeaseAttempt(Media media, Lease lease, boolean acquired) {
+  }
+
   private final DynamoDbClient client;
   private final String tableName;
 
   public DynamoDbService() {
-    this.client = AwsClientFactory.getDynamoDbClient();
-    this.tableName = LambdaConfig.getInstance().getTableName();
+    this(AwsClientFactory.getDynamoDbClient(), LambdaConfig.getInstance().getTableName());
+  }
+
+  /**
+   * Constructor for testing with custom client.
+   */
+  DynamoDbService(DynamoDbClient client, String tableName) {
+    this.client = client;
+    this.tableName = tableName;
   }
 
   public Optional<Media> setMediaStatusConditionally(String mediaId, MediaStatus newStatus,
@@ -41,13 +82,15 @@ public class DynamoDbService {
     if (width != null) {
       values.put(":width", n(width));
     }
+    // Any transition made here leaves ERROR behind, so a reason from an earlier attempt no longer applies
     return toMedia(mediaId, client.updateItem(UpdateItemRequest.builder()
         .tableName(tableName)
         .key(keyFor(mediaId))
-        .updateExpression(
-            "SET #status = :newStatus, updatedAt = :updatedAt" + (width != null ? ", width = :width" : ""))
+        .updateExpression("SET #status = :newStatus, updatedAt = :updatedAt"
+            + (width != null ? ", width = :width" : "") + " REMOVE #errorReason")
         .conditionExpression("#status = :expectedStatus")
-        .expressionAttributeNames(Map.of("#status", "status"))
+        .expressionAttributeNames(
+            Map.of("#status", "status", "#errorReason", StorageConstants.DYNAMO_ATTR_ERROR_REASON))
         .expressionAttributeValues(values)
         .returnValues(ReturnValue.ALL_NEW)
         .build()).attributes());
@@ -63,6 +106,188 @@ public class DynamoDbService {
         .build());
   }
 
+  /**
+   * Take the processing lease on a media item, moving it to PROCESSING. It is
+   * granted from PENDING, or from PROCESSING once the holder's lease has
+   * expired or been released. A refusal returns the item as it was, read in
+   * the same request, so the caller learns who holds it without a second read.
+   *
+   * @return Empty if the media item does not exist
+   */
+  public Optional<LeaseAttempt> acquireLease(String mediaId, String owner, Duration duration) {
+    long now = System.currentTimeMillis();
+    try {
+      var attrs = client.updateItem(UpdateItemRequest.builder()
+          .tableName(tableName)
+          .key(keyFor(mediaId))
+          .updateExpression("SET #status = :processing, #leaseOwner = :owner, #leaseExpiresAt = :expiresAt, "
+              + "updatedAt = :updatedAt ADD #leaseToken :one REMOVE #errorReason")
+          .conditionExpression("#status = :pending OR (#status = :processing AND "
+              + "(attribute_not_exists(#leaseExpiresAt) OR #leaseExpiresAt < :now))")
+          .expressionAttributeNames(LEASE_NAMES)
+          .expressionAttributeValues(Map.of(
+              ":processing", s(MediaStatus.PROCESSING.name()),
+              ":pending", s(MediaStatus.PENDING.name()),
+              ":owner", s(owner),
+              ":expiresAt", n(now + duration.toMillis()),
+              ":now", n(now),
+              ":one", n(1),
+              ":updatedAt", s(Instant.now().toString())))
+          .returnValues(ReturnValue.ALL_NEW)
+          .returnValuesOnConditionCheckFailure(ReturnValuesOnConditionCheckFailure.ALL_OLD)
+          .build()).attributes();
+      return toMedia(mediaId, attrs).map(media -> new LeaseAttempt(media, toLease(attrs), true));
+    } catch (ConditionalCheckFailedException e) {
+      return toMedia(mediaId, e.item()).map(media -> new LeaseAttempt(media, toLease(e.item()), false));
+    }
+  }
+
+  /**
+   * Extend a held lease to {@code expiresAtMillis}.
+   *
+   * @return False if the lease is no longer held under {@code token}
+   */
+  public boolean renewLease(String mediaId, long token, long expiresAtMillis) {
+    return updateLeased(mediaId, token, "SET #leaseExpiresAt = :expiresAt",
+        Map.of(":expiresAt", n(expiresAtMillis)));
+  }
+
+  /**
+   * Give up a held lease without changing the status, so the next delivery
+   * can take it over at once instead of waiting for it to expire.
+   *
+   * @return False if the lease is no longer held under {@code token}
+   */
+  public boolean releaseLease(String mediaId, long token) {
+    return updateLeased(mediaId, token, "REMOVE #leaseOwner, #leaseExpiresAt", Map.of());
+  }
+
+  /**
+   * Mark a leased media item COMPLETE and end its lease.
+   *
+   * @return False if the lease is no longer held under {@code token}: another
+   *         consumer took it over, or the media was reset or deleted meanwhile
+   */
+  public boolean completeMedia(String mediaId, long token, Integer width) {
+    var values = new HashMap<>(Map.of(
+        ":newStatus", s(MediaStatus.COMPLETE.name()),
+        ":updatedAt", s(Instant.now().toString())));
+    if (width != null) {
+      values.put(":width", n(width));
+    }
+    return updateLeased(mediaId, token, "SET #status = :newStatus, updatedAt = :updatedAt"
+        + (width != null ? ", width = :width" : "") + " REMOVE #leaseOwner, #leaseExpiresAt, #errorReason", values);
+  }
+
+  /**
+   * Mark a leased media item ERROR for a failure that retrying cannot fix,
+   * and end its lease.
+   *
+   * @param reason Reason code stored with the status, e.g. CORRUPT_IMAGE
+   * @return False if the lease is no longer held under {@code token}
+   */
+  public boolean setMediaError(String mediaId, long token, String reason) {
+    return updateLeased(mediaId, token, "SET #status = :newStatus, #errorReason = :reason, updatedAt = :updatedAt "
+        + "REMOVE #leaseOwner, #leaseExpiresAt", Map.of(
+            ":newStatus", s(MediaStatus.ERROR.name()),
+            ":reason", s(reason),
+            ":updatedAt", s(Instant.now().toString())));
+  }
+
+  /**
+   * Apply {@code updateExpression} only while the item is PROCESSING under
+   * the lease {@code token}.
+   */
+  private boolean updateLeased(String mediaId, long token, String updateExpression,
+      Map<String, AttributeValue> values) {
+    var allValues = new HashMap<>(values);
+    allValues.put(":processing", s(MediaStatus.PROCESSING.name()));
+    allValues.put(":token", n(token));
+    try {
+      client.updateItem(UpdateItemRequest.builder()
+          .tableName(tableName)
+          .key(keyFor(mediaId))
+          .updateExpression(updateExpression)
+          .conditionExpression("#status = :processing AND #leaseToken = :token")
+          .expressionAttributeNames(namesIn(updateExpression))
+          .expressionAttributeValues(allValues)
+          .build());
+      return true;
+    } catch (ConditionalCheckFailedException e) {
+      return false;
+    }
+  }
+
+  /**
+   * Record the SHA-256 of the original so later resizes can look up the result
+   * cache without downloading the original again.
+   */
+  public void setContentHash(String mediaId, String contentHash) {
+    client.updateItem(UpdateItemRequest.builder()
+        .tableName(tableName)
+        .key(keyFor(mediaId))
+        .updateExpression("SET #contentHash = :contentHash")
+        .conditionExpression("attribute_exists(PK)")
+        .expressionAttributeNames(Map.of("#contentHash", StorageConstants.DYNAMO_ATTR_CONTENT_HASH))
+        .expressionAttributeValues(Map.of(":contentHash", s(contentHash)))
+        .build());
+  }
+
+  /**
+   * Mark a variant catalog entry COMPLETE, creating it if no request queued it
+   * (variant sets rendered with an upload or resize). Clears the pending TTL.
+   */
+  public void completeVariant(String mediaId, int width, OutputFormat format, String s3Key, long size) {
+    client.updateItem(UpdateItemRequest.builder()
+        .tableName(tableName)
+        .key(variantKeyFor(mediaId, width, format))
+        .updateExpression("SET #status = :status, width = :width, outputFormat = :format, s3Key = :s3Key, "
+            + "#size = :size, updatedAt = :updatedAt REMOVE expiresAt")
+        .expressionAttributeNames(Map.of("#status", "status", "#size", "size"))
+        .expressionAttributeValues(Map.of(
+            ":status", s(MediaStatus.COMPLETE.name()),
+            ":width", n(width),
+            ":format", s(format.getFormat()),
+            ":s3Key", s(s3Key),
+            ":size", AttributeValue.builder().n(String.valueOf(size)).build(),
+            ":updatedAt", s(Instant.now().toString())))
+        .build());
+  }
+
+  /**
+   * All variant catalog entries of a media item, pending or complete.
+   */
+  public List<MediaVariant> listVariants(String mediaId) {
+    var variants = new ArrayList<MediaVariant>();
+    Map<String, AttributeValue> exclusiveStartKey = null;
+    do {
+      var requestBuilder = QueryRequest.builder()
+          .tableName(tableName)
+          .keyConditionExpression("PK = :pk AND begins_with(SK, :prefix)")
+          .expressionAttributeValues(Map.of(
+              ":pk", s(StorageConstants.DYNAMO_PK_PREFIX + mediaId),
+              ":prefix", s(StorageConstants.DYNAMO_SK_VARIANT_PREFIX)));
+      if (exclusiveStartKey != null) {
+        requestBuilder.exclusiveStartKey(exclusiveStartKey);
+      }
+      var response = client.query(requestBuilder.build());
+      for (var item : response.items()) {
+        variants.add(toVariant(mediaId, item));
+      }
+      exclusiveStartKey = response.hasLastEvaluatedKey() && !response.lastEvaluatedKey().isEmpty()
+          ? response.lastEvaluatedKey()
+          : null;
+    } while (exclusiveStartKey != null);
+    return variants;
+  }
+
+  public void deleteVariant(String mediaId, int width, OutputFormat format) {
+    client.deleteItem(DeleteItemRequest.builder()
+        .tableName(tableName)
+        .key(variantKeyFor(mediaId, width, format))
+        .build());
+  }
+
   public Optional<Media> deleteMedia(String mediaId) {
     var request = DeleteItemRequest.builder()
         .tableName(tableName)
@@ -84,6 +309,51 @@ public class DynamoDbService {
     return Map.of("PK", s(StorageConstants.DYNAMO_PK_PREFIX + mediaId), "SK", s(StorageConstants.DYNAMO_SK_METADATA));
   }
 
+  private Map<String, AttributeValue> variantKeyFor(String mediaId, int width, OutputFormat format) {
+    return Map.of("PK", s(StorageConstants.DYNAMO_PK_PREFIX + mediaId),
+        "SK", s(StorageConstants.buildVariantSortKey(width, format.getFormat())));
+  }
+
+  /**
+   * The subset of {@link #LEASE_NAMES} used by a leased update: DynamoDB
+   * rejects names that the expressions do not reference.
+   */
+  private static Map<String, String> namesIn(String updateExpression) {
+    var names = new HashMap<String, String>();
+    LEASE_NAMES.forEach((name, attribute) -> {
+      if (name.equals("#status") || name.equals("#leaseToken") || updateExpression.contains(name)) {
+        names.put(name, attribute);
+      }
+    });
+    return names;
+  }
+
+  private static Lease toLease(Map<String, AttributeValue> attrs) {
+    if (attrs == null || !attrs.containsKey(StorageConstants.DYNAMO_ATTR_LEASE_EXPIRES_AT)) {
+      return null;
+    }
+    var owner = attrs.get(StorageConstants.DYNAMO_ATTR_LEASE_OWNER);
+    var token = attrs.get(StorageConstants.DYNAMO_ATTR_LEASE_TOKEN);
+    return new Lease(owner != null ? owner.s() : null,
+        token != null ? Long.parseLong(token.n()) : 0,
+        Long.parseLong(attrs.get(StorageConstants.DYNAMO_ATTR_LEASE_EXPIRES_AT).n()));
+  }
+
+  private MediaVariant toVariant(String mediaId, Map<String, AttributeValue> attrs) {
+    var builder = MediaVariant.builder()
+        .mediaId(mediaId)
+        .width(Integer.parseInt(attrs.get("width").n()))
+        .outputFormat(OutputFormat.fromString(attrs.get("outputFormat").s()))
+        .status(MediaStatus.valueOf(attrs.get("status").s()));
+    if (attrs.containsKey("s3Key")) {
+      builder.s3Key(attrs.get("s3Key").s());
+    }
+    if (attrs.containsKey("size")) {
+      builder.size(Long.parseLong(attrs.get("size").n()));
+    }
+    return builder.build();
+  }
+
   private Optional<Media> toMedia(String mediaId, Map<String, AttributeValue> attrs) {
     if (attrs == null || attrs.isEmpty()) {
       return Optional.empty();
@@ -98,9 +368,26 @@ public class DynamoDbService {
     if (attrs.containsKey("outputFormat")) {
       builder.outputFormat(OutputFormat.fromString(attrs.get("outputFormat").s()));
     }
+    if (attrs.containsKey("size")) {
+      builder.size(Long.parseLong(attrs.get("size").n()));
+    }
     if (attrs.containsKey("deletedAt")) {
       builder.deletedAt(Instant.parse(attrs.get("deletedAt").s()));
     }
+    if (attrs.containsKey(StorageConstants.DYNAMO_ATTR_CONTENT_HASH)) {
+      builder.contentHash(attrs.get(StorageConstants.DYNAMO_ATTR_CONTENT_HASH).s());
+    }
+    if (attrs.containsKey(StorageConstants.DYNAMO_ATTR_ERROR_REASON)) {
+      builder.errorReason(attrs.get(StorageConstants.DYNAMO_ATTR_ERROR_REASON).s());
+    }
+    if (attrs.containsKey(StorageConstants.DYNAMO_ATTR_VARIANT_WIDTHS)) {
+      builder.variantWidths(attrs.get(StorageConstants.DYNAMO_ATTR_VARIANT_WIDTHS).ns().stream()
+          .map(Integer::valueOf).sorted().toList());
+    }
+    if (attrs.containsKey(StorageConstants.DYNAMO_ATTR_VARIANT_FORMATS)) {
+      builder.variantFormats(attrs.get(StorageConstants.DYNAMO_ATTR_VARIANT_FORMATS).ss().stream()
+          .map(OutputFormat::fromString).sorted().toList());
+    }
     return Optional.of(builder.build());
   }
 
@@ -108,7 +395,7 @@ public class DynamoDbService {
     return AttributeValue.builder().s(value).build();
   }
 
-  private AttributeValue n(Integer value) {
+  private AttributeValue n(long value) {
     return AttributeValue.builder().n(String.valueOf(value)).build();
   }
 }
@@ -1,8 +1,20 @@
 package com.mediaservice.lambda.service;
 
 import com.mediaservice.lambda.config.LambdaConfig;
+import com.mediaservice.lambda.image.BandExecutor;
+import com.mediaservice.lambda.image.ImageDecoder;
+import com.mediaservice.lambda.image.ImageEncoder;
+import com.mediaservice.lambda.image.ImageInputStreamFactory;
+import com.mediaservice.lambda.image.MemoryPlanner;
+import com.mediaservice.lambda.image.Resampler;
+import com.mediaservice.lambda.image.UndecodableImageException;
+import com.mediaservice.lambda.image.WatermarkRenderer;
+import com.mediaservice.lambda.init.ColdStart;
+import com.mediaservice.lambda.service.ResultCacheService.ResultKey;
+import com.mediaservice.lambda.stage.Stage;
+import com.mediaservice.lambda.stage.StageTimings;
+import com.mediaservice.lambda.stage.TimedInputStream;
 import com.mediaservice.common.model.OutputFormat;
-import net.coobird.thumbnailator.Thumbnails;
 import net.coobird.thumbnailator.geometry.Position;
 import net.coobird.thumbnailator.geometry.Positions;
 import org.slf4j.Logger;
@@ -12,20 +24,38 @@ import javax.imageio.ImageIO;
 import javax.imageio.ImageWriter;
 import java.awt.image.BufferedImage;
 import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HexFormat;
 import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeMap;
 
 public class ImageProcessingService {
   private static final Logger logger = LoggerFactory.getLogger(ImageProcessingService.class);
 
   private final LambdaConfig config;
-  private final BufferedImage watermarkImage;
+  private final WatermarkRenderer watermarkRenderer;
+  private final ImageDecoder imageDecoder;
+  private final ImageEncoder imageEncoder;
+  private final ImageInputStreamFactory inputStreamFactory;
+  private final Resampler resampler;
+  private final String watermarkFingerprint;
 
   static {
     // Ensure ImageIO plugins are scanned (needed for webp-imageio in Lambda environment)
-    ImageIO.scanForPlugins();
-    logAvailableFormats();
+    ColdStart.run("imageio_scan", () -> {
+      ImageIO.scanForPlugins();
+      logAvailableFormats();
+    });
   }
 
   private static void logAvailableFormats() {
@@ -35,15 +65,38 @@ public class ImageProcessingService {
 
   public ImageProcessingService() {
     this.config = LambdaConfig.getInstance();
-    this.watermarkImage = loadWatermark();
+    var watermarkBytes = loadWatermarkBytes();
+    var watermark = ColdStart.time("watermark_load", () -> decodeWatermark(watermarkBytes));
+    var bands = new BandExecutor(config.getImageParallelism());
+    this.watermarkRenderer = new WatermarkRenderer(watermark, config.getWatermarkCacheSize(), bands);
+    var memoryPlanner = config.isMemoryPlannerEnabled()
+        ? MemoryPlanner.forHeap(config.getProcessingMemoryPerRecordBytes(), config.getMaxSourcePixels(),
+            config.getTiledStripBudgetBytes())
+        : null;
+    this.imageDecoder = new ImageDecoder(config.isReducedDecodeEnabled(), config.getDecodeOversampleFactor(),
+        config.getTiledThresholdPixels(), config.getTiledStripBudgetBytes(), memoryPlanner);
+    this.imageEncoder = new ImageEncoder();
+    this.inputStreamFactory = new ImageInputStreamFactory(config.isDecodeSpillToDisk(),
+        config.getDecodeSpillDirectory());
+    this.resampler = Resampler.forName(config.getResampler(), config.isResamplerVectorEnabled(), bands);
+    // Fingerprint covers the resampler, so compute it last
+    this.watermarkFingerprint = fingerprint(watermarkBytes);
   }
 
-  private BufferedImage loadWatermark() {
+  private byte[] loadWatermarkBytes() {
     try (var watermarkStream = ImageProcessingService.class.getResourceAsStream("/media-service-watermark.png")) {
       if (watermarkStream == null) {
         throw new IllegalStateException("Watermark image not found at /media-service-watermark.png");
       }
-      var image = ImageIO.read(watermarkStream);
+      return watermarkStream.readAllBytes();
+    } catch (IOException e) {
+      throw new IllegalStateException("Failed to load watermark image", e);
+    }
+  }
+
+  private BufferedImage decodeWatermark(byte[] watermarkBytes) {
+    try {
+      var image = ImageIO.read(new ByteArrayInputStream(watermarkBytes));
       if (image == null) {
         throw new IllegalStateException("Failed to decode watermark image");
       }
@@ -53,17 +106,250 @@ public class ImageProcessingService {
     }
   }
 
-  public byte[] processImage(byte[] imageData, Integer targetWidth, OutputFormat outputFormat) throws IOException {
-    return processImageInternal(imageData, targetWidth, Positions.BOTTOM_RIGHT, outputFormat);
+  /**
+   * Fingerprint of everything besides the source, width, format and quality that
+   * affects rendered pixels: the watermark image, its sizing, the decode settings
+   * and the memory planner inputs that pick the subsampling step, strip budget
+   * and spill-to-disk decode path.
+   */
+  private String fingerprint(byte[] watermarkBytes) {
+    try {
+      var digest = MessageDigest.getInstance("SHA-256");
+      digest.update(watermarkBytes);
+      digest.update((config.getWatermarkWidthRatio() + "|" + config.getMinWatermarkWidth() + "|"
+          + config.isReducedDecodeEnabled() + "|" + config.getDecodeOversampleFactor() + "|"
+          + config.getTiledThresholdPixels() + "|" + resampler.name() + "|"
+          + config.isMemoryPlannerEnabled() + "|" + config.getProcessingMemoryPerRecordBytes() + "|"
+          + config.getMaxSourcePixels() + "|" + config.getTiledStripBudgetBytes() + "|"
+          + config.isDecodeSpillToDisk()).getBytes(StandardCharsets.UTF_8));
+      return HexFormat.of().formatHex(digest.digest(), 0, 6);
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException("SHA-256 not available", e);
+    }
+  }
+
+  /**
+   * Key identifying the output {@link #processImage} or {@link #resizeImage}
+   * would produce for the given original, so identical requests can reuse a
+   * stored result.
+   *
+   * @param contentHash SHA-256 of the original
+   * @param isResize    Whether the output comes from {@link #resizeImage} (watermark placement differs)
+   */
+  public ResultKey resultKey(String contentHash, Integer targetWidth, OutputFormat outputFormat, boolean isResize) {
+    var format = resolveFormat(outputFormat);
+    var watermarkVersion = watermarkFingerprint + (isResize ? "bl" : "br");
+    return new ResultKey(contentHash, resolveWidth(targetWidth), format, watermarkVersion, qualityFor(format));
+  }
+
+  /**
+   * Process an image and encode the result straight into {@code sink}, with
+   * no intermediate output buffer. The input stream is consumed but not closed.
+   *
+   * @return Size of the encoded output in bytes
+   */
+  public long processImage(InputStream imageData, Integer targetWidth, OutputFormat outputFormat, OutputSink sink)
+      throws IOException {
+    return renderVariants(imageData, List.of(new Variant(targetWidth, outputFormat)), Positions.BOTTOM_RIGHT, sink)
+        .get(0).size();
+  }
+
+  /**
+   * Resize an image and encode the result straight into {@code sink}. The
+   * input stream is consumed but not closed.
+   *
+   * @return Size of the encoded output in bytes
+   */
+  public long resizeImage(InputStream imageData, Integer targetWidth, OutputFormat outputFormat, OutputSink sink)
+      throws IOException {
+    return renderVariants(imageData, List.of(new Variant(targetWidth, outputFormat)), Positions.BOTTOM_LEFT, sink)
+        .get(0).size();
+  }
+
+  /**
+   * One output of a variant set. A null width or format resolves to the configured default.
+   */
+  public record Variant(Integer width, OutputFormat format) {
+  }
+
+  /**
+   * Output for a requested {@link Variant} that was encoded into an {@link OutputSink}.
+   *
+   * @param variant Variant as requested
+   * @param output  Resolved width and format the sink was opened for
+   * @param size    Encoded size in bytes
+   */
+  public record StreamedVariant(Variant variant, Variant output, long size) {
+  }
+
+  /**
+   * Destination of encoded outputs. {@link #open} is called once per distinct
+   * resolved width and format, just before that output is encoded; the
+   * pipeline closes the stream once the output is complete, or aborts it if
+   * encoding fails.
+   */
+  @FunctionalInterface
+  public interface OutputSink {
+    UploadOutputStream open(Variant output) throws IOException;
+  }
+
+  /**
+   * Width and format a requested variant is rendered at.
+   */
+  public Variant resolve(Variant variant) {
+    return new Variant(resolveWidth(variant.width()), resolveFormat(variant.format()));
+  }
+
+  /**
+   * Render several outputs with a single decode, watermarked as
+   * {@link #processImage}, encoding each straight into {@code sink}.
+   *
+   * @return One entry per requested variant, in request order
+   */
+  public List<StreamedVariant> processVariants(InputStream imageData, List<Variant> variants, OutputSink sink)
+      throws IOException {
+    return renderVariants(imageData, variants, Positions.BOTTOM_RIGHT, sink);
+  }
+
+  /**
+   * Render several outputs with a single decode, watermarked as
+   * {@link #resizeImage}, encoding each straight into {@code sink}.
+   *
+   * @return One entry per requested variant, in request order
+   */
+  public List<StreamedVariant> resizeVariants(InputStream imageData, List<Variant> variants, OutputSink sink)
+      throws IOException {
+    return renderVariants(imageData, variants, Positions.BOTTOM_LEFT, sink);
+  }
+
+  /**
+   * Decode once at the largest requested width, then walk the widths from
+   * largest to smallest, downscaling each level from the previous one (a
+   * downscale pyramid) rather than from the full-size source. Every level is
+   * downscaled before the watermark is drawn onto it, so no level carries the
+   * watermark of a larger one, and each level is encoded once per format.
+   * Every stage is first checked against the deadline of the current
+   * {@link StageTimings} scope.
+   */
+  private List<StreamedVariant> renderVariants(InputStream imageData, List<Variant> variants,
+      Position watermarkPosition, OutputSink sink) throws IOException {
+    var formatsByWidth = new TreeMap<Integer, Set<OutputFormat>>(Comparator.reverseOrder());
+    for (var variant : variants) {
+      var output = resolve(variant);
+      formatsByWidth.computeIfAbsent(output.width(), w -> new LinkedHashSet<>()).add(output.format());
+    }
+    var widths = List.copyOf(formatsByWidth.keySet());
+    logger.info("Processing image with widths: {}, formats: {}", widths, formatsByWidth.values());
+
+    var timings = StageTimings.current();
+    var decoded = decode(imageData, widths.get(0), timings);
+    var source = decoded.image();
+    int sourceWidth = source.getWidth();
+    int sourceHeight = source.getHeight();
+    // Strip-decoded images are already at the largest output size
+    var level = decoded.tiled() ? source : resize(source, widths.get(0),
+        heightFor(sourceWidth, sourceHeight, widths.get(0)), timings);
+
+    var sizes = new HashMap<Variant, Long>();
+    for (int i = 0; i < widths.size(); i++) {
+      int width = widths.get(i);
+      var next = i + 1 < widths.size()
+          ? resize(level, widths.get(i + 1), heightFor(sourceWidth, sourceHeight, widths.get(i + 1)), timings)
+          : null;
+
+      int watermarkWidth = Math.max(
+          (int) (width * config.getWatermarkWidthRatio()),
+          config.getMinWatermarkWidth());
+      timings.checkDeadline(Stage.WATERMARK);
+      var watermarkTimer = timings.start(Stage.WATERMARK);
+      watermarkRenderer.apply(level, watermarkWidth, watermarkPosition);
+      watermarkTimer.stop(null);
+      for (var format : formatsByWidth.get(width)) {
+        var output = new Variant(width, format);
+        sizes.put(output, encode(level, output, sink, timings));
+      }
+      level = next;
+    }
+
+    var streamed = new ArrayList<StreamedVariant>(variants.size());
+    for (var variant : variants) {
+      var output = resolve(variant);
+      streamed.add(new StreamedVariant(variant, output, sizes.get(output)));
+    }
+    return streamed;
+  }
+
+  /**
+   * Encode one output into a stream from {@code sink}. The stream is closed
+   * (committing the output) only after the encoder has finished with it.
+   */
+  private long encode(BufferedImage image, Variant output, OutputSink sink, StageTimings timings)
+      throws IOException {
+    var format = output.format();
+    // Checked before the sink opens, so an abandoned output leaves no upload behind
+    timings.checkDeadline(Stage.ENCODE);
+    var encodeTimer = timings.start(Stage.ENCODE);
+    var stream = sink.open(output);
+    try {
+      imageEncoder.encode(image, format.getFormat(), qualityFor(format), stream);
+    } catch (IOException | RuntimeException e) {
+      stream.abort();
+      throw e;
+    }
+    encodeTimer.stop(format);
+    stream.close();
+    return stream.getBytesWritten();
+  }
+
+  private static int heightFor(int sourceWidth, int sourceHeight, int width) {
+    return Math.max(1, (int) Math.round((double) sourceHeight * width / sourceWidth));
+  }
+
+  private BufferedImage resize(BufferedImage image, int width, int height, StageTimings timings) {
+    timings.checkDeadline(Stage.RESIZE);
+    var timer = timings.start(Stage.RESIZE);
+    var resized = resampler.resize(image, width, height);
+    timer.stop(null);
+    return resized;
+  }
+
+  /**
+   * Decode the source, splitting the time blocked on the stream (download)
+   * from the time spent decoding. The decoder reports a reader failing on the
+   * source as an {@link UndecodableImageException}; if a read of the stream
+   * itself failed, that failure is rethrown as a plain {@link IOException}
+   * instead, so a broken connection is retried rather than taken for a
+   * corrupt image.
+   */
+  private ImageDecoder.DecodedImage decode(InputStream imageData, int targetWidth, StageTimings timings)
+      throws IOException {
+    timings.checkDeadline(Stage.DECODE);
+    var source = new TimedInputStream(imageData);
+    var downloadTimer = timings.start(Stage.DOWNLOAD);
+    var decodeTimer = timings.start(Stage.DECODE);
+    try (var input = inputStreamFactory.open(source)) {
+      var decoded = imageDecoder.decode(input, targetWidth);
+      long readNanos = source.getReadNanos();
+      timings.setSourceSize(decoded.sourceWidth(), decoded.sourceHeight());
+      downloadTimer.stop(null, readNanos);
+      decodeTimer.stop(null, decodeTimer.elapsedNanos() - readNanos);
+      logger.info("Decoded {}x{} source at subsampling {} for target width {}{}", decoded.sourceWidth(),
+          decoded.sourceHeight(), decoded.subsampling(), targetWidth, decoded.tiled() ? " (tiled)" : "");
+      return decoded;
+    } catch (UndecodableImageException e) {
+      if (source.hasFailed()) {
+        // The reader gave up on the stream underneath it, not on the image
+        throw new IOException("Source stream failed: " + e.getMessage(), e.getCause());
+      }
+      throw e;
+    }
   }
 
-  public byte[] resizeImage(byte[] imageData, Integer targetWidth, OutputFormat outputFormat) throws IOException {
-    return processImageInternal(imageData, targetWidth, Positions.BOTTOM_LEFT, outputFormat);
+  private int resolveWidth(Integer targetWidth) {
+    return (targetWidth != null && targetWidth > 0) ? targetWidth : config.getDefaultWidth();
   }
 
-  private byte[] processImageInternal(byte[] imageData, Integer targetWidth, Position watermarkPosition,
-      OutputFormat outputFormat) throws IOException {
-    int width = (targetWidth != null && targetWidth > 0) ? targetWidth : config.getDefaultWidth();
+  private OutputFormat resolveFormat(OutputFormat outputFormat) {
     OutputFormat format = (outputFormat != null) ? outputFormat : OutputFormat.JPEG;
 
     // Check if the format is supported
@@ -71,31 +357,15 @@ public class ImageProcessingService {
       logger.warn("Output format '{}' is not supported, falling back to JPEG", format.getFormat());
       format = OutputFormat.JPEG;
     }
+    return format;
+  }
 
-    logger.info("Processing image with format: {}, width: {}", format.getFormat(), width);
-
-    var inputStream = new ByteArrayInputStream(imageData);
-    var outputStream = new ByteArrayOutputStream();
-    int watermarkWidth = Math.max(
-        (int) (width * config.getWatermarkWidthRatio()),
-        config.getMinWatermarkWidth());
-    var resizedWatermark = Thumbnails.of(watermarkImage).width(watermarkWidth).asBufferedImage();
-
-    var builder = Thumbnails.of(inputStream)
-        .width(width)
-        .outputFormat(format.getFormat())
-        .watermark(watermarkPosition, resizedWatermark, 1.0f);
-
-    // Set quality for formats that support it
-    if (format == OutputFormat.JPEG) {
-      builder.outputQuality(config.getJpegQuality());
-    } else if (format == OutputFormat.WEBP) {
-      builder.outputQuality(config.getWebpQuality());
-    }
-
-    builder.toOutputStream(outputStream);
-    logger.info("Image processed successfully, output size: {} bytes", outputStream.size());
-    return outputStream.toByteArray();
+  private Float qualityFor(OutputFormat format) {
+    return switch (format) {
+      case JPEG -> config.getJpegQuality();
+      case WEBP -> config.getWebpQuality();
+      default -> null;
+    };
   }
 
   private boolean isFormatSupported(String formatName) {
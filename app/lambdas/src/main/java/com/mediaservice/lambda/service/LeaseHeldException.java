@@ -0,0 +1,14 @@
+package com.mediaservice.lambda.service;
+
+/**
+ * Thrown when another consumer holds a live processing lease on the media:
+ * its message outlived the SQS visibility timeout while that consumer is
+ * still rendering. Not a failure of the media; the record is redelivered
+ * later, when the media is COMPLETE or the lease has lapsed.
+ */
+public class LeaseHeldException extends RuntimeException {
+  public LeaseHeldException(String mediaId, DynamoDbService.Lease lease) {
+    super(String.format("Media %s is being processed by %s under lease %d for another %d ms", mediaId,
+        lease.owner(), lease.token(), Math.max(0, lease.expiresAtMillis() - System.currentTimeMillis())));
+  }
+}
@@ -0,0 +1,88 @@
+package com.mediaservice.lambda.service;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * {@link InputStream} over a read-only memory mapping of a local file.
+ *
+ * <p>
+ * Reads copy straight from the page cache into the caller's buffer, with no
+ * read system call and no intermediate stream buffer. It supports
+ * {@link #mark}/{@link #reset} at any distance, so the image stream factory
+ * can sniff the format without wrapping it. The mapping stays valid after
+ * the file is deleted, and is released once the stream is unreachable.
+ */
+final class MappedInputStream extends InputStream {
+  private final ByteBuffer buffer;
+  private int mark;
+
+  private MappedInputStream(ByteBuffer buffer) {
+    this.buffer = buffer;
+  }
+
+  /**
+   * Map {@code path} for reading. Files too large for a single mapping fall
+   * back to a buffered stream.
+   */
+  static InputStream open(Path path) throws IOException {
+    try (var channel = FileChannel.open(path, StandardOpenOption.READ)) {
+      long size = channel.size();
+      if (size > Integer.MAX_VALUE) {
+        return new BufferedInputStream(Files.newInputStream(path));
+      }
+      return new MappedInputStream(channel.map(FileChannel.MapMode.READ_ONLY, 0, size));
+    }
+  }
+
+  @Override
+  public int read() {
+    return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+  }
+
+  @Override
+  public int read(byte[] b, int off, int len) {
+    if (len == 0) {
+      return 0;
+    }
+    if (!buffer.hasRemaining()) {
+      return -1;
+    }
+    int n = Math.min(len, buffer.remaining());
+    buffer.get(b, off, n);
+    return n;
+  }
+
+  @Override
+  public long skip(long n) {
+    int skipped = (int) Math.max(0, Math.min(n, buffer.remaining()));
+    buffer.position(buffer.position() + skipped);
+    return skipped;
+  }
+
+  @Override
+  public int available() {
+    return buffer.remaining();
+  }
+
+  @Override
+  public boolean markSupported() {
+    return true;
+  }
+
+  @Override
+  public synchronized void mark(int readLimit) {
+    mark = buffer.position();
+  }
+
+  @Override
+  public synchronized void reset() {
+    buffer.position(mark);
+  }
+}
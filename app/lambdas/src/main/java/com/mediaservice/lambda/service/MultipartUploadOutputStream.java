@@ -0,0 +1,256 @@
+package com.mediaservice.lambda.service;
+
+import com.mediaservice.common.model.OutputFormat;
+import com.mediaservice.lambda.stage.Stage;
+import com.mediaservice.lambda.stage.StageTimings;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import software.amazon.awssdk.core.sync.RequestBody;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.AbortMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.CompleteMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.CompletedMultipartUpload;
+import software.amazon.awssdk.services.s3.model.CompletedPart;
+import software.amazon.awssdk.services.s3.model.CreateMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.PutObjectRequest;
+import software.amazon.awssdk.services.s3.model.UploadPartRequest;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Streams an encoder's output to S3 in parts while it is still being written.
+ *
+ * <p>
+ * Bytes are collected into a part buffer; each full part is uploaded on a
+ * background thread while the encoder fills the next one, with at most
+ * {@value #MAX_PARTS_IN_FLIGHT} parts in flight, so heap stays bounded at a
+ * few part sizes whatever the output size. Outputs that never fill a part,
+ * which is most of them, are sent with a single {@code PutObject} when the
+ * stream is closed, skipping the multipart round trips.
+ *
+ * <p>
+ * Closing waits for the outstanding parts and completes the upload; the
+ * remaining time is recorded as the {@link Stage#UPLOAD} stage. Any failure
+ * aborts the multipart upload so no parts are left behind.
+ */
+final class MultipartUploadOutputStream extends UploadOutputStream {
+  private static final Logger logger = LoggerFactory.getLogger(MultipartUploadOutputStream.class);
+
+  /** Smallest part S3 accepts for any part but the last. */
+  static final int MIN_PART_SIZE = 5 * 1024 * 1024;
+  private static final int MAX_PARTS_IN_FLIGHT = 2;
+  private static final int INITIAL_BUFFER_SIZE = 64 * 1024;
+  private static final ExecutorService PART_UPLOADS = Executors.newCachedThreadPool(daemonThreads());
+
+  private final S3Client client;
+  private final String bucketName;
+  private final String key;
+  private final OutputFormat format;
+  private final int partSize;
+  private final Semaphore inFlight = new Semaphore(MAX_PARTS_IN_FLIGHT);
+  private final List<Future<CompletedPart>> parts = new ArrayList<>();
+  private byte[] buffer;
+  private int count;
+  private long bytesWritten;
+  private String uploadId;
+  private boolean closed;
+
+  /**
+   * @param partSize Bytes per part; raised to {@link #MIN_PART_SIZE} if smaller
+   */
+  MultipartUploadOutputStream(S3Client client, String bucketName, String key, OutputFormat format, int partSize) {
+    this.client = client;
+    this.bucketName = bucketName;
+    this.key = key;
+    this.format = format;
+    this.partSize = Math.max(MIN_PART_SIZE, partSize);
+    this.buffer = new byte[Math.min(INITIAL_BUFFER_SIZE, this.partSize)];
+  }
+
+  @Override
+  public void write(int b) throws IOException {
+    ensureOpen();
+    if (count == buffer.length) {
+      makeRoom();
+    }
+    buffer[count++] = (byte) b;
+    bytesWritten++;
+  }
+
+  @Override
+  public void write(byte[] b, int off, int len) throws IOException {
+    ensureOpen();
+    while (len > 0) {
+      if (count == buffer.length) {
+        makeRoom();
+      }
+      int chunk = Math.min(len, buffer.length - count);
+      System.arraycopy(b, off, buffer, count, chunk);
+      count += chunk;
+      off += chunk;
+      len -= chunk;
+      bytesWritten += chunk;
+    }
+  }
+
+  @Override
+  public long getBytesWritten() {
+    return bytesWritten;
+  }
+
+  @Override
+  public void close() throws IOException {
+    if (closed) {
+      return;
+    }
+    closed = true;
+    var timer = StageTimings.current().start(Stage.UPLOAD);
+    try {
+      if (uploadId == null) {
+        client.putObject(PutObjectRequest.builder()
+            .bucket(bucketName)
+            .key(key)
+            .contentType(format.getContentType())
+            .build(), RequestBody.fromInputStream(new ByteArrayInputStream(buffer, 0, count), count));
+      } else {
+        if (count > 0) {
+          uploadPart();
+        }
+        var completed = new ArrayList<CompletedPart>(parts.size());
+        for (var part : parts) {
+          completed.add(await(part));
+        }
+        client.completeMultipartUpload(CompleteMultipartUploadRequest.builder()
+            .bucket(bucketName)
+            .key(key)
+            .uploadId(uploadId)
+            .multipartUpload(CompletedMultipartUpload.builder().parts(completed).build())
+            .build());
+        logger.debug("Uploaded {} bytes to {} in {} parts", bytesWritten, key, completed.size());
+      }
+      timer.stop(format);
+    } catch (IOException | RuntimeException e) {
+      abortUpload();
+      throw e;
+    } finally {
+      buffer = null;
+    }
+  }
+
+  @Override
+  public void abort() {
+    if (closed) {
+      return;
+    }
+    closed = true;
+    buffer = null;
+    abortUpload();
+  }
+
+  /**
+   * Grow the buffer, or send it as a part once it holds a full part.
+   */
+  private void makeRoom() throws IOException {
+    if (buffer.length < partSize) {
+      buffer = Arrays.copyOf(buffer, (int) Math.min(partSize, buffer.length * 2L));
+      return;
+    }
+    if (uploadId == null) {
+      uploadId = client.createMultipartUpload(CreateMultipartUploadRequest.builder()
+          .bucket(bucketName)
+          .key(key)
+          .contentType(format.getContentType())
+          .build()).uploadId();
+    }
+    uploadPart();
+    buffer = new byte[partSize];
+  }
+
+  private void uploadPart() throws IOException {
+    // Surface a failed part now rather than after the whole output is encoded
+    for (var part : parts) {
+      if (part.isDone()) {
+        await(part);
+      }
+    }
+    try {
+      inFlight.acquire();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted waiting to upload part of " + key);
+    }
+    int partNumber = parts.size() + 1;
+    var data = buffer;
+    int length = count;
+    count = 0;
+    parts.add(PART_UPLOADS.submit(() -> {
+      try {
+        var response = client.uploadPart(UploadPartRequest.builder()
+            .bucket(bucketName)
+            .key(key)
+            .uploadId(uploadId)
+            .partNumber(partNumber)
+            .contentLength((long) length)
+            .build(), RequestBody.fromInputStream(new ByteArrayInputStream(data, 0, length), length));
+        return CompletedPart.builder().partNumber(partNumber).eTag(response.eTag()).build();
+      } finally {
+        inFlight.release();
+      }
+    }));
+  }
+
+  private CompletedPart await(Future<CompletedPart> part) throws IOException {
+    try {
+      return part.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted uploading " + key);
+    } catch (ExecutionException e) {
+      throw new IOException("Failed to upload part of " + key, e.getCause());
+    }
+  }
+
+  private void abortUpload() {
+    parts.forEach(part -> part.cancel(true));
+    if (uploadId == null) {
+      return;
+    }
+    try {
+      client.abortMultipartUpload(AbortMultipartUploadRequest.builder()
+          .bucket(bucketName)
+          .key(key)
+          .uploadId(uploadId)
+          .build());
+    } catch (RuntimeException e) {
+      // Left for the bucket's incomplete multipart upload lifecycle rule
+      logger.warn("Failed to abort multipart upload of {}: {}", key, e.getMessage());
+    }
+  }
+
+  private void ensureOpen() throws IOException {
+    if (closed) {
+      throw new IOException("Upload of " + key + " is closed");
+    }
+  }
+
+  private static ThreadFactory daemonThreads() {
+    var counter = new AtomicInteger();
+    return runnable -> {
+      var thread = new Thread(runnable, "s3-part-upload-" + counter.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    };
+  }
+}
@@ -0,0 +1,385 @@
+package com.mediaservice.lambda.service;
+
+import com.mediaservice.lambda.config.LambdaConfig;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.LinkedHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Size-bounded LRU cache of originals on local disk, kept across the
+ * invocations of a warm container (Lambda keeps {@code /tmp} between them).
+ *
+ * <p>
+ * Entries are keyed by media id plus the S3 ETag the original was downloaded
+ * at. The caller revalidates the ETag with a conditional GET before using an
+ * entry ({@link S3Service#openMediaFileIfChanged}), so an original that was
+ * overwritten is never served from the cache. Cached files are read through
+ * a memory mapping ({@link SpooledOriginal#open()}).
+ *
+ * <p>
+ * An entry handed out by {@link #acquire} or {@link #put} is pinned until
+ * the returned original is closed. Pinned entries are never evicted. Once
+ * the total size is over the limit, the least recently used unpinned
+ * entries are deleted.
+ */
+public class OriginalCache {
+  private static final Logger logger = LoggerFactory.getLogger(OriginalCache.class);
+  private static final int MAX_DRAIN_BYTES = 64 * 1024;
+
+  private final boolean enabled;
+  private final Path directory;
+  private final long maxBytes;
+  // Access-ordered: iteration starts at the least recently used entry
+  private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+  private final AtomicLong hits = new AtomicLong();
+  private final AtomicLong misses = new AtomicLong();
+  private final AtomicLong evictions = new AtomicLong();
+  private long totalBytes;
+
+  public OriginalCache() {
+    this(LambdaConfig.getInstance().isOriginalCacheEnabled(), LambdaConfig.getInstance().getOriginalCacheDirectory(),
+        LambdaConfig.getInstance().getOriginalCacheMaxBytes());
+  }
+
+  /**
+   * Constructor for testing with a custom directory and size.
+   */
+  OriginalCache(boolean enabled, String directory, long maxBytes) {
+    this.enabled = enabled && maxBytes > 0;
+    this.directory = Path.of(directory);
+    this.maxBytes = maxBytes;
+    if (this.enabled) {
+      clearDirectory();
+    }
+  }
+
+  /** A cache that never holds anything. */
+  public static OriginalCache disabled() {
+    return new OriginalCache(false, System.getProperty("java.io.tmpdir"), 0);
+  }
+
+  public boolean isEnabled() {
+    return enabled;
+  }
+
+  /**
+   * ETag of the cached original of a media item, or null if none is cached.
+   */
+  public synchronized String eTagOf(String mediaId) {
+    var entry = entries.get(mediaId);
+    return entry != null ? entry.eTag : null;
+  }
+
+  /**
+   * Pin the cached original of a media item at the given ETag, counting a
+   * hit.
+   *
+   * @return The cached original, released on close; null if it is no longer
+   *         cached at that ETag
+   */
+  public synchronized SpooledOriginal acquire(String mediaId, String eTag) {
+    var entry = entries.get(mediaId);
+    if (entry == null || !entry.eTag.equals(eTag)) {
+      return null;
+    }
+    if (!Files.exists(entry.path)) {
+      // Removed underneath us, e.g. /tmp was not restored with the snapshot
+      remove(mediaId, entry);
+      return null;
+    }
+    hits.incrementAndGet();
+    return pin(entry);
+  }
+
+  /**
+   * Copy an original into the cache, counting a miss. Without an ETag it is
+   * spooled to a private file instead, deleted on close.
+   *
+   * @return The cached original, released on close
+   */
+  public SpooledOriginal put(String mediaId, String eTag, InputStream source) throws IOException {
+    misses.incrementAndGet();
+    if (eTag == null) {
+      return SpooledOriginal.spool(source, directory.toString());
+    }
+    var path = Files.createTempFile(directory, "original-", ".bin");
+    try (var out = Files.newOutputStream(path)) {
+      long size = source.transferTo(out);
+      return admit(mediaId, eTag, path, size, true);
+    } catch (IOException | RuntimeException e) {
+      Files.deleteIfExists(path);
+      throw e;
+    }
+  }
+
+  /**
+   * Take over an original already downloaded to disk, counting a miss. Its
+   * file moves into the cache.
+   *
+   * @return The cached original, released on close; {@code original} itself
+   *         if it has no ETag
+   */
+  public SpooledOriginal put(String mediaId, SpooledOriginal original) throws IOException {
+    misses.incrementAndGet();
+    if (original.getETag() == null) {
+      return original;
+    }
+    var path = Files.createTempFile(directory, "original-", ".bin");
+    try {
+      Files.move(original.getPath(), path, StandardCopyOption.REPLACE_EXISTING);
+    } catch (IOException e) {
+      Files.deleteIfExists(path);
+      // Keep the caller's file and simply do not cache it
+      logger.warn("Failed to cache original of media {}: {}", mediaId, e.getMessage());
+      return original;
+    }
+    return admit(mediaId, original.getETag(), path, original.getSize(), true);
+  }
+
+  /**
+   * Pass {@code source} through to the caller while copying it into the
+   * cache, counting a miss. The copy is admitted when the returned stream is
+   * closed, if the source was read to the end (a small unread tail is
+   * drained first); otherwise it is discarded.
+   */
+  public InputStream fill(String mediaId, String eTag, InputStream source) throws IOException {
+    misses.incrementAndGet();
+    if (eTag == null) {
+      return source;
+    }
+    var path = Files.createTempFile(directory, "original-", ".bin");
+    return new FillingInputStream(source, mediaId, eTag, path);
+  }
+
+  public long getHits() {
+    return hits.get();
+  }
+
+  public long getMisses() {
+    return misses.get();
+  }
+
+  public long getEvictions() {
+    return evictions.get();
+  }
+
+  synchronized long getTotalBytes() {
+    return totalBytes;
+  }
+
+  /**
+   * Add a file to the cache, replacing any other version of the media's
+   * original, and evict down to the size limit.
+   */
+  private synchronized SpooledOriginal admit(String mediaId, String eTag, Path path, long size, boolean pinned) {
+    if (size > maxBytes) {
+      // Never fits; hand it out as a private file instead
+      logger.debug("Original of media {} ({} bytes) is larger than the cache", mediaId, size);
+      if (pinned) {
+        return SpooledOriginal.of(path, size, eTag);
+      }
+      deleteQuietly(path);
+      return null;
+    }
+    var previous = entries.get(mediaId);
+    if (previous != null) {
+      remove(mediaId, previous);
+    }
+    var entry = new Entry(eTag, path, size);
+    entries.put(mediaId, entry);
+    totalBytes += size;
+    var original = pinned ? pin(entry) : null;
+    evict();
+    return original;
+  }
+
+  private void evict() {
+    var iterator = entries.entrySet().iterator();
+    while (totalBytes > maxBytes && iterator.hasNext()) {
+      var next = iterator.next();
+      var entry = next.getValue();
+      if (entry.pins > 0) {
+        continue;
+      }
+      iterator.remove();
+      totalBytes -= entry.size;
+      evictions.incrementAndGet();
+      logger.debug("Evicted original of media {} ({} bytes)", next.getKey(), entry.size);
+      deleteQuietly(entry.path);
+    }
+  }
+
+  private void remove(String mediaId, Entry entry) {
+    entries.remove(mediaId);
+    totalBytes -= entry.size;
+    entry.removed = true;
+    if (entry.pins == 0) {
+      deleteQuietly(entry.path);
+    }
+  }
+
+  private SpooledOriginal pin(Entry entry) {
+    entry.pins++;
+    var released = new AtomicBoolean();
+    return SpooledOriginal.view(entry.path, entry.size, entry.eTag, () -> {
+      if (released.compareAndSet(false, true)) {
+        release(entry);
+      }
+    });
+  }
+
+  private synchronized void release(Entry entry) {
+    entry.pins--;
+    if (entry.pins == 0) {
+      if (entry.removed) {
+        deleteQuietly(entry.path);
+      } else {
+        evict();
+      }
+    }
+  }
+
+  private void clearDirectory() {
+    try {
+      Files.createDirectories(directory);
+      try (var files = Files.list(directory)) {
+        // Left over from a previous handler instance in this container; the index did not survive
+        files.filter(file -> file.getFileName().toString().startsWith("original-"))
+            .forEach(OriginalCache::deleteQuietly);
+      }
+    } catch (IOException e) {
+      throw new UncheckedIOException("Cannot use original cache directory " + directory, e);
+    }
+  }
+
+  private static void deleteQuietly(Path path) {
+    try {
+      Files.deleteIfExists(path);
+    } catch (IOException e) {
+      logger.warn("Failed to delete cached original {}: {}", path, e.getMessage());
+    }
+  }
+
+  private static final class Entry {
+    final String eTag;
+    final Path path;
+    final long size;
+    int pins;
+    boolean removed;
+
+    Entry(String eTag, Path path, long size) {
+      this.eTag = eTag;
+      this.path = path;
+      this.size = size;
+    }
+  }
+
+  /**
+   * Copies everything read from the source into the cache file.
+   */
+  private final class FillingInputStream extends FilterInputStream {
+    private final String mediaId;
+    private final String eTag;
+    private final Path path;
+    private final OutputStream copy;
+    private long size;
+    private boolean complete;
+    private boolean failed;
+
+    FillingInputStream(InputStream source, String mediaId, String eTag, Path path) throws IOException {
+      super(source);
+      this.mediaId = mediaId;
+      this.eTag = eTag;
+      this.path = path;
+      this.copy = Files.newOutputStream(path);
+    }
+
+    @Override
+    public int read() throws IOException {
+      int b = super.read();
+      if (b < 0) {
+        complete = true;
+      } else {
+        copy(new byte[] { (byte) b }, 0, 1);
+      }
+      return b;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+      int n = super.read(b, off, len);
+      if (n < 0) {
+        complete = true;
+      } else {
+        copy(b, off, n);
+      }
+      return n;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+      // Skipped bytes must reach the copy too
+      var buffer = new byte[(int) Math.min(n, 8192)];
+      int read = read(buffer, 0, buffer.length);
+      return Math.max(0, read);
+    }
+
+    @Override
+    public boolean markSupported() {
+      return false;
+    }
+
+    @Override
+    public void close() throws IOException {
+      try {
+        if (!complete && !failed) {
+          drain();
+        }
+      } catch (IOException e) {
+        failed = true;
+      } finally {
+        super.close();
+        copy.close();
+        if (complete && !failed) {
+          admit(mediaId, eTag, path, size, false);
+        } else {
+          deleteQuietly(path);
+        }
+      }
+    }
+
+    private void drain() throws IOException {
+      var buffer = new byte[8192];
+      long drained = 0;
+      int n;
+      while (drained <= MAX_DRAIN_BYTES && (n = read(buffer, 0, buffer.length)) >= 0) {
+        drained += n;
+      }
+    }
+
+    private void copy(byte[] b, int off, int len) {
+      if (failed) {
+        return;
+      }
+      try {
+        copy.write(b, off, len);
+        size += len;
+      } catch (IOException e) {
+        // A full /tmp must not fail the decode; the original just is not cached
+        failed = true;
+        logger.warn("Failed to cache original of media {}: {}", mediaId, e.getMessage());
+      }
+    }
+  }
+}
@@ -0,0 +1,129 @@
+package com.mediaservice.lambda.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A processing lease held on a media item for the length of a render.
+ *
+ * <p>
+ * The lease is renewed in the background every third of its duration, so it
+ * stays live for as long as the holder works, however long the image takes,
+ * and lapses soon after the holder dies. Every write that ends the render is
+ * fenced by the lease token: once another consumer has taken the lease over,
+ * this holder can no longer complete or fail the media.
+ *
+ * <p>
+ * Closing stops the renewals. A lease that was not ended by
+ * {@link #complete} or {@link #fail} (a transient failure, or a render
+ * deferred for lack of time) is released, so the redelivery takes it over at
+ * once rather than waiting for it to expire.
+ */
+public final class ProcessingLease implements AutoCloseable {
+  private static final Logger logger = LoggerFactory.getLogger(ProcessingLease.class);
+  // One thread renews every lease of the container; a renewal is a single small update
+  private static final ScheduledExecutorService HEARTBEATS = Executors.newSingleThreadScheduledExecutor(
+      daemonThreads());
+
+  private final DynamoDbService dynamoDbService;
+  private final String mediaId;
+  private final long token;
+  private final long durationMillis;
+  private final ScheduledFuture<?> heartbeat;
+  private volatile boolean lost;
+  private boolean ended;
+
+  private ProcessingLease(DynamoDbService dynamoDbService, String mediaId, long token, Duration duration) {
+    this.dynamoDbService = dynamoDbService;
+    this.mediaId = mediaId;
+    this.token = token;
+    this.durationMillis = duration.toMillis();
+    long interval = Math.max(1, durationMillis / 3);
+    this.heartbeat = HEARTBEATS.scheduleWithFixedDelay(this::renew, interval, interval, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Start renewing a lease just acquired with {@link DynamoDbService#acquireLease}.
+   */
+  public static ProcessingLease hold(DynamoDbService dynamoDbService, String mediaId, DynamoDbService.Lease lease,
+      Duration duration) {
+    return new ProcessingLease(dynamoDbService, mediaId, lease.token(), duration);
+  }
+
+  private void renew() {
+    try {
+      if (!dynamoDbService.renewLease(mediaId, token, System.currentTimeMillis() + durationMillis)) {
+        lost = true;
+        heartbeat.cancel(false);
+        logger.warn("Lost the processing lease on media {} (token {}) to another consumer", mediaId, token);
+      }
+    } catch (Exception e) {
+      // The next renewal is due well before the lease runs out
+      logger.warn("Failed to renew the processing lease on media {}: {}", mediaId, e.getMessage());
+    }
+  }
+
+  /**
+   * Mark the media COMPLETE and end the lease.
+   *
+   * @return False if the lease was lost, in which case the media is left to its new holder
+   */
+  public boolean complete(Integer width) {
+    boolean completed = dynamoDbService.completeMedia(mediaId, token, width);
+    ended = true;
+    return completed;
+  }
+
+  /**
+   * Mark the media ERROR with {@code reason} and end the lease.
+   *
+   * @return False if the lease was lost, in which case the media is left to its new holder
+   */
+  public boolean fail(String reason) {
+    boolean failed = dynamoDbService.setMediaError(mediaId, token, reason);
+    ended = true;
+    return failed;
+  }
+
+  public long getToken() {
+    return token;
+  }
+
+  /**
+   * Whether a renewal found the lease taken over, so the render's outcome will be refused.
+   */
+  public boolean isLost() {
+    return lost;
+  }
+
+  @Override
+  public void close() {
+    heartbeat.cancel(false);
+    if (ended || lost) {
+      return;
+    }
+    try {
+      dynamoDbService.releaseLease(mediaId, token);
+    } catch (Exception e) {
+      // It expires on its own
+      logger.warn("Failed to release the processing lease on media {}: {}", mediaId, e.getMessage());
+    }
+  }
+
+  private static ThreadFactory daemonThreads() {
+    var counter = new AtomicInteger();
+    return runnable -> {
+      var thread = new Thread(runnable, "processing-lease-heartbeat-" + counter.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    };
+  }
+}
@@ -0,0 +1,186 @@
+package com.mediaservice.lambda.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import software.amazon.awssdk.core.ResponseInputStream;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.GetObjectRequest;
+import software.amazon.awssdk.services.s3.model.GetObjectResponse;
+import software.amazon.awssdk.services.s3.model.S3Exception;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Fetches one S3 object over several ranged GETs in parallel into a temp
+ * file, so a large original is not limited by the throughput of a single
+ * connection.
+ *
+ * <p>
+ * The first range is fetched alone: its {@code Content-Range} gives the real
+ * object size (the size recorded on the media item is only what the client
+ * declared) and its ETag, which every other range must match so a concurrent
+ * overwrite fails the download instead of mixing two objects. The remaining
+ * ranges are shared by up to {@code parallelism} workers, each writing at
+ * its range's offset in the file. An endpoint that ignores {@code Range}
+ * answers the first request with the whole object, which is then written
+ * as is and no other range is requested.
+ */
+final class RangedDownload {
+  private static final Logger logger = LoggerFactory.getLogger(RangedDownload.class);
+  private static final int COPY_BUFFER_SIZE = 64 * 1024;
+  private static final int RANGE_NOT_SATISFIABLE = 416;
+  private static final ExecutorService RANGE_FETCHES = Executors.newCachedThreadPool(daemonThreads());
+
+  private final S3Client client;
+  private final String bucketName;
+  private final long rangeSize;
+  private final int parallelism;
+
+  RangedDownload(S3Client client, String bucketName, long rangeSize, int parallelism) {
+    this.client = client;
+    this.bucketName = bucketName;
+    this.rangeSize = Math.max(1, rangeSize);
+    this.parallelism = Math.max(1, parallelism);
+  }
+
+  /**
+   * Download {@code key} into a new temp file in {@code directory}, deleted
+   * again if the download fails.
+   */
+  SpooledOriginal fetch(String key, String directory) throws IOException {
+    var path = directory != null
+        ? Files.createTempFile(Path.of(directory), "original-", ".bin")
+        : Files.createTempFile("original-", ".bin");
+    try (var channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+      long start = System.nanoTime();
+      var object = download(key, channel);
+      logger.info("Downloaded {} ({} bytes) in {} ms over ranges of {} bytes", key, object.size(),
+          (System.nanoTime() - start) / 1_000_000, rangeSize);
+      return SpooledOriginal.of(path, object.size(), object.eTag());
+    } catch (IOException | RuntimeException e) {
+      Files.deleteIfExists(path);
+      throw e;
+    }
+  }
+
+  private record Downloaded(long size, String eTag) {
+  }
+
+  private Downloaded download(String key, FileChannel channel) throws IOException {
+    String eTag;
+    long size;
+    try (var first = client.getObject(request(key, 0, null))) {
+      eTag = first.response().eTag();
+      size = objectSize(first.response());
+      if (first.response().contentRange() == null) {
+        // Range ignored: the body is the whole object, and every other range would return it again
+        write(first, channel, 0, size, key);
+        return new Downloaded(size, eTag);
+      }
+      write(first, channel, 0, Math.min(rangeSize, size), key);
+    } catch (S3Exception e) {
+      if (e.statusCode() == RANGE_NOT_SATISFIABLE) {
+        // Only an empty object has no byte 0
+        return new Downloaded(0, null);
+      }
+      throw e;
+    }
+
+    long remaining = Math.max(0, size - rangeSize);
+    int workers = (int) Math.min(parallelism, (remaining + rangeSize - 1) / rangeSize);
+    var next = new AtomicLong(rangeSize);
+    var futures = new ArrayList<Future<Void>>(workers);
+    for (int i = 0; i < workers; i++) {
+      futures.add(RANGE_FETCHES.submit(() -> {
+        for (long offset = next.getAndAdd(rangeSize); offset < size; offset = next.getAndAdd(rangeSize)) {
+          try (var range = client.getObject(request(key, offset, eTag))) {
+            write(range, channel, offset, Math.min(rangeSize, size - offset), key);
+          }
+        }
+        return null;
+      }));
+    }
+    try {
+      for (var future : futures) {
+        future.get();
+      }
+    } catch (InterruptedException e) {
+      futures.forEach(future -> future.cancel(true));
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted downloading " + key);
+    } catch (ExecutionException e) {
+      futures.forEach(future -> future.cancel(true));
+      if (e.getCause() instanceof IOException io) {
+        throw io;
+      }
+      throw new IOException("Failed to download " + key, e.getCause());
+    }
+    return new Downloaded(size, eTag);
+  }
+
+  private GetObjectRequest request(String key, long offset, String eTag) {
+    return GetObjectRequest.builder()
+        .bucket(bucketName)
+        .key(key)
+        .range("bytes=" + offset + "-" + (offset + rangeSize - 1))
+        .ifMatch(eTag)
+        .build();
+  }
+
+  /**
+   * Total object size from a ranged response's {@code Content-Range}
+   * ({@code bytes 0-16777215/734003200}).
+   */
+  static long objectSize(GetObjectResponse response) {
+    var contentRange = response.contentRange();
+    if (contentRange != null) {
+      int slash = contentRange.lastIndexOf('/');
+      if (slash >= 0 && !contentRange.endsWith("*")) {
+        return Long.parseLong(contentRange.substring(slash + 1).trim());
+      }
+    }
+    // Range ignored (e.g. by an S3-compatible endpoint); the body is the whole object
+    return response.contentLength();
+  }
+
+  private static void write(ResponseInputStream<GetObjectResponse> body, FileChannel channel, long offset,
+      long expected, String key) throws IOException {
+    var buffer = new byte[COPY_BUFFER_SIZE];
+    long position = offset;
+    int read;
+    while (position - offset < expected
+        && (read = body.read(buffer, 0, (int) Math.min(buffer.length, expected - (position - offset)))) > 0) {
+      var chunk = ByteBuffer.wrap(buffer, 0, read);
+      while (chunk.hasRemaining()) {
+        position += channel.write(chunk, position);
+      }
+    }
+    if (position - offset != expected) {
+      throw new IOException(String.format("Short read of %s at offset %d: %d of %d bytes", key, offset,
+          position - offset, expected));
+    }
+  }
+
+  private static ThreadFactory daemonThreads() {
+    var counter = new AtomicInteger();
+    return runnable -> {
+      var thread = new Thread(runnable, "s3-range-download-" + counter.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    };
+  }
+}
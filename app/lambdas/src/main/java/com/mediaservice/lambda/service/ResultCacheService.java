@@ -0,0 +1,160 @@
+package com.mediaservice.lambda.service;
+
+import com.mediaservice.common.constants.StorageConstants;
+import com.mediaservice.common.model.OutputFormat;
+import com.mediaservice.lambda.config.AwsClientFactory;
+import com.mediaservice.lambda.config.LambdaConfig;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.GetItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.PutItemRequest;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Content-addressed cache of processing results.
+ *
+ * <p>
+ * Identical originals (re-uploads, retries, repeated resizes) render to the
+ * same output for a given width, format, watermark version and quality. Each
+ * rendered output is copied to {@code results/{contentHash}/...} and indexed
+ * in DynamoDB, so the next request for the same combination becomes a
+ * server-side S3 copy instead of a download, decode and encode.
+ *
+ * <p>
+ * DynamoDB Key Structure:
+ * <ul>
+ * <li>PK: RESULT#{contentHash}</li>
+ * <li>SK: {width}#{format}#{watermarkVersion}#{quality}</li>
+ * </ul>
+ * Entries expire via the table's {@code expiresAt} TTL; the S3 lifecycle rule
+ * on {@code results/} keeps objects slightly longer than their index entries.
+ * Results are shared across media and are not removed when one media item is
+ * deleted.
+ */
+public class ResultCacheService {
+  private static final Logger logger = LoggerFactory.getLogger(ResultCacheService.class);
+
+  private final DynamoDbClient client;
+  private final S3Service s3Service;
+  private final String tableName;
+  private final boolean enabled;
+  private final Duration ttl;
+  private final String spoolDirectory;
+
+  public ResultCacheService() {
+    this(AwsClientFactory.getDynamoDbClient(), new S3Service(), LambdaConfig.getInstance().getTableName(),
+        LambdaConfig.getInstance().isResultCacheEnabled(),
+        Duration.ofDays(LambdaConfig.getInstance().getResultCacheTtlDays()),
+        LambdaConfig.getInstance().getDecodeSpillDirectory());
+  }
+
+  /**
+   * Constructor for testing with custom client.
+   */
+  ResultCacheService(DynamoDbClient client, S3Service s3Service, String tableName, boolean enabled, Duration ttl,
+      String spoolDirectory) {
+    this.client = client;
+    this.s3Service = s3Service;
+    this.tableName = tableName;
+    this.enabled = enabled;
+    this.ttl = ttl;
+    this.spoolDirectory = spoolDirectory;
+  }
+
+  public boolean isEnabled() {
+    return enabled;
+  }
+
+  /**
+   * Spool an original to local disk, computing its content hash.
+   */
+  public SpooledOriginal spool(InputStream original) throws IOException {
+    return SpooledOriginal.spool(original, spoolDirectory);
+  }
+
+  /**
+   * Find a previously rendered result.
+   *
+   * @return S3 key of the cached output, or empty on a miss
+   */
+  public Optional<String> lookup(ResultKey key) {
+    var item = client.getItem(GetItemRequest.builder()
+        .tableName(tableName)
+        .key(keyFor(key))
+        .build()).item();
+    if (item == null || !item.containsKey("s3Key")) {
+      return Optional.empty();
+    }
+    // DynamoDB TTL deletion is lazy, so expired entries can still be returned
+    if (item.containsKey("expiresAt")
+        && Long.parseLong(item.get("expiresAt").n()) < Instant.now().getEpochSecond()) {
+      return Optional.empty();
+    }
+    return Optional.of(item.get("s3Key").s());
+  }
+
+  /**
+   * Copy a freshly rendered output into the result store and index it.
+   *
+   * @param key       Result key of the rendering
+   * @param outputKey S3 key of the rendered output
+   */
+  public void store(ResultKey key, String outputKey) {
+    var resultKey = key.s3Key();
+    s3Service.copyObject(outputKey, resultKey);
+    var item = new HashMap<>(keyFor(key));
+    item.put("s3Key", s(resultKey));
+    item.put("storedAt", s(Instant.now().toString()));
+    item.put("expiresAt", AttributeValue.builder()
+        .n(String.valueOf(Instant.now().plus(ttl).getEpochSecond())).build());
+    client.putItem(PutItemRequest.builder().tableName(tableName).item(item).build());
+    logger.info("Stored processing result {} for content {}", resultKey, key.contentHash());
+  }
+
+  private Map<String, AttributeValue> keyFor(ResultKey key) {
+    return Map.of("PK", s(key.partitionKey()), "SK", s(key.sortKey()));
+  }
+
+  private static AttributeValue s(String value) {
+    return AttributeValue.builder().s(value).build();
+  }
+
+  /**
+   * Everything that determines the bytes of a processed output.
+   *
+   * @param contentHash      SHA-256 of the original
+   * @param width            Output width in pixels
+   * @param format           Output format
+   * @param watermarkVersion Fingerprint of the watermark image, its placement and scaling settings
+   * @param quality          Encoder quality, or null for the writer default
+   */
+  public record ResultKey(String contentHash, int width, OutputFormat format, String watermarkVersion,
+      Float quality) {
+
+    String partitionKey() {
+      return StorageConstants.DYNAMO_RESULT_PK_PREFIX + contentHash;
+    }
+
+    String sortKey() {
+      return width + "#" + format.getFormat() + "#" + watermarkVersion + "#" + qualityTag();
+    }
+
+    String s3Key() {
+      return StorageConstants.S3_RESULTS_PREFIX + contentHash + "/" + width + "-" + watermarkVersion + "-"
+          + qualityTag() + format.getExtension();
+    }
+
+    private String qualityTag() {
+      return quality == null ? "default" : "q" + Math.round(quality * 100);
+    }
+  }
+}
@@ -3,12 +3,18 @@ package com.mediaservice.lambda.service;
 import com.mediaservice.lambda.config.AwsClientFactory;
 import com.mediaservice.lambda.config.LambdaConfig;
 import com.mediaservice.common.constants.StorageConstants;
+import com.mediaservice.common.model.MediaVariant;
 import com.mediaservice.common.model.OutputFormat;
-import software.amazon.awssdk.core.sync.RequestBody;
+import software.amazon.awssdk.core.ResponseInputStream;
 import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.CopyObjectRequest;
 import software.amazon.awssdk.services.s3.model.DeleteObjectRequest;
 import software.amazon.awssdk.services.s3.model.GetObjectRequest;
-import software.amazon.awssdk.services.s3.model.PutObjectRequest;
+import software.amazon.awssdk.services.s3.model.GetObjectResponse;
+import software.amazon.awssdk.services.s3.model.S3Exception;
+
+import java.io.IOException;
+import java.util.List;
 
 /**
  * S3 service for Lambda media operations.
@@ -18,51 +24,168 @@ import software.amazon.awssdk.services.s3.model.PutObjectRequest;
  * {mediaId}/
  *   original.{ext}   - Original uploaded file
  *   processed.{ext}  - Processed/resized output
+ *   resize_{width}.{ext} - Variant set outputs
+ * results/{contentHash}/...  - Content-addressed result cache (see ResultCacheService)
  * </pre>
  */
 public class S3Service {
+  private static final int NOT_MODIFIED = 304;
+
   private final S3Client client;
   private final String bucketName;
+  private final int uploadPartSizeBytes;
+  private final long rangedDownloadThresholdBytes;
+  private final RangedDownload rangedDownload;
+  private final String downloadDirectory;
 
   public S3Service() {
-    this.client = AwsClientFactory.getS3Client();
-    this.bucketName = LambdaConfig.getInstance().getBucketName();
+    this(AwsClientFactory.getS3Client(), LambdaConfig.getInstance().getBucketName());
   }
 
   /**
-   * Get the original uploaded media file.
+   * Constructor for testing with custom client.
+   */
+  S3Service(S3Client client, String bucketName) {
+    this(client, bucketName, LambdaConfig.getInstance());
+  }
+
+  S3Service(S3Client client, String bucketName, LambdaConfig config) {
+    this.client = client;
+    this.bucketName = bucketName;
+    this.uploadPartSizeBytes = config.getS3UploadPartSizeBytes();
+    this.rangedDownloadThresholdBytes = config.getS3RangedDownloadThresholdBytes();
+    this.rangedDownload = new RangedDownload(client, bucketName, config.getS3DownloadRangeSizeBytes(),
+        config.getS3DownloadParallelism());
+    this.downloadDirectory = config.getDecodeSpillDirectory();
+  }
+
+  /**
+   * Open the original uploaded media file as a stream.
+   *
+   * <p>The caller must close the returned stream. Reading it directly avoids
+   * holding the whole object in memory next to the decoded image.
    *
    * @param mediaId   The media ID
    * @param mediaName The original filename (used to determine extension)
-   * @return The file contents as byte array
+   * @return The S3 response body stream
    */
-  public byte[] getMediaFile(String mediaId, String mediaName) {
+  public ResponseInputStream<GetObjectResponse> openMediaFile(String mediaId, String mediaName) {
     String extension = StorageConstants.getFileExtension(mediaName);
     String key = StorageConstants.buildS3Key(mediaId, StorageConstants.S3_VARIANT_ORIGINAL, extension);
     var request = GetObjectRequest.builder()
         .bucket(bucketName)
         .key(key)
         .build();
-    return client.getObjectAsBytes(request).asByteArray();
+    return client.getObject(request);
   }
 
   /**
-   * Upload a processed media file.
+   * Open the original unless it still has the given ETag, using a
+   * conditional GET: an unchanged object costs a request but no transfer.
    *
-   * @param mediaId      The media ID
-   * @param mediaName    The original filename (unused in new structure)
-   * @param data         The processed image data
-   * @param outputFormat The output format (determines extension)
+   * @param eTag ETag of a copy held locally
+   * @return The S3 response body stream, or null if the object still has {@code eTag}
    */
-  public void uploadProcessedMedia(String mediaId, String mediaName, byte[] data, OutputFormat outputFormat) {
-    OutputFormat format = (outputFormat != null) ? outputFormat : OutputFormat.JPEG;
-    String key = StorageConstants.buildS3Key(mediaId, StorageConstants.S3_VARIANT_PROCESSED, format.getExtension());
-    var request = PutObjectRequest.builder()
+  public ResponseInputStream<GetObjectResponse> openMediaFileIfChanged(String mediaId, String mediaName,
+      String eTag) {
+    String extension = StorageConstants.getFileExtension(mediaName);
+    String key = StorageConstants.buildS3Key(mediaId, StorageConstants.S3_VARIANT_ORIGINAL, extension);
+    var request = GetObjectRequest.builder()
         .bucket(bucketName)
         .key(key)
-        .contentType(format.getContentType())
+        .ifNoneMatch(eTag)
         .build();
-    client.putObject(request, RequestBody.fromBytes(data));
+    try {
+      return client.getObject(request);
+    } catch (S3Exception e) {
+      if (e.statusCode() == NOT_MODIFIED) {
+        return null;
+      }
+      throw e;
+    }
+  }
+
+  /**
+   * Whether an original of the given recorded size should be fetched with
+   * {@link #downloadMediaFile} rather than streamed over one connection.
+   *
+   * @param size Size recorded on the media item, or null if unknown
+   */
+  public boolean isRangedDownload(Long size) {
+    return size != null && size >= rangedDownloadThresholdBytes;
+  }
+
+  /**
+   * Download the original uploaded media file to local disk over parallel
+   * ranged GETs. The caller closes the result, which deletes the file.
+   *
+   * @param mediaId   The media ID
+   * @param mediaName The original filename (used to determine extension)
+   */
+  public SpooledOriginal downloadMediaFile(String mediaId, String mediaName) throws IOException {
+    String extension = StorageConstants.getFileExtension(mediaName);
+    String key = StorageConstants.buildS3Key(mediaId, StorageConstants.S3_VARIANT_ORIGINAL, extension);
+    return rangedDownload.fetch(key, downloadDirectory);
+  }
+
+  /**
+   * Open a streaming upload of the processed file. Output is sent in parts
+   * while it is written; closing the stream completes the upload.
+   *
+   * @param mediaId      The media ID
+   * @param outputFormat The output format (determines extension and content type)
+   */
+  public UploadOutputStream openProcessedUpload(String mediaId, OutputFormat outputFormat) {
+    OutputFormat format = (outputFormat != null) ? outputFormat : OutputFormat.JPEG;
+    return new MultipartUploadOutputStream(client, bucketName, processedKey(mediaId, format), format,
+        uploadPartSizeBytes);
+  }
+
+  /**
+   * Open a streaming upload of a variant catalog rendition; closing the
+   * stream completes the upload.
+   *
+   * @param mediaId      The media ID
+   * @param width        The variant width (part of the key)
+   * @param outputFormat The output format (determines extension and content type)
+   */
+  public UploadOutputStream openVariantUpload(String mediaId, int width, OutputFormat outputFormat) {
+    return new MultipartUploadOutputStream(client, bucketName, variantKey(mediaId, width, outputFormat),
+        outputFormat, uploadPartSizeBytes);
+  }
+
+  /**
+   * S3 key of a variant catalog rendition.
+   */
+  public String variantKey(String mediaId, int width, OutputFormat outputFormat) {
+    return StorageConstants.buildVariantKey(mediaId, width, outputFormat.getExtension());
+  }
+
+  /**
+   * Server-side copy of an object within the media bucket.
+   *
+   * @param sourceKey      Key of the existing object
+   * @param destinationKey Key to copy it to (overwritten if present)
+   */
+  public void copyObject(String sourceKey, String destinationKey) {
+    var request = CopyObjectRequest.builder()
+        .sourceBucket(bucketName)
+        .sourceKey(sourceKey)
+        .destinationBucket(bucketName)
+        .destinationKey(destinationKey)
+        .build();
+    client.copyObject(request);
+  }
+
+  /**
+   * S3 key of the processed output for a media item.
+   *
+   * @param mediaId      The media ID
+   * @param outputFormat The output format (determines extension)
+   */
+  public String processedKey(String mediaId, OutputFormat outputFormat) {
+    OutputFormat format = (outputFormat != null) ? outputFormat : OutputFormat.JPEG;
+    return StorageConstants.buildS3Key(mediaId, StorageConstants.S3_VARIANT_PROCESSED, format.getExtension());
   }
 
   /**
@@ -96,4 +219,17 @@ public class S3Service {
         .build();
     client.deleteObject(request);
   }
+
+  /**
+   * Delete the stored renditions of the given variant catalog entries.
+   * Deleting a missing key is a no-op, so pending entries are safe to pass.
+   */
+  public void deleteVariants(String mediaId, List<MediaVariant> variants) {
+    for (var variant : variants) {
+      client.deleteObject(DeleteObjectRequest.builder()
+          .bucket(bucketName)
+          .key(variantKey(mediaId, variant.getWidth(), variant.getOutputFormat()))
+          .build());
+    }
+  }
 }
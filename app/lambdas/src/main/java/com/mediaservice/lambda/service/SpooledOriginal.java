@@ -0,0 +1,147 @@
+package com.mediaservice.lambda.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+
+/**
+ * An original copied to local disk while its SHA-256 is computed.
+ *
+ * <p>
+ * Used when the content hash is not yet known: the original has to be read
+ * once to hash it, and spooling it to {@code /tmp} lets the decoder re-read it
+ * on a result-cache miss without a second S3 GET or a heap copy. The file is
+ * deleted on {@link #close()}.
+ *
+ * <p>
+ * Large originals fetched by {@link S3Service#downloadMediaFile} arrive out
+ * of order over ranged GETs, so their hash is computed from the file on first
+ * use instead. An original served from the {@link OriginalCache} is a view of
+ * the cache's file: closing it releases the file back to the cache rather
+ * than deleting it.
+ */
+public final class SpooledOriginal implements AutoCloseable {
+  private static final Logger logger = LoggerFactory.getLogger(SpooledOriginal.class);
+
+  private final Path path;
+  private final long size;
+  private final String eTag;
+  private final Runnable release;
+  private String sha256;
+
+  private SpooledOriginal(Path path, String sha256, long size, String eTag, Runnable release) {
+    this.path = path;
+    this.sha256 = sha256;
+    this.size = size;
+    this.eTag = eTag;
+    this.release = release;
+  }
+
+  /**
+   * Copy {@code input} to a temp file in {@code directory}, hashing it on the way.
+   * The input stream is consumed but not closed.
+   */
+  public static SpooledOriginal spool(InputStream input, String directory) throws IOException {
+    var digest = sha256Digest();
+    var path = directory != null
+        ? Files.createTempFile(Path.of(directory), "original-", ".bin")
+        : Files.createTempFile("original-", ".bin");
+    try (var out = Files.newOutputStream(path)) {
+      long size = new DigestInputStream(input, digest).transferTo(out);
+      return new SpooledOriginal(path, HexFormat.of().formatHex(digest.digest()), size, null, null);
+    } catch (IOException | RuntimeException e) {
+      Files.deleteIfExists(path);
+      throw e;
+    }
+  }
+
+  /**
+   * Take ownership of a file already holding an original; it is hashed on
+   * the first {@link #getSha256()}.
+   *
+   * @param eTag ETag of the S3 object the file was downloaded from, or null
+   */
+  static SpooledOriginal of(Path path, long size, String eTag) {
+    return new SpooledOriginal(path, null, size, eTag, null);
+  }
+
+  /**
+   * A file owned by someone else; {@code release} is run on close instead of
+   * deleting it.
+   */
+  static SpooledOriginal view(Path path, long size, String eTag, Runnable release) {
+    return new SpooledOriginal(path, null, size, eTag, release);
+  }
+
+  /**
+   * Open a new stream over the spooled content, read through a memory
+   * mapping of the file. The caller closes it.
+   */
+  public InputStream open() throws IOException {
+    return MappedInputStream.open(path);
+  }
+
+  /**
+   * Open a stream over the spooled content that deletes the file when the
+   * caller closes it, for a single read.
+   */
+  public InputStream openOnce() throws IOException {
+    return new BufferedInputStream(Files.newInputStream(path, StandardOpenOption.DELETE_ON_CLOSE));
+  }
+
+  public String getSha256() throws IOException {
+    if (sha256 == null) {
+      var digest = sha256Digest();
+      try (var in = new DigestInputStream(Files.newInputStream(path), digest)) {
+        in.transferTo(OutputStream.nullOutputStream());
+      }
+      sha256 = HexFormat.of().formatHex(digest.digest());
+    }
+    return sha256;
+  }
+
+  public long getSize() {
+    return size;
+  }
+
+  /** ETag of the S3 object this was downloaded from, or null if not known. */
+  public String getETag() {
+    return eTag;
+  }
+
+  Path getPath() {
+    return path;
+  }
+
+  @Override
+  public void close() {
+    if (release != null) {
+      release.run();
+      return;
+    }
+    try {
+      Files.deleteIfExists(path);
+    } catch (IOException e) {
+      logger.warn("Failed to delete spooled original {}: {}", path, e.getMessage());
+    }
+  }
+
+  private static MessageDigest sha256Digest() {
+    try {
+      return MessageDigest.getInstance("SHA-256");
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException("SHA-256 not available", e);
+    }
+  }
+}
@@ -0,0 +1,30 @@
+package com.mediaservice.lambda.service;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Destination of one encoded output. Closing the stream commits the output;
+ * a writer that fails partway calls {@link #abort()} instead, so no partial
+ * object is ever stored.
+ */
+public abstract class UploadOutputStream extends OutputStream {
+
+  /**
+   * Discard everything written so far. Closing afterwards is a no-op.
+   */
+  public abstract void abort();
+
+  /**
+   * Number of bytes written so far.
+   */
+  public abstract long getBytesWritten();
+
+  /**
+   * Commit the output.
+   *
+   * @throws IOException if the output could not be stored; it is discarded in that case
+   */
+  @Override
+  public abstract void close() throws IOException;
+}
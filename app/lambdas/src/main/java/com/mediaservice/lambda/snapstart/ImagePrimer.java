@@ -0,0 +1,86 @@
+package com.mediaservice.lambda.snapstart;
+
+import com.mediaservice.common.model.OutputFormat;
+import com.mediaservice.lambda.service.DiscardingUploadOutputStream;
+import com.mediaservice.lambda.service.ImageProcessingService;
+import com.mediaservice.lambda.service.ImageProcessingService.Variant;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.imageio.ImageIO;
+import java.awt.Color;
+import java.awt.GradientPaint;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Runs representative decode, resize, watermark and encode cycles so the
+ * ImageIO codecs, resampler and watermark compositor are loaded and
+ * JIT-compiled before a snapshot is taken.
+ */
+public class ImagePrimer {
+  private static final Logger logger = LoggerFactory.getLogger(ImagePrimer.class);
+
+  private static final List<OutputFormat> FORMATS = List.of(OutputFormat.JPEG, OutputFormat.PNG, OutputFormat.WEBP);
+  // Large enough that the reduced decode subsamples for the default width
+  private static final int SOURCE_WIDTH = 2400;
+  private static final int SOURCE_HEIGHT = 1600;
+
+  private final ImageProcessingService imageProcessingService;
+  private final int iterations;
+
+  public ImagePrimer(ImageProcessingService imageProcessingService, int iterations) {
+    this.imageProcessingService = imageProcessingService;
+    this.iterations = iterations;
+  }
+
+  /**
+   * @return Number of outputs rendered
+   */
+  public int prime() throws IOException {
+    var sources = new ArrayList<byte[]>();
+    for (var format : FORMATS) {
+      var source = encodeSource(format);
+      if (source != null) {
+        sources.add(source);
+      } else {
+        logger.info("No {} writer available, skipping {} source", format.getFormat(), format.getFormat());
+      }
+    }
+
+    var variants = new ArrayList<Variant>();
+    for (Integer width : new Integer[] { null, 320 }) {
+      for (var format : FORMATS) {
+        variants.add(new Variant(width, format));
+      }
+    }
+
+    int rendered = 0;
+    for (int i = 0; i < iterations; i++) {
+      for (var source : sources) {
+        rendered += imageProcessingService.processVariants(new ByteArrayInputStream(source), variants,
+            output -> new DiscardingUploadOutputStream()).size();
+        imageProcessingService.resizeImage(new ByteArrayInputStream(source), null, OutputFormat.JPEG,
+            output -> new DiscardingUploadOutputStream());
+        rendered++;
+      }
+    }
+    return rendered;
+  }
+
+  private static byte[] encodeSource(OutputFormat format) throws IOException {
+    int type = format == OutputFormat.PNG ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB;
+    var image = new BufferedImage(SOURCE_WIDTH, SOURCE_HEIGHT, type);
+    var g = image.createGraphics();
+    g.setPaint(new GradientPaint(0, 0, Color.ORANGE, SOURCE_WIDTH, SOURCE_HEIGHT, new Color(20, 60, 200, 180)));
+    g.fillRect(0, 0, SOURCE_WIDTH, SOURCE_HEIGHT);
+    g.dispose();
+
+    var out = new ByteArrayOutputStream();
+    return ImageIO.write(image, format.getFormat(), out) ? out.toByteArray() : null;
+  }
+}
@@ -0,0 +1,75 @@
+package com.mediaservice.lambda.snapstart;
+
+import com.mediaservice.lambda.config.AwsClientFactory;
+import com.mediaservice.lambda.config.OpenTelemetryInitializer;
+import com.mediaservice.lambda.config.RestoreSafeIdGenerator;
+import org.crac.Context;
+import org.crac.Core;
+import org.crac.Resource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Checkpoint/restore hooks for Lambda SnapStart (and any CRaC runtime).
+ *
+ * <p>
+ * Before the snapshot, runs a priming step so class loading, static init and
+ * JIT compilation of the hot paths are captured in it. After restore, drops
+ * state that must not be shared between environments restored from the same
+ * snapshot: AWS credentials, pooled connections and trace ID randomness.
+ *
+ * <p>
+ * Without a checkpoint (plain on-demand init, local runs, tests) neither hook
+ * is called, so priming costs nothing there.
+ */
+public final class SnapStartHooks implements Resource {
+  private static final Logger logger = LoggerFactory.getLogger(SnapStartHooks.class);
+  private static final long FLUSH_TIMEOUT_SECONDS = 5;
+
+  private final Runnable priming;
+
+  public SnapStartHooks(Runnable priming) {
+    this.priming = priming;
+  }
+
+  /**
+   * Hooks without priming, for functions whose init is cheap.
+   */
+  public static SnapStartHooks restoreOnly() {
+    return new SnapStartHooks(() -> {
+    });
+  }
+
+  /**
+   * Register with the global context. The context holds resources weakly, so
+   * the caller must keep the returned hooks reachable.
+   */
+  public SnapStartHooks register() {
+    Core.getGlobalContext().register(this);
+    return this;
+  }
+
+  @Override
+  public void beforeCheckpoint(Context<? extends Resource> context) {
+    long start = System.currentTimeMillis();
+    try {
+      priming.run();
+      logger.info("Priming completed in {} ms", System.currentTimeMillis() - start);
+    } catch (Exception e) {
+      // A failed priming step only costs warmth; never block the snapshot
+      logger.warn("Priming failed after {} ms: {}", System.currentTimeMillis() - start, e.getMessage(), e);
+    }
+    // Nothing buffered for export should end up in the snapshot
+    if (!OpenTelemetryInitializer.flush().join(FLUSH_TIMEOUT_SECONDS, TimeUnit.SECONDS).isDone()) {
+      logger.warn("Telemetry export did not finish before the checkpoint");
+    }
+  }
+
+  @Override
+  public void afterRestore(Context<? extends Resource> context) {
+    RestoreSafeIdGenerator.INSTANCE.reseed();
+    AwsClientFactory.refreshAfterRestore();
+  }
+}
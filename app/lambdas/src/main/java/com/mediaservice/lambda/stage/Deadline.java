@@ -0,0 +1,78 @@
+package com.mediaservice.lambda.stage;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Time left in the current invocation, with the stage cost estimates to
+ * check work against it.
+ *
+ * <p>
+ * The handler builds one per invocation from the Lambda context's remaining
+ * time, less a reserve for returning the batch response and flushing
+ * telemetry. Work that is not expected to finish in time is refused with a
+ * {@link DeadlineExceededException} before it starts, rather than being
+ * killed by the timeout partway through.
+ */
+public final class Deadline {
+  private static final Deadline NONE = new Deadline(Long.MAX_VALUE, null, System::nanoTime);
+
+  private final long deadlineNanos;
+  private final StageCosts costs;
+  private final LongSupplier nanoClock;
+
+  /**
+   * Constructor for testing with a custom clock.
+   */
+  Deadline(long deadlineNanos, StageCosts costs, LongSupplier nanoClock) {
+    this.deadlineNanos = deadlineNanos;
+    this.costs = costs;
+    this.nanoClock = nanoClock;
+  }
+
+  /** No deadline: every check passes. Used outside Lambda. */
+  public static Deadline none() {
+    return NONE;
+  }
+
+  /**
+   * A deadline {@code millis} from now.
+   */
+  public static Deadline after(long millis, StageCosts costs) {
+    return new Deadline(System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(millis), costs, System::nanoTime);
+  }
+
+  /**
+   * Cost estimates to check against, or null without a deadline.
+   */
+  public StageCosts getCosts() {
+    return costs;
+  }
+
+  public long remainingMillis() {
+    if (this == NONE) {
+      return Long.MAX_VALUE;
+    }
+    return TimeUnit.NANOSECONDS.toMillis(deadlineNanos - nanoClock.getAsLong());
+  }
+
+  public boolean isExpired() {
+    return remainingMillis() <= 0;
+  }
+
+  /**
+   * Refuse work expected to take {@code nanos} if less time is left.
+   *
+   * @param work What is about to start, for the message
+   */
+  public void require(long nanos, String work) {
+    if (this == NONE) {
+      return;
+    }
+    long remaining = deadlineNanos - nanoClock.getAsLong();
+    if (remaining <= 0 || nanos > remaining) {
+      throw new DeadlineExceededException(String.format("%s needs ~%d ms but only %d ms remain", work,
+          TimeUnit.NANOSECONDS.toMillis(nanos), Math.max(0, TimeUnit.NANOSECONDS.toMillis(remaining))));
+    }
+  }
+}
@@ -0,0 +1,13 @@
+package com.mediaservice.lambda.stage;
+
+/**
+ * Thrown before a stage that is not expected to finish before the
+ * invocation times out. Nothing about the media is wrong: the work is left
+ * for a redelivery of the message, which starts with a full time budget.
+ */
+public class DeadlineExceededException extends RuntimeException {
+
+  public DeadlineExceededException(String message) {
+    super(message);
+  }
+}
@@ -0,0 +1,26 @@
+package com.mediaservice.lambda.stage;
+
+/**
+ * Steps of rendering one image, timed separately so a slow image can be
+ * attributed to I/O, decoding or encoding.
+ */
+public enum Stage {
+  /** Time blocked reading the original: the S3 body, or /tmp once spooled */
+  DOWNLOAD("download"),
+  /** Decoding, excluding the time spent waiting on the source stream */
+  DECODE("decode"),
+  RESIZE("resize"),
+  WATERMARK("watermark"),
+  ENCODE("encode"),
+  UPLOAD("upload");
+
+  private final String value;
+
+  Stage(String value) {
+    this.value = value;
+  }
+
+  public String getValue() {
+    return value;
+  }
+}
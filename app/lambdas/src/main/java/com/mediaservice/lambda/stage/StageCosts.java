@@ -0,0 +1,67 @@
+package com.mediaservice.lambda.stage;
+
+import java.util.Arrays;
+
+/**
+ * Expected duration of each {@link Stage}, per byte of the original, learned
+ * from the stages this container has timed.
+ *
+ * <p>
+ * The size of the original is the only measure of an image known before it
+ * is downloaded, so every stage is estimated from it. Each stage keeps an
+ * exponentially weighted average of its observed cost; a stage that has not
+ * run yet is estimated from the configured default, split evenly across the
+ * stages. Resize, watermark, encode and upload run once per output, and
+ * their estimates are per output.
+ */
+public final class StageCosts {
+  private static final double SMOOTHING = 0.2;
+  private static final double BYTES_PER_MB = 1024 * 1024;
+
+  private final double defaultNanosPerByte;
+  // NaN until the stage has been timed once
+  private final double[] nanosPerByte = new double[Stage.values().length];
+
+  /**
+   * @param defaultMillisPerMegabyte Cost of rendering one output from a
+   *                                 megabyte of original, across all stages,
+   *                                 until they have been timed
+   */
+  public StageCosts(long defaultMillisPerMegabyte) {
+    this.defaultNanosPerByte = defaultMillisPerMegabyte * 1_000_000.0 / BYTES_PER_MB / Stage.values().length;
+    Arrays.fill(nanosPerByte, Double.NaN);
+  }
+
+  public synchronized void record(Stage stage, long sourceBytes, long nanos) {
+    if (sourceBytes <= 0 || nanos < 0) {
+      return;
+    }
+    double observed = (double) nanos / sourceBytes;
+    double current = nanosPerByte[stage.ordinal()];
+    nanosPerByte[stage.ordinal()] = Double.isNaN(current) ? observed
+        : current + SMOOTHING * (observed - current);
+  }
+
+  /**
+   * Expected duration of one run of {@code stage}, or 0 if the size of the
+   * original is unknown.
+   */
+  public synchronized long estimateNanos(Stage stage, long sourceBytes) {
+    if (sourceBytes <= 0) {
+      return 0;
+    }
+    double rate = nanosPerByte[stage.ordinal()];
+    return (long) ((Double.isNaN(rate) ? defaultNanosPerByte : rate) * sourceBytes);
+  }
+
+  /**
+   * Expected duration of rendering {@code outputs} outputs from one download
+   * and decode of the original.
+   */
+  public long estimateRenderNanos(long sourceBytes, int outputs) {
+    long perOutput = estimateNanos(Stage.RESIZE, sourceBytes) + estimateNanos(Stage.WATERMARK, sourceBytes)
+        + estimateNanos(Stage.ENCODE, sourceBytes) + estimateNanos(Stage.UPLOAD, sourceBytes);
+    return estimateNanos(Stage.DOWNLOAD, sourceBytes) + estimateNanos(Stage.DECODE, sourceBytes)
+        + perOutput * Math.max(1, outputs);
+  }
+}
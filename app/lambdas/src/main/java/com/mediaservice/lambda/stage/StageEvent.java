@@ -0,0 +1,36 @@
+package com.mediaservice.lambda.stage;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * JFR event for one {@link Stage}. The event's own duration is wall time;
+ * {@code stageTime} is what the stage itself took, which is smaller for
+ * decoding because source reads overlap it.
+ */
+@Name("com.mediaservice.ImageStage")
+@Label("Image Pipeline Stage")
+@Category({ "Media Service", "Image Pipeline" })
+@Description("One stage of rendering a media item")
+@StackTrace(false)
+class StageEvent extends jdk.jfr.Event {
+  @Label("Stage")
+  String stage;
+
+  @Label("Media ID")
+  String mediaId;
+
+  @Label("Source Megapixels")
+  double megapixels;
+
+  @Label("Output Format")
+  String outputFormat;
+
+  @Label("Stage Time")
+  @Timespan(Timespan.NANOSECONDS)
+  long stageTime;
+}
@@ -0,0 +1,220 @@
+package com.mediaservice.lambda.stage;
+
+import com.mediaservice.common.model.OutputFormat;
+import io.opentelemetry.api.common.AttributeKey;
+import io.opentelemetry.api.common.Attributes;
+import io.opentelemetry.api.common.AttributesBuilder;
+import io.opentelemetry.api.metrics.DoubleHistogram;
+
+/**
+ * Per-image stage timings, recorded as a histogram sample and a JFR
+ * {@link StageEvent} for every stage.
+ *
+ * <p>
+ * The handler opens a scope for each media item on the thread processing it,
+ * and the image pipeline picks it up through {@link #current()}, so stage
+ * timing does not change any rendering signatures. Outside a scope (tests,
+ * priming, benchmarks) only the JFR events are emitted.
+ *
+ * <p>
+ * Histogram samples carry the source size as a megapixel tier rather than
+ * the exact value, to keep metric cardinality bounded; the JFR events carry
+ * the exact value.
+ *
+ * <p>
+ * A scope opened with a {@link Deadline} also checks it between stages
+ * ({@link #checkDeadline}): a stage that is not expected to finish in the
+ * time left is refused before it starts. Once the size of the original is
+ * known, every stage timed in the scope feeds the deadline's
+ * {@link StageCosts}.
+ */
+public final class StageTimings implements AutoCloseable {
+  private static final ThreadLocal<StageTimings> CURRENT = new ThreadLocal<>();
+
+  private static final AttributeKey<String> STAGE = AttributeKey.stringKey("stage");
+  private static final AttributeKey<String> MEGAPIXELS = AttributeKey.stringKey("image.megapixels");
+  private static final AttributeKey<String> OUTPUT_FORMAT = AttributeKey.stringKey("output.format");
+
+  private final DoubleHistogram durations;
+  private final String mediaId;
+  private final Deadline deadline;
+  private final StageTimings previous;
+  private double megapixels = Double.NaN;
+  private long sourceBytes;
+
+  private StageTimings(DoubleHistogram durations, String mediaId, Deadline deadline, StageTimings previous) {
+    this.durations = durations;
+    this.mediaId = mediaId;
+    this.deadline = deadline;
+    this.previous = previous;
+  }
+
+  /**
+   * Make a scope for {@code mediaId} current on this thread until closed.
+   *
+   * @param durations Histogram receiving stage durations in milliseconds
+   */
+  public static StageTimings open(DoubleHistogram durations, String mediaId) {
+    return open(durations, mediaId, Deadline.none());
+  }
+
+  /**
+   * Make a scope for {@code mediaId} current on this thread until closed,
+   * checking stages against {@code deadline}.
+   */
+  public static StageTimings open(DoubleHistogram durations, String mediaId, Deadline deadline) {
+    var timings = new StageTimings(durations, mediaId, deadline, CURRENT.get());
+    CURRENT.set(timings);
+    return timings;
+  }
+
+  /**
+   * The scope opened on this thread, or a new unscoped instance that only
+   * emits JFR events.
+   */
+  public static StageTimings current() {
+    var timings = CURRENT.get();
+    return timings != null ? timings : new StageTimings(null, null, Deadline.none(), null);
+  }
+
+  /**
+   * Size of the decoded original; stages recorded afterwards are attributed to it.
+   */
+  public void setSourceSize(int width, int height) {
+    this.megapixels = (double) width * height / 1_000_000;
+  }
+
+  /**
+   * Size of the original in bytes, if recorded; stage estimates are based on it.
+   */
+  public void setSourceBytes(Long bytes) {
+    this.sourceBytes = bytes != null ? bytes : 0;
+  }
+
+  /**
+   * Refuse to render {@code outputs} outputs if the whole render is not
+   * expected to finish before the deadline.
+   */
+  public void checkDeadline(int outputs) {
+    var costs = deadline.getCosts();
+    if (costs != null) {
+      deadline.require(costs.estimateRenderNanos(sourceBytes, outputs), "render of " + outputs + " outputs");
+    }
+  }
+
+  /**
+   * Refuse to start {@code next} if it is not expected to finish before the
+   * deadline. An output is committed as it is encoded, so encoding also
+   * counts its upload.
+   */
+  public void checkDeadline(Stage next) {
+    var costs = deadline.getCosts();
+    if (costs == null) {
+      return;
+    }
+    long nanos = costs.estimateNanos(next, sourceBytes);
+    if (next == Stage.ENCODE) {
+      nanos += costs.estimateNanos(Stage.UPLOAD, sourceBytes);
+    }
+    deadline.require(nanos, next.getValue());
+  }
+
+  public Timer start(Stage stage) {
+    return new Timer(stage);
+  }
+
+  @Override
+  public void close() {
+    if (CURRENT.get() == this) {
+      if (previous != null) {
+        CURRENT.set(previous);
+      } else {
+        CURRENT.remove();
+      }
+    }
+  }
+
+  /**
+   * Megapixel bucket of the source, "unknown" before it has been decoded.
+   */
+  static String tier(double megapixels) {
+    if (Double.isNaN(megapixels)) {
+      return "unknown";
+    }
+    if (megapixels < 1) {
+      return "<1";
+    }
+    if (megapixels < 4) {
+      return "1-4";
+    }
+    if (megapixels < 12) {
+      return "4-12";
+    }
+    if (megapixels < 24) {
+      return "12-24";
+    }
+    if (megapixels < 50) {
+      return "24-50";
+    }
+    return "50+";
+  }
+
+  private void record(Stage stage, OutputFormat format, long stageNanos, StageEvent event) {
+    event.end();
+    if (event.shouldCommit()) {
+      event.stage = stage.getValue();
+      event.mediaId = mediaId;
+      event.megapixels = megapixels;
+      event.outputFormat = format != null ? format.getFormat() : null;
+      event.stageTime = stageNanos;
+      event.commit();
+    }
+    if (durations != null) {
+      AttributesBuilder attributes = Attributes.builder()
+          .put(STAGE, stage.getValue())
+          .put(MEGAPIXELS, tier(megapixels));
+      if (format != null) {
+        attributes.put(OUTPUT_FORMAT, format.getFormat());
+      }
+      durations.record(stageNanos / 1_000_000.0, attributes.build());
+    }
+    if (deadline.getCosts() != null) {
+      deadline.getCosts().record(stage, sourceBytes, stageNanos);
+    }
+  }
+
+  /**
+   * A started stage; stop it exactly once.
+   */
+  public final class Timer {
+    private final Stage stage;
+    private final StageEvent event = new StageEvent();
+    private final long start;
+
+    private Timer(Stage stage) {
+      this.stage = stage;
+      event.begin();
+      this.start = System.nanoTime();
+    }
+
+    public long elapsedNanos() {
+      return System.nanoTime() - start;
+    }
+
+    /**
+     * Record the elapsed time since the stage started.
+     *
+     * @param format Output format the stage worked on, or null if not specific to one
+     */
+    public void stop(OutputFormat format) {
+      stop(format, elapsedNanos());
+    }
+
+    /**
+     * Record {@code stageNanos} for a stage that overlapped other work.
+     */
+    public void stop(OutputFormat format, long stageNanos) {
+      record(stage, format, stageNanos, event);
+    }
+  }
+}
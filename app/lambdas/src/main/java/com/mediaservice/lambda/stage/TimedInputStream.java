@@ -0,0 +1,72 @@
+package com.mediaservice.lambda.stage;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Accumulates the time callers spend blocked in reads, so a decoder consuming
+ * a network stream can be split into download and decode time. It also notes
+ * whether a read failed, so a decoder failure can be told apart from a
+ * failure of the stream underneath it. SDK streams fail with unchecked
+ * exceptions ({@code SdkClientException}, {@code AbortedException}) as well
+ * as {@link IOException}, so both count.
+ */
+public class TimedInputStream extends FilterInputStream {
+  private long readNanos;
+  private boolean failed;
+
+  public TimedInputStream(InputStream in) {
+    super(in);
+  }
+
+  @Override
+  public int read() throws IOException {
+    long start = System.nanoTime();
+    try {
+      return super.read();
+    } catch (IOException | RuntimeException e) {
+      failed = true;
+      throw e;
+    } finally {
+      readNanos += System.nanoTime() - start;
+    }
+  }
+
+  @Override
+  public int read(byte[] b, int off, int len) throws IOException {
+    long start = System.nanoTime();
+    try {
+      return super.read(b, off, len);
+    } catch (IOException | RuntimeException e) {
+      failed = true;
+      throw e;
+    } finally {
+      readNanos += System.nanoTime() - start;
+    }
+  }
+
+  @Override
+  public long skip(long n) throws IOException {
+    long start = System.nanoTime();
+    try {
+      return super.skip(n);
+    } catch (IOException | RuntimeException e) {
+      failed = true;
+      throw e;
+    } finally {
+      readNanos += System.nanoTime() - start;
+    }
+  }
+
+  public long getReadNanos() {
+    return readNanos;
+  }
+
+  /**
+   * Whether any read from the underlying stream threw.
+   */
+  public boolean hasFailed() {
+    return failed;
+  }
+}
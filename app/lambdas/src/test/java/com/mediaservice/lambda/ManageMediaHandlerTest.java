@@ -0,0 +1,428 @@
+package com.mediaservice.lambda;
+
+import com.amazonaws.services.lambda.runtime.events.SQSBatchResponse;
+import com.amazonaws.services.lambda.runtime.events.SQSEvent;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.mediaservice.common.event.MediaEvent;
+import com.mediaservice.common.model.EventType;
+import com.mediaservice.common.model.Media;
+import com.mediaservice.common.model.MediaStatus;
+import com.mediaservice.common.model.OutputFormat;
+import com.mediaservice.lambda.batch.BatchExecutor;
+import com.mediaservice.lambda.config.LambdaConfig;
+import com.mediaservice.lambda.service.DisabledResultCacheService;
+import com.mediaservice.lambda.service.ImageProcessingService;
+import com.mediaservice.lambda.service.InMemoryDynamoDbService;
+import com.mediaservice.lambda.service.InMemoryResultCacheService;
+import com.mediaservice.lambda.service.InMemoryS3Service;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+import software.amazon.awssdk.core.ResponseInputStream;
+import software.amazon.awssdk.core.exception.SdkClientException;
+import software.amazon.awssdk.services.s3.model.GetObjectResponse;
+
+import javax.imageio.ImageIO;
+import java.awt.Color;
+import java.awt.GradientPaint;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Tests for the real {@link ManageMediaHandler}, with DynamoDB and S3
+ * replaced by in-memory services and images rendered by the real
+ * {@link ImageProcessingService}. Outcomes are read back from the services
+ * and from the batch item failures the handler reports.
+ */
+class ManageMediaHandlerTest {
+  private static final String MEDIA_ID = "media-123";
+  private static final String ORIGINAL_NAME = "test.jpg";
+
+  private final ObjectMapper objectMapper = new ObjectMapper();
+  private InMemoryDynamoDbService dynamoDbService;
+  private FlakyS3Service s3Service;
+  private ManageMediaHandler handler;
+
+  @BeforeEach
+  void setUp() {
+    dynamoDbService = new InMemoryDynamoDbService();
+    s3Service = new FlakyS3Service();
+    var config = LambdaConfig.getInstance();
+    handler = new ManageMediaHandler(dynamoDbService, s3Service, new ImageProcessingService(),
+        new DisabledResultCacheService(), objectMapper,
+        new BatchExecutor(config.getProcessingMaxConcurrency(), config.getProcessingMemoryPerRecordBytes()));
+  }
+
+  @Nested
+  @DisplayName("Process Media Event")
+  class ProcessMediaEvent {
+
+    @Test
+    @DisplayName("should process media successfully")
+    void shouldProcessMediaSuccessfully() throws Exception {
+      putMedia(MEDIA_ID, jpeg(1000, 750), MediaStatus.PENDING);
+      var result = handler.handleRequest(sqsEvent(message("msg-1", processEvent(MEDIA_ID, 500))), null);
+      assertThat(result.getBatchItemFailures()).isEmpty();
+      assertThat(s3Service.getObject(s3Service.processedKey(MEDIA_ID, OutputFormat.JPEG))).isNotEmpty();
+      var media = dynamoDbService.getMedia(MEDIA_ID).orElseThrow();
+      assertThat(media.getStatus()).isEqualTo(MediaStatus.COMPLETE);
+      assertThat(media.getWidth()).isEqualTo(500);
+      assertThat(dynamoDbService.getLease(MEDIA_ID)).isEmpty();
+    }
+
+    @Test
+    @DisplayName("should skip when media does not exist")
+    void shouldSkipWhenMediaMissing() throws Exception {
+      var result = handler.handleRequest(sqsEvent(message("msg-1", processEvent(MEDIA_ID, 500))), null);
+      assertThat(result.getBatchItemFailures()).isEmpty();
+      assertThat(s3Service.getGets()).isZero();
+    }
+
+    @Test
+    @DisplayName("should skip when media not in expected status")
+    void shouldSkipWhenNotInExpectedStatus() throws Exception {
+      putMedia(MEDIA_ID, jpeg(1000, 750), MediaStatus.COMPLETE);
+      var result = handler.handleRequest(sqsEvent(message("msg-1", processEvent(MEDIA_ID, 500))), null);
+      assertThat(result.getBatchItemFailures()).isEmpty();
+      assertThat(s3Service.getGets()).isZero();
+      assertThat(dynamoDbService.getMedia(MEDIA_ID).orElseThrow().getStatus()).isEqualTo(MediaStatus.COMPLETE);
+    }
+  }
+
+  @Nested
+  @DisplayName("Result Cache")
+  class ResultCache {
+    private InMemoryResultCacheService resultCache;
+
+    @BeforeEach
+    void enableCache() {
+      resultCache = new InMemoryResultCacheService(s3Service);
+      var config = LambdaConfig.getInstance();
+      handler = new ManageMediaHandler(dynamoDbService, s3Service, new ImageProcessingService(), resultCache,
+          objectMapper,
+          new BatchExecutor(config.getProcessingMaxConcurrency(), config.getProcessingMemoryPerRecordBytes()));
+    }
+
+    @Test
+    @DisplayName("should hash an unhashed original while rendering it instead of spooling it")
+    void shouldHashWhileRendering() throws Exception {
+      var original = jpeg(1000, 750);
+      putMedia(MEDIA_ID, original, MediaStatus.PENDING);
+
+      var result = handler.handleRequest(sqsEvent(message("msg-1", processEvent(MEDIA_ID, 500))), null);
+
+      assertThat(result.getBatchItemFailures()).isEmpty();
+      assertThat(resultCache.getSpools()).isZero();
+      assertThat(s3Service.getGets()).isEqualTo(1);
+      assertThat(dynamoDbService.getMedia(MEDIA_ID).orElseThrow().getContentHash()).isEqualTo(sha256(original));
+      assertThat(resultCache.getResults()).hasSize(1);
+    }
+
+    @Test
+    @DisplayName("should copy the stored result for a hashed original without reading it")
+    void shouldReuseStoredResult() throws Exception {
+      var original = jpeg(1000, 750);
+      putMedia(MEDIA_ID, original, MediaStatus.PENDING);
+      handler.handleRequest(sqsEvent(message("msg-1", processEvent(MEDIA_ID, 500))), null);
+      putMedia(MEDIA_ID, original, MediaStatus.PENDING);
+      dynamoDbService.setContentHash(MEDIA_ID, sha256(original));
+
+      var result = handler.handleRequest(sqsEvent(message("msg-2", processEvent(MEDIA_ID, 500))), null);
+
+      assertThat(result.getBatchItemFailures()).isEmpty();
+      assertThat(s3Service.getGets()).isEqualTo(1);
+      assertThat(dynamoDbService.getMedia(MEDIA_ID).orElseThrow().getStatus()).isEqualTo(MediaStatus.COMPLETE);
+      assertThat(s3Service.getObject(s3Service.processedKey(MEDIA_ID, OutputFormat.JPEG))).isNotEmpty();
+    }
+  }
+
+  @Nested
+  @DisplayName("Processing Failures")
+  class ProcessingFailures {
+
+    @Test
+    @DisplayName("should leave media PROCESSING and report the record on a transient failure")
+    void shouldRetryTransientFailure() throws Exception {
+      putMedia(MEDIA_ID, jpeg(1000, 750), MediaStatus.PENDING);
+      s3Service.failGets(MEDIA_ID, SdkClientException.create("Unable to execute HTTP request"));
+      var result = handler.handleRequest(sqsEvent(processMessage("msg-1", 1)), null);
+      assertThat(failedIds(result)).containsExactly("msg-1");
+      var media = dynamoDbService.getMedia(MEDIA_ID).orElseThrow();
+      assertThat(media.getStatus()).isEqualTo(MediaStatus.PROCESSING);
+      assertThat(media.getErrorReason()).isNull();
+      assertThat(dynamoDbService.getLease(MEDIA_ID)).isEmpty();
+    }
+
+    @Test
+    @DisplayName("should set status to ERROR and acknowledge the record on a permanent failure")
+    void shouldRejectPermanentFailure() throws Exception {
+      putMedia(MEDIA_ID, new byte[] { 1, 2, 3, 4, 5, 6, 7, 8 }, MediaStatus.PENDING);
+      var result = handler.handleRequest(sqsEvent(processMessage("msg-1", 1)), null);
+      assertThat(result.getBatchItemFailures()).isEmpty();
+      var media = dynamoDbService.getMedia(MEDIA_ID).orElseThrow();
+      assertThat(media.getStatus()).isEqualTo(MediaStatus.ERROR);
+      assertThat(media.getErrorReason()).isEqualTo("UNSUPPORTED_FORMAT");
+    }
+
+    @Test
+    @DisplayName("should set status to ERROR once the final delivery fails transiently")
+    void shouldGiveUpWhenRetriesRunOut() throws Exception {
+      putMedia(MEDIA_ID, jpeg(1000, 750), MediaStatus.PENDING);
+      s3Service.failGets(MEDIA_ID, SdkClientException.create("Unable to execute HTTP request"));
+      int finalDelivery = LambdaConfig.getInstance().getSqsMaxReceiveCount();
+      var result = handler.handleRequest(sqsEvent(processMessage("msg-1", finalDelivery)), null);
+      assertThat(result.getBatchItemFailures()).isEmpty();
+      var media = dynamoDbService.getMedia(MEDIA_ID).orElseThrow();
+      assertThat(media.getStatus()).isEqualTo(MediaStatus.ERROR);
+      assertThat(media.getErrorReason()).isEqualTo("RETRIES_EXHAUSTED");
+    }
+
+    @Test
+    @DisplayName("should keep retrying before the final delivery")
+    void shouldRetryBeforeFinalDelivery() throws Exception {
+      putMedia(MEDIA_ID, jpeg(1000, 750), MediaStatus.PENDING);
+      s3Service.failGets(MEDIA_ID, SdkClientException.create("Unable to execute HTTP request"));
+      int delivery = LambdaConfig.getInstance().getSqsMaxReceiveCount() - 1;
+      var result = handler.handleRequest(sqsEvent(processMessage("msg-1", delivery)), null);
+      assertThat(failedIds(result)).containsExactly("msg-1");
+      assertThat(dynamoDbService.getMedia(MEDIA_ID).orElseThrow().getStatus()).isEqualTo(MediaStatus.PROCESSING);
+    }
+  }
+
+  @Nested
+  @DisplayName("Partial Batch Failures")
+  class PartialBatchFailures {
+
+    @Test
+    @DisplayName("should report only the records that failed")
+    void shouldReportOnlyFailedRecords() throws Exception {
+      byte[] original = jpeg(1000, 750);
+      putMedia("media-1", original, MediaStatus.PENDING);
+      putMedia("media-2", original, MediaStatus.PENDING);
+      putMedia("media-3", original, MediaStatus.PENDING);
+      s3Service.failGets("media-2", SdkClientException.create("Unable to execute HTTP request"));
+      var result = handler.handleRequest(sqsEvent(
+          message("msg-1", processEvent("media-1", 500)),
+          message("msg-2", processEvent("media-2", 500)),
+          message("msg-3", processEvent("media-3", 500))), null);
+      assertThat(failedIds(result)).containsExactly("msg-2");
+      assertThat(dynamoDbService.getMedia("media-1").orElseThrow().getStatus()).isEqualTo(MediaStatus.COMPLETE);
+      assertThat(dynamoDbService.getMedia("media-2").orElseThrow().getStatus()).isEqualTo(MediaStatus.PROCESSING);
+      assertThat(dynamoDbService.getMedia("media-3").orElseThrow().getStatus()).isEqualTo(MediaStatus.COMPLETE);
+    }
+
+    @Test
+    @DisplayName("should report a record that cannot be parsed")
+    void shouldReportUnparseableRecord() throws Exception {
+      putMedia(MEDIA_ID, jpeg(1000, 750), MediaStatus.PENDING);
+      var malformed = new SQSEvent.SQSMessage();
+      malformed.setMessageId("msg-bad");
+      malformed.setBody("not json");
+      var result = handler.handleRequest(sqsEvent(malformed, message("msg-1", processEvent(MEDIA_ID, 500))),
+          null);
+      assertThat(failedIds(result)).containsExactly("msg-bad");
+      assertThat(dynamoDbService.getMedia(MEDIA_ID).orElseThrow().getStatus()).isEqualTo(MediaStatus.COMPLETE);
+    }
+  }
+
+  @Nested
+  @DisplayName("Resize Media Event")
+  class ResizeMediaEvent {
+
+    @Test
+    @DisplayName("should resize media to new width")
+    void shouldResizeMedia() throws Exception {
+      putMedia(MEDIA_ID, jpeg(1000, 750), MediaStatus.PENDING);
+      var event = MediaEvent.of(EventType.RESIZE_MEDIA, MEDIA_ID, 800, OutputFormat.JPEG.getFormat());
+      var result = handler.handleRequest(sqsEvent(message("msg-1", event)), null);
+      assertThat(result.getBatchItemFailures()).isEmpty();
+      var media = dynamoDbService.getMedia(MEDIA_ID).orElseThrow();
+      assertThat(media.getStatus()).isEqualTo(MediaStatus.COMPLETE);
+      assertThat(media.getWidth()).isEqualTo(800);
+    }
+
+    @Test
+    @DisplayName("should still render the variants of a process event superseded by a resize")
+    void shouldRenderVariantsOfSupersededProcess() throws Exception {
+      putMedia(MEDIA_ID, jpeg(1000, 750), MediaStatus.PENDING);
+      var process = MediaEvent.of(EventType.PROCESS_MEDIA, MEDIA_ID, 500, OutputFormat.JPEG.getFormat(),
+          List.of(320), List.of(OutputFormat.PNG.getFormat()));
+      var resize = MediaEvent.of(EventType.RESIZE_MEDIA, MEDIA_ID, 800, OutputFormat.JPEG.getFormat());
+
+      var result = handler.handleRequest(sqsEvent(message("msg-1", process), message("msg-2", resize)), null);
+
+      assertThat(result.getBatchItemFailures()).isEmpty();
+      assertThat(dynamoDbService.getMedia(MEDIA_ID).orElseThrow().getWidth()).isEqualTo(800);
+      assertThat(dynamoDbService.listVariants(MEDIA_ID)).singleElement()
+          .satisfies(variant -> assertThat(variant.getWidth()).isEqualTo(320));
+      assertThat(s3Service.getObject(s3Service.variantKey(MEDIA_ID, 320, OutputFormat.PNG))).isNotNull();
+    }
+
+    @Test
+    @DisplayName("should skip resize when width is missing")
+    void shouldSkipWhenWidthMissing() throws Exception {
+      putMedia(MEDIA_ID, jpeg(1000, 750), MediaStatus.PENDING);
+      var event = MediaEvent.of(EventType.RESIZE_MEDIA, MEDIA_ID, null, OutputFormat.JPEG.getFormat());
+      var result = handler.handleRequest(sqsEvent(message("msg-1", event)), null);
+      assertThat(result.getBatchItemFailures()).isEmpty();
+      assertThat(dynamoDbService.getMedia(MEDIA_ID).orElseThrow().getStatus()).isEqualTo(MediaStatus.PENDING);
+      assertThat(s3Service.getGets()).isZero();
+    }
+  }
+
+  @Nested
+  @DisplayName("Delete Media Event")
+  class DeleteMediaEvent {
+
+    @Test
+    @DisplayName("should delete files and keep the soft-deleted record")
+    void shouldDeleteMediaFiles() throws Exception {
+      putMedia(MEDIA_ID, jpeg(100, 75), MediaStatus.DELETED);
+      var processedKey = s3Service.processedKey(MEDIA_ID, OutputFormat.JPEG);
+      s3Service.putObject(processedKey, new byte[50]);
+      var result = handler.handleRequest(sqsEvent(message("msg-1", MediaEvent.of(EventType.DELETE_MEDIA,
+          MEDIA_ID))), null);
+      assertThat(result.getBatchItemFailures()).isEmpty();
+      assertThat(s3Service.size()).isZero();
+      assertThat(dynamoDbService.getMedia(MEDIA_ID)).isPresent();
+    }
+
+    @Test
+    @DisplayName("should skip delete when media not found")
+    void shouldSkipDeleteWhenNotFound() throws Exception {
+      var result = handler.handleRequest(sqsEvent(message("msg-1", MediaEvent.of(EventType.DELETE_MEDIA,
+          MEDIA_ID))), null);
+      assertThat(result.getBatchItemFailures()).isEmpty();
+    }
+  }
+
+  @Nested
+  @DisplayName("Message Validation")
+  class MessageValidation {
+
+    @Test
+    @DisplayName("should skip message with null payload")
+    void shouldSkipNullPayload() throws Exception {
+      var result = handler.handleRequest(sqsEvent(message("msg-1", new MediaEvent("media.v1.process", null))),
+          null);
+      assertThat(result.getBatchItemFailures()).isEmpty();
+      assertThat(s3Service.getGets()).isZero();
+    }
+
+    @Test
+    @DisplayName("should skip message with empty mediaId")
+    void shouldSkipEmptyMediaId() throws Exception {
+      var result = handler.handleRequest(sqsEvent(message("msg-1", processEvent("", 500))), null);
+      assertThat(result.getBatchItemFailures()).isEmpty();
+      assertThat(s3Service.getGets()).isZero();
+    }
+
+    @Test
+    @DisplayName("should skip unknown event type")
+    void shouldSkipUnknownEventType() throws Exception {
+      putMedia(MEDIA_ID, jpeg(1000, 750), MediaStatus.PENDING);
+      var event = processEvent(MEDIA_ID, 500);
+      event.setType("media.v1.unknown");
+      var result = handler.handleRequest(sqsEvent(message("msg-1", event)), null);
+      assertThat(result.getBatchItemFailures()).isEmpty();
+      assertThat(s3Service.getGets()).isZero();
+      assertThat(dynamoDbService.getMedia(MEDIA_ID).orElseThrow().getStatus()).isEqualTo(MediaStatus.PENDING);
+    }
+  }
+
+  private void putMedia(String mediaId, byte[] original, MediaStatus status) {
+    s3Service.putOriginal(mediaId, ORIGINAL_NAME, original);
+    dynamoDbService.putMedia(Media.builder()
+        .mediaId(mediaId)
+        .name(ORIGINAL_NAME)
+        .size((long) original.length)
+        .width(500)
+        .outputFormat(OutputFormat.JPEG)
+        .status(status)
+        .build());
+  }
+
+  private static MediaEvent processEvent(String mediaId, int width) {
+    return MediaEvent.of(EventType.PROCESS_MEDIA, mediaId, width, OutputFormat.JPEG.getFormat());
+  }
+
+  private SQSEvent.SQSMessage processMessage(String messageId, int receiveCount) throws Exception {
+    var message = message(messageId, processEvent(MEDIA_ID, 500));
+    message.setAttributes(Map.of("ApproximateReceiveCount", Integer.toString(receiveCount)));
+    return message;
+  }
+
+  private SQSEvent.SQSMessage message(String messageId, MediaEvent event) throws Exception {
+    var message = new SQSEvent.SQSMessage();
+    message.setMessageId(messageId);
+    message.setBody(objectMapper.createObjectNode()
+        .put("Message", objectMapper.writeValueAsString(event))
+        .toString());
+    return message;
+  }
+
+  private static SQSEvent sqsEvent(SQSEvent.SQSMessage... messages) {
+    var sqsEvent = new SQSEvent();
+    sqsEvent.setRecords(List.of(messages));
+    return sqsEvent;
+  }
+
+  private static List<String> failedIds(SQSBatchResponse response) {
+    return response.getBatchItemFailures().stream()
+        .map(SQSBatchResponse.BatchItemFailure::getItemIdentifier)
+        .toList();
+  }
+
+  private static String sha256(byte[] data) throws NoSuchAlgorithmException {
+    return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(data));
+  }
+
+  private static byte[] jpeg(int width, int height) throws IOException {
+    var image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+    var g = image.createGraphics();
+    g.setPaint(new GradientPaint(0, 0, Color.RED, width, height, Color.BLUE));
+    g.fillRect(0, 0, width, height);
+    g.dispose();
+    var out = new ByteArrayOutputStream();
+    ImageIO.write(image, "jpeg", out);
+    return out.toByteArray();
+  }
+
+  /**
+   * {@link InMemoryS3Service} that counts reads of originals and can fail
+   * them for chosen media items.
+   */
+  static class FlakyS3Service extends InMemoryS3Service {
+    private final Map<String, RuntimeException> getFailures = new ConcurrentHashMap<>();
+    private final AtomicInteger gets = new AtomicInteger();
+
+    void failGets(String mediaId, RuntimeException failure) {
+      getFailures.put(mediaId, failure);
+    }
+
+    int getGets() {
+      return gets.get();
+    }
+
+    @Override
+    public ResponseInputStream<GetObjectResponse> openMediaFile(String mediaId, String mediaName) {
+      gets.incrementAndGet();
+      var failure = getFailures.get(mediaId);
+      if (failure != null) {
+        throw failure;
+      }
+      return super.openMediaFile(mediaId, mediaName);
+    }
+  }
+}
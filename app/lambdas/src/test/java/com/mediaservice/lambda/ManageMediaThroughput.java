@@ -0,0 +1,275 @@
+package com.mediaservice.lambda;
+
+import com.amazonaws.services.lambda.runtime.events.SQSEvent;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.mediaservice.common.event.MediaEvent;
+import com.mediaservice.common.model.EventType;
+import com.mediaservice.common.model.Media;
+import com.mediaservice.common.model.MediaStatus;
+import com.mediaservice.common.model.OutputFormat;
+import com.mediaservice.lambda.batch.BatchExecutor;
+import com.mediaservice.lambda.config.LambdaConfig;
+import com.mediaservice.lambda.service.DisabledResultCacheService;
+import com.mediaservice.lambda.service.ImageProcessingService;
+import com.mediaservice.lambda.service.InMemoryDynamoDbService;
+import com.mediaservice.lambda.service.InMemoryS3Service;
+import com.mediaservice.lambda.service.SimulatedLatency;
+
+import javax.imageio.ImageIO;
+import java.awt.Color;
+import java.awt.GradientPaint;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Throughput driver for one {@link ManageMediaHandler} instance: pushes
+ * synthetic SQS batches of mixed process, resize and delete events through
+ * the real handler, with DynamoDB and S3 replaced by in-memory services, and
+ * reports throughput, batch latency percentiles and peak heap per batch size.
+ *
+ * <p>
+ * Configured with system properties:
+ * <ul>
+ * <li>{@code throughput.batchSizes} - comma-separated SQS batch sizes (1,5,10)</li>
+ * <li>{@code throughput.batches} - measured batches per size (20)</li>
+ * <li>{@code throughput.warmupBatches} - unmeasured batches per size (5)</li>
+ * <li>{@code throughput.megapixels} - size of the synthetic originals (4)</li>
+ * <li>{@code throughput.mix} - process:resize:delete weights (6:3:1)</li>
+ * <li>{@code throughput.s3LatencyMs}, {@code throughput.dynamoDbLatencyMs} -
+ * delay added to every call, to model the network (0)</li>
+ * </ul>
+ *
+ * <p>
+ * Besides a readable table, prints one {@code throughput-result} line per
+ * batch size for {@code ManageMediaThroughputTest} to parse.
+ */
+public final class ManageMediaThroughput {
+  private static final String ORIGINAL_NAME = "photo.jpg";
+
+  private final ManageMediaHandler handler;
+  private final InMemoryDynamoDbService dynamoDbService;
+  private final InMemoryS3Service s3Service;
+  private final ObjectMapper objectMapper = new ObjectMapper();
+  private final byte[] original;
+  private final int[] mix;
+  private final Random random = new Random(42);
+  private long nextId;
+
+  record Result(int batchSize, int records, int images, double seconds, double p50Millis, double p90Millis,
+      double p99Millis, double maxMillis, long peakHeapBytes, int failures) {
+
+    double recordsPerSecond() {
+      return records / seconds;
+    }
+
+    double imagesPerSecond() {
+      return images / seconds;
+    }
+  }
+
+  ManageMediaThroughput(double megapixels, int[] mix, SimulatedLatency dynamoDbLatency, SimulatedLatency s3Latency)
+      throws IOException {
+    this.dynamoDbService = new InMemoryDynamoDbService(dynamoDbLatency);
+    this.s3Service = new InMemoryS3Service(s3Latency);
+    this.original = syntheticJpeg(megapixels);
+    this.mix = mix;
+    var config = LambdaConfig.getInstance();
+    this.handler = new ManageMediaHandler(dynamoDbService, s3Service, new ImageProcessingService(),
+        new DisabledResultCacheService(), objectMapper,
+        new BatchExecutor(config.getProcessingMaxConcurrency(), config.getProcessingMemoryPerRecordBytes()));
+  }
+
+  public static void main(String[] args) throws Exception {
+    var batchSizes = Arrays.stream(System.getProperty("throughput.batchSizes", "1,5,10").split(","))
+        .map(String::trim)
+        .mapToInt(Integer::parseInt)
+        .toArray();
+    int batches = Integer.getInteger("throughput.batches", 20);
+    int warmupBatches = Integer.getInteger("throughput.warmupBatches", 5);
+    double megapixels = Double.parseDouble(System.getProperty("throughput.megapixels", "4"));
+    var mix = Arrays.stream(System.getProperty("throughput.mix", "6:3:1").split(":"))
+        .mapToInt(Integer::parseInt)
+        .toArray();
+    var driver = new ManageMediaThroughput(megapixels, mix,
+        SimulatedLatency.ofMillis(Long.getLong("throughput.dynamoDbLatencyMs", 0)),
+        SimulatedLatency.ofMillis(Long.getLong("throughput.s3LatencyMs", 0)));
+
+    var results = new ArrayList<Result>();
+    for (int batchSize : batchSizes) {
+      results.add(driver.run(batchSize, warmupBatches, batches));
+    }
+
+    System.out.printf(Locale.ROOT, "%n%dMP originals, mix process:resize:delete=%s, %d batches per size%n",
+        Math.round(megapixels), Arrays.toString(mix), batches);
+    System.out.printf(Locale.ROOT, "%-6s %10s %10s %9s %9s %9s %9s %10s %8s%n", "batch", "records/s", "images/s",
+        "p50 ms", "p90 ms", "p99 ms", "max ms", "peak MB", "failed");
+    for (var r : results) {
+      System.out.printf(Locale.ROOT, "%-6d %10.1f %10.1f %9.0f %9.0f %9.0f %9.0f %10d %8d%n", r.batchSize(),
+          r.recordsPerSecond(), r.imagesPerSecond(), r.p50Millis(), r.p90Millis(), r.p99Millis(), r.maxMillis(),
+          r.peakHeapBytes() / (1024 * 1024), r.failures());
+    }
+    for (var r : results) {
+      System.out.printf(Locale.ROOT,
+          "throughput-result batchSize=%d records=%d images=%d recordsPerSecond=%.2f imagesPerSecond=%.2f"
+              + " p50=%.1f p90=%.1f p99=%.1f max=%.1f peakHeapBytes=%d failures=%d%n",
+          r.batchSize(), r.records(), r.images(), r.recordsPerSecond(), r.imagesPerSecond(), r.p50Millis(),
+          r.p90Millis(), r.p99Millis(), r.maxMillis(), r.peakHeapBytes(), r.failures());
+    }
+  }
+
+  Result run(int batchSize, int warmupBatches, int batches) throws IOException {
+    for (int i = 0; i < warmupBatches; i++) {
+      handler.handleRequest(nextBatch(batchSize, new int[1]), null);
+    }
+
+    System.gc();
+    var heap = new HeapSampler();
+    var latencies = new double[batches];
+    int images = 0;
+    int failures = 0;
+    long start = System.nanoTime();
+    heap.start();
+    try {
+      for (int i = 0; i < batches; i++) {
+        var imageCount = new int[1];
+        var batch = nextBatch(batchSize, imageCount);
+        long batchStart = System.nanoTime();
+        var response = handler.handleRequest(batch, null);
+        latencies[i] = (System.nanoTime() - batchStart) / 1_000_000.0;
+        images += imageCount[0];
+        failures += response.getBatchItemFailures().size();
+      }
+    } finally {
+      heap.stop();
+    }
+    double seconds = (System.nanoTime() - start) / 1_000_000_000.0;
+
+    Arrays.sort(latencies);
+    return new Result(batchSize, batches * batchSize, images, seconds, percentile(latencies, 50),
+        percentile(latencies, 90), percentile(latencies, 99), latencies[latencies.length - 1], heap.peakBytes(),
+        failures);
+  }
+
+  /**
+   * A batch of fresh media items, each seeded in the state its event expects.
+   *
+   * @param imageCount Receives the number of records that render an image
+   */
+  private SQSEvent nextBatch(int batchSize, int[] imageCount) throws IOException {
+    var records = new ArrayList<SQSEvent.SQSMessage>(batchSize);
+    for (int i = 0; i < batchSize; i++) {
+      var mediaId = "throughput-" + nextId++;
+      var type = pickType();
+      s3Service.putOriginal(mediaId, ORIGINAL_NAME, original);
+      dynamoDbService.putMedia(Media.builder()
+          .mediaId(mediaId)
+          .name(ORIGINAL_NAME)
+          .size((long) original.length)
+          .width(500)
+          .outputFormat(OutputFormat.JPEG)
+          .status(type == EventType.DELETE_MEDIA ? MediaStatus.DELETED : MediaStatus.PENDING)
+          .build());
+
+      var event = switch (type) {
+        case RESIZE_MEDIA -> MediaEvent.of(type, mediaId, 320, OutputFormat.WEBP.getFormat());
+        case DELETE_MEDIA -> MediaEvent.of(type, mediaId);
+        default -> MediaEvent.of(type, mediaId, 500, OutputFormat.JPEG.getFormat());
+      };
+      if (type != EventType.DELETE_MEDIA) {
+        imageCount[0]++;
+      }
+      var message = new SQSEvent.SQSMessage();
+      message.setMessageId(mediaId);
+      message.setBody(objectMapper.createObjectNode()
+          .put("Message", objectMapper.writeValueAsString(event))
+          .toString());
+      records.add(message);
+    }
+    var batch = new SQSEvent();
+    batch.setRecords(records);
+    return batch;
+  }
+
+  private EventType pickType() {
+    int roll = random.nextInt(mix[0] + mix[1] + mix[2]);
+    if (roll < mix[0]) {
+      return EventType.PROCESS_MEDIA;
+    }
+    return roll < mix[0] + mix[1] ? EventType.RESIZE_MEDIA : EventType.DELETE_MEDIA;
+  }
+
+  private static double percentile(double[] sorted, int percentile) {
+    int rank = (int) Math.ceil(percentile / 100.0 * sorted.length);
+    return sorted[Math.max(0, Math.min(sorted.length - 1, rank - 1))];
+  }
+
+  private static byte[] syntheticJpeg(double megapixels) throws IOException {
+    int width = (int) Math.round(Math.sqrt(megapixels * 1_000_000 * 4 / 3));
+    int height = width * 3 / 4;
+    var image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+    var g = image.createGraphics();
+    g.setPaint(new GradientPaint(0, 0, new Color(30, 90, 160), width, height, new Color(230, 180, 60)));
+    g.fillRect(0, 0, width, height);
+    g.dispose();
+    // Noise keeps the JPEG close to a photo's size and decode cost
+    var noise = new Random(7);
+    for (int y = 0; y < height; y += 2) {
+      for (int x = 0; x < width; x += 2) {
+        image.setRGB(x, y, image.getRGB(x, y) ^ noise.nextInt(0x0F0F0F));
+      }
+    }
+    var out = new ByteArrayOutputStream();
+    ImageIO.write(image, "jpeg", out);
+    return out.toByteArray();
+  }
+
+  /**
+   * Polls used heap on a daemon thread; sampling catches the peak of the
+   * whole heap, where per-pool peaks would add up maxima reached at
+   * different times.
+   */
+  private static final class HeapSampler {
+    private final AtomicLong peak = new AtomicLong();
+    private volatile boolean running;
+    private Thread thread;
+
+    void start() {
+      running = true;
+      var memory = ManagementFactory.getMemoryMXBean();
+      thread = new Thread(() -> {
+        while (running) {
+          peak.accumulateAndGet(memory.getHeapMemoryUsage().getUsed(), Math::max);
+          try {
+            Thread.sleep(5);
+          } catch (InterruptedException e) {
+            return;
+          }
+        }
+      }, "heap-sampler");
+      thread.setDaemon(true);
+      thread.start();
+    }
+
+    void stop() {
+      running = false;
+      thread.interrupt();
+    }
+
+    long peakBytes() {
+      return peak.get();
+    }
+  }
+
+  static List<String> propertyNames() {
+    return List.of("throughput.batchSizes", "throughput.batches", "throughput.warmupBatches",
+        "throughput.megapixels", "throughput.mix", "throughput.s3LatencyMs", "throughput.dynamoDbLatencyMs");
+  }
+}
@@ -0,0 +1,93 @@
+package com.mediaservice.lambda;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Runs {@link ManageMediaThroughput} in a fresh JVM with a fixed heap. Tagged
+ * {@code perf}, so it only runs with {@code -Pperf}. By default it is a short
+ * smoke run; pass {@code -Dthroughput.*} properties (and
+ * {@code -Dthroughput.heap}, default 2g) to size a fleet, e.g.
+ *
+ * <pre>
+ * mvn -Pperf test -Dtest=ManageMediaThroughputTest -Dthroughput.batchSizes=1,5,10 \
+ *     -Dthroughput.batches=50 -Dthroughput.megapixels=12 -Dthroughput.heap=8g
+ * </pre>
+ *
+ * The driver's report is written to {@code target/throughput-report.txt}
+ * (override with {@code -Dthroughput.report}).
+ */
+@Tag("perf")
+class ManageMediaThroughputTest {
+    @Nested
+    @DisplayName("mixed batches")
+    class MixedBatches {
+        @Test
+        @DisplayName("should push mixed batches through the handler without failures")
+        void shouldProcessMixedBatches() throws Exception {
+            var java = Path.of(System.getProperty("java.home"), "bin", "java").toString();
+            var command = new ArrayList<>(List.of(java, "-Xmx" + System.getProperty("throughput.heap", "2g")));
+            command.add("-Dthroughput.batchSizes=" + System.getProperty("throughput.batchSizes", "1,5"));
+            command.add("-Dthroughput.batches=" + System.getProperty("throughput.batches", "4"));
+            command.add("-Dthroughput.warmupBatches=" + System.getProperty("throughput.warmupBatches", "1"));
+            command.add("-Dthroughput.megapixels=" + System.getProperty("throughput.megapixels", "2"));
+            for (var name : ManageMediaThroughput.propertyNames()) {
+                var value = System.getProperty(name);
+                if (value != null && command.stream().noneMatch(arg -> arg.startsWith("-D" + name + "="))) {
+                    command.add("-D" + name + "=" + value);
+                }
+            }
+            command.addAll(List.of("-cp", System.getProperty("java.class.path"),
+                    ManageMediaThroughput.class.getName()));
+
+            var builder = new ProcessBuilder(command).redirectErrorStream(true);
+            // No collector is running locally; exporters would only add retry noise
+            builder.environment().put("OTEL_TRACES_EXPORTER", "none");
+            builder.environment().put("OTEL_METRICS_EXPORTER", "none");
+            builder.environment().put("OTEL_LOGS_EXPORTER", "none");
+            builder.environment().putIfAbsent("AWS_REGION", "us-west-2");
+            var process = builder.start();
+            var output = new String(process.getInputStream().readAllBytes(), StandardCharsets.UTF_8);
+            assertThat(process.waitFor(30, TimeUnit.MINUTES)).isTrue();
+            assertThat(process.exitValue()).as(output).isZero();
+
+            var results = new ArrayList<Map<String, String>>();
+            var report = new ArrayList<String>();
+            for (var line : output.split("\n")) {
+                if (line.startsWith("throughput-result ")) {
+                    var fields = new HashMap<String, String>();
+                    for (var field : line.substring("throughput-result ".length()).trim().split(" ")) {
+                        var pair = field.split("=", 2);
+                        fields.put(pair[0], pair[1]);
+                    }
+                    results.add(fields);
+                } else if (line.startsWith("batch ") || line.matches("^\\d+ .*") || line.contains("MP originals")) {
+                    report.add(line);
+                }
+            }
+            var reportFile = Path.of(System.getProperty("throughput.report", "target/throughput-report.txt"));
+            Files.createDirectories(reportFile.toAbsolutePath().getParent());
+            Files.write(reportFile, report);
+
+            assertThat(results).isNotEmpty();
+            for (var result : results) {
+                assertThat(result.get("failures")).as(output).isEqualTo("0");
+                assertThat(Double.parseDouble(result.get("recordsPerSecond"))).isPositive();
+                assertThat(Long.parseLong(result.get("peakHeapBytes"))).isPositive();
+            }
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package com.mediaservice.lambda.batch;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class BatchExecutorTest {
+
+  @Nested
+  @DisplayName("execute")
+  class Execute {
+
+    @Test
+    @DisplayName("should report only failed records in batch order")
+    void shouldReportOnlyFailedRecords() {
+      var executor = new BatchExecutor(4);
+      var processed = ConcurrentHashMap.<String>newKeySet();
+      var failed = executor.execute(List.of("a", "b", "c", "d"), Function.identity(), id -> {
+        if (id.equals("b") || id.equals("d")) {
+          throw new RuntimeException("boom " + id);
+        }
+        processed.add(id);
+      });
+      assertThat(failed).containsExactly("b", "d");
+      assertThat(processed).containsExactlyInAnyOrder("a", "c");
+    }
+
+    @Test
+    @DisplayName("should run records concurrently")
+    void shouldRunConcurrently() throws Exception {
+      var executor = new BatchExecutor(3);
+      var latch = new CountDownLatch(3);
+      Set<String> threads = ConcurrentHashMap.newKeySet();
+      var failed = executor.execute(List.of("a", "b", "c"), Function.identity(), id -> {
+        threads.add(Thread.currentThread().getName());
+        latch.countDown();
+        try {
+          // Every record waits for the others; only succeeds if all three run at once
+          if (!latch.await(5, TimeUnit.SECONDS)) {
+            throw new IllegalStateException("records did not run concurrently");
+          }
+        } catch (InterruptedException e) {
+          throw new IllegalStateException(e);
+        }
+      });
+      assertThat(failed).isEmpty();
+      assertThat(threads).hasSize(3);
+    }
+
+    @Test
+    @DisplayName("should process inline when concurrency is 1")
+    void shouldProcessInline() {
+      var executor = new BatchExecutor(1);
+      var caller = Thread.currentThread().getName();
+      Set<String> threads = ConcurrentHashMap.newKeySet();
+      var failed = executor.execute(List.of("a", "b"), Function.identity(),
+          id -> threads.add(Thread.currentThread().getName()));
+      assertThat(failed).isEmpty();
+      assertThat(threads).containsExactly(caller);
+    }
+  }
+
+  @Nested
+  @DisplayName("executeGroups")
+  class ExecuteGroups {
+
+    @Test
+    @DisplayName("should report the failures a group returns, or the whole group if it throws")
+    void shouldReportGroupFailures() {
+      var executor = new BatchExecutor(2);
+      var groups = List.of(List.of("a1", "a2"), List.of("b1", "b2"), List.of("c1"));
+      var failed = executor.executeGroups(groups, Function.identity(), group -> {
+        if (group.contains("b1")) {
+          throw new RuntimeException("boom");
+        }
+        return group.contains("a1") ? List.of("a2") : List.of();
+      });
+      assertThat(failed).containsExactly("a2", "b1", "b2");
+    }
+  }
+
+  @Nested
+  @DisplayName("resolveConcurrency")
+  class ResolveConcurrency {
+
+    private static final long GB = 1024L * 1024 * 1024;
+
+    @Test
+    @DisplayName("should default to available processors")
+    void shouldDefaultToProcessors() {
+      assertThat(BatchExecutor.resolveConcurrency(0, GB, 6, 10 * GB)).isEqualTo(6);
+    }
+
+    @Test
+    @DisplayName("should cap by heap per record budget")
+    void shouldCapByMemory() {
+      assertThat(BatchExecutor.resolveConcurrency(0, 2 * GB, 6, 5 * GB)).isEqualTo(2);
+    }
+
+    @Test
+    @DisplayName("should honour configured maximum")
+    void shouldHonourConfiguredMax() {
+      assertThat(BatchExecutor.resolveConcurrency(2, GB, 6, 10 * GB)).isEqualTo(2);
+    }
+
+    @Test
+    @DisplayName("should never drop below one")
+    void shouldNeverDropBelowOne() {
+      assertThat(BatchExecutor.resolveConcurrency(0, 4 * GB, 2, GB)).isEqualTo(1);
+    }
+  }
+}
@@ -0,0 +1,57 @@
+package com.mediaservice.lambda.batch;
+
+import com.mediaservice.lambda.batch.FailureClassifier.Reason;
+import com.mediaservice.lambda.image.ImageTooLargeException;
+import com.mediaservice.lambda.image.UndecodableImageException;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+import software.amazon.awssdk.core.exception.ApiCallTimeoutException;
+import software.amazon.awssdk.core.exception.SdkClientException;
+import software.amazon.awssdk.services.dynamodb.model.ProvisionedThroughputExceededException;
+import software.amazon.awssdk.services.s3.model.NoSuchKeyException;
+import software.amazon.awssdk.services.s3.model.S3Exception;
+
+import javax.imageio.IIOException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class FailureClassifierTest {
+    @Nested
+    @DisplayName("permanentReason")
+    class PermanentReason {
+        @Test
+        @DisplayName("should find the permanent reason anywhere in the cause chain")
+        void shouldClassifyPermanentFailures() {
+            assertThat(FailureClassifier.permanentReason(new ImageTooLargeException("20000x20000")))
+                    .isEqualTo(Reason.IMAGE_TOO_LARGE);
+            assertThat(FailureClassifier.permanentReason(new UndecodableImageException("no reader", true, null)))
+                    .isEqualTo(Reason.UNSUPPORTED_FORMAT);
+            var corrupt = new UndecodableImageException("bad data", false, new IIOException("Error reading PNG"));
+            assertThat(FailureClassifier.permanentReason(new RuntimeException("Failed to process media", corrupt)))
+                    .isEqualTo(Reason.CORRUPT_IMAGE);
+            assertThat(FailureClassifier.permanentReason(NoSuchKeyException.builder().message("missing").build()))
+                    .isEqualTo(Reason.ORIGINAL_NOT_FOUND);
+        }
+
+        @Test
+        @DisplayName("should treat throttling, timeouts, I/O and unknown failures as transient")
+        void shouldClassifyTransientFailures() {
+            assertThat(FailureClassifier.permanentReason(
+                    ProvisionedThroughputExceededException.builder().message("throttled").build())).isNull();
+            assertThat(FailureClassifier.permanentReason(
+                    S3Exception.builder().statusCode(503).message("Slow Down").build())).isNull();
+            assertThat(FailureClassifier.permanentReason(ApiCallTimeoutException.create(30_000))).isNull();
+            // The SDK's streams fail with unchecked client exceptions
+            assertThat(FailureClassifier.permanentReason(SdkClientException.create("Unable to execute HTTP request")))
+                    .isNull();
+            assertThat(FailureClassifier.permanentReason(
+                    new UncheckedIOException(new IOException("connection reset")))).isNull();
+            // A reader failure on a stream that itself failed is not blamed on the image
+            assertThat(FailureClassifier.permanentReason(new IIOException("Error reading PNG"))).isNull();
+            assertThat(FailureClassifier.permanentReason(new IllegalStateException("unexpected"))).isNull();
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package com.mediaservice.lambda.batch;
+
+import com.mediaservice.common.model.EventType;
+import com.mediaservice.lambda.batch.MediaBatchPlanner.MediaWork;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class MediaBatchPlannerTest {
+    /** An event of the batch; {@code n} is its position. */
+    private record Event(String mediaId, EventType type, int n, boolean hasVariants) {
+        Event(String mediaId, EventType type, int n) {
+            this(mediaId, type, n, false);
+        }
+    }
+
+    @Nested
+    @DisplayName("plan")
+    class Plan {
+        @Test
+        @DisplayName("should group events by media in order of first appearance")
+        void shouldGroupByMedia() {
+            var plan = plan(
+                    new Event("a", EventType.PROCESS_MEDIA, 1),
+                    new Event("b", EventType.DELETE_MEDIA, 2),
+                    new Event("a", EventType.GENERATE_VARIANTS, 3));
+
+            assertThat(plan).extracting(MediaWork::mediaId).containsExactly("a", "b");
+            assertThat(plan.get(0).processing().n()).isEqualTo(1);
+            assertThat(plan.get(0).variants()).extracting(Event::n).containsExactly(3);
+            assertThat(plan.get(0).renders()).isEqualTo(2);
+            assertThat(plan.get(1).deletes()).extracting(Event::n).containsExactly(2);
+            assertThat(plan.get(1).renders()).isZero();
+        }
+
+        @Test
+        @DisplayName("should make transforms before a delete obsolete")
+        void shouldCollapseBeforeDelete() {
+            var work = plan(
+                    new Event("a", EventType.RESIZE_MEDIA, 1),
+                    new Event("a", EventType.GENERATE_VARIANTS, 2),
+                    new Event("a", EventType.DELETE_MEDIA, 3),
+                    new Event("a", EventType.DELETE_MEDIA, 4)).get(0);
+
+            assertThat(work.obsolete()).extracting(Event::n).containsExactly(1, 2);
+            assertThat(work.deletes()).extracting(Event::n).containsExactly(3, 4);
+            assertThat(work.processing()).isNull();
+            assertThat(work.variants()).isEmpty();
+        }
+
+        @Test
+        @DisplayName("should keep transforms after the last delete")
+        void shouldKeepAfterDelete() {
+            var work = plan(
+                    new Event("a", EventType.DELETE_MEDIA, 1),
+                    new Event("a", EventType.GENERATE_VARIANTS, 2)).get(0);
+
+            assertThat(work.obsolete()).isEmpty();
+            assertThat(work.variants()).extracting(Event::n).containsExactly(2);
+        }
+
+        @Test
+        @DisplayName("should run only the last process or resize of a media")
+        void shouldSupersedeEarlierProcessing() {
+            var work = plan(
+                    new Event("a", EventType.PROCESS_MEDIA, 1),
+                    new Event("a", EventType.GENERATE_VARIANTS, 2),
+                    new Event("a", EventType.RESIZE_MEDIA, 3),
+                    new Event("a", EventType.GENERATE_VARIANTS, 4)).get(0);
+
+            assertThat(work.processing().n()).isEqualTo(3);
+            assertThat(work.obsolete()).extracting(Event::n).containsExactly(1);
+            assertThat(work.variants()).extracting(Event::n).containsExactly(2, 4);
+        }
+
+        @Test
+        @DisplayName("should keep the variant set of a superseded process event")
+        void shouldKeepVariantsOfSupersededProcessing() {
+            var work = plan(
+                    new Event("a", EventType.PROCESS_MEDIA, 1, true),
+                    new Event("a", EventType.GENERATE_VARIANTS, 2),
+                    new Event("a", EventType.RESIZE_MEDIA, 3)).get(0);
+
+            assertThat(work.processing().n()).isEqualTo(3);
+            assertThat(work.obsolete()).isEmpty();
+            assertThat(work.variants()).extracting(Event::n).containsExactly(1, 2);
+            assertThat(work.renders()).isEqualTo(2);
+        }
+
+        @Test
+        @DisplayName("should drop the variant set of a process event before a delete")
+        void shouldDropVariantsBeforeDelete() {
+            var work = plan(
+                    new Event("a", EventType.PROCESS_MEDIA, 1, true),
+                    new Event("a", EventType.DELETE_MEDIA, 2)).get(0);
+
+            assertThat(work.obsolete()).extracting(Event::n).containsExactly(1);
+            assertThat(work.variants()).isEmpty();
+        }
+
+        @Test
+        @DisplayName("should reject events that are not media events")
+        void shouldRejectOtherEvents() {
+            assertThatThrownBy(() -> plan(new Event("a", EventType.DAILY_ROLLUP, 1)))
+                    .isInstanceOf(IllegalArgumentException.class);
+        }
+    }
+
+    private static List<MediaWork<Event>> plan(Event... events) {
+        return MediaBatchPlanner.plan(List.of(events), Event::mediaId, Event::type, Event::hasVariants);
+    }
+}
@@ -0,0 +1,108 @@
+package com.mediaservice.lambda.config;
+
+import io.opentelemetry.sdk.common.CompletableResultCode;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class TelemetryFlusherTest {
+    private static final long INTERVAL_MILLIS = 30_000;
+
+    private final AtomicLong clock = new AtomicLong();
+    private final List<CompletableResultCode> flushes = new ArrayList<>();
+
+    private TelemetryFlusher flusher(TelemetryFlusher.Mode mode) {
+        return new TelemetryFlusher(mode, this::flush, INTERVAL_MILLIS, 200, 1000, clock::get);
+    }
+
+    private synchronized CompletableResultCode flush() {
+        var result = new CompletableResultCode();
+        flushes.add(result);
+        return result;
+    }
+
+    private synchronized int flushCount() {
+        return flushes.size();
+    }
+
+    private void awaitFlushes(int expected) {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (flushCount() < expected && System.nanoTime() < deadline) {
+            Thread.onSpinWait();
+        }
+        assertThat(flushCount()).isEqualTo(expected);
+    }
+
+    @Nested
+    @DisplayName("sync mode")
+    class Sync {
+        @Test
+        @DisplayName("should export at the end of every invocation")
+        void shouldFlushEveryInvocation() {
+            var flusher = flusher(TelemetryFlusher.Mode.SYNC);
+            var invocation = flusher.begin(null);
+            assertThat(flushCount()).isZero();
+
+            long start = System.nanoTime();
+            invocation.close();
+            // The export never completes, so the invocation waits for the full timeout
+            assertThat(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)).isGreaterThanOrEqualTo(150);
+            assertThat(flushCount()).isEqualTo(1);
+        }
+    }
+
+    @Nested
+    @DisplayName("async mode")
+    class Async {
+        @Test
+        @DisplayName("should not export within the flush interval")
+        void shouldBufferWithinInterval() {
+            var flusher = flusher(TelemetryFlusher.Mode.ASYNC);
+            for (int i = 0; i < 5; i++) {
+                clock.addAndGet(TimeUnit.SECONDS.toNanos(1));
+                flusher.begin(null).close();
+            }
+            assertThat(flushCount()).isZero();
+        }
+
+        @Test
+        @DisplayName("should export in the background once the interval has passed")
+        void shouldFlushInBackground() {
+            var flusher = flusher(TelemetryFlusher.Mode.ASYNC);
+            clock.addAndGet(TimeUnit.MILLISECONDS.toNanos(INTERVAL_MILLIS));
+
+            long start = System.nanoTime();
+            flusher.begin(null).close();
+            assertThat(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)).isLessThan(100);
+            awaitFlushes(1);
+        }
+
+        @Test
+        @DisplayName("should not start an export while one is still running")
+        void shouldSkipWhileFlushing() {
+            var flusher = flusher(TelemetryFlusher.Mode.ASYNC);
+            clock.addAndGet(TimeUnit.MILLISECONDS.toNanos(INTERVAL_MILLIS));
+            flusher.begin(null).close();
+            awaitFlushes(1);
+
+            clock.addAndGet(TimeUnit.MILLISECONDS.toNanos(INTERVAL_MILLIS));
+            flusher.begin(null).close();
+            assertThat(flusher.isFlushing()).isTrue();
+
+            synchronized (TelemetryFlusherTest.this) {
+                flushes.get(0).succeed();
+            }
+            assertThat(flusher.isFlushing()).isFalse();
+            clock.addAndGet(TimeUnit.MILLISECONDS.toNanos(INTERVAL_MILLIS));
+            flusher.begin(null).close();
+            awaitFlushes(2);
+        }
+    }
+}
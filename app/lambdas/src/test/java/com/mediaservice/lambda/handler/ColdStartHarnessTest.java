@@ -0,0 +1,106 @@
+package com.mediaservice.lambda.handler;
+
+import com.mediaservice.lambda.AnalyticsRollupHandler;
+import com.mediaservice.lambda.ManageMediaHandler;
+import com.mediaservice.lambda.init.ColdStart;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Measures cold initialization of each handler in a fresh JVM, the way the
+ * Lambda runtime constructs it, so init regressions and components loaded
+ * too early fail the build.
+ *
+ * <p>
+ * The budget is deliberately loose for shared CI machines; override it with
+ * {@code -Dcoldstart.budget.ms} to track a tighter target locally, and pass
+ * {@code -Dcoldstart.report=true} to print each handler's phase timings.
+ */
+class ColdStartHarnessTest {
+    private static final long BUDGET_MS = Long.getLong("coldstart.budget.ms", 15_000);
+    private static final boolean REPORT = Boolean.getBoolean("coldstart.report");
+
+    @Nested
+    @DisplayName("cold initialization")
+    class ColdInitialization {
+        @Test
+        @DisplayName("ManageMediaHandler should defer image processing until a media event needs it")
+        void manageMediaHandlerShouldInitLazily() throws Exception {
+            var init = measure(ManageMediaHandler.class);
+
+            assertThat(init.phases()).containsKeys("config", "otel", "dynamodb_client", "s3_client");
+            assertThat(init.phases()).doesNotContainKeys("imageio_scan", "watermark_load");
+            assertThat(init.totalMillis()).isLessThan(BUDGET_MS);
+        }
+
+        @Test
+        @DisplayName("AnalyticsRollupHandler should not build the S3 client until an archive runs")
+        void analyticsRollupHandlerShouldInitLazily() throws Exception {
+            var init = measure(AnalyticsRollupHandler.class);
+
+            assertThat(init.phases()).containsKeys("config", "otel", "dynamodb_client");
+            assertThat(init.phases()).doesNotContainKeys("s3_client", "imageio_scan");
+            assertThat(init.totalMillis()).isLessThan(BUDGET_MS);
+        }
+    }
+
+    private record ColdInit(long totalMillis, Map<String, Double> phases) {
+    }
+
+    private static ColdInit measure(Class<?> handler) throws Exception {
+        var java = Path.of(System.getProperty("java.home"), "bin", "java").toString();
+        var builder = new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"),
+                ColdInitMain.class.getName(), handler.getName())
+                .redirectErrorStream(true);
+        // No collector is running locally; exporters would only add retry noise
+        builder.environment().put("OTEL_TRACES_EXPORTER", "none");
+        builder.environment().put("OTEL_METRICS_EXPORTER", "none");
+        builder.environment().put("OTEL_LOGS_EXPORTER", "none");
+        builder.environment().putIfAbsent("AWS_REGION", "us-west-2");
+        var process = builder.start();
+        var output = new String(process.getInputStream().readAllBytes(), StandardCharsets.UTF_8);
+        assertThat(process.waitFor(2, TimeUnit.MINUTES)).isTrue();
+        assertThat(process.exitValue()).as(output).isZero();
+
+        long total = -1;
+        var phases = new LinkedHashMap<String, Double>();
+        for (var line : output.split("\n")) {
+            var parts = line.trim().split(" ");
+            if (parts.length == 3 && parts[0].equals("cold-init-phase")) {
+                phases.merge(parts[1], Double.parseDouble(parts[2]), Double::sum);
+            } else if (parts.length == 2 && parts[0].equals("cold-init-total")) {
+                total = Long.parseLong(parts[1]);
+            }
+        }
+        if (REPORT) {
+            System.out.printf("%s cold init: %d ms %s%n", handler.getSimpleName(), total, phases);
+        }
+        return new ColdInit(total, phases);
+    }
+
+    /**
+     * Entry point run in a forked JVM: constructs the handler with its runtime
+     * constructor and prints the recorded phases.
+     */
+    static class ColdInitMain {
+        public static void main(String[] args) throws Exception {
+            long start = System.nanoTime();
+            Class.forName(args[0]).getConstructor().newInstance();
+            long total = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            for (var phase : ColdStart.phases()) {
+                System.out.printf(Locale.ROOT, "cold-init-phase %s %.3f%n", phase.name(), phase.durationMillis());
+            }
+            System.out.printf("cold-init-total %d%n", total);
+        }
+    }
+}
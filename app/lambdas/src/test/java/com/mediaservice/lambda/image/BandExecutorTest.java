@@ -0,0 +1,63 @@
+package com.mediaservice.lambda.image;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class BandExecutorTest {
+
+    @Test
+    @DisplayName("should pass every row to exactly one band")
+    void shouldCoverEveryRowOnce() {
+        var executor = new BandExecutor(4, 10);
+        var visits = new AtomicIntegerArray(1001);
+        executor.forEachBand(1001, 10, (start, end) -> {
+            for (int y = start; y < end; y++) {
+                visits.incrementAndGet(y);
+            }
+        });
+        for (int y = 0; y < visits.length(); y++) {
+            assertThat(visits.get(y)).as("row %d", y).isEqualTo(1);
+        }
+    }
+
+    @Test
+    @DisplayName("should run bands on pool threads")
+    void shouldRunOnPoolThreads() {
+        var executor = new BandExecutor(4, 10);
+        Set<String> threads = ConcurrentHashMap.newKeySet();
+        executor.forEachBand(1000, 10, (start, end) -> threads.add(Thread.currentThread().getName()));
+        assertThat(threads).allMatch(name -> name.startsWith("image-band-"));
+    }
+
+    @Test
+    @DisplayName("should run small images inline as a single band")
+    void shouldRunSmallImagesInline() {
+        var executor = new BandExecutor(4);
+        var caller = Thread.currentThread().getName();
+        Set<String> threads = ConcurrentHashMap.newKeySet();
+        executor.forEachBand(20, 100, (start, end) -> {
+            assertThat(start).isZero();
+            assertThat(end).isEqualTo(20);
+            threads.add(Thread.currentThread().getName());
+        });
+        assertThat(threads).containsExactly(caller);
+    }
+
+    @Test
+    @DisplayName("should propagate band failures to the caller")
+    void shouldPropagateFailures() {
+        var executor = new BandExecutor(4, 10);
+        assertThatThrownBy(() -> executor.forEachBand(1000, 10, (start, end) -> {
+            if (start == 0) {
+                throw new IllegalStateException("band failed");
+            }
+        })).isInstanceOf(IllegalStateException.class).hasMessage("band failed");
+    }
+}
@@ -0,0 +1,166 @@
+package com.mediaservice.lambda.image;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+
+import java.awt.Color;
+import java.awt.GradientPaint;
+import java.awt.Image;
+import java.awt.image.BufferedImage;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class ConvolutionResamplerTest {
+
+    @Nested
+    @DisplayName("resize")
+    class Resize {
+        @ParameterizedTest
+        @EnumSource(ResampleFilter.class)
+        @DisplayName("should produce the requested dimensions and type")
+        void shouldProduceRequestedSize(ResampleFilter filter) {
+            var resampler = new ConvolutionResampler(filter, false);
+            var rgb = resampler.resize(createGradient(1200, 900, BufferedImage.TYPE_3BYTE_BGR), 500, 375);
+            var argb = resampler.resize(createGradient(300, 200, BufferedImage.TYPE_INT_ARGB), 700, 467);
+
+            assertThat(rgb.getWidth()).isEqualTo(500);
+            assertThat(rgb.getHeight()).isEqualTo(375);
+            assertThat(rgb.getType()).isEqualTo(BufferedImage.TYPE_INT_RGB);
+            assertThat(argb.getWidth()).isEqualTo(700);
+            assertThat(argb.getType()).isEqualTo(BufferedImage.TYPE_INT_ARGB);
+        }
+
+        @ParameterizedTest
+        @EnumSource(ResampleFilter.class)
+        @DisplayName("should preserve a flat translucent color exactly")
+        void shouldPreserveFlatColor(ResampleFilter filter) {
+            var source = new BufferedImage(333, 222, BufferedImage.TYPE_INT_ARGB);
+            var g = source.createGraphics();
+            g.setColor(new Color(10, 200, 30, 128));
+            g.fillRect(0, 0, 333, 222);
+            g.dispose();
+
+            var result = new ConvolutionResampler(filter, true).resize(source, 100, 67);
+            assertThat(result.getRGB(0, 0)).isEqualTo(source.getRGB(0, 0));
+            assertThat(result.getRGB(99, 66)).isEqualTo(source.getRGB(0, 0));
+        }
+
+        @ParameterizedTest
+        @EnumSource(ResampleFilter.class)
+        @DisplayName("should stay close to an area-averaged reference")
+        void shouldMatchAreaAverage(ResampleFilter filter) {
+            var source = createGradient(2000, 1500, BufferedImage.TYPE_INT_RGB);
+            var reference = areaAverage(source, 500, 375);
+            var result = new ConvolutionResampler(filter, true).resize(source, 500, 375);
+            assertThat(psnr(result, reference)).isGreaterThan(35.0);
+        }
+    }
+
+    @Nested
+    @DisplayName("kernels")
+    class Kernels {
+        @Test
+        @DisplayName("should use vector kernels when the incubator module is present")
+        void shouldSelectVectorKernels() {
+            boolean present = ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent();
+            var resampler = new ConvolutionResampler(ResampleFilter.LANCZOS3, true);
+            assertThat(resampler.kernelsName().startsWith("vector")).isEqualTo(present);
+            assertThat(new ConvolutionResampler(ResampleFilter.LANCZOS3, false).kernelsName()).isEqualTo("scalar");
+        }
+
+        @ParameterizedTest
+        @EnumSource(ResampleFilter.class)
+        @DisplayName("should match scalar kernels")
+        void shouldMatchScalarKernels(ResampleFilter filter) {
+            var source = createGradient(1031, 777, BufferedImage.TYPE_INT_ARGB);
+            var vector = new ConvolutionResampler(filter, ResampleKernels.best()).resize(source, 257, 193);
+            var scalar = new ConvolutionResampler(filter, ResampleKernels.scalar()).resize(source, 257, 193);
+            assertThat(maxChannelDifference(vector, scalar)).isLessThanOrEqualTo(1);
+        }
+    }
+
+    @Nested
+    @DisplayName("bands")
+    class Bands {
+        @ParameterizedTest
+        @EnumSource(ResampleFilter.class)
+        @DisplayName("should produce identical output in parallel bands")
+        void shouldMatchSequentialOutput(ResampleFilter filter) {
+            var source = createGradient(1600, 1200, BufferedImage.TYPE_INT_ARGB);
+            var sequential = new ConvolutionResampler(filter, true).resize(source, 640, 480);
+            var parallel = new ConvolutionResampler(filter, true, new BandExecutor(4, 1024)).resize(source, 640, 480);
+            assertThat(maxChannelDifference(parallel, sequential)).isZero();
+        }
+    }
+
+    @Nested
+    @DisplayName("forName")
+    class ForName {
+        @Test
+        @DisplayName("should resolve configured resamplers")
+        void shouldResolveNames() {
+            assertThat(Resampler.forName(null, true)).isInstanceOf(ThumbnailatorResampler.class);
+            assertThat(Resampler.forName("thumbnailator", true)).isInstanceOf(ThumbnailatorResampler.class);
+            assertThat(Resampler.forName("Lanczos3", true).name()).isEqualTo("lanczos3");
+            assertThat(Resampler.forName("bicubic", false).name()).isEqualTo("bicubic");
+        }
+
+        @Test
+        @DisplayName("should reject unknown names")
+        void shouldRejectUnknownNames() {
+            assertThatThrownBy(() -> Resampler.forName("nearest", true))
+                    .isInstanceOf(IllegalArgumentException.class);
+        }
+    }
+
+    private static BufferedImage createGradient(int width, int height, int type) {
+        var image = new BufferedImage(width, height, type);
+        var g = image.createGraphics();
+        g.setPaint(new GradientPaint(0, 0, Color.RED, width, height, new Color(0, 0, 255, 200)));
+        g.fillRect(0, 0, width, height);
+        g.dispose();
+        return image;
+    }
+
+    private static BufferedImage areaAverage(BufferedImage source, int width, int height) {
+        var reference = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        var g = reference.createGraphics();
+        g.drawImage(source.getScaledInstance(width, height, Image.SCALE_AREA_AVERAGING), 0, 0, null);
+        g.dispose();
+        return reference;
+    }
+
+    private static double psnr(BufferedImage a, BufferedImage b) {
+        double squaredError = 0;
+        for (int y = 0; y < a.getHeight(); y++) {
+            for (int x = 0; x < a.getWidth(); x++) {
+                int pa = a.getRGB(x, y);
+                int pb = b.getRGB(x, y);
+                for (int shift = 0; shift <= 16; shift += 8) {
+                    int d = ((pa >> shift) & 0xFF) - ((pb >> shift) & 0xFF);
+                    squaredError += d * d;
+                }
+            }
+        }
+        double mse = squaredError / (a.getWidth() * a.getHeight() * 3.0);
+        return mse == 0 ? Double.POSITIVE_INFINITY : 10 * Math.log10(255 * 255 / mse);
+    }
+
+    private static int maxChannelDifference(BufferedImage a, BufferedImage b) {
+        int max = 0;
+        for (int y = 0; y < a.getHeight(); y++) {
+            for (int x = 0; x < a.getWidth(); x++) {
+                int pa = a.getRGB(x, y);
+                int pb = b.getRGB(x, y);
+                for (int shift = 0; shift <= 24; shift += 8) {
+                    max = Math.max(max, Math.abs(((pa >> shift) & 0xFF) - ((pb >> shift) & 0xFF)));
+                }
+            }
+        }
+        return max;
+    }
+}
@@ -0,0 +1,176 @@
+package com.mediaservice.lambda.image;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import javax.imageio.ImageIO;
+import javax.imageio.stream.MemoryCacheImageInputStream;
+import java.awt.Color;
+import java.awt.GradientPaint;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBuffer;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class ImageDecoderTest {
+    private final ImageDecoder decoder = new ImageDecoder(true, 2);
+
+    @Nested
+    @DisplayName("subsamplingFor")
+    class SubsamplingFor {
+        @Test
+        @DisplayName("should not subsample when source is close to target")
+        void shouldNotSubsampleSmallSources() {
+            assertThat(decoder.subsamplingFor(800, 500)).isEqualTo(1);
+            assertThat(decoder.subsamplingFor(300, 500)).isEqualTo(1);
+        }
+
+        @Test
+        @DisplayName("should keep decoded width at least oversample factor times target")
+        void shouldKeepOversampledWidth() {
+            int step = decoder.subsamplingFor(9000, 500);
+            assertThat(step).isEqualTo(9);
+            assertThat(9000 / step).isGreaterThanOrEqualTo(500 * 2);
+        }
+
+        @Test
+        @DisplayName("should return 1 when reduced decode is disabled")
+        void shouldReturnOneWhenDisabled() {
+            var disabled = new ImageDecoder(false, 2);
+            assertThat(disabled.subsamplingFor(9000, 500)).isEqualTo(1);
+        }
+    }
+
+    @Nested
+    @DisplayName("decode")
+    class Decode {
+        @ParameterizedTest
+        @ValueSource(strings = { "jpeg", "png" })
+        @DisplayName("should decode large sources at reduced resolution")
+        void shouldDecodeAtReducedResolution(String format) throws IOException {
+            byte[] source = createFixture(4000, 3000, format);
+            var decoded = decode(decoder, source, 500);
+            assertThat(decoded.sourceWidth()).isEqualTo(4000);
+            assertThat(decoded.sourceHeight()).isEqualTo(3000);
+            assertThat(decoded.subsampling()).isEqualTo(4);
+            assertThat(decoded.image().getWidth()).isEqualTo(1000);
+            assertThat(decoded.image().getHeight()).isEqualTo(750);
+        }
+
+        @Test
+        @DisplayName("should decode at full resolution when target is larger than source")
+        void shouldDecodeFullResolutionForSmallSources() throws IOException {
+            byte[] source = createFixture(400, 300, "png");
+            var decoded = decode(decoder, source, 1024);
+            assertThat(decoded.subsampling()).isEqualTo(1);
+            assertThat(decoded.image().getWidth()).isEqualTo(400);
+        }
+
+        @ParameterizedTest
+        @ValueSource(longs = { 1_000_000L, Long.MAX_VALUE })
+        @DisplayName("should decode at the subsampling step the memory planner chose")
+        void shouldDecodeAtPlannedSubsampling(long tiledThresholdPixels) throws IOException {
+            var planned = new MemoryPlanner.Plan[1];
+            var planner = new MemoryPlanner(512L * 1024 * 1024, 1_000_000_000L, 32L * 1024 * 1024) {
+                @Override
+                public Plan plan(SourceInfo source, int targetWidth, int subsampling, boolean preferTiled)
+                        throws ImageTooLargeException {
+                    var plan = super.plan(source, targetWidth, subsampling, preferTiled);
+                    // A step other than the decoder's own, so agreement cannot be a coincidence
+                    planned[0] = new Plan(plan.strategy(), 2, plan.estimatedBytes());
+                    return planned[0];
+                }
+            };
+            var plannedDecoder = new ImageDecoder(true, 2, tiledThresholdPixels, 32L * 1024 * 1024, planner);
+
+            var decoded = decode(plannedDecoder, createFixture(4000, 3000, "png"), 500);
+
+            assertThat(decoded.subsampling()).isEqualTo(planned[0].subsampling());
+            assertThat(decoded.tiled()).isEqualTo(planned[0].strategy() == MemoryPlanner.Strategy.TILED);
+            if (!decoded.tiled()) {
+                assertThat(decoded.image().getWidth()).isEqualTo(2000);
+            }
+        }
+
+        @Test
+        @DisplayName("should reject data no reader understands")
+        void shouldRejectUnknownData() {
+            byte[] garbage = new byte[] { 1, 2, 3, 4, 5, 6, 7, 8 };
+            assertThatThrownBy(() -> decode(decoder, garbage, 500)).isInstanceOf(IOException.class);
+        }
+
+        @Test
+        @DisplayName("should report a truncated source as undecodable")
+        void shouldRejectTruncatedData() throws IOException {
+            byte[] source = createFixture(1000, 800, "png");
+            byte[] truncated = Arrays.copyOf(source, source.length / 2);
+            assertThatThrownBy(() -> decode(decoder, truncated, 500))
+                    .isInstanceOfSatisfying(UndecodableImageException.class,
+                            e -> assertThat(e.isUnsupportedFormat()).isFalse());
+        }
+
+        @Test
+        @DisplayName("should pass unchecked failures through instead of blaming the image")
+        void shouldPassThroughUncheckedFailures() throws IOException {
+            byte[] source = createFixture(1000, 800, "png");
+            var failure = new IllegalStateException("pipeline bug");
+            var input = new MemoryCacheImageInputStream(new ByteArrayInputStream(source)) {
+                @Override
+                public int read(byte[] b, int off, int len) throws IOException {
+                    if (getStreamPosition() > source.length / 2) {
+                        throw failure;
+                    }
+                    return super.read(b, off, len);
+                }
+            };
+            assertThatThrownBy(() -> decoder.decode(input, 500)).isSameAs(failure);
+        }
+    }
+
+    @Nested
+    @DisplayName("retained raster")
+    class RetainedRaster {
+        @ParameterizedTest
+        @ValueSource(strings = { "jpeg", "png" })
+        @DisplayName("reduced decode should retain a fraction of the full raster")
+        void reducedDecodeShouldUseLessMemory(String format) throws IOException {
+            byte[] source = createFixture(6000, 4000, format);
+            var full = decode(new ImageDecoder(false, 2), source, 500);
+            var reduced = decode(decoder, source, 500);
+
+            // 6000 / (500 * 2) = 6, so the retained raster is ~1/36 of the full one
+            assertThat(rasterBytes(reduced.image()) * 30).isLessThan(rasterBytes(full.image()));
+        }
+    }
+
+    private static ImageDecoder.DecodedImage decode(ImageDecoder decoder, byte[] data, int targetWidth)
+            throws IOException {
+        try (var input = ImageIO.createImageInputStream(new ByteArrayInputStream(data))) {
+            return decoder.decode(input, targetWidth);
+        }
+    }
+
+    private static long rasterBytes(BufferedImage image) {
+        var buffer = image.getRaster().getDataBuffer();
+        return (long) buffer.getSize() * buffer.getNumBanks() * (DataBuffer.getDataTypeSize(buffer.getDataType()) / 8);
+    }
+
+    private static byte[] createFixture(int width, int height, String format) throws IOException {
+        var image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        var g = image.createGraphics();
+        g.setPaint(new GradientPaint(0, 0, Color.RED, width, height, Color.BLUE));
+        g.fillRect(0, 0, width, height);
+        g.dispose();
+        var baos = new ByteArrayOutputStream();
+        ImageIO.write(image, format, baos);
+        return baos.toByteArray();
+    }
+}
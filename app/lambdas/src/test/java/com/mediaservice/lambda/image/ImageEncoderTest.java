@@ -0,0 +1,93 @@
+package com.mediaservice.lambda.image;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ImageEncoderTest {
+    private final ImageEncoder encoder = new ImageEncoder();
+
+    @ParameterizedTest
+    @ValueSource(strings = {"jpeg", "png", "bmp"})
+    @DisplayName("should hand output to the sink while the writer is still encoding")
+    void shouldStreamWhileEncoding(String format) throws IOException {
+        var sink = new RecordingOutputStream();
+
+        encoder.encode(noise(1600, 1200), format, 0.9f, sink);
+
+        assertThat(sink.handoffs).hasSizeGreaterThan(1);
+        assertThat(sink.handoffs.get(0)).isLessThan(sink.size() / 2);
+        var decoded = ImageIO.read(new ByteArrayInputStream(sink.toByteArray()));
+        assertThat(decoded.getWidth()).isEqualTo(1600);
+        assertThat(decoded.getHeight()).isEqualTo(1200);
+    }
+
+    @Test
+    @DisplayName("should hand small outputs over once the writer is done")
+    void shouldBufferSmallOutputs() throws IOException {
+        var sink = new RecordingOutputStream();
+
+        encoder.encode(noise(16, 16), "jpeg", null, sink);
+
+        assertThat(sink.handoffs).containsExactly(sink.size());
+        assertThat(ImageIO.read(new ByteArrayInputStream(sink.toByteArray())).getWidth()).isEqualTo(16);
+    }
+
+    private static BufferedImage noise(int width, int height) {
+        var image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        var random = new Random(42);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                image.setRGB(x, y, random.nextInt());
+            }
+        }
+        return image;
+    }
+
+    /**
+     * Records the size of each batch of bytes flushed while an
+     * {@code ImageWriter.write} call is still on the stack. A writer whose
+     * output is only released at the end hands everything over in one batch.
+     */
+    private static final class RecordingOutputStream extends ByteArrayOutputStream {
+        final List<Integer> handoffs = new ArrayList<>();
+        private int pending;
+
+        @Override
+        public synchronized void write(byte[] b, int off, int len) {
+            pending += len;
+            super.write(b, off, len);
+        }
+
+        @Override
+        public synchronized void write(int b) {
+            pending++;
+            super.write(b);
+        }
+
+        @Override
+        public synchronized void flush() {
+            if (pending > 0 && insideWriter()) {
+                handoffs.add(pending);
+            }
+            pending = 0;
+        }
+
+        private static boolean insideWriter() {
+            return StackWalker.getInstance().walk(frames -> frames.anyMatch(
+                frame -> frame.getMethodName().equals("write") && frame.getClassName().endsWith("ImageWriter")));
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package com.mediaservice.lambda.image;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Path;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ImageInputStreamFactoryTest {
+    private static final int MB = 1024 * 1024;
+
+    @ParameterizedTest
+    @ValueSource(strings = { "jpeg", "png", "gif", "bmp" })
+    @DisplayName("should back every format with the file cache when spilling is enabled")
+    void shouldSpillEveryFormat(String format, @TempDir Path dir) throws IOException {
+        var factory = new ImageInputStreamFactory(true, dir.toString());
+        var stream = factory.open(new ByteArrayInputStream(createImage(format)));
+        assertThat(stream.isCachedFile()).isTrue();
+        assertThat(stream.isCachedMemory()).isFalse();
+        // Closes the stream
+        assertThat(ImageIO.read(stream).getWidth()).isEqualTo(64);
+    }
+
+    @Test
+    @DisplayName("should keep the bytes the reader has consumed off the heap")
+    void shouldNotRetainConsumedBytes(@TempDir Path dir) throws IOException {
+        var factory = new ImageInputStreamFactory(true, dir.toString());
+        long before = retainedHeap();
+        // A JPEG header followed by 64 MB read without flushing, as the JDK readers do
+        try (var stream = factory.open(new JpegLikeStream(64L * MB))) {
+            var buffer = new byte[64 * 1024];
+            while (stream.read(buffer) > 0) {
+                // Consume the whole stream
+            }
+            assertThat(stream.getStreamPosition()).isEqualTo(64L * MB);
+            assertThat(retainedHeap() - before).isLessThan(16L * MB);
+        }
+    }
+
+    @Test
+    @DisplayName("should use the memory cache when spilling is disabled")
+    void shouldUseMemoryWithoutSpill() throws IOException {
+        var factory = new ImageInputStreamFactory(false, null);
+        try (var stream = factory.open(new ByteArrayInputStream(createImage("png")))) {
+            assertThat(stream.isCachedMemory()).isTrue();
+        }
+    }
+
+    private static long retainedHeap() {
+        System.gc();
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+    }
+
+    private static byte[] createImage(String format) throws IOException {
+        var baos = new ByteArrayOutputStream();
+        ImageIO.write(new BufferedImage(64, 48, BufferedImage.TYPE_INT_RGB), format, baos);
+        return baos.toByteArray();
+    }
+
+    /** {@code length} bytes starting with a JPEG SOI marker, generated rather than held. */
+    private static final class JpegLikeStream extends InputStream {
+        private final long length;
+        private long position;
+
+        JpegLikeStream(long length) {
+            this.length = length;
+        }
+
+        @Override
+        public int read() {
+            if (position >= length) {
+                return -1;
+            }
+            return switch ((int) position++) {
+                case 0 -> 0xFF;
+                case 1 -> 0xD8;
+                case 2 -> 0xFF;
+                default -> 0x5A;
+            };
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (position >= length) {
+                return -1;
+            }
+            int n = (int) Math.min(len, length - position);
+            for (int i = 0; i < n; i++) {
+                b[off + i] = (byte) read();
+            }
+            return n;
+        }
+    }
+}
@@ -0,0 +1,201 @@
+package com.mediaservice.lambda.image;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.CRC32;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class MemoryPlannerTest {
+    private static final long MB = 1024 * 1024;
+
+    @Nested
+    @DisplayName("plan")
+    class Plan {
+        private final MemoryPlanner planner = new MemoryPlanner(512 * MB, 1_000_000_000L, 32 * MB);
+
+        @Test
+        @DisplayName("should keep the regular decode when it fits")
+        void shouldKeepRegularDecode() throws IOException {
+            var source = new MemoryPlanner.SourceInfo(6000, 4000, 6000, 3);
+            var subsampled = planner.plan(source, 500, 6, false);
+            assertThat(subsampled.strategy()).isEqualTo(MemoryPlanner.Strategy.SUBSAMPLED);
+            assertThat(subsampled.subsampling()).isEqualTo(6);
+
+            var full = planner.plan(source, 2000, 1, false);
+            assertThat(full.strategy()).isEqualTo(MemoryPlanner.Strategy.FULL);
+            assertThat(full.estimatedBytes()).isLessThan(512 * MB);
+        }
+
+        @Test
+        @DisplayName("should switch to strips when the regular decode does not fit")
+        void shouldSwitchToTiled() throws IOException {
+            // Full-resolution 100 MP decode for a large output is well over the budget
+            var source = new MemoryPlanner.SourceInfo(12000, 8400, 12000, 3);
+            var plan = planner.plan(source, 2000, 1, false);
+            assertThat(plan.strategy()).isEqualTo(MemoryPlanner.Strategy.TILED);
+            assertThat(plan.estimatedBytes()).isLessThanOrEqualTo(512 * MB);
+        }
+
+        @Test
+        @DisplayName("should use strips above the tiled threshold for downscales")
+        void shouldPreferTiledAboveThreshold() throws IOException {
+            var source = new MemoryPlanner.SourceInfo(9000, 6000, 9000, 3);
+            assertThat(planner.plan(source, 500, 9, true).strategy()).isEqualTo(MemoryPlanner.Strategy.TILED);
+        }
+
+        @Test
+        @DisplayName("should reject an upscale whose output does not fit")
+        void shouldRejectOversizedOutput() {
+            var source = new MemoryPlanner.SourceInfo(1000, 1000, 1000, 3);
+            assertThatThrownBy(() -> planner.plan(source, 20000, 1, false))
+                    .isInstanceOf(ImageTooLargeException.class)
+                    .hasMessageContaining("budget");
+        }
+
+        @Test
+        @DisplayName("should reject sources above the pixel limit")
+        void shouldRejectAbovePixelLimit() {
+            var source = new MemoryPlanner.SourceInfo(100_000, 100_000, 100_000, 3);
+            assertThatThrownBy(() -> planner.plan(source, 500, 100, true))
+                    .isInstanceOf(ImageTooLargeException.class)
+                    .hasMessageContaining("megapixels");
+        }
+
+        @Test
+        @DisplayName("should size output from display orientation")
+        void shouldUseDisplayOrientation() {
+            var landscape = new MemoryPlanner.SourceInfo(4000, 1000, 4000, 3);
+            var portrait = new MemoryPlanner.SourceInfo(4000, 1000, 1000, 3);
+            // Rotated to 1000x4000, a 1000-wide output is four times taller
+            assertThat(planner.decodeBytes(portrait, 1000, 1)).isGreaterThan(planner.decodeBytes(landscape, 1000, 1));
+        }
+
+        @Test
+        @DisplayName("should reject rather than use strips for a source that cannot be read in strips")
+        void shouldNotTileUntileableSource() throws IOException {
+            var source = new MemoryPlanner.SourceInfo(12000, 8400, 12000, 3, false);
+            assertThatThrownBy(() -> planner.plan(source, 2000, 1, false))
+                    .isInstanceOf(ImageTooLargeException.class);
+
+            var preferred = planner.plan(new MemoryPlanner.SourceInfo(9000, 6000, 9000, 3, false), 500, 9, true);
+            assertThat(preferred.strategy()).isEqualTo(MemoryPlanner.Strategy.SUBSAMPLED);
+        }
+    }
+
+    @Nested
+    @DisplayName("bytesPerPixel")
+    class BytesPerPixel {
+        @Test
+        @DisplayName("should read the decoded pixel size from the header")
+        void shouldReadPixelSize() throws IOException {
+            assertThat(bytesPerPixel(encode(BufferedImage.TYPE_INT_RGB, "jpeg"))).isEqualTo(3);
+            assertThat(bytesPerPixel(encode(BufferedImage.TYPE_INT_ARGB, "png"))).isEqualTo(4);
+            assertThat(bytesPerPixel(encode(BufferedImage.TYPE_BYTE_GRAY, "png"))).isEqualTo(1);
+        }
+    }
+
+    @Nested
+    @DisplayName("ImageDecoder with a planner")
+    class PlannedDecode {
+        @Test
+        @DisplayName("should reject an oversized source from its header without decoding it")
+        void shouldRejectFromHeader() {
+            var decoder = new ImageDecoder(true, 2, Long.MAX_VALUE, 32 * MB,
+                    new MemoryPlanner(512 * MB, 500_000_000L, 32 * MB));
+            // Header claims 50000x50000 but carries no pixel data; a decode attempt would fail differently
+            byte[] header = pngHeader(50_000, 50_000);
+            assertThatThrownBy(() -> {
+                try (var input = ImageIO.createImageInputStream(new ByteArrayInputStream(header))) {
+                    decoder.decode(input, 500);
+                }
+            }).isInstanceOf(ImageTooLargeException.class);
+        }
+
+        @Test
+        @DisplayName("should decode in strips when the budget is too small for the raster")
+        void shouldDecodeTiledWithinBudget() throws IOException {
+            byte[] png = encode(BufferedImage.TYPE_INT_RGB, "png", 2400, 1600);
+            // 4 MB cannot hold the 2400x1600 raster, but fits 1 MB strips and a 300 px output
+            var decoder = new ImageDecoder(false, 2, Long.MAX_VALUE, MB, new MemoryPlanner(4 * MB, Long.MAX_VALUE, MB));
+            try (var input = ImageIO.createImageInputStream(new ByteArrayInputStream(png))) {
+                var decoded = decoder.decode(input, 300);
+                assertThat(decoded.tiled()).isTrue();
+                assertThat(decoded.image().getWidth()).isEqualTo(300);
+                assertThat(decoded.image().getHeight()).isEqualTo(200);
+            }
+        }
+
+        @Test
+        @DisplayName("should reject an interlaced GIF the budget cannot hold instead of reading it in strips")
+        void shouldRejectInterlacedGif() throws IOException {
+            // ImageIO writes interlaced GIFs by default
+            byte[] gif = encode(BufferedImage.TYPE_INT_RGB, "gif", 2400, 1600);
+            var decoder = new ImageDecoder(false, 2, Long.MAX_VALUE, MB, new MemoryPlanner(4 * MB, Long.MAX_VALUE, MB));
+            assertThatThrownBy(() -> {
+                try (var input = ImageIO.createImageInputStream(new ByteArrayInputStream(gif))) {
+                    decoder.decode(input, 300);
+                }
+            }).isInstanceOf(ImageTooLargeException.class);
+        }
+    }
+
+    private static int bytesPerPixel(byte[] data) throws IOException {
+        try (var input = ImageIO.createImageInputStream(new ByteArrayInputStream(data))) {
+            var reader = ImageIO.getImageReaders(input).next();
+            try {
+                reader.setInput(input);
+                return MemoryPlanner.bytesPerPixel(reader, 0);
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    private static byte[] encode(int type, String format) throws IOException {
+        return encode(type, format, 64, 48);
+    }
+
+    private static byte[] encode(int type, String format, int width, int height) throws IOException {
+        var image = new BufferedImage(width, height, type);
+        var out = new ByteArrayOutputStream();
+        ImageIO.write(image, format, out);
+        return out.toByteArray();
+    }
+
+    /**
+     * PNG signature and IHDR chunk only, for a truecolor 8-bit image of the given size.
+     */
+    private static byte[] pngHeader(int width, int height) {
+        try {
+            var bytes = new ByteArrayOutputStream();
+            var out = new DataOutputStream(bytes);
+            out.write(new byte[] { (byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n' });
+            var ihdr = new ByteArrayOutputStream();
+            var data = new DataOutputStream(ihdr);
+            data.write("IHDR".getBytes(StandardCharsets.US_ASCII));
+            data.writeInt(width);
+            data.writeInt(height);
+            data.write(new byte[] { 8, 2, 0, 0, 0 });
+            var chunk = ihdr.toByteArray();
+            out.writeInt(chunk.length - 4);
+            out.write(chunk);
+            var crc = new CRC32();
+            crc.update(chunk);
+            out.writeInt((int) crc.getValue());
+            return bytes.toByteArray();
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,408 @@
+package com.mediaservice.lambda.image;
+
+import net.coobird.thumbnailator.Thumbnails;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.event.IIOReadProgressListener;
+import java.awt.AlphaComposite;
+import java.awt.Color;
+import java.awt.GradientPaint;
+import java.awt.image.BufferedImage;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class TiledDownscalerTest {
+
+    @Nested
+    @DisplayName("stripRows")
+    class StripRows {
+        @Test
+        @DisplayName("should fit strips to the byte budget")
+        void shouldFitBudget() {
+            var downscaler = new TiledDownscaler(4L * 1024 * 1024);
+            assertThat(downscaler.stripRows(1024)).isEqualTo(1024);
+            assertThat(downscaler.stripRows(4000)).isEqualTo(262);
+        }
+
+        @Test
+        @DisplayName("should read at least one row per strip")
+        void shouldReadAtLeastOneRow() {
+            assertThat(new TiledDownscaler(16).stripRows(50_000)).isEqualTo(1);
+        }
+    }
+
+    @Nested
+    @DisplayName("ImageDecoder tiled mode")
+    class TiledDecode {
+        @Test
+        @DisplayName("should return the target width and match a full-raster downscale")
+        void shouldMatchFullDownscale() throws IOException {
+            var source = createGradient(1800, 1200, BufferedImage.TYPE_INT_RGB);
+            byte[] png = encode(source, "png");
+            // Tiny strip budget forces many strips
+            var tiled = new ImageDecoder(true, 2, 0, 64 * 1024);
+
+            var decoded = decode(tiled, png, 300);
+            var reference = Thumbnails.of(source).width(300).asBufferedImage();
+
+            assertThat(decoded.tiled()).isTrue();
+            assertThat(decoded.image().getWidth()).isEqualTo(300);
+            assertThat(decoded.image().getHeight()).isEqualTo(200);
+            assertThat(meanChannelDifference(decoded.image(), reference)).isLessThan(3.0);
+        }
+
+        @Test
+        @DisplayName("should preserve transparency")
+        void shouldPreserveAlpha() throws IOException {
+            var source = createGradient(1600, 800, BufferedImage.TYPE_INT_ARGB);
+            var g = source.createGraphics();
+            g.setComposite(AlphaComposite.Clear);
+            g.fillRect(0, 0, 800, 800);
+            g.dispose();
+            var decoded = decode(new ImageDecoder(true, 2, 0, 64 * 1024), encode(source, "png"), 200);
+
+            assertThat(decoded.image().getColorModel().hasAlpha()).isTrue();
+            assertThat(decoded.image().getRGB(10, 50) >>> 24).isZero();
+            assertThat(decoded.image().getRGB(190, 50) >>> 24).isEqualTo(255);
+        }
+
+        @Test
+        @DisplayName("should not use strips below the threshold or when enlarging")
+        void shouldOnlyTileLargeDownscales() {
+            var decoder = new ImageDecoder(true, 2, 10_000_000, 1024 * 1024);
+            assertThat(decoder.useTiled(3000, 3000, 3000, 500)).isFalse();
+            assertThat(decoder.useTiled(5000, 5000, 5000, 500)).isTrue();
+            assertThat(decoder.useTiled(5000, 5000, 5000, 6000)).isFalse();
+        }
+    }
+
+    @Nested
+    @DisplayName("reading")
+    class Reading {
+        @ParameterizedTest
+        @ValueSource(strings = { "jpeg", "png", "gif" })
+        @DisplayName("should decode formats that store rows in order in a single read")
+        void shouldReadOnce(String format) throws IOException {
+            byte[] data = encodeProgressive(createGradient(1800, 1200, BufferedImage.TYPE_INT_RGB), format, false);
+            var downscaled = downscale(data, 300, 200);
+
+            assertThat(downscaled.reads()).isEqualTo(1);
+            assertThat(meanChannelDifference(downscaled.image(), reference(data))).isLessThan(3.0);
+        }
+
+        @Test
+        @DisplayName("should read BMP by source region in strips")
+        void shouldReadRegions() throws IOException {
+            byte[] data = encode(createGradient(1800, 1200, BufferedImage.TYPE_INT_RGB), "bmp");
+            var downscaled = downscale(data, 300, 200);
+
+            assertThat(downscaled.reads()).isGreaterThan(1);
+            assertThat(meanChannelDifference(downscaled.image(), reference(data))).isLessThan(3.0);
+        }
+
+        @ParameterizedTest
+        @ValueSource(strings = { "png", "gif" })
+        @DisplayName("should not support interlaced images, which would be decoded again for every strip")
+        void shouldNotSupportInterlaced(String format) throws IOException {
+            var source = createGradient(64, 48, BufferedImage.TYPE_INT_RGB);
+            assertThat(supports(encodeProgressive(source, format, false))).isTrue();
+            assertThat(supports(encodeProgressive(source, format, true))).isFalse();
+        }
+    }
+
+    @Nested
+    @DisplayName("bounded heap")
+    class BoundedHeap {
+        private static final int SIZE = 8000;
+        private static final String HEAP = "-Xmx48m";
+
+        /**
+         * The 64-megapixel source needs 48 MB even at subsampling 2, so a
+         * regular decode cannot fit a 48 MB heap, while the strip decoder only
+         * holds one 4 MB strip plus the output.
+         */
+        @Test
+        @DisplayName("should downscale a 64-megapixel image in a 48 MB heap")
+        void shouldDownscaleInSmallHeap(@TempDir Path dir) throws Exception {
+            var file = dir.resolve("large.png");
+            writeSyntheticPng(file, SIZE, SIZE);
+
+            var tiled = runInSmallHeap(file, 0);
+            assertThat(tiled.exitCode()).as(tiled.output()).isZero();
+            assertThat(tiled.output()).contains("decoded 2000x2000 tiled=true");
+
+            var regular = runInSmallHeap(file, Long.MAX_VALUE);
+            assertThat(regular.exitCode()).as(regular.output()).isNotZero();
+            assertThat(regular.output()).contains("OutOfMemoryError");
+        }
+
+        private ProcessResult runInSmallHeap(Path file, long thresholdPixels) throws Exception {
+            var java = Path.of(System.getProperty("java.home"), "bin", "java").toString();
+            var process = new ProcessBuilder(java, HEAP, "-cp", System.getProperty("java.class.path"),
+                    SmallHeapDecode.class.getName(), file.toString(), String.valueOf(thresholdPixels))
+                    .redirectErrorStream(true)
+                    .start();
+            var output = new String(process.getInputStream().readAllBytes(), StandardCharsets.UTF_8);
+            assertThat(process.waitFor(5, TimeUnit.MINUTES)).isTrue();
+            return new ProcessResult(process.exitValue(), output);
+        }
+    }
+
+    private record ProcessResult(int exitCode, String output) {
+    }
+
+    /**
+     * Entry point run in a forked JVM with a small heap.
+     */
+    static class SmallHeapDecode {
+        public static void main(String[] args) throws IOException {
+            var decoder = new ImageDecoder(true, 2, Long.parseLong(args[1]), 4L * 1024 * 1024);
+            try (var input = ImageIO.createImageInputStream(new File(args[0]))) {
+                var decoded = decoder.decode(input, 2000);
+                System.out.printf("decoded %dx%d tiled=%s%n", decoded.image().getWidth(),
+                        decoded.image().getHeight(), decoded.tiled());
+            }
+        }
+    }
+
+    /**
+     * Stream a gradient RGB PNG to disk row by row, so the test itself never
+     * holds the full raster.
+     */
+    private static void writeSyntheticPng(Path file, int width, int height) throws IOException {
+        try (var out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file)))) {
+            out.write(new byte[] { (byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n' });
+            var header = new ByteArrayOutputStream();
+            var headerData = new DataOutputStream(header);
+            headerData.writeInt(width);
+            headerData.writeInt(height);
+            headerData.write(new byte[] { 8, 2, 0, 0, 0 });
+            writeChunk(out, "IHDR", header.toByteArray(), header.size());
+
+            var deflater = new Deflater(Deflater.BEST_SPEED);
+            try (var idat = new DeflaterOutputStream(new ChunkOutputStream(out), deflater, 64 * 1024)) {
+                byte[] row = new byte[1 + width * 3];
+                for (int y = 0; y < height; y++) {
+                    for (int x = 0; x < width; x++) {
+                        row[1 + x * 3] = (byte) (x * 255 / width);
+                        row[2 + x * 3] = (byte) (y * 255 / height);
+                        row[3 + x * 3] = (byte) 128;
+                    }
+                    idat.write(row);
+                }
+            } finally {
+                deflater.end();
+            }
+            writeChunk(out, "IEND", new byte[0], 0);
+        }
+    }
+
+    private static void writeChunk(DataOutputStream out, String type, byte[] data, int length) throws IOException {
+        var crc = new CRC32();
+        byte[] typeBytes = type.getBytes(StandardCharsets.US_ASCII);
+        crc.update(typeBytes);
+        crc.update(data, 0, length);
+        out.writeInt(length);
+        out.write(typeBytes);
+        out.write(data, 0, length);
+        out.writeInt((int) crc.getValue());
+    }
+
+    /** Splits the zlib stream into IDAT chunks; leaves the underlying stream open. */
+    private static final class ChunkOutputStream extends OutputStream {
+        private final DataOutputStream out;
+        private final byte[] buffer = new byte[256 * 1024];
+        private int length;
+
+        ChunkOutputStream(DataOutputStream out) {
+            this.out = out;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[] { (byte) b }, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] data, int offset, int count) throws IOException {
+            while (count > 0) {
+                int n = Math.min(count, buffer.length - length);
+                System.arraycopy(data, offset, buffer, length, n);
+                length += n;
+                offset += n;
+                count -= n;
+                if (length == buffer.length) {
+                    flushChunk();
+                }
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            flushChunk();
+        }
+
+        private void flushChunk() throws IOException {
+            if (length > 0) {
+                writeChunk(out, "IDAT", buffer, length);
+                length = 0;
+            }
+        }
+    }
+
+    private record Downscaled(BufferedImage image, int reads) {
+    }
+
+    /**
+     * Downscale through {@link TiledDownscaler} with a small strip budget,
+     * counting the reads it issues.
+     */
+    private static Downscaled downscale(byte[] data, int width, int height) throws IOException {
+        try (var input = ImageIO.createImageInputStream(new ByteArrayInputStream(data))) {
+            var reader = ImageIO.getImageReaders(input).next();
+            try {
+                reader.setInput(input);
+                var reads = new AtomicInteger();
+                reader.addIIOReadProgressListener(new IIOReadProgressListener() {
+                    @Override
+                    public void imageStarted(ImageReader source, int imageIndex) {
+                        reads.incrementAndGet();
+                    }
+
+                    @Override
+                    public void sequenceStarted(ImageReader source, int minIndex) {
+                    }
+
+                    @Override
+                    public void sequenceComplete(ImageReader source) {
+                    }
+
+                    @Override
+                    public void imageProgress(ImageReader source, float percentageDone) {
+                    }
+
+                    @Override
+                    public void imageComplete(ImageReader source) {
+                    }
+
+                    @Override
+                    public void thumbnailStarted(ImageReader source, int imageIndex, int thumbnailIndex) {
+                    }
+
+                    @Override
+                    public void thumbnailProgress(ImageReader source, float percentageDone) {
+                    }
+
+                    @Override
+                    public void thumbnailComplete(ImageReader source) {
+                    }
+
+                    @Override
+                    public void readAborted(ImageReader source) {
+                    }
+                });
+                var image = new TiledDownscaler(64 * 1024).downscale(reader, 0, 2, width, height);
+                return new Downscaled(image, reads.get());
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    private static boolean supports(byte[] data) throws IOException {
+        try (var input = ImageIO.createImageInputStream(new ByteArrayInputStream(data))) {
+            var reader = ImageIO.getImageReaders(input).next();
+            try {
+                reader.setInput(input);
+                return TiledDownscaler.supports(reader, 0);
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    private static BufferedImage reference(byte[] data) throws IOException {
+        return Thumbnails.of(ImageIO.read(new ByteArrayInputStream(data))).size(300, 200).asBufferedImage();
+    }
+
+    private static ImageDecoder.DecodedImage decode(ImageDecoder decoder, byte[] data, int targetWidth)
+            throws IOException {
+        try (var input = ImageIO.createImageInputStream(new ByteArrayInputStream(data))) {
+            return decoder.decode(input, targetWidth);
+        }
+    }
+
+    private static BufferedImage createGradient(int width, int height, int type) {
+        var image = new BufferedImage(width, height, type);
+        var g = image.createGraphics();
+        g.setPaint(new GradientPaint(0, 0, Color.RED, width, height, Color.BLUE));
+        g.fillRect(0, 0, width, height);
+        g.dispose();
+        return image;
+    }
+
+    private static byte[] encode(BufferedImage image, String format) throws IOException {
+        var out = new ByteArrayOutputStream();
+        ImageIO.write(image, format, out);
+        return out.toByteArray();
+    }
+
+    /**
+     * Encode with interlacing switched on or off; ImageIO's own default is
+     * off for PNG but on for GIF.
+     */
+    private static byte[] encodeProgressive(BufferedImage image, String format, boolean interlaced)
+            throws IOException {
+        var writer = ImageIO.getImageWritersByFormatName(format).next();
+        var param = writer.getDefaultWriteParam();
+        if (param.canWriteProgressive()) {
+            param.setProgressiveMode(interlaced ? ImageWriteParam.MODE_DEFAULT : ImageWriteParam.MODE_DISABLED);
+        }
+        var out = new ByteArrayOutputStream();
+        try (var output = ImageIO.createImageOutputStream(out)) {
+            writer.setOutput(output);
+            writer.write(null, new IIOImage(image, null, null), param);
+        } finally {
+            writer.dispose();
+        }
+        return out.toByteArray();
+    }
+
+    private static double meanChannelDifference(BufferedImage a, BufferedImage b) {
+        long total = 0;
+        for (int y = 0; y < a.getHeight(); y++) {
+            for (int x = 0; x < a.getWidth(); x++) {
+                int pa = a.getRGB(x, y);
+                int pb = b.getRGB(x, y);
+                for (int shift = 0; shift <= 16; shift += 8) {
+                    total += Math.abs(((pa >> shift) & 0xFF) - ((pb >> shift) & 0xFF));
+                }
+            }
+        }
+        return total / (a.getWidth() * a.getHeight() * 3.0);
+    }
+}
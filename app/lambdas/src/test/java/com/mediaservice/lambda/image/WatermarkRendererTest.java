@@ -0,0 +1,117 @@
+package com.mediaservice.lambda.image;
+
+import net.coobird.thumbnailator.geometry.Positions;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import javax.imageio.ImageIO;
+import java.awt.AlphaComposite;
+import java.awt.Color;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class WatermarkRendererTest {
+    private static final BufferedImage WATERMARK = loadWatermark();
+
+    @Nested
+    @DisplayName("cache")
+    class Cache {
+        @Test
+        @DisplayName("should render each width once")
+        void shouldRenderEachWidthOnce() {
+            var renderer = new WatermarkRenderer(WATERMARK, 4);
+            var first = renderer.scaled(100);
+            var second = renderer.scaled(100);
+            assertThat(second).isSameAs(first);
+            assertThat(first.getWidth()).isEqualTo(100);
+            assertThat(first.getType()).isEqualTo(BufferedImage.TYPE_INT_ARGB_PRE);
+        }
+
+        @Test
+        @DisplayName("should evict least recently used widths beyond capacity")
+        void shouldEvictBeyondCapacity() {
+            var renderer = new WatermarkRenderer(WATERMARK, 2);
+            renderer.scaled(50);
+            renderer.scaled(60);
+            renderer.scaled(70);
+            assertThat(renderer.cachedWidths()).isEqualTo(2);
+        }
+    }
+
+    @Nested
+    @DisplayName("apply")
+    class Apply {
+        @ParameterizedTest
+        @ValueSource(ints = { BufferedImage.TYPE_INT_RGB, BufferedImage.TYPE_INT_ARGB, BufferedImage.TYPE_3BYTE_BGR })
+        @DisplayName("should match Graphics2D source-over compositing")
+        void shouldMatchGraphicsCompositing(int imageType) {
+            var renderer = new WatermarkRenderer(WATERMARK, 4);
+            var fast = createTarget(500, 400, imageType);
+            var reference = createTarget(500, 400, imageType);
+
+            renderer.apply(fast, 71, Positions.BOTTOM_RIGHT);
+            var mark = renderer.scaled(71);
+            var g = reference.createGraphics();
+            g.setComposite(AlphaComposite.SrcOver);
+            g.drawImage(mark, 500 - mark.getWidth(), 400 - mark.getHeight(), null);
+            g.dispose();
+
+            assertThat(maxChannelDifference(fast, reference)).isLessThanOrEqualTo(2);
+        }
+
+        @Test
+        @DisplayName("should blend identically in parallel bands")
+        void shouldMatchSequentialBlend() {
+            var sequential = createTarget(1200, 900, BufferedImage.TYPE_INT_ARGB);
+            var parallel = createTarget(1200, 900, BufferedImage.TYPE_INT_ARGB);
+            new WatermarkRenderer(WATERMARK, 4).apply(sequential, 600, Positions.BOTTOM_RIGHT);
+            new WatermarkRenderer(WATERMARK, 4, new BandExecutor(4, 256)).apply(parallel, 600, Positions.BOTTOM_RIGHT);
+            assertThat(maxChannelDifference(parallel, sequential)).isZero();
+        }
+
+        @Test
+        @DisplayName("should clip a watermark larger than the target")
+        void shouldClipOversizedWatermark() {
+            var renderer = new WatermarkRenderer(WATERMARK, 4);
+            var target = createTarget(20, 10, BufferedImage.TYPE_INT_RGB);
+            renderer.apply(target, 30, Positions.BOTTOM_LEFT);
+            assertThat(target.getWidth()).isEqualTo(20);
+        }
+    }
+
+    private static BufferedImage createTarget(int width, int height, int type) {
+        var image = new BufferedImage(width, height, type);
+        var g = image.createGraphics();
+        g.setColor(new Color(40, 120, 200));
+        g.fillRect(0, 0, width, height);
+        g.dispose();
+        return image;
+    }
+
+    private static int maxChannelDifference(BufferedImage a, BufferedImage b) {
+        int max = 0;
+        for (int y = 0; y < a.getHeight(); y++) {
+            for (int x = 0; x < a.getWidth(); x++) {
+                int pa = a.getRGB(x, y);
+                int pb = b.getRGB(x, y);
+                for (int shift = 0; shift <= 16; shift += 8) {
+                    max = Math.max(max, Math.abs(((pa >> shift) & 0xFF) - ((pb >> shift) & 0xFF)));
+                }
+            }
+        }
+        return max;
+    }
+
+    private static BufferedImage loadWatermark() {
+        try (var stream = WatermarkRendererTest.class.getResourceAsStream("/media-service-watermark.png")) {
+            return ImageIO.read(stream);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
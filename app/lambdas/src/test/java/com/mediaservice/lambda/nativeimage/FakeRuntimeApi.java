@@ -0,0 +1,139 @@
+package com.mediaservice.lambda.nativeimage;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Minimal Lambda Runtime API: hands queued events to a runtime polling
+ * {@code invocation/next} and records when each response arrives, so a
+ * custom runtime can be driven and timed without the Lambda service.
+ */
+final class FakeRuntimeApi implements AutoCloseable {
+  private static final String PREFIX = "/2018-06-01/runtime/";
+
+  private final HttpServer server;
+  private final ExecutorService executor = Executors.newCachedThreadPool();
+  private final BlockingQueue<String> events = new LinkedBlockingQueue<>();
+  private final List<Long> completions = new ArrayList<>();
+  private final AtomicInteger errors = new AtomicInteger();
+  private volatile long firstPollNanos;
+  private volatile String initError;
+
+  FakeRuntimeApi() throws IOException {
+    server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+    server.createContext(PREFIX, this::handle);
+    server.setExecutor(executor);
+    server.start();
+  }
+
+  /**
+   * Value for {@code AWS_LAMBDA_RUNTIME_API}.
+   */
+  String address() {
+    return "127.0.0.1:" + server.getAddress().getPort();
+  }
+
+  void enqueue(String event) {
+    events.add(event);
+  }
+
+  long firstPollNanos() {
+    return firstPollNanos;
+  }
+
+  int errors() {
+    return errors.get();
+  }
+
+  String initError() {
+    return initError;
+  }
+
+  /**
+   * Wait until {@code count} invocations have completed.
+   *
+   * @return Completion times in {@link System#nanoTime()} units, in order
+   */
+  List<Long> awaitCompletions(int count, Duration timeout) throws InterruptedException {
+    long deadline = System.nanoTime() + timeout.toNanos();
+    synchronized (completions) {
+      while (completions.size() < count && initError == null) {
+        long remaining = deadline - System.nanoTime();
+        if (remaining <= 0) {
+          break;
+        }
+        TimeUnit.NANOSECONDS.timedWait(completions, remaining);
+      }
+      return List.copyOf(completions);
+    }
+  }
+
+  private void handle(HttpExchange exchange) throws IOException {
+    var path = exchange.getRequestURI().getPath().substring(PREFIX.length());
+    try (exchange) {
+      if (path.equals("invocation/next")) {
+        if (firstPollNanos == 0) {
+          firstPollNanos = System.nanoTime();
+        }
+        var event = events.take();
+        var headers = exchange.getResponseHeaders();
+        headers.add("Lambda-Runtime-Aws-Request-Id", UUID.randomUUID().toString());
+        headers.add("Lambda-Runtime-Deadline-Ms", String.valueOf(System.currentTimeMillis() + 120_000));
+        headers.add("Lambda-Runtime-Invoked-Function-Arn",
+            "arn:aws:lambda:us-west-2:000000000000:function:media-service-manage-media-handler");
+        headers.add("Lambda-Runtime-Trace-Id", "Root=1-00000000-000000000000000000000000;Sampled=0");
+        respond(exchange, 200, event);
+      } else if (path.equals("init/error")) {
+        initError = new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8);
+        complete(false);
+        respond(exchange, 202, "");
+      } else if (path.startsWith("invocation/")) {
+        exchange.getRequestBody().readAllBytes();
+        complete(!path.endsWith("/error"));
+        respond(exchange, 202, "");
+      } else {
+        respond(exchange, 404, "");
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private void complete(boolean success) {
+    if (!success) {
+      errors.incrementAndGet();
+    }
+    synchronized (completions) {
+      completions.add(System.nanoTime());
+      completions.notifyAll();
+    }
+  }
+
+  private static void respond(HttpExchange exchange, int status, String body) throws IOException {
+    var bytes = body.getBytes(StandardCharsets.UTF_8);
+    exchange.sendResponseHeaders(status, bytes.length == 0 ? -1 : bytes.length);
+    if (bytes.length > 0) {
+      exchange.getResponseBody().write(bytes);
+    }
+  }
+
+  @Override
+  public void close() {
+    server.stop(0);
+    executor.shutdownNow();
+  }
+}
@@ -0,0 +1,246 @@
+package com.mediaservice.lambda.nativeimage;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.mediaservice.common.event.MediaEvent;
+import com.mediaservice.common.model.EventType;
+import com.mediaservice.common.model.MediaStatus;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.testcontainers.containers.localstack.LocalStackContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+import org.testcontainers.utility.DockerImageName;
+import software.amazon.awssdk.auth.credentials.AwsBasicCredentials;
+import software.amazon.awssdk.auth.credentials.StaticCredentialsProvider;
+import software.amazon.awssdk.core.sync.RequestBody;
+import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
+import software.amazon.awssdk.services.dynamodb.model.*;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.CreateBucketRequest;
+import software.amazon.awssdk.services.s3.model.PutObjectRequest;
+
+import javax.imageio.ImageIO;
+import java.awt.Color;
+import java.awt.GradientPaint;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assumptions.assumeThat;
+import static org.testcontainers.containers.localstack.LocalStackContainer.Service.DYNAMODB;
+import static org.testcontainers.containers.localstack.LocalStackContainer.Service.S3;
+
+/**
+ * Drives the native executable and the JVM jar through the same custom
+ * runtime path (Runtime Interface Client polling a fake Runtime API, AWS
+ * calls against LocalStack) and reports cold start and steady-state
+ * throughput for each. Runs in {@code mvn -Pnative verify}.
+ *
+ * <p>
+ * Timings are printed rather than asserted: they depend on the build machine.
+ */
+@Testcontainers
+class NativeRuntimeIT {
+    @Container
+    @SuppressWarnings("resource") // Lifecycle managed by Testcontainers JUnit 5 extension
+    static LocalStackContainer localStack = new LocalStackContainer(DockerImageName.parse("localstack/localstack:3.4"))
+            .withServices(S3, DYNAMODB)
+            .withReuse(true);
+
+    private static final String TABLE_NAME = "media";
+    private static final String BUCKET_NAME = "media-bucket";
+    private static final String HANDLER = "com.mediaservice.lambda.ManageMediaHandler::handleRequest";
+    private static final String RIC_MAIN = "com.amazonaws.services.lambda.runtime.api.client.AWSLambda";
+    private static final int INVOCATIONS = Integer.getInteger("native.it.invocations", 20);
+
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+    private static DynamoDbClient dynamoDbClient;
+    private static S3Client s3Client;
+    private static byte[] original;
+
+    private record RuntimeResult(String runtime, long initMillis, long firstInvocationMillis, double steadyPerSecond) {
+    }
+
+    @BeforeAll
+    static void setupClients() throws Exception {
+        var credentials = StaticCredentialsProvider
+                .create(AwsBasicCredentials.create(localStack.getAccessKey(), localStack.getSecretKey()));
+        dynamoDbClient = DynamoDbClient.builder()
+                .endpointOverride(localStack.getEndpointOverride(DYNAMODB))
+                .credentialsProvider(credentials)
+                .region(Region.US_WEST_2)
+                .build();
+        s3Client = S3Client.builder()
+                .endpointOverride(localStack.getEndpointOverride(S3))
+                .credentialsProvider(credentials)
+                .region(Region.US_WEST_2)
+                .forcePathStyle(true)
+                .build();
+        dynamoDbClient.createTable(CreateTableRequest.builder()
+                .tableName(TABLE_NAME)
+                .keySchema(
+                        KeySchemaElement.builder().attributeName("PK").keyType(KeyType.HASH).build(),
+                        KeySchemaElement.builder().attributeName("SK").keyType(KeyType.RANGE).build())
+                .attributeDefinitions(
+                        AttributeDefinition.builder().attributeName("PK").attributeType(ScalarAttributeType.S).build(),
+                        AttributeDefinition.builder().attributeName("SK").attributeType(ScalarAttributeType.S).build())
+                .billingMode(BillingMode.PAY_PER_REQUEST)
+                .build());
+        s3Client.createBucket(CreateBucketRequest.builder().bucket(BUCKET_NAME).build());
+        original = createTestImage();
+    }
+
+    @AfterAll
+    static void closeClients() {
+        if (dynamoDbClient != null) {
+            dynamoDbClient.close();
+        }
+        if (s3Client != null) {
+            s3Client.close();
+        }
+    }
+
+    @Test
+    @DisplayName("native and JVM runtimes should process the same events")
+    void shouldCompareNativeAndJvm() throws Exception {
+        var nativeBinary = Path.of(System.getProperty("native.binary", "target/media-service-lambdas-native"));
+        var jar = Path.of(System.getProperty("jvm.jar", "target/media-service-lambdas.jar"));
+        assumeThat(Files.isExecutable(nativeBinary)).as("native binary built with -Pnative").isTrue();
+
+        var java = Path.of(System.getProperty("java.home"), "bin", "java").toString();
+        var jvm = run("jvm", List.of(java, "--add-modules", "jdk.incubator.vector", "-cp", jar.toString(), RIC_MAIN,
+                HANDLER), jar.getParent());
+        var nat = run("native", List.of(nativeBinary.toString(), HANDLER), nativeBinary.getParent());
+
+        System.out.printf("%-8s %10s %16s %14s%n", "runtime", "init ms", "first invoke ms", "steady inv/s");
+        for (var result : List.of(jvm, nat)) {
+            System.out.printf("%-8s %10d %16d %14.1f%n", result.runtime(), result.initMillis(),
+                    result.firstInvocationMillis(), result.steadyPerSecond());
+        }
+    }
+
+    private RuntimeResult run(String runtime, List<String> command, Path logDirectory) throws Exception {
+        var mediaIds = new ArrayList<String>();
+        for (int i = 0; i < INVOCATIONS; i++) {
+            var mediaId = runtime + "-" + i;
+            seedMedia(mediaId);
+            mediaIds.add(mediaId);
+        }
+
+        try (var api = new FakeRuntimeApi()) {
+            for (var mediaId : mediaIds) {
+                api.enqueue(sqsEvent(mediaId));
+            }
+            var builder = new ProcessBuilder(command)
+                    .redirectErrorStream(true)
+                    .redirectOutput(logDirectory.resolve(runtime + "-runtime.log").toFile());
+            var env = builder.environment();
+            env.put("AWS_LAMBDA_RUNTIME_API", api.address());
+            env.put("_HANDLER", HANDLER);
+            env.put("LAMBDA_TASK_ROOT", logDirectory.toString());
+            env.put("AWS_LAMBDA_FUNCTION_NAME", "media-service-manage-media-handler");
+            env.put("AWS_LAMBDA_FUNCTION_VERSION", "$LATEST");
+            env.put("AWS_LAMBDA_FUNCTION_MEMORY_SIZE", "2048");
+            env.put("AWS_REGION", "us-west-2");
+            env.put("AWS_ACCESS_KEY_ID", localStack.getAccessKey());
+            env.put("AWS_SECRET_ACCESS_KEY", localStack.getSecretKey());
+            env.put("AWS_DYNAMODB_ENDPOINT", localStack.getEndpointOverride(DYNAMODB).toString());
+            env.put("AWS_S3_ENDPOINT", localStack.getEndpointOverride(S3).toString());
+            env.put("MEDIA_BUCKET_NAME", BUCKET_NAME);
+            env.put("MEDIA_DYNAMODB_TABLE_NAME", TABLE_NAME);
+            // Every invocation renders, so steady state measures processing rather than cache hits
+            env.put("RESULT_CACHE_ENABLED", "false");
+            env.put("OTEL_TRACES_EXPORTER", "none");
+            env.put("OTEL_METRICS_EXPORTER", "none");
+            env.put("OTEL_LOGS_EXPORTER", "none");
+
+            long start = System.nanoTime();
+            var process = builder.start();
+            List<Long> completions;
+            try {
+                completions = api.awaitCompletions(INVOCATIONS, Duration.ofMinutes(3));
+            } finally {
+                process.destroy();
+                process.waitFor(10, TimeUnit.SECONDS);
+            }
+
+            assertThat(api.initError()).as(runtime + " init error").isNull();
+            assertThat(completions).as(runtime + " completed invocations").hasSize(INVOCATIONS);
+            assertThat(api.errors()).as(runtime + " invocation errors").isZero();
+            for (var mediaId : mediaIds) {
+                assertThat(getStatus(mediaId)).as(mediaId).isEqualTo(MediaStatus.COMPLETE.name());
+            }
+
+            long firstPoll = api.firstPollNanos();
+            long steadyNanos = completions.get(completions.size() - 1) - completions.get(0);
+            return new RuntimeResult(runtime,
+                    TimeUnit.NANOSECONDS.toMillis(firstPoll - start),
+                    TimeUnit.NANOSECONDS.toMillis(completions.get(0) - firstPoll),
+                    steadyNanos > 0 ? (INVOCATIONS - 1) * 1e9 / steadyNanos : 0);
+        }
+    }
+
+    private static String sqsEvent(String mediaId) throws Exception {
+        var message = objectMapper.writeValueAsString(MediaEvent.of(EventType.PROCESS_MEDIA, mediaId, 500, "jpeg"));
+        var body = objectMapper.writeValueAsString(Map.of("Message", message));
+        var record = Map.of(
+                "messageId", mediaId,
+                "body", body,
+                "eventSource", "aws:sqs",
+                "eventSourceARN", "arn:aws:sqs:us-west-2:000000000000:media-management");
+        return objectMapper.writeValueAsString(Map.of("Records", List.of(record)));
+    }
+
+    private static void seedMedia(String mediaId) {
+        var now = Instant.now().toString();
+        dynamoDbClient.putItem(PutItemRequest.builder()
+                .tableName(TABLE_NAME)
+                .item(Map.of(
+                        "PK", AttributeValue.builder().s("MEDIA#" + mediaId).build(),
+                        "SK", AttributeValue.builder().s("METADATA").build(),
+                        "name", AttributeValue.builder().s("original.png").build(),
+                        "size", AttributeValue.builder().n(String.valueOf(original.length)).build(),
+                        "mimetype", AttributeValue.builder().s("image/png").build(),
+                        "status", AttributeValue.builder().s(MediaStatus.PENDING.name()).build(),
+                        "width", AttributeValue.builder().n("500").build(),
+                        "createdAt", AttributeValue.builder().s(now).build(),
+                        "updatedAt", AttributeValue.builder().s(now).build()))
+                .build());
+        s3Client.putObject(PutObjectRequest.builder().bucket(BUCKET_NAME).key(mediaId + "/original.png").build(),
+                RequestBody.fromBytes(original));
+    }
+
+    private static String getStatus(String mediaId) {
+        return dynamoDbClient.getItem(GetItemRequest.builder()
+                .tableName(TABLE_NAME)
+                .key(Map.of(
+                        "PK", AttributeValue.builder().s("MEDIA#" + mediaId).build(),
+                        "SK", AttributeValue.builder().s("METADATA").build()))
+                .build())
+                .item()
+                .get("status")
+                .s();
+    }
+
+    private static byte[] createTestImage() throws Exception {
+        var image = new BufferedImage(2000, 1500, BufferedImage.TYPE_INT_RGB);
+        var g = image.createGraphics();
+        g.setPaint(new GradientPaint(0, 0, Color.RED, 2000, 1500, Color.BLUE));
+        g.fillRect(0, 0, 2000, 1500);
+        g.dispose();
+        var out = new ByteArrayOutputStream();
+        ImageIO.write(image, "png", out);
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,13 @@
+package com.mediaservice.lambda.service;
+
+import java.time.Duration;
+
+/**
+ * {@link ResultCacheService} with the cache turned off, so every record is
+ * rendered.
+ */
+public class DisabledResultCacheService extends ResultCacheService {
+  public DisabledResultCacheService() {
+    super(null, null, "media", false, Duration.ZERO, System.getProperty("java.io.tmpdir"));
+  }
+}
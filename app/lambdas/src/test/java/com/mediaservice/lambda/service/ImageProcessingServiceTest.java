@@ -1,20 +1,41 @@
 package com.mediaservice.lambda.service;
 
 import com.mediaservice.common.model.OutputFormat;
+import com.mediaservice.lambda.image.UndecodableImageException;
+import com.mediaservice.lambda.service.ImageProcessingService.OutputSink;
+import com.mediaservice.lambda.service.ImageProcessingService.StreamedVariant;
+import com.mediaservice.lambda.service.ImageProcessingService.Variant;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Nested;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.ValueSource;
+import software.amazon.awssdk.core.exception.SdkClientException;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
 
 import javax.imageio.ImageIO;
 import java.awt.image.BufferedImage;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
 
 class ImageProcessingServiceTest {
     private ImageProcessingService service;
@@ -31,7 +52,7 @@ class ImageProcessingServiceTest {
         @DisplayName("should resize image to target width")
         void shouldResizeToTargetWidth() throws IOException {
             byte[] inputImage = createTestImage(1000, 800);
-            byte[] result = service.processImage(inputImage, 500, OutputFormat.JPEG);
+            byte[] result = process(inputImage, 500, OutputFormat.JPEG);
             var outputImage = ImageIO.read(new ByteArrayInputStream(result));
             assertThat(outputImage.getWidth()).isEqualTo(500);
         }
@@ -40,7 +61,7 @@ class ImageProcessingServiceTest {
         @DisplayName("should use default width when null")
         void shouldUseDefaultWidthWhenNull() throws IOException {
             byte[] inputImage = createTestImage(1000, 800);
-            byte[] result = service.processImage(inputImage, null, OutputFormat.JPEG);
+            byte[] result = process(inputImage, null, OutputFormat.JPEG);
             var outputImage = ImageIO.read(new ByteArrayInputStream(result));
             assertThat(outputImage.getWidth()).isEqualTo(500); // default width
         }
@@ -49,7 +70,7 @@ class ImageProcessingServiceTest {
         @DisplayName("should use default width when zero")
         void shouldUseDefaultWidthWhenZero() throws IOException {
             byte[] inputImage = createTestImage(1000, 800);
-            byte[] result = service.processImage(inputImage, 0, OutputFormat.JPEG);
+            byte[] result = process(inputImage, 0, OutputFormat.JPEG);
             var outputImage = ImageIO.read(new ByteArrayInputStream(result));
             assertThat(outputImage.getWidth()).isEqualTo(500);
         }
@@ -59,7 +80,7 @@ class ImageProcessingServiceTest {
         @DisplayName("should handle various target widths")
         void shouldHandleVariousWidths(int targetWidth) throws IOException {
             byte[] inputImage = createTestImage(2000, 1600);
-            byte[] result = service.processImage(inputImage, targetWidth, OutputFormat.JPEG);
+            byte[] result = process(inputImage, targetWidth, OutputFormat.JPEG);
             var outputImage = ImageIO.read(new ByteArrayInputStream(result));
             assertThat(outputImage.getWidth()).isEqualTo(targetWidth);
         }
@@ -68,7 +89,7 @@ class ImageProcessingServiceTest {
         @DisplayName("should output JPEG format")
         void shouldOutputJpegFormat() throws IOException {
             byte[] inputImage = createTestImage(500, 400);
-            byte[] result = service.processImage(inputImage, 300, OutputFormat.JPEG);
+            byte[] result = process(inputImage, 300, OutputFormat.JPEG);
             // JPEG files start with FFD8
             assertThat(result[0] & 0xFF).isEqualTo(0xFF);
             assertThat(result[1] & 0xFF).isEqualTo(0xD8);
@@ -78,7 +99,7 @@ class ImageProcessingServiceTest {
         @DisplayName("should output PNG format")
         void shouldOutputPngFormat() throws IOException {
             byte[] inputImage = createTestImage(500, 400);
-            byte[] result = service.processImage(inputImage, 300, OutputFormat.PNG);
+            byte[] result = process(inputImage, 300, OutputFormat.PNG);
             // PNG files start with 89 50 4E 47 (0x89 'PNG')
             assertThat(result[0] & 0xFF).isEqualTo(0x89);
             assertThat(result[1] & 0xFF).isEqualTo(0x50); // 'P'
@@ -90,13 +111,27 @@ class ImageProcessingServiceTest {
         @DisplayName("should maintain aspect ratio")
         void shouldMaintainAspectRatio() throws IOException {
             byte[] inputImage = createTestImage(1000, 500); // 2:1 ratio
-            byte[] result = service.processImage(inputImage, 500, OutputFormat.JPEG);
+            byte[] result = process(inputImage, 500, OutputFormat.JPEG);
             var outputImage = ImageIO.read(new ByteArrayInputStream(result));
             assertThat(outputImage.getWidth()).isEqualTo(500);
             assertThat(outputImage.getHeight()).isEqualTo(250); // maintains 2:1 ratio
         }
     }
 
+    @Nested
+    @DisplayName("streaming input")
+    class StreamingInput {
+        @ParameterizedTest
+        @ValueSource(strings = { "png", "bmp" })
+        @DisplayName("should process image read from a stream")
+        void shouldProcessFromStream(String inputFormat) throws IOException {
+            byte[] inputImage = createTestImage(1000, 800, inputFormat);
+            byte[] result = process(new ByteArrayInputStream(inputImage), 400, OutputFormat.JPEG);
+            var outputImage = ImageIO.read(new ByteArrayInputStream(result));
+            assertThat(outputImage.getWidth()).isEqualTo(400);
+        }
+    }
+
     @Nested
     @DisplayName("resizeImage")
     class ResizeImage {
@@ -104,13 +139,208 @@ class ImageProcessingServiceTest {
         @DisplayName("should resize image with different watermark position")
         void shouldResizeWithWatermark() throws IOException {
             byte[] inputImage = createTestImage(1000, 800);
-            byte[] result = service.resizeImage(inputImage, 600, OutputFormat.JPEG);
+            byte[] result = resize(inputImage, 600, OutputFormat.JPEG);
             var outputImage = ImageIO.read(new ByteArrayInputStream(result));
             assertThat(outputImage.getWidth()).isEqualTo(600);
         }
     }
 
+    @Nested
+    @DisplayName("variant sets")
+    class VariantSets {
+        @Test
+        @DisplayName("should render every width and format in request order")
+        void shouldRenderEveryVariant() throws IOException {
+            byte[] inputImage = createTestImage(2000, 1000);
+            var variants = List.of(
+                    new Variant(320, OutputFormat.PNG),
+                    new Variant(1024, OutputFormat.JPEG),
+                    new Variant(640, OutputFormat.JPEG),
+                    new Variant(320, OutputFormat.JPEG));
+
+            var written = new HashMap<Variant, byte[]>();
+            var streamed = service.processVariants(new ByteArrayInputStream(inputImage), variants,
+                    collectInto(written));
+
+            assertThat(streamed).extracting(StreamedVariant::variant).containsExactlyElementsOf(variants);
+            for (var output : streamed) {
+                var image = ImageIO.read(new ByteArrayInputStream(written.get(output.output())));
+                assertThat(image.getWidth()).isEqualTo(output.variant().width());
+                assertThat(image.getHeight()).isEqualTo(output.variant().width() / 2);
+            }
+            assertThat(written.get(new Variant(320, OutputFormat.PNG))[1] & 0xFF).isEqualTo('P');
+            assertThat(written.get(new Variant(320, OutputFormat.JPEG))[1] & 0xFF).isEqualTo(0xD8);
+        }
+
+        @Test
+        @DisplayName("should render the largest width exactly as a single output")
+        void shouldMatchSingleOutputAtLargestWidth() throws IOException {
+            byte[] inputImage = createTestImage(1600, 1200);
+            var written = new HashMap<Variant, byte[]>();
+            service.resizeVariants(new ByteArrayInputStream(inputImage),
+                    List.of(new Variant(800, OutputFormat.PNG), new Variant(400, OutputFormat.PNG)),
+                    collectInto(written));
+
+            assertThat(written.get(new Variant(800, OutputFormat.PNG)))
+                    .isEqualTo(resize(inputImage, 800, OutputFormat.PNG));
+        }
+
+        @Test
+        @DisplayName("should stream each distinct output into the sink once, matching a single render")
+        void shouldStreamIntoSink() throws IOException {
+            byte[] inputImage = createTestImage(1600, 1200);
+            var variants = List.of(new Variant(800, OutputFormat.PNG), new Variant(400, OutputFormat.JPEG),
+                    new Variant(800, OutputFormat.PNG));
+            var opened = new ArrayList<Variant>();
+            var written = new HashMap<Variant, byte[]>();
+
+            var streamed = service.resizeVariants(new ByteArrayInputStream(inputImage), variants, output -> {
+                opened.add(output);
+                return new BufferedUploadOutputStream(data -> written.put(output, data));
+            });
+
+            assertThat(opened).containsExactly(new Variant(800, OutputFormat.PNG), new Variant(400, OutputFormat.JPEG));
+            assertThat(streamed).extracting(StreamedVariant::variant)
+                    .containsExactlyElementsOf(variants);
+            var png = written.get(new Variant(800, OutputFormat.PNG));
+            assertThat(streamed.get(0).size()).isEqualTo(png.length);
+            assertThat(png).isEqualTo(resize(inputImage, 800, OutputFormat.PNG));
+        }
+
+        @Test
+        @DisplayName("should resolve default width and format")
+        void shouldResolveDefaults() throws IOException {
+            byte[] inputImage = createTestImage(1000, 800);
+            var written = new HashMap<Variant, byte[]>();
+            var streamed = service.processVariants(new ByteArrayInputStream(inputImage),
+                    List.of(new Variant(null, null)), collectInto(written));
+            var image = ImageIO.read(new ByteArrayInputStream(written.get(streamed.get(0).output())));
+            assertThat(image.getWidth()).isEqualTo(500);
+        }
+    }
+
+    @Nested
+    @DisplayName("undecodable sources")
+    class UndecodableSources {
+        @Test
+        @DisplayName("should report a truncated image as undecodable")
+        void shouldRejectTruncatedImage() throws IOException {
+            byte[] inputImage = createTestImage(1000, 800);
+            var truncated = new ByteArrayInputStream(Arrays.copyOf(inputImage, inputImage.length / 2));
+            assertThatThrownBy(() -> process(truncated, 400, OutputFormat.JPEG))
+                    .isInstanceOfSatisfying(UndecodableImageException.class,
+                            e -> assertThat(e.isUnsupportedFormat()).isFalse());
+        }
+
+        @Test
+        @DisplayName("should report data no reader understands as an unsupported format")
+        void shouldRejectUnknownFormat() {
+            var garbage = new ByteArrayInputStream(new byte[] { 1, 2, 3, 4, 5, 6, 7, 8 });
+            assertThatThrownBy(() -> process(garbage, 400, OutputFormat.JPEG))
+                    .isInstanceOfSatisfying(UndecodableImageException.class,
+                            e -> assertThat(e.isUnsupportedFormat()).isTrue());
+        }
+
+        @Test
+        @DisplayName("should not blame the image when the source stream fails")
+        void shouldPassThroughStreamFailures() throws IOException {
+            var failing = failingHalfway(createTestImage(1000, 800), new IOException("connection reset"));
+            assertThatThrownBy(() -> process(failing, 400, OutputFormat.JPEG))
+                    .isInstanceOf(IOException.class)
+                    .isNotInstanceOf(UndecodableImageException.class);
+        }
+
+        @Test
+        @DisplayName("should not blame the image when the SDK stream fails with an unchecked exception")
+        void shouldPassThroughSdkStreamFailures() throws IOException {
+            var failure = SdkClientException.create("Unable to execute HTTP request");
+            var failing = failingHalfway(createTestImage(1000, 800), failure);
+            assertThatThrownBy(() -> process(failing, 400, OutputFormat.JPEG))
+                    .isSameAs(failure);
+        }
+
+        /**
+         * Serves the first half of {@code data}, then throws {@code failure} on every read.
+         */
+        private static InputStream failingHalfway(byte[] data, Exception failure) {
+            return new FilterInputStream(new ByteArrayInputStream(data)) {
+                private int remaining = data.length / 2;
+
+                @Override
+                public int read(byte[] b, int off, int len) throws IOException {
+                    if (remaining <= 0) {
+                        if (failure instanceof IOException io) {
+                            throw io;
+                        }
+                        throw (RuntimeException) failure;
+                    }
+                    int n = super.read(b, off, Math.min(len, remaining));
+                    remaining -= n;
+                    return n;
+                }
+            };
+        }
+    }
+
+    @Nested
+    @DisplayName("stage events")
+    class StageEvents {
+        @Test
+        @DisplayName("should emit one JFR event per stage of a variant set")
+        void shouldEmitStageEvents(@TempDir Path dir) throws IOException {
+            byte[] inputImage = createTestImage(2000, 1000);
+            var file = dir.resolve("stages.jfr");
+            try (var recording = new Recording()) {
+                recording.enable("com.mediaservice.ImageStage").withThreshold(Duration.ZERO);
+                recording.start();
+                service.processVariants(new ByteArrayInputStream(inputImage), List.of(
+                        new Variant(800, OutputFormat.JPEG), new Variant(800, OutputFormat.PNG),
+                        new Variant(400, OutputFormat.JPEG), new Variant(400, OutputFormat.PNG)),
+                        output -> new DiscardingUploadOutputStream());
+                recording.stop();
+                recording.dump(file);
+            }
+
+            var events = RecordingFile.readAllEvents(file);
+            var stages = events.stream()
+                    .collect(Collectors.groupingBy(e -> e.getString("stage"), Collectors.counting()));
+            assertThat(stages).containsEntry("download", 1L)
+                    .containsEntry("decode", 1L)
+                    .containsEntry("resize", 2L)
+                    .containsEntry("watermark", 2L)
+                    .containsEntry("encode", 4L);
+            assertThat(events).filteredOn(e -> e.getString("stage").equals("encode"))
+                    .extracting(e -> e.getString("outputFormat"))
+                    .containsOnly("jpeg", "png");
+            assertThat(events).extracting((RecordedEvent e) -> e.getDouble("megapixels")).containsOnly(2.0);
+        }
+    }
+
+    private byte[] process(byte[] inputImage, Integer width, OutputFormat format) throws IOException {
+        return process(new ByteArrayInputStream(inputImage), width, format);
+    }
+
+    private byte[] process(InputStream input, Integer width, OutputFormat format) throws IOException {
+        var written = new HashMap<Variant, byte[]>();
+        service.processImage(input, width, format, collectInto(written));
+        return written.get(service.resolve(new Variant(width, format)));
+    }
+
+    private byte[] resize(byte[] inputImage, Integer width, OutputFormat format) throws IOException {
+        var written = new HashMap<Variant, byte[]>();
+        service.resizeImage(new ByteArrayInputStream(inputImage), width, format, collectInto(written));
+        return written.get(service.resolve(new Variant(width, format)));
+    }
+
+    private static OutputSink collectInto(Map<Variant, byte[]> written) {
+        return output -> new BufferedUploadOutputStream(data -> written.put(output, data));
+    }
+
     private byte[] createTestImage(int width, int height) throws IOException {
+        return createTestImage(width, height, "png");
+    }
+
+    private byte[] createTestImage(int width, int height, String format) throws IOException {
         var image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
         // Fill with a gradient for visual testing
         for (int x = 0; x < width; x++) {
@@ -120,7 +350,7 @@ class ImageProcessingServiceTest {
             }
         }
         var baos = new ByteArrayOutputStream();
-        ImageIO.write(image, "png", baos);
+        ImageIO.write(image, format, baos);
         return baos.toByteArray();
     }
 }
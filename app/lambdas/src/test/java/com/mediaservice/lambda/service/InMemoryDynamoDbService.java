@@ -0,0 +1,254 @@
+package com.mediaservice.lambda.service;
+
+import com.mediaservice.common.model.Media;
+import com.mediaservice.common.model.MediaStatus;
+import com.mediaservice.common.model.MediaVariant;
+import com.mediaservice.common.model.OutputFormat;
+import software.amazon.awssdk.services.dynamodb.model.ConditionalCheckFailedException;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiFunction;
+
+/**
+ * {@link DynamoDbService} backed by maps, with the same conditional-update
+ * semantics as the table: a status transition on a missing item or from an
+ * unexpected status throws {@link ConditionalCheckFailedException}. Leases
+ * are kept next to the items and fenced by token like the table's.
+ */
+public class InMemoryDynamoDbService extends DynamoDbService {
+  private final Map<String, Media> media = new ConcurrentHashMap<>();
+  private final Map<String, MediaVariant> variants = new ConcurrentHashMap<>();
+  // Guarded by the media map's compute: a lease only changes with its item
+  private final Map<String, Lease> leases = new ConcurrentHashMap<>();
+  private final Map<String, Long> leaseTokens = new ConcurrentHashMap<>();
+  private final SimulatedLatency latency;
+
+  public InMemoryDynamoDbService() {
+    this(SimulatedLatency.NONE);
+  }
+
+  public InMemoryDynamoDbService(SimulatedLatency latency) {
+    super(null, "media");
+    this.latency = latency;
+  }
+
+  public void putMedia(Media item) {
+    media.put(item.getMediaId(), copy(item));
+  }
+
+  public int size() {
+    return media.size();
+  }
+
+  @Override
+  public Optional<Media> setMediaStatusConditionally(String mediaId, MediaStatus newStatus,
+      MediaStatus expectedStatus, Integer width) {
+    latency.pause();
+    var updated = new Media[1];
+    media.computeIfPresent(mediaId, (id, current) -> {
+      if (current.getStatus() != expectedStatus) {
+        return current;
+      }
+      updated[0] = copy(current);
+      updated[0].setStatus(newStatus);
+      updated[0].setErrorReason(null);
+      updated[0].setUpdatedAt(Instant.now());
+      if (width != null) {
+        updated[0].setWidth(width);
+      }
+      return updated[0];
+    });
+    if (updated[0] == null) {
+      throw ConditionalCheckFailedException.builder().message("The conditional request failed").build();
+    }
+    return Optional.of(copy(updated[0]));
+  }
+
+  @Override
+  public void setMediaStatus(String mediaId, MediaStatus newStatus) {
+    latency.pause();
+    media.computeIfPresent(mediaId, (id, current) -> {
+      var updated = copy(current);
+      updated.setStatus(newStatus);
+      updated.setUpdatedAt(Instant.now());
+      return updated;
+    });
+  }
+
+  @Override
+  public Optional<LeaseAttempt> acquireLease(String mediaId, String owner, Duration duration) {
+    latency.pause();
+    long now = System.currentTimeMillis();
+    var attempt = new LeaseAttempt[1];
+    media.computeIfPresent(mediaId, (id, current) -> {
+      var held = leases.get(id);
+      boolean free = current.getStatus() == MediaStatus.PENDING
+          || (current.getStatus() == MediaStatus.PROCESSING && (held == null || held.expiresAtMillis() < now));
+      if (!free) {
+        attempt[0] = new LeaseAttempt(copy(current), held, false);
+        return current;
+      }
+      var lease = new Lease(owner, leaseTokens.merge(id, 1L, Long::sum), now + duration.toMillis());
+      leases.put(id, lease);
+      var updated = copy(current);
+      updated.setStatus(MediaStatus.PROCESSING);
+      updated.setErrorReason(null);
+      updated.setUpdatedAt(Instant.now());
+      attempt[0] = new LeaseAttempt(copy(updated), lease, true);
+      return updated;
+    });
+    return Optional.ofNullable(attempt[0]);
+  }
+
+  @Override
+  public boolean renewLease(String mediaId, long token, long expiresAtMillis) {
+    latency.pause();
+    return updateLeased(mediaId, token, (current, lease) -> {
+      leases.put(mediaId, new Lease(lease != null ? lease.owner() : null, token, expiresAtMillis));
+      return current;
+    });
+  }
+
+  @Override
+  public boolean releaseLease(String mediaId, long token) {
+    latency.pause();
+    return updateLeased(mediaId, token, (current, lease) -> {
+      leases.remove(mediaId);
+      return current;
+    });
+  }
+
+  @Override
+  public boolean completeMedia(String mediaId, long token, Integer width) {
+    latency.pause();
+    return updateLeased(mediaId, token, (current, lease) -> {
+      leases.remove(mediaId);
+      var updated = copy(current);
+      updated.setStatus(MediaStatus.COMPLETE);
+      updated.setErrorReason(null);
+      updated.setUpdatedAt(Instant.now());
+      if (width != null) {
+        updated.setWidth(width);
+      }
+      return updated;
+    });
+  }
+
+  @Override
+  public boolean setMediaError(String mediaId, long token, String reason) {
+    latency.pause();
+    return updateLeased(mediaId, token, (current, lease) -> {
+      leases.remove(mediaId);
+      var updated = copy(current);
+      updated.setStatus(MediaStatus.ERROR);
+      updated.setErrorReason(reason);
+      updated.setUpdatedAt(Instant.now());
+      return updated;
+    });
+  }
+
+  /** The lease recorded on a media item, if any. */
+  public Optional<Lease> getLease(String mediaId) {
+    return Optional.ofNullable(leases.get(mediaId));
+  }
+
+  private boolean updateLeased(String mediaId, long token, BiFunction<Media, Lease, Media> update) {
+    var applied = new boolean[1];
+    media.computeIfPresent(mediaId, (id, current) -> {
+      if (current.getStatus() != MediaStatus.PROCESSING || !Long.valueOf(token).equals(leaseTokens.get(id))) {
+        return current;
+      }
+      applied[0] = true;
+      return update.apply(current, leases.get(id));
+    });
+    return applied[0];
+  }
+
+  @Override
+  public void setContentHash(String mediaId, String contentHash) {
+    latency.pause();
+    media.computeIfPresent(mediaId, (id, current) -> {
+      var updated = copy(current);
+      updated.setContentHash(contentHash);
+      return updated;
+    });
+  }
+
+  @Override
+  public void completeVariant(String mediaId, int width, OutputFormat format, String s3Key, long size) {
+    latency.pause();
+    variants.put(variantKey(mediaId, width, format), MediaVariant.builder()
+        .mediaId(mediaId)
+        .width(width)
+        .outputFormat(format)
+        .status(MediaStatus.COMPLETE)
+        .s3Key(s3Key)
+        .size(size)
+        .updatedAt(Instant.now())
+        .build());
+  }
+
+  @Override
+  public List<MediaVariant> listVariants(String mediaId) {
+    latency.pause();
+    var prefix = mediaId + "#";
+    var result = new ArrayList<MediaVariant>();
+    variants.forEach((key, variant) -> {
+      if (key.startsWith(prefix)) {
+        result.add(variant);
+      }
+    });
+    result.sort(Comparator.comparing(MediaVariant::getWidth));
+    return result;
+  }
+
+  @Override
+  public void deleteVariant(String mediaId, int width, OutputFormat format) {
+    latency.pause();
+    variants.remove(variantKey(mediaId, width, format));
+  }
+
+  @Override
+  public Optional<Media> deleteMedia(String mediaId) {
+    latency.pause();
+    leases.remove(mediaId);
+    leaseTokens.remove(mediaId);
+    return Optional.ofNullable(media.remove(mediaId)).map(InMemoryDynamoDbService::copy);
+  }
+
+  @Override
+  public Optional<Media> getMedia(String mediaId) {
+    latency.pause();
+    return Optional.ofNullable(media.get(mediaId)).map(InMemoryDynamoDbService::copy);
+  }
+
+  private static String variantKey(String mediaId, int width, OutputFormat format) {
+    return mediaId + "#" + width + "#" + format.getFormat();
+  }
+
+  private static Media copy(Media item) {
+    return Media.builder()
+        .mediaId(item.getMediaId())
+        .size(item.getSize())
+        .name(item.getName())
+        .mimetype(item.getMimetype())
+        .status(item.getStatus())
+        .width(item.getWidth())
+        .outputFormat(item.getOutputFormat())
+        .createdAt(item.getCreatedAt())
+        .updatedAt(item.getUpdatedAt())
+        .deletedAt(item.getDeletedAt())
+        .contentHash(item.getContentHash())
+        .errorReason(item.getErrorReason())
+        .variantWidths(item.getVariantWidths())
+        .variantFormats(item.getVariantFormats())
+        .build();
+  }
+}
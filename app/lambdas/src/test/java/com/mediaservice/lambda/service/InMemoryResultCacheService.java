@@ -0,0 +1,50 @@
+package com.mediaservice.lambda.service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.Duration;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Enabled {@link ResultCacheService} indexed in a map instead of DynamoDB.
+ * Stored results are copied within the given {@link S3Service}, as the real
+ * cache does, and spools of originals are counted.
+ */
+public class InMemoryResultCacheService extends ResultCacheService {
+  private final S3Service s3Service;
+  private final Map<ResultKey, String> results = new ConcurrentHashMap<>();
+  private final AtomicInteger spools = new AtomicInteger();
+
+  public InMemoryResultCacheService(S3Service s3Service) {
+    super(null, s3Service, "media", true, Duration.ofDays(1), System.getProperty("java.io.tmpdir"));
+    this.s3Service = s3Service;
+  }
+
+  public Map<ResultKey, String> getResults() {
+    return results;
+  }
+
+  public int getSpools() {
+    return spools.get();
+  }
+
+  @Override
+  public SpooledOriginal spool(InputStream original) throws IOException {
+    spools.incrementAndGet();
+    return super.spool(original);
+  }
+
+  @Override
+  public Optional<String> lookup(ResultKey key) {
+    return Optional.ofNullable(results.get(key));
+  }
+
+  @Override
+  public void store(ResultKey key, String outputKey) {
+    s3Service.copyObject(outputKey, key.s3Key());
+    results.put(key, key.s3Key());
+  }
+}
@@ -0,0 +1,141 @@
+package com.mediaservice.lambda.service;
+
+import com.mediaservice.common.constants.StorageConstants;
+import com.mediaservice.common.model.MediaVariant;
+import com.mediaservice.common.model.OutputFormat;
+import software.amazon.awssdk.core.ResponseInputStream;
+import software.amazon.awssdk.http.AbortableInputStream;
+import software.amazon.awssdk.services.s3.model.GetObjectResponse;
+import software.amazon.awssdk.services.s3.model.NoSuchKeyException;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * {@link S3Service} backed by a map of key to bytes, using the same key
+ * layout as the bucket. Objects are shared, not copied, so an original put
+ * once can back any number of media items.
+ */
+public class InMemoryS3Service extends S3Service {
+  private final Map<String, byte[]> objects = new ConcurrentHashMap<>();
+  private final SimulatedLatency latency;
+
+  public InMemoryS3Service() {
+    this(SimulatedLatency.NONE);
+  }
+
+  public InMemoryS3Service(SimulatedLatency latency) {
+    super(null, "media-bucket");
+    this.latency = latency;
+  }
+
+  public void putOriginal(String mediaId, String mediaName, byte[] data) {
+    objects.put(originalKey(mediaId, mediaName), data);
+  }
+
+  public void putObject(String key, byte[] data) {
+    objects.put(key, data);
+  }
+
+  public byte[] getObject(String key) {
+    return objects.get(key);
+  }
+
+  public int size() {
+    return objects.size();
+  }
+
+  @Override
+  public ResponseInputStream<GetObjectResponse> openMediaFile(String mediaId, String mediaName) {
+    latency.pause();
+    var data = objects.get(originalKey(mediaId, mediaName));
+    if (data == null) {
+      throw NoSuchKeyException.builder().message("The specified key does not exist.").build();
+    }
+    return new ResponseInputStream<>(GetObjectResponse.builder()
+        .contentLength((long) data.length)
+        .eTag(eTagOf(data))
+        .build(), AbortableInputStream.create(new ByteArrayInputStream(data)));
+  }
+
+  @Override
+  public ResponseInputStream<GetObjectResponse> openMediaFileIfChanged(String mediaId, String mediaName,
+      String eTag) {
+    var data = objects.get(originalKey(mediaId, mediaName));
+    if (data != null && eTagOf(data).equals(eTag)) {
+      latency.pause();
+      return null;
+    }
+    return openMediaFile(mediaId, mediaName);
+  }
+
+  @Override
+  public SpooledOriginal downloadMediaFile(String mediaId, String mediaName) throws IOException {
+    try (var original = openMediaFile(mediaId, mediaName)) {
+      var path = Files.createTempFile("original-", ".bin");
+      Files.copy(original, path, StandardCopyOption.REPLACE_EXISTING);
+      return SpooledOriginal.of(path, Files.size(path), original.response().eTag());
+    }
+  }
+
+  @Override
+  public UploadOutputStream openProcessedUpload(String mediaId, OutputFormat outputFormat) {
+    return new BufferedUploadOutputStream(data -> {
+      latency.pause();
+      objects.put(processedKey(mediaId, outputFormat), data);
+    });
+  }
+
+  @Override
+  public UploadOutputStream openVariantUpload(String mediaId, int width, OutputFormat outputFormat) {
+    return new BufferedUploadOutputStream(data -> {
+      latency.pause();
+      objects.put(variantKey(mediaId, width, outputFormat), data);
+    });
+  }
+
+  @Override
+  public void copyObject(String sourceKey, String destinationKey) {
+    latency.pause();
+    var data = objects.get(sourceKey);
+    if (data == null) {
+      throw NoSuchKeyException.builder().message("The specified key does not exist.").build();
+    }
+    objects.put(destinationKey, data);
+  }
+
+  @Override
+  public void deleteOriginalFile(String mediaId, String mediaName) {
+    latency.pause();
+    objects.remove(originalKey(mediaId, mediaName));
+  }
+
+  @Override
+  public void deleteProcessedFile(String mediaId, OutputFormat outputFormat) {
+    latency.pause();
+    objects.remove(processedKey(mediaId, outputFormat));
+  }
+
+  @Override
+  public void deleteVariants(String mediaId, List<MediaVariant> variants) {
+    for (var variant : variants) {
+      latency.pause();
+      objects.remove(variantKey(mediaId, variant.getWidth(), variant.getOutputFormat()));
+    }
+  }
+
+  /** Objects are never mutated in place, so identity stands in for a content hash. */
+  private static String eTagOf(byte[] data) {
+    return "\"" + Integer.toHexString(System.identityHashCode(data)) + "\"";
+  }
+
+  private static String originalKey(String mediaId, String mediaName) {
+    return StorageConstants.buildS3Key(mediaId, StorageConstants.S3_VARIANT_ORIGINAL,
+        StorageConstants.getFileExtension(mediaName));
+  }
+}
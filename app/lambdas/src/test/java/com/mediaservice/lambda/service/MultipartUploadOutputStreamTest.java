@@ -0,0 +1,165 @@
+package com.mediaservice.lambda.service;
+
+import com.mediaservice.common.model.OutputFormat;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import software.amazon.awssdk.core.sync.RequestBody;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.AbortMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.AbortMultipartUploadResponse;
+import software.amazon.awssdk.services.s3.model.CompleteMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.CompleteMultipartUploadResponse;
+import software.amazon.awssdk.services.s3.model.CompletedPart;
+import software.amazon.awssdk.services.s3.model.CreateMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.CreateMultipartUploadResponse;
+import software.amazon.awssdk.services.s3.model.PutObjectRequest;
+import software.amazon.awssdk.services.s3.model.PutObjectResponse;
+import software.amazon.awssdk.services.s3.model.S3Exception;
+import software.amazon.awssdk.services.s3.model.UploadPartRequest;
+import software.amazon.awssdk.services.s3.model.UploadPartResponse;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class MultipartUploadOutputStreamTest {
+    private static final int PART_SIZE = MultipartUploadOutputStream.MIN_PART_SIZE;
+
+    @Test
+    @DisplayName("should send outputs smaller than a part with a single PutObject")
+    void shouldPutSmallOutputs() throws IOException {
+        var client = new RecordingS3Client();
+        byte[] data = randomBytes(100_000);
+        try (var stream = open(client)) {
+            stream.write(data);
+        }
+
+        assertThat(client.put).isEqualTo(data);
+        assertThat(client.uploadId).isNull();
+    }
+
+    @Test
+    @DisplayName("should upload full parts while writing and complete them in order")
+    void shouldUploadParts() throws IOException {
+        var client = new RecordingS3Client();
+        byte[] data = randomBytes(PART_SIZE * 2 + 12_345);
+        var stream = open(client);
+        // Uneven writes cross part boundaries
+        for (int off = 0; off < data.length; off += 700_001) {
+            stream.write(data, off, Math.min(700_001, data.length - off));
+        }
+        assertThat(client.uploadId).isNotNull();
+        stream.close();
+
+        assertThat(client.completed).extracting(CompletedPart::partNumber).containsExactly(1, 2, 3);
+        var joined = new ByteArrayOutputStream();
+        for (int part = 1; part <= 3; part++) {
+            joined.write(client.parts.get(part));
+        }
+        assertThat(joined.toByteArray()).isEqualTo(data);
+        assertThat(stream.getBytesWritten()).isEqualTo(data.length);
+        assertThat(client.put).isNull();
+    }
+
+    @Test
+    @DisplayName("should abort the multipart upload instead of completing it")
+    void shouldAbort() throws IOException {
+        var client = new RecordingS3Client();
+        var stream = open(client);
+        stream.write(randomBytes(PART_SIZE + 1));
+        stream.abort();
+        stream.close();
+
+        assertThat(client.aborted).isTrue();
+        assertThat(client.completed).isNull();
+    }
+
+    @Test
+    @DisplayName("should abort and fail the close when a part fails")
+    void shouldAbortOnPartFailure() throws IOException {
+        var client = new RecordingS3Client();
+        client.failParts = true;
+        var stream = open(client);
+        stream.write(randomBytes(PART_SIZE + 1));
+
+        assertThatThrownBy(stream::close).isInstanceOf(IOException.class);
+        assertThat(client.aborted).isTrue();
+        assertThat(client.completed).isNull();
+    }
+
+    private static MultipartUploadOutputStream open(S3Client client) {
+        return new MultipartUploadOutputStream(client, "media-bucket", "m1/processed.png", OutputFormat.PNG, PART_SIZE);
+    }
+
+    private static byte[] randomBytes(int length) {
+        var data = new byte[length];
+        new Random(length).nextBytes(data);
+        return data;
+    }
+
+    private static byte[] read(RequestBody body) {
+        try (var in = body.contentStreamProvider().newStream()) {
+            return in.readAllBytes();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static final class RecordingS3Client implements S3Client {
+        final Map<Integer, byte[]> parts = new ConcurrentHashMap<>();
+        volatile byte[] put;
+        volatile String uploadId;
+        volatile List<CompletedPart> completed;
+        volatile boolean aborted;
+        volatile boolean failParts;
+
+        @Override
+        public PutObjectResponse putObject(PutObjectRequest request, RequestBody body) {
+            put = read(body);
+            return PutObjectResponse.builder().build();
+        }
+
+        @Override
+        public CreateMultipartUploadResponse createMultipartUpload(CreateMultipartUploadRequest request) {
+            uploadId = "upload-1";
+            return CreateMultipartUploadResponse.builder().uploadId(uploadId).build();
+        }
+
+        @Override
+        public UploadPartResponse uploadPart(UploadPartRequest request, RequestBody body) {
+            if (failParts) {
+                throw S3Exception.builder().message("part failed").build();
+            }
+            parts.put(request.partNumber(), read(body));
+            return UploadPartResponse.builder().eTag("etag-" + request.partNumber()).build();
+        }
+
+        @Override
+        public CompleteMultipartUploadResponse completeMultipartUpload(CompleteMultipartUploadRequest request) {
+            completed = request.multipartUpload().parts();
+            return CompleteMultipartUploadResponse.builder().build();
+        }
+
+        @Override
+        public AbortMultipartUploadResponse abortMultipartUpload(AbortMultipartUploadRequest request) {
+            aborted = true;
+            return AbortMultipartUploadResponse.builder().build();
+        }
+
+        @Override
+        public String serviceName() {
+            return "s3";
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
@@ -0,0 +1,170 @@
+package com.mediaservice.lambda.service;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class OriginalCacheTest {
+    private static final long KB = 1024;
+
+    @Nested
+    @DisplayName("lookup")
+    class Lookup {
+        @Test
+        @DisplayName("should serve a cached original only at the same ETag")
+        void shouldMatchETag(@TempDir Path dir) throws IOException {
+            var cache = new OriginalCache(true, dir.toString(), 100 * KB);
+            byte[] data = randomBytes(10_000);
+            cache.put("m1", "\"v1\"", new ByteArrayInputStream(data)).close();
+
+            assertThat(cache.eTagOf("m1")).isEqualTo("\"v1\"");
+            assertThat(cache.acquire("m1", "\"v2\"")).isNull();
+            try (var cached = cache.acquire("m1", "\"v1\"")) {
+                assertThat(read(cached)).isEqualTo(data);
+            }
+            assertThat(cache.getHits()).isEqualTo(1);
+            assertThat(cache.getMisses()).isEqualTo(1);
+        }
+
+        @Test
+        @DisplayName("should drop an entry whose file is gone")
+        void shouldDropMissingFile(@TempDir Path dir) throws IOException {
+            var cache = new OriginalCache(true, dir.toString(), 100 * KB);
+            cache.put("m1", "\"v1\"", new ByteArrayInputStream(randomBytes(1000))).close();
+            try (var files = Files.list(dir)) {
+                for (var file : files.toList()) {
+                    Files.delete(file);
+                }
+            }
+
+            assertThat(cache.acquire("m1", "\"v1\"")).isNull();
+            assertThat(cache.eTagOf("m1")).isNull();
+        }
+
+        @Test
+        @DisplayName("should clear files left in the directory")
+        void shouldClearLeftovers(@TempDir Path dir) throws IOException {
+            Files.write(dir.resolve("original-123.bin"), new byte[10]);
+            new OriginalCache(true, dir.toString(), 100 * KB);
+            assertThat(dir).isEmptyDirectory();
+        }
+    }
+
+    @Nested
+    @DisplayName("eviction")
+    class Eviction {
+        @Test
+        @DisplayName("should evict the least recently used originals over the size limit")
+        void shouldEvictLeastRecentlyUsed(@TempDir Path dir) throws IOException {
+            var cache = new OriginalCache(true, dir.toString(), 25 * KB);
+            cache.put("a", "\"a\"", new ByteArrayInputStream(randomBytes(10_000))).close();
+            cache.put("b", "\"b\"", new ByteArrayInputStream(randomBytes(10_000))).close();
+            // Touch a, so b is the least recently used
+            cache.acquire("a", "\"a\"").close();
+            cache.put("c", "\"c\"", new ByteArrayInputStream(randomBytes(10_000))).close();
+
+            assertThat(cache.eTagOf("a")).isNotNull();
+            assertThat(cache.eTagOf("b")).isNull();
+            assertThat(cache.eTagOf("c")).isNotNull();
+            assertThat(cache.getEvictions()).isEqualTo(1);
+            assertThat(cache.getTotalBytes()).isEqualTo(20_000);
+            try (var files = Files.list(dir)) {
+                assertThat(files).hasSize(2);
+            }
+        }
+
+        @Test
+        @DisplayName("should not evict an original in use until it is released")
+        void shouldKeepPinnedEntries(@TempDir Path dir) throws IOException {
+            var cache = new OriginalCache(true, dir.toString(), 15 * KB);
+            var inUse = cache.put("a", "\"a\"", new ByteArrayInputStream(randomBytes(10_000)));
+            cache.put("b", "\"b\"", new ByteArrayInputStream(randomBytes(10_000))).close();
+
+            assertThat(cache.eTagOf("a")).isNotNull();
+            assertThat(cache.eTagOf("b")).isNull();
+            try (var in = inUse.open()) {
+                assertThat(in.readAllBytes()).hasSize(10_000);
+            }
+            inUse.close();
+            inUse.close();
+            assertThat(cache.getTotalBytes()).isEqualTo(10_000);
+        }
+
+        @Test
+        @DisplayName("should not cache an original larger than the cache")
+        void shouldSkipOversized(@TempDir Path dir) throws IOException {
+            var cache = new OriginalCache(true, dir.toString(), 5 * KB);
+            var original = cache.put("a", "\"a\"", new ByteArrayInputStream(randomBytes(10_000)));
+            assertThat(read(original)).hasSize(10_000);
+            original.close();
+
+            assertThat(cache.eTagOf("a")).isNull();
+            assertThat(dir).isEmptyDirectory();
+        }
+    }
+
+    @Nested
+    @DisplayName("fill")
+    class Fill {
+        @Test
+        @DisplayName("should cache a stream read to the end while passing it through")
+        void shouldCacheWhileReading(@TempDir Path dir) throws IOException {
+            var cache = new OriginalCache(true, dir.toString(), 100 * KB);
+            byte[] data = randomBytes(50_000);
+            try (var in = cache.fill("m1", "\"v1\"", new ByteArrayInputStream(data))) {
+                // Stop short of the end, as a decoder might; the tail is drained on close
+                assertThat(in.readNBytes(40_000)).isEqualTo(Arrays.copyOf(data, 40_000));
+            }
+
+            try (var cached = cache.acquire("m1", "\"v1\"")) {
+                assertThat(read(cached)).isEqualTo(data);
+            }
+        }
+
+        @Test
+        @DisplayName("should discard the copy when the source fails")
+        void shouldDiscardOnFailure(@TempDir Path dir) throws IOException {
+            var cache = new OriginalCache(true, dir.toString(), 100 * KB);
+            var failing = new InputStream() {
+                private int remaining = 1000;
+
+                @Override
+                public int read() throws IOException {
+                    if (remaining-- == 0) {
+                        throw new IOException("connection reset");
+                    }
+                    return 1;
+                }
+            };
+            try (var in = cache.fill("m1", "\"v1\"", failing)) {
+                in.readNBytes(500);
+            }
+
+            assertThat(cache.eTagOf("m1")).isNull();
+            assertThat(dir).isEmptyDirectory();
+        }
+    }
+
+    private static byte[] read(SpooledOriginal original) throws IOException {
+        try (var in = original.open()) {
+            return in.readAllBytes();
+        }
+    }
+
+    private static byte[] randomBytes(int length) {
+        var data = new byte[length];
+        new Random(length).nextBytes(data);
+        return data;
+    }
+}
@@ -0,0 +1,113 @@
+package com.mediaservice.lambda.service;
+
+import com.mediaservice.common.model.Media;
+import com.mediaservice.common.model.MediaStatus;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ProcessingLeaseTest {
+    private static final Duration LEASE = Duration.ofMinutes(1);
+
+    private InMemoryDynamoDbService dynamoDbService;
+
+    @BeforeEach
+    void setUp() {
+        dynamoDbService = new InMemoryDynamoDbService();
+        dynamoDbService.putMedia(Media.builder().mediaId("m1").name("a.jpg").status(MediaStatus.PENDING).build());
+    }
+
+    @Nested
+    @DisplayName("acquisition")
+    class Acquisition {
+        @Test
+        @DisplayName("should grant one consumer the lease and tell the next who holds it")
+        void shouldGrantOneHolder() {
+            var first = dynamoDbService.acquireLease("m1", "req-1", LEASE).orElseThrow();
+            assertThat(first.acquired()).isTrue();
+            assertThat(first.media().getStatus()).isEqualTo(MediaStatus.PROCESSING);
+
+            var second = dynamoDbService.acquireLease("m1", "req-2", LEASE).orElseThrow();
+            assertThat(second.acquired()).isFalse();
+            assertThat(second.media().getStatus()).isEqualTo(MediaStatus.PROCESSING);
+            assertThat(second.lease()).isEqualTo(first.lease());
+            assertThat(second.lease().owner()).isEqualTo("req-1");
+        }
+
+        @Test
+        @DisplayName("should let a retry take over a lapsed lease and fence off the old holder")
+        void shouldFenceLapsedHolder() {
+            var first = dynamoDbService.acquireLease("m1", "req-1", Duration.ZERO).orElseThrow();
+            var retry = dynamoDbService.acquireLease("m1", "req-2", LEASE).orElseThrow();
+            assertThat(retry.acquired()).isTrue();
+            assertThat(retry.lease().token()).isGreaterThan(first.lease().token());
+
+            assertThat(dynamoDbService.completeMedia("m1", first.lease().token(), 640)).isFalse();
+            assertThat(dynamoDbService.renewLease("m1", first.lease().token(), Long.MAX_VALUE)).isFalse();
+            assertThat(dynamoDbService.completeMedia("m1", retry.lease().token(), 640)).isTrue();
+            assertThat(dynamoDbService.getMedia("m1").orElseThrow().getStatus()).isEqualTo(MediaStatus.COMPLETE);
+        }
+
+        @Test
+        @DisplayName("should refuse media that are complete or missing")
+        void shouldRefuseOtherStatuses() {
+            var lease = dynamoDbService.acquireLease("m1", "req-1", LEASE).orElseThrow().lease();
+            dynamoDbService.completeMedia("m1", lease.token(), null);
+
+            var again = dynamoDbService.acquireLease("m1", "req-2", LEASE).orElseThrow();
+            assertThat(again.acquired()).isFalse();
+            assertThat(again.media().getStatus()).isEqualTo(MediaStatus.COMPLETE);
+            assertThat(again.lease()).isNull();
+            assertThat(dynamoDbService.acquireLease("missing", "req-2", LEASE)).isEmpty();
+        }
+    }
+
+    @Nested
+    @DisplayName("holding")
+    class Holding {
+        @Test
+        @DisplayName("should renew the lease while held")
+        void shouldRenew() throws InterruptedException {
+            var attempt = dynamoDbService.acquireLease("m1", "req-1", Duration.ofMillis(300)).orElseThrow();
+            try (var lease = ProcessingLease.hold(dynamoDbService, "m1", attempt.lease(), Duration.ofMillis(300))) {
+                long deadline = System.currentTimeMillis() + 5000;
+                while (dynamoDbService.getLease("m1").orElseThrow().expiresAtMillis()
+                        == attempt.lease().expiresAtMillis() && System.currentTimeMillis() < deadline) {
+                    Thread.sleep(20);
+                }
+                assertThat(dynamoDbService.getLease("m1").orElseThrow().expiresAtMillis())
+                    .isGreaterThan(attempt.lease().expiresAtMillis());
+                assertThat(lease.isLost()).isFalse();
+            }
+        }
+
+        @Test
+        @DisplayName("should release an unfinished lease on close so a retry takes over at once")
+        void shouldReleaseOnClose() {
+            var attempt = dynamoDbService.acquireLease("m1", "req-1", LEASE).orElseThrow();
+            try (var lease = ProcessingLease.hold(dynamoDbService, "m1", attempt.lease(), LEASE)) {
+                assertThat(lease.getToken()).isEqualTo(attempt.lease().token());
+            }
+            assertThat(dynamoDbService.getLease("m1")).isEmpty();
+            assertThat(dynamoDbService.acquireLease("m1", "req-2", LEASE).orElseThrow().acquired()).isTrue();
+        }
+
+        @Test
+        @DisplayName("should end the lease with the outcome of the render")
+        void shouldEndWithOutcome() {
+            var attempt = dynamoDbService.acquireLease("m1", "req-1", LEASE).orElseThrow();
+            try (var lease = ProcessingLease.hold(dynamoDbService, "m1", attempt.lease(), LEASE)) {
+                assertThat(lease.fail("CORRUPT_IMAGE")).isTrue();
+            }
+            var media = dynamoDbService.getMedia("m1").orElseThrow();
+            assertThat(media.getStatus()).isEqualTo(MediaStatus.ERROR);
+            assertThat(media.getErrorReason()).isEqualTo("CORRUPT_IMAGE");
+            assertThat(dynamoDbService.getLease("m1")).isEmpty();
+        }
+    }
+}
@@ -0,0 +1,166 @@
+package com.mediaservice.lambda.service;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import software.amazon.awssdk.core.ResponseInputStream;
+import software.amazon.awssdk.http.AbortableInputStream;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.GetObjectRequest;
+import software.amazon.awssdk.services.s3.model.GetObjectResponse;
+import software.amazon.awssdk.services.s3.model.S3Exception;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class RangedDownloadTest {
+    private static final String KEY = "m1/original.jpg";
+
+    @Test
+    @DisplayName("should reassemble every range into the file in order")
+    void shouldReassembleRanges(@TempDir Path dir) throws IOException {
+        byte[] data = randomBytes(1_000_003);
+        var client = new RangeS3Client(data);
+
+        try (var original = new RangedDownload(client, "media-bucket", 100_000, 4).fetch(KEY, dir.toString())) {
+            assertThat(original.getSize()).isEqualTo(data.length);
+            try (var in = original.open()) {
+                assertThat(in.readAllBytes()).isEqualTo(data);
+            }
+        }
+        assertThat(client.ranges).hasSize(11).contains("bytes=1000000-1099999");
+        assertThat(client.ifMatch).containsOnly(null, "\"etag-1\"");
+        assertThat(dir).isEmptyDirectory();
+    }
+
+    @Test
+    @DisplayName("should hash the downloaded file on first use")
+    void shouldHashLazily(@TempDir Path dir) throws IOException {
+        byte[] data = randomBytes(250_000);
+        try (var original = new RangedDownload(new RangeS3Client(data), "media-bucket", 64_000, 2)
+                .fetch(KEY, dir.toString());
+                var spooled = SpooledOriginal.spool(new ByteArrayInputStream(data), dir.toString())) {
+            assertThat(original.getSha256()).isEqualTo(spooled.getSha256());
+        }
+    }
+
+    @Test
+    @DisplayName("should delete the file when a range fails")
+    void shouldCleanUpOnFailure(@TempDir Path dir) {
+        var client = new RangeS3Client(randomBytes(500_000));
+        client.failAfter = 2;
+
+        assertThatThrownBy(() -> new RangedDownload(client, "media-bucket", 100_000, 2).fetch(KEY, dir.toString()))
+                .isInstanceOf(IOException.class);
+        assertThat(dir).isEmptyDirectory();
+    }
+
+    @Test
+    @DisplayName("should treat an unsatisfiable first range as an empty object")
+    void shouldHandleEmptyObject(@TempDir Path dir) throws IOException {
+        try (var original = new RangedDownload(new RangeS3Client(new byte[0]), "media-bucket", 1024, 2)
+                .fetch(KEY, dir.toString())) {
+            assertThat(original.getSize()).isZero();
+        }
+    }
+
+    @Test
+    @DisplayName("should take the whole object from an endpoint that ignores Range")
+    void shouldHandleIgnoredRange(@TempDir Path dir) throws IOException {
+        byte[] data = randomBytes(350_000);
+        var client = new RangeS3Client(data);
+        client.ignoreRange = true;
+
+        try (var original = new RangedDownload(client, "media-bucket", 100_000, 4).fetch(KEY, dir.toString())) {
+            assertThat(original.getSize()).isEqualTo(data.length);
+            try (var in = original.open()) {
+                assertThat(in.readAllBytes()).isEqualTo(data);
+            }
+        }
+        assertThat(client.ranges).hasSize(1);
+    }
+
+    @Test
+    @DisplayName("should read the object size from Content-Range")
+    void shouldParseObjectSize() {
+        assertThat(RangedDownload.objectSize(GetObjectResponse.builder()
+                .contentRange("bytes 0-16777215/734003200").contentLength(16_777_216L).build()))
+                .isEqualTo(734_003_200L);
+        // Range ignored by the endpoint: the body is the whole object
+        assertThat(RangedDownload.objectSize(GetObjectResponse.builder().contentLength(42L).build())).isEqualTo(42L);
+    }
+
+    @Test
+    @DisplayName("should only use ranged downloads at or above the size threshold")
+    void shouldApplyThreshold() {
+        var service = new S3Service(null, "media-bucket");
+        assertThat(service.isRangedDownload(null)).isFalse();
+        assertThat(service.isRangedDownload(1024L)).isFalse();
+        assertThat(service.isRangedDownload(10L * 1024 * 1024 * 1024)).isTrue();
+    }
+
+    private static byte[] randomBytes(int length) {
+        var data = new byte[length];
+        new Random(length).nextBytes(data);
+        return data;
+    }
+
+    private static final class RangeS3Client implements S3Client {
+        final List<String> ranges = new CopyOnWriteArrayList<>();
+        final List<String> ifMatch = new CopyOnWriteArrayList<>();
+        private final byte[] data;
+        volatile int failAfter = Integer.MAX_VALUE;
+        volatile boolean ignoreRange;
+
+        RangeS3Client(byte[] data) {
+            this.data = data;
+        }
+
+        @Override
+        public ResponseInputStream<GetObjectResponse> getObject(GetObjectRequest request) {
+            ranges.add(request.range());
+            ifMatch.add(request.ifMatch());
+            if (ranges.size() > failAfter) {
+                throw S3Exception.builder().message("range failed").statusCode(500).build();
+            }
+            if (ignoreRange) {
+                var response = GetObjectResponse.builder()
+                        .eTag("\"etag-1\"")
+                        .contentLength((long) data.length)
+                        .build();
+                return new ResponseInputStream<>(response,
+                        AbortableInputStream.create(new ByteArrayInputStream(data)));
+            }
+            var bounds = request.range().substring("bytes=".length()).split("-");
+            long start = Long.parseLong(bounds[0]);
+            if (start >= data.length) {
+                throw S3Exception.builder().message("Range Not Satisfiable").statusCode(416).build();
+            }
+            int end = (int) Math.min(Long.parseLong(bounds[1]), data.length - 1);
+            var body = Arrays.copyOfRange(data, (int) start, end + 1);
+            var response = GetObjectResponse.builder()
+                    .eTag("\"etag-1\"")
+                    .contentLength((long) body.length)
+                    .contentRange("bytes " + start + "-" + end + "/" + data.length)
+                    .build();
+            return new ResponseInputStream<>(response, AbortableInputStream.create(new ByteArrayInputStream(body)));
+        }
+
+        @Override
+        public String serviceName() {
+            return "s3";
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package com.mediaservice.lambda.service;
+
+import com.mediaservice.common.model.OutputFormat;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ResultCacheServiceTest {
+
+    @Nested
+    @DisplayName("ResultKey")
+    class Key {
+        @Test
+        @DisplayName("should address results by content hash and rendering parameters")
+        void shouldBuildKeys() {
+            var key = new ResultCacheService.ResultKey("abc123", 500, OutputFormat.JPEG, "f00dbr", 0.9f);
+            assertThat(key.partitionKey()).isEqualTo("RESULT#abc123");
+            assertThat(key.sortKey()).isEqualTo("500#jpeg#f00dbr#q90");
+            assertThat(key.s3Key()).isEqualTo("results/abc123/500-f00dbr-q90.jpeg");
+        }
+
+        @Test
+        @DisplayName("should tag writer-default quality")
+        void shouldTagDefaultQuality() {
+            var key = new ResultCacheService.ResultKey("abc123", 300, OutputFormat.PNG, "f00dbl", null);
+            assertThat(key.sortKey()).endsWith("#default");
+        }
+
+        @Test
+        @DisplayName("should distinguish process and resize watermark placement")
+        void shouldDistinguishWatermarkPlacement() {
+            var service = new ImageProcessingService();
+            var process = service.resultKey("abc123", 500, OutputFormat.JPEG, false);
+            var resize = service.resultKey("abc123", 500, OutputFormat.JPEG, true);
+            assertThat(process.sortKey()).isNotEqualTo(resize.sortKey());
+            assertThat(service.resultKey("abc123", null, null, false)).isEqualTo(process);
+        }
+    }
+
+    @Nested
+    @DisplayName("SpooledOriginal")
+    class Spool {
+        @Test
+        @DisplayName("should hash content while spooling and delete the file on close")
+        void shouldHashAndCleanUp(@TempDir Path dir) throws IOException {
+            var content = "hello".getBytes(StandardCharsets.UTF_8);
+            try (var spooled = SpooledOriginal.spool(new ByteArrayInputStream(content), dir.toString())) {
+                assertThat(spooled.getSha256())
+                        .isEqualTo("2cf24dba5fb0a30e26e83b2ac5b9e29e1b161e5c1fa7425e73043362938b9824");
+                assertThat(spooled.getSize()).isEqualTo(content.length);
+                try (var in = spooled.open()) {
+                    assertThat(in.readAllBytes()).isEqualTo(content);
+                }
+            }
+            try (var files = Files.list(dir)) {
+                assertThat(files).isEmpty();
+            }
+        }
+    }
+
+    @Nested
+    @DisplayName("ContentHashInputStream")
+    class ContentHash {
+        @Test
+        @DisplayName("should hash the whole stream, including what the reader left unread")
+        void shouldHashUnreadRemainder() throws IOException {
+            var content = "hello".getBytes(StandardCharsets.UTF_8);
+            try (var in = new ContentHashInputStream(new ByteArrayInputStream(content))) {
+                assertThat(in.markSupported()).isFalse();
+                assertThat(in.readNBytes(2)).isEqualTo("he".getBytes(StandardCharsets.UTF_8));
+                assertThat(in.finish())
+                        .isEqualTo("2cf24dba5fb0a30e26e83b2ac5b9e29e1b161e5c1fa7425e73043362938b9824");
+            }
+        }
+    }
+}
@@ -0,0 +1,22 @@
+package com.mediaservice.lambda.service;
+
+import java.time.Duration;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Fixed delay added to every call of an in-memory service, standing in for
+ * the network round trip of the AWS service it replaces.
+ */
+public record SimulatedLatency(Duration perCall) {
+  public static final SimulatedLatency NONE = new SimulatedLatency(Duration.ZERO);
+
+  public static SimulatedLatency ofMillis(long millis) {
+    return new SimulatedLatency(Duration.ofMillis(millis));
+  }
+
+  void pause() {
+    if (!perCall.isZero()) {
+      LockSupport.parkNanos(perCall.toNanos());
+    }
+  }
+}
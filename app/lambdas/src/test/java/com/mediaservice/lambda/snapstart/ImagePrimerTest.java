@@ -0,0 +1,66 @@
+package com.mediaservice.lambda.snapstart;
+
+import com.mediaservice.lambda.config.RestoreSafeIdGenerator;
+import com.mediaservice.lambda.service.ImageProcessingService;
+import io.opentelemetry.api.trace.SpanId;
+import io.opentelemetry.api.trace.TraceId;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+
+import javax.imageio.ImageIO;
+import java.io.IOException;
+import java.util.HashSet;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatCode;
+
+class ImagePrimerTest {
+
+    @Nested
+    @DisplayName("prime")
+    class Prime {
+        @Test
+        @DisplayName("should render every variant for each encodable source format")
+        void shouldRenderAllOutputs() throws IOException {
+            int sources = ImageIO.getImageWritersByFormatName("webp").hasNext() ? 3 : 2;
+            int rendered = new ImagePrimer(new ImageProcessingService(), 2).prime();
+            // Six variants plus one resize per source and iteration
+            assertThat(rendered).isEqualTo(2 * sources * 7);
+        }
+    }
+
+    @Nested
+    @DisplayName("SnapStartHooks")
+    class Hooks {
+        @Test
+        @DisplayName("should not fail the checkpoint when priming fails")
+        void shouldSwallowPrimingFailure() {
+            var hooks = new SnapStartHooks(() -> {
+                throw new IllegalStateException("no network");
+            });
+            assertThatCode(() -> hooks.beforeCheckpoint(null)).doesNotThrowAnyException();
+        }
+    }
+
+    @Nested
+    @DisplayName("RestoreSafeIdGenerator")
+    class IdGenerator {
+        @Test
+        @DisplayName("should generate valid unique ids across reseeds")
+        void shouldGenerateValidIds() {
+            var generator = RestoreSafeIdGenerator.INSTANCE;
+            var traceIds = new HashSet<String>();
+            for (int i = 0; i < 1000; i++) {
+                if (i % 100 == 0) {
+                    generator.reseed();
+                }
+                var traceId = generator.generateTraceId();
+                assertThat(TraceId.isValid(traceId)).isTrue();
+                assertThat(SpanId.isValid(generator.generateSpanId())).isTrue();
+                traceIds.add(traceId);
+            }
+            assertThat(traceIds).hasSize(1000);
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package com.mediaservice.lambda.stage;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatCode;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class DeadlineTest {
+    private static final long MB = 1024 * 1024;
+    private static final long MS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    @Nested
+    @DisplayName("StageCosts")
+    class Costs {
+        @Test
+        @DisplayName("should split the default cost evenly until a stage is timed")
+        void shouldUseDefault() {
+            var costs = new StageCosts(600);
+            assertThat(costs.estimateNanos(Stage.DECODE, 10 * MB)).isEqualTo(1000 * MS);
+            assertThat(costs.estimateRenderNanos(10 * MB, 1)).isEqualTo(6000 * MS);
+            // Download and decode once, the other four stages per output
+            assertThat(costs.estimateRenderNanos(10 * MB, 3)).isEqualTo(14_000 * MS);
+        }
+
+        @Test
+        @DisplayName("should learn each stage's cost from the stages it times")
+        void shouldLearnFromSamples() {
+            var costs = new StageCosts(600);
+            costs.record(Stage.DECODE, 10 * MB, 4000 * MS);
+            assertThat(costs.estimateNanos(Stage.DECODE, 5 * MB)).isEqualTo(2000 * MS);
+
+            costs.record(Stage.DECODE, 10 * MB, 9000 * MS);
+            // Smoothed towards the new sample: 400 + 0.2 * (900 - 400) ms per MB
+            assertThat(costs.estimateNanos(Stage.DECODE, MB)).isEqualTo(500 * MS);
+            assertThat(costs.estimateNanos(Stage.ENCODE, 10 * MB)).isEqualTo(1000 * MS);
+        }
+
+        @Test
+        @DisplayName("should estimate nothing when the size of the original is unknown")
+        void shouldIgnoreUnknownSize() {
+            var costs = new StageCosts(600);
+            costs.record(Stage.DECODE, 0, 4000 * MS);
+            assertThat(costs.estimateNanos(Stage.DECODE, 0)).isZero();
+            assertThat(costs.estimateNanos(Stage.DECODE, 10 * MB)).isEqualTo(1000 * MS);
+        }
+    }
+
+    @Nested
+    @DisplayName("checks")
+    class Checks {
+        private long now;
+
+        @Test
+        @DisplayName("should refuse work expected to outlast the deadline")
+        void shouldRefuseLongWork() {
+            var deadline = new Deadline(1000 * MS, new StageCosts(600), () -> now);
+            assertThatCode(() -> deadline.require(900 * MS, "decode")).doesNotThrowAnyException();
+
+            now = 200 * MS;
+            assertThatThrownBy(() -> deadline.require(900 * MS, "decode"))
+                .isInstanceOf(DeadlineExceededException.class)
+                .hasMessageContaining("800 ms");
+            assertThat(deadline.isExpired()).isFalse();
+
+            now = 1000 * MS;
+            assertThat(deadline.isExpired()).isTrue();
+            assertThatThrownBy(() -> deadline.require(0, "upload")).isInstanceOf(DeadlineExceededException.class);
+        }
+
+        @Test
+        @DisplayName("should never refuse without a deadline")
+        void shouldPassWithoutDeadline() {
+            assertThatCode(() -> Deadline.none().require(Long.MAX_VALUE, "decode")).doesNotThrowAnyException();
+            assertThat(Deadline.none().isExpired()).isFalse();
+        }
+
+        @Test
+        @DisplayName("should check stages of a scope against its deadline and feed the costs")
+        void shouldCheckStages() {
+            var costs = new StageCosts(600);
+            var deadline = new Deadline(1500 * MS, costs, () -> now);
+            try (var timings = StageTimings.open(null, "m1", deadline)) {
+                timings.setSourceBytes(10 * MB);
+                assertThatCode(() -> timings.checkDeadline(Stage.DECODE)).doesNotThrowAnyException();
+                // An encode also commits its output, so it needs its upload's time too
+                assertThatThrownBy(() -> timings.checkDeadline(Stage.ENCODE))
+                    .isInstanceOf(DeadlineExceededException.class);
+                assertThatThrownBy(() -> timings.checkDeadline(1)).isInstanceOf(DeadlineExceededException.class);
+
+                timings.start(Stage.RESIZE).stop(null, 100 * MS);
+                assertThat(costs.estimateNanos(Stage.RESIZE, 10 * MB)).isEqualTo(100 * MS);
+            }
+        }
+    }
+}
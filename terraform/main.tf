@@ -254,6 +254,7 @@ module "lambda" {
   media_bucket_arn               = module.s3.media_bucket_arn
   media_management_sqs_queue_arn = module.sns-sqs.media_management_sqs_queue_arn
   media_s3_bucket_name           = var.media_s3_bucket_name
+  sqs_max_receive_count          = module.sns-sqs.media_management_max_receive_count
 
   otel_exporter_endpoint = var.otel_exporter_endpoint
 
@@ -267,6 +268,8 @@ module "lambda" {
 
   # SnapStart disabled for LocalStack
   enable_snapstart = var.is_local ? false : var.enable_snapstart
+
+  image_resampler = var.image_resampler
 }
 
 # =============================================================================
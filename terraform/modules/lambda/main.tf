@@ -48,6 +48,7 @@ data "aws_iam_policy_document" "lambda_iam_policy_document" {
     actions = [
       "s3:GetObject",
       "s3:PutObject",
+      "s3:AbortMultipartUpload",
       "s3:ListBucket",
       "s3:DeleteObject"
     ]
@@ -197,6 +198,16 @@ resource "aws_lambda_function" "manage_media" {
         OTEL_METRICS_EXPORTER       = "otlp"
         OTEL_LOGS_EXPORTER          = "otlp"
         OTEL_EXPORTER_OTLP_PROTOCOL = "http/protobuf"
+        IMAGE_RESAMPLER             = var.image_resampler
+        SQS_MAX_RECEIVE_COUNT       = tostring(var.sqs_max_receive_count)
+        # Render sample images before the snapshot so restored environments start warm
+        SNAPSTART_PRIMING_ENABLED = tostring(var.enable_snapstart)
+        # Export telemetry in the background across invocations instead of after each batch
+        TELEMETRY_EXPORT_MODE = "async"
+      },
+      # Resolve the Vector API so convolution resamplers use SIMD kernels; thumbnailator does not use it
+      lower(var.image_resampler) == "thumbnailator" ? {} : {
+        JAVA_TOOL_OPTIONS = "--add-modules=jdk.incubator.vector"
       },
       var.is_local ? {
         AWS_S3_ENDPOINT       = var.localstack_endpoint
@@ -234,7 +245,11 @@ resource "aws_iam_role_policy_attachment" "lambda_iam_policy_attachment" {
 
 resource "aws_lambda_event_source_mapping" "sqs_event_source_mapping" {
   event_source_arn = var.media_management_sqs_queue_arn
-  function_name    = aws_lambda_function.manage_media.arn
+  # SnapStart only applies to published versions; $LATEST always cold-starts
+  function_name = var.is_local || !var.enable_snapstart ? aws_lambda_function.manage_media.arn : aws_lambda_function.manage_media.qualified_arn
+
+  # Handler returns SQSBatchResponse; only failed message IDs are redelivered
+  function_response_types = ["ReportBatchItemFailures"]
 
   tags = merge(
     var.additional_tags,
@@ -295,6 +310,8 @@ resource "aws_lambda_function" "analytics_rollup" {
         OTEL_LOGS_EXPORTER          = "otlp"
         OTEL_EXPORTER_OTLP_PROTOCOL = "http/protobuf"
         JAVA_TOOL_OPTIONS           = "-XX:+TieredCompilation -XX:TieredStopAtLevel=1"
+        # Scheduled runs are hours apart, so waiting for the export is cheaper than holding it
+        TELEMETRY_EXPORT_MODE = "sync"
       },
       var.is_local ? {
         AWS_S3_ENDPOINT       = var.localstack_endpoint
@@ -61,6 +61,18 @@ variable "enable_snapstart" {
   default     = true
 }
 
+variable "image_resampler" {
+  description = "IMAGE_RESAMPLER of the media Lambda: thumbnailator, bilinear, bicubic or lanczos3"
+  type        = string
+  default     = "thumbnailator"
+}
+
+variable "sqs_max_receive_count" {
+  description = "maxReceiveCount of the media queue's redrive policy; the final attempt marks a failing media ERROR"
+  type        = number
+  default     = 5
+}
+
 variable "is_local" {
   description = "Whether running in LocalStack (disables VPC, SnapStart)"
   type        = bool
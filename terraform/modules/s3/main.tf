@@ -41,3 +41,35 @@ resource "aws_s3_bucket_cors_configuration" "media_bucket_cors" {
     max_age_seconds = 3600
   }
 }
+
+# Content-addressed processing results (results/{contentHash}/...) are indexed
+# in DynamoDB with a TTL; expire the objects a day after their index entries.
+resource "aws_s3_bucket_lifecycle_configuration" "media_bucket_lifecycle" {
+  bucket = aws_s3_bucket.media_bucket.id
+
+  rule {
+    id     = "expire-processing-results"
+    status = "Enabled"
+
+    filter {
+      prefix = "results/"
+    }
+
+    expiration {
+      days = var.result_cache_ttl_days + 1
+    }
+  }
+
+  # Processed outputs are streamed as multipart uploads; clean up any a
+  # crashed Lambda could not abort
+  rule {
+    id     = "abort-incomplete-multipart-uploads"
+    status = "Enabled"
+
+    filter {}
+
+    abort_incomplete_multipart_upload {
+      days_after_initiation = 1
+    }
+  }
+}
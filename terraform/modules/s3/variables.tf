@@ -14,3 +14,9 @@ variable "is_local" {
   type        = bool
   default     = false
 }
+
+variable "result_cache_ttl_days" {
+  description = "Days the Lambda result cache keeps entries (RESULT_CACHE_TTL_DAYS)"
+  type        = number
+  default     = 30
+}
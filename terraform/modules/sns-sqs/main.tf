@@ -6,7 +6,7 @@ resource "aws_sqs_queue" "media_management_sqs_queue" {
   receive_wait_time_seconds = 5
   redrive_policy = jsonencode({
     deadLetterTargetArn = aws_sqs_queue.media_management_sqs_dlq.arn
-    maxReceiveCount     = 5
+    maxReceiveCount     = var.media_mngmt_max_receive_count
   })
 
   # Six times the Lambda timeout (120s * 6 = 720s).
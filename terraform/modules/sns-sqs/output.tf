@@ -9,3 +9,7 @@ output "media_management_sqs_queue_arn" {
 output "media_management_sqs_queue_url" {
   value = aws_sqs_queue.media_management_sqs_queue.url
 }
+
+output "media_management_max_receive_count" {
+  value = var.media_mngmt_max_receive_count
+}
@@ -16,6 +16,12 @@ variable "media_mngmt_dlq_name" {
   default     = "media-management-sqs-dlq"
 }
 
+variable "media_mngmt_max_receive_count" {
+  description = "Receives of a message before SQS moves it to the dead-letter queue"
+  type        = number
+  default     = 5
+}
+
 variable "additional_tags" {
   description = "Additional tags to apply to resources"
   type        = map(string)
@@ -60,3 +60,9 @@ variable "enable_snapstart" {
   type        = bool
   default     = true
 }
+
+variable "image_resampler" {
+  description = "Resampler of the media Lambda: thumbnailator, bilinear, bicubic or lanczos3"
+  type        = string
+  default     = "thumbnailator"
+}